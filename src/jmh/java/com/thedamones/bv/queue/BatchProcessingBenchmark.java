@@ -0,0 +1,93 @@
+package com.thedamones.bv.queue;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.support.GenericApplicationContext;
+
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+/**
+ * Per-message overhead of a {@link QueueManager} worker leasing, processing and acknowledging messages one by one
+ * ({@code queue.workers.batch-size=1}) and in batches, with a processor that does nothing.  Each operation enqueues
+ * {@value #MESSAGES} messages in one transaction and waits until the single worker has processed them all, so the
+ * score is the time per message.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class BatchProcessingBenchmark {
+
+    private static final int MESSAGES = 1000;
+
+    @Param({"1", "100"})
+    public int batchSize;
+
+    private final Semaphore processed = new Semaphore(0);
+    private final List<EnqueueMessageRecord> requests = IntStream.range(0, MESSAGES)
+            .mapToObj(i -> new EnqueueMessageRecord("benchmark", 0))
+            .toList();
+
+    private ConfigurableApplicationContext context;
+    private MessageService messageService;
+
+    @Setup(Level.Trial)
+    public void startApplication() {
+        context = BenchmarkApplication.start(BenchmarkApplication.MEM, "batch-" + batchSize,
+                context -> ((GenericApplicationContext) context).registerBean(CountingProcessor.class,
+                        () -> new CountingProcessor(processed), definition -> definition.setPrimary(true)),
+                "queue.workers.count=1",
+                "queue.workers.batch-size=" + batchSize);
+        messageService = context.getBean(MessageService.class);
+    }
+
+    @TearDown(Level.Trial)
+    public void stopApplication() {
+        context.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(MESSAGES)
+    public void enqueueAndProcess() throws InterruptedException {
+        messageService.enqueueMessages(QueueRegistry.DEFAULT_QUEUE, requests);
+        processed.acquire(MESSAGES);
+    }
+
+    /**
+     * Counts the processed messages for the benchmark thread.
+     */
+    static class CountingProcessor implements BatchMessageProcessor {
+
+        private final Semaphore processed;
+
+        CountingProcessor(Semaphore processed) {
+            this.processed = processed;
+        }
+
+        @Override
+        public Map<UUID, Exception> processBatch(List<MessageRecord> messages) {
+            processed.release(messages.size());
+            return Map.of();
+        }
+    }
+}
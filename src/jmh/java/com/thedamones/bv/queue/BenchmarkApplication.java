@@ -0,0 +1,100 @@
+package com.thedamones.bv.queue;
+
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ApplicationContextInitializer;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * Starts the queue application for a benchmark, on a random port and with background workers disabled unless a benchmark
+ * turns them back on.
+ */
+final class BenchmarkApplication {
+
+    static final String MEM = "mem";
+    static final String FILE = "file";
+
+    private static final Path FILE_DATABASE_DIRECTORY = Path.of("target", "jmh-data");
+
+    private BenchmarkApplication() {
+    }
+
+    /**
+     * Starts the application against a fresh H2 database.
+     *
+     * @param database   {@link #MEM} or {@link #FILE}.
+     * @param name       The database name, unique per benchmark.
+     * @param properties Additional {@code key=value} properties, overriding the benchmark defaults.
+     * @return The running application context.
+     */
+    static ConfigurableApplicationContext start(String database, String name, String... properties) {
+        return start(database, name, context -> {
+        }, properties);
+    }
+
+    static ConfigurableApplicationContext start(String database, String name,
+                                                ApplicationContextInitializer<ConfigurableApplicationContext> initializer,
+                                                String... properties) {
+        Map<String, String> arguments = new LinkedHashMap<>();
+        Stream.concat(Stream.of(
+                                "spring.main.banner-mode=off",
+                                "logging.level.root=WARN",
+                                "server.port=0",
+                                "queue.workers.count=0",
+                                "spring.datasource.url=" + datasourceUrl(database, name)),
+                        Stream.of(properties))
+                .map(property -> property.split("=", 2))
+                .forEach(property -> arguments.put(property[0], property[1]));
+
+        // Command line arguments take precedence over application.properties, unlike default properties
+        String[] args = arguments.entrySet().stream()
+                .map(argument -> "--" + argument.getKey() + "=" + argument.getValue())
+                .toArray(String[]::new);
+        return new SpringApplicationBuilder(QueueManagerApplication.class)
+                .initializers(initializer)
+                .run(args);
+    }
+
+    /**
+     * Gets the size of a file database, after it has been shut down.
+     *
+     * @param name The database name.
+     * @return The size of the database file in bytes.
+     */
+    static long fileDatabaseSize(String name) {
+        try {
+            return Files.size(FILE_DATABASE_DIRECTORY.resolve(name + ".mv.db"));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static String datasourceUrl(String database, String name) {
+        if (MEM.equals(database)) {
+            return "jdbc:h2:mem:" + name + ";DB_CLOSE_DELAY=-1";
+        }
+        deleteFileDatabase(name);
+        return "jdbc:h2:file:./" + FILE_DATABASE_DIRECTORY.resolve(name) + ";DB_CLOSE_DELAY=-1";
+    }
+
+    private static void deleteFileDatabase(String name) {
+        if (!Files.isDirectory(FILE_DATABASE_DIRECTORY)) {
+            return;
+        }
+        try (Stream<Path> files = Files.list(FILE_DATABASE_DIRECTORY)) {
+            for (Path file : files.filter(file -> file.getFileName().toString().startsWith(name + ".")).toList()) {
+                FileSystemUtils.deleteRecursively(file);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package com.thedamones.bv.queue;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.core.convert.ConversionService;
+import org.springframework.core.convert.support.DefaultConversionService;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of converting a {@link Message} entity to a {@link MessageRecord} through the {@link ConversionService}, against
+ * calling {@link MessageToMessageRecordConverter} directly.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class ConversionBenchmark {
+
+    private final MessageToMessageRecordConverter converter = new MessageToMessageRecordConverter();
+    private final ConversionService conversionService = conversionService(converter);
+    private final Message message = message();
+
+    @Benchmark
+    public MessageRecord conversionService() {
+        return conversionService.convert(message, MessageRecord.class);
+    }
+
+    @Benchmark
+    public MessageRecord converter() {
+        return converter.convert(message);
+    }
+
+    private static ConversionService conversionService(MessageToMessageRecordConverter converter) {
+        DefaultConversionService conversionService = new DefaultConversionService();
+        conversionService.addConverter(converter);
+        return conversionService;
+    }
+
+    private static Message message() {
+        Message message = new Message("benchmark", 100);
+        message.setId(UUID.randomUUID());
+        return message;
+    }
+}
@@ -0,0 +1,73 @@
+package com.thedamones.bv.queue;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency of {@link MessageService#dequeueMessage}, with the native single-statement pop and with the JPA
+ * find-and-delete fallback ({@code queue.dequeue.native-pop}).
+ * <p>
+ * Each iteration starts with {@value #PREFILL} queued messages, more than an iteration can dequeue, so the queue never
+ * runs empty while measuring.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class DequeueBenchmark {
+
+    private static final int PREFILL = 200_000;
+    private static final int PREFILL_BATCH_SIZE = 1000;
+
+    @Param({BenchmarkApplication.MEM, BenchmarkApplication.FILE})
+    public String database;
+
+    @Param({"true", "false"})
+    public boolean nativePop;
+
+    private ConfigurableApplicationContext context;
+    private MessageService messageService;
+
+    @Setup(Level.Trial)
+    public void startApplication() {
+        context = BenchmarkApplication.start(database, "dequeue", "queue.dequeue.native-pop=" + nativePop);
+        messageService = context.getBean(MessageService.class);
+    }
+
+    @Setup(Level.Iteration)
+    public void fillQueue() {
+        messageService.clearQueue(QueueRegistry.DEFAULT_QUEUE);
+        List<EnqueueMessageRecord> batch = Collections.nCopies(PREFILL_BATCH_SIZE, new EnqueueMessageRecord("benchmark", 0));
+        for (int i = 0; i < PREFILL; i += PREFILL_BATCH_SIZE) {
+            messageService.enqueueMessages(QueueRegistry.DEFAULT_QUEUE, batch);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void stopApplication() {
+        context.close();
+    }
+
+    @Benchmark
+    public MessageRecord dequeueMessage() {
+        return messageService.dequeueMessage(QueueRegistry.DEFAULT_QUEUE);
+    }
+}
@@ -0,0 +1,71 @@
+package com.thedamones.bv.queue;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of {@link MessageService#enqueueMessage} against one message per transaction in
+ * {@link MessageService#enqueueMessages} batches, in messages per second.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class EnqueueBenchmark {
+
+    private static final int BATCH_SIZE = 100;
+
+    @Param({BenchmarkApplication.MEM, BenchmarkApplication.FILE})
+    public String database;
+
+    private ConfigurableApplicationContext context;
+    private MessageService messageService;
+    private final EnqueueMessageRecord request = new EnqueueMessageRecord("benchmark", 0);
+    private final List<EnqueueMessageRecord> batch = Collections.nCopies(BATCH_SIZE, request);
+
+    @Setup(Level.Trial)
+    public void startApplication() {
+        context = BenchmarkApplication.start(database, "enqueue");
+        messageService = context.getBean(MessageService.class);
+    }
+
+    @TearDown(Level.Iteration)
+    public void clearQueue() {
+        messageService.clearQueue(QueueRegistry.DEFAULT_QUEUE);
+    }
+
+    @TearDown(Level.Trial)
+    public void stopApplication() {
+        context.close();
+    }
+
+    @Benchmark
+    public MessageRecord enqueueMessage() {
+        return messageService.enqueueMessage(QueueRegistry.DEFAULT_QUEUE, request);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public List<MessageRecord> enqueueMessages() {
+        return messageService.enqueueMessages(QueueRegistry.DEFAULT_QUEUE, batch);
+    }
+}
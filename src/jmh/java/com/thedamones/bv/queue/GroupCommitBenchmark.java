@@ -0,0 +1,73 @@
+package com.thedamones.bv.queue;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput and latency of single-message enqueues by {@value #PRODUCERS} concurrent producers waiting for their
+ * message to be committed, each in its own transaction ({@code window=off}) or with a {@link GroupCommitEnqueuer}
+ * collecting enqueues for the given window, against the file database.  Run with {@code -bm sample} for the latency
+ * percentiles.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Threads(GroupCommitBenchmark.PRODUCERS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class GroupCommitBenchmark {
+
+    static final int PRODUCERS = 32;
+
+    private static final String OFF = "off";
+
+    @Param({OFF, "0ms", "1ms", "5ms"})
+    public String window;
+
+    private ConfigurableApplicationContext context;
+    private MessageService messageService;
+    private GroupCommitEnqueuer groupCommitEnqueuer;
+    private final EnqueueMessageRecord request = new EnqueueMessageRecord("benchmark", 0);
+
+    @Setup(Level.Trial)
+    public void startApplication() {
+        context = OFF.equals(window)
+                ? BenchmarkApplication.start(BenchmarkApplication.FILE, "group-commit")
+                : BenchmarkApplication.start(BenchmarkApplication.FILE, "group-commit",
+                "queue.group-commit.enabled=true",
+                "queue.group-commit.window=" + window);
+        messageService = context.getBean(MessageService.class);
+        groupCommitEnqueuer = context.getBean(GroupCommitEnqueuer.class);
+    }
+
+    @TearDown(Level.Iteration)
+    public void clearQueue() {
+        messageService.clearQueue(QueueRegistry.DEFAULT_QUEUE);
+    }
+
+    @TearDown(Level.Trial)
+    public void stopApplication() {
+        context.close();
+    }
+
+    @Benchmark
+    public MessageRecord enqueueMessage() {
+        return groupCommitEnqueuer.enqueue(QueueRegistry.DEFAULT_QUEUE, request).join();
+    }
+}
@@ -0,0 +1,84 @@
+package com.thedamones.bv.queue;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.support.GenericApplicationContext;
+
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency from enqueueing a message to a {@link QueueManager} worker starting to process it, with the in-memory handoff
+ * ({@code queue.workers.handoff-capacity}) enabled and disabled.  The worker is idle before every enqueue.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class HandoffLatencyBenchmark {
+
+    @Param({"1024", "0"})
+    public int handoffCapacity;
+
+    private final SynchronousQueue<MessageRecord> processed = new SynchronousQueue<>();
+    private final EnqueueMessageRecord request = new EnqueueMessageRecord("benchmark", 0);
+
+    private ConfigurableApplicationContext context;
+    private MessageService messageService;
+
+    @Setup(Level.Trial)
+    public void startApplication() {
+        context = BenchmarkApplication.start(BenchmarkApplication.MEM, "handoff-" + handoffCapacity,
+                context -> ((GenericApplicationContext) context).registerBean(HandingBackProcessor.class,
+                        () -> new HandingBackProcessor(processed), definition -> definition.setPrimary(true)),
+                "queue.workers.count=1",
+                "queue.workers.handoff-capacity=" + handoffCapacity);
+        messageService = context.getBean(MessageService.class);
+    }
+
+    @TearDown(Level.Trial)
+    public void stopApplication() {
+        context.close();
+    }
+
+    @Benchmark
+    public MessageRecord enqueueToProcessing() throws InterruptedException {
+        messageService.enqueueMessage(QueueRegistry.DEFAULT_QUEUE, request);
+        return processed.take();
+    }
+
+    /**
+     * Hands every message back to the benchmark thread as soon as processing starts.
+     */
+    static class HandingBackProcessor extends QueueMessageProcessor {
+
+        private final SynchronousQueue<MessageRecord> processed;
+
+        HandingBackProcessor(SynchronousQueue<MessageRecord> processed) {
+            this.processed = processed;
+        }
+
+        @Override
+        public void process(MessageRecord message) {
+            try {
+                processed.put(message);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
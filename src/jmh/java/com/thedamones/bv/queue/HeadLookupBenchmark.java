@@ -0,0 +1,83 @@
+package com.thedamones.bv.queue;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of finding the head of the queue as it grows, through the {@code sequence_number} index.  Each lookup runs in a
+ * transaction that is rolled back, so the depth stays at {@link #depth}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class HeadLookupBenchmark {
+
+    private static final int INSERT_BATCH_SIZE = 10_000;
+
+    @Param({"10000", "100000", "1000000"})
+    public int depth;
+
+    private ConfigurableApplicationContext context;
+    private MessageRepository messageRepository;
+    private TransactionTemplate transactionTemplate;
+
+    @Setup(Level.Trial)
+    public void startApplication() {
+        context = BenchmarkApplication.start(BenchmarkApplication.MEM, "head-lookup-" + depth);
+        messageRepository = context.getBean(MessageRepository.class);
+        transactionTemplate = new TransactionTemplate(context.getBean(PlatformTransactionManager.class));
+
+        Instant timestamp = Instant.now();
+        for (int inserted = 0; inserted < depth; inserted += INSERT_BATCH_SIZE) {
+            List<MessageRecord> batch = new ArrayList<>(INSERT_BATCH_SIZE);
+            for (int i = 0; i < Math.min(INSERT_BATCH_SIZE, depth - inserted); i++) {
+                batch.add(new MessageRecord(TimeOrderedUuidGenerator.generate(), "benchmark", 0, timestamp));
+            }
+            transactionTemplate.executeWithoutResult(status -> messageRepository.insertAll(batch));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void stopApplication() {
+        context.close();
+    }
+
+    @Benchmark
+    public Optional<MessageRecord> popFirst() {
+        return transactionTemplate.execute(status -> {
+            status.setRollbackOnly();
+            return messageRepository.popFirst(QueueRegistry.DEFAULT_QUEUE);
+        });
+    }
+
+    @Benchmark
+    public Optional<Message> lockFirst() {
+        return transactionTemplate.execute(status -> {
+            status.setRollbackOnly();
+            return messageRepository.lockFirst(QueueRegistry.DEFAULT_QUEUE);
+        });
+    }
+}
@@ -0,0 +1,92 @@
+package com.thedamones.bv.queue;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of consuming messages with the at-most-once {@link MessageService#dequeueMessage} pop, against leasing them
+ * and acknowledging the leases: batched by the {@link LeaseAcknowledger}, or deleted one by one as soon as they are
+ * acknowledged.
+ * <p>
+ * Each iteration starts with {@value #PREFILL} queued messages, more than an iteration can consume, so the queue never
+ * runs empty while measuring.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Threads(4)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class LeaseBenchmark {
+
+    private static final int PREFILL = 200_000;
+    private static final int PREFILL_BATCH_SIZE = 1000;
+
+    @Param({BenchmarkApplication.MEM, BenchmarkApplication.FILE})
+    public String database;
+
+    private ConfigurableApplicationContext context;
+    private MessageService messageService;
+    private LeaseAcknowledger leaseAcknowledger;
+
+    @Setup(Level.Trial)
+    public void startApplication() {
+        context = BenchmarkApplication.start(database, "lease");
+        messageService = context.getBean(MessageService.class);
+        leaseAcknowledger = context.getBean(LeaseAcknowledger.class);
+    }
+
+    @Setup(Level.Iteration)
+    public void fillQueue() {
+        leaseAcknowledger.flush();
+        messageService.clearQueue(QueueRegistry.DEFAULT_QUEUE);
+        List<EnqueueMessageRecord> batch = Collections.nCopies(PREFILL_BATCH_SIZE, new EnqueueMessageRecord("benchmark", 0));
+        for (int i = 0; i < PREFILL; i += PREFILL_BATCH_SIZE) {
+            messageService.enqueueMessages(QueueRegistry.DEFAULT_QUEUE, batch);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void stopApplication() {
+        context.close();
+    }
+
+    @Benchmark
+    public MessageRecord dequeueMessage() {
+        return messageService.dequeueMessage(QueueRegistry.DEFAULT_QUEUE);
+    }
+
+    @Benchmark
+    public LeaseRecord leaseAndAcknowledge() {
+        LeaseRecord lease = messageService.leaseMessage(QueueRegistry.DEFAULT_QUEUE, null);
+        messageService.acknowledge(lease);
+        return lease;
+    }
+
+    // Every consumer flushes its own acknowledgement, as if the deletes were not batched
+    @Benchmark
+    public LeaseRecord leaseAndDelete() {
+        LeaseRecord lease = messageService.leaseMessage(QueueRegistry.DEFAULT_QUEUE, null);
+        messageService.acknowledge(lease);
+        leaseAcknowledger.flush();
+        return lease;
+    }
+}
@@ -0,0 +1,83 @@
+package com.thedamones.bv.queue;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Insert throughput into the file database with time-ordered (version 7) against random (version 4) message ids, in
+ * messages per second.  The primary key index takes random ids all over the B-tree, so the database file size after the
+ * trial is printed as well.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class MessageIdBenchmark {
+
+    private static final int BATCH_SIZE = 100;
+
+    @Param({"timeOrdered", "random"})
+    public String idStrategy;
+
+    private ConfigurableApplicationContext context;
+    private MessageRepository messageRepository;
+    private TransactionTemplate transactionTemplate;
+    private Supplier<UUID> idGenerator;
+    private long inserted;
+
+    @Setup(Level.Trial)
+    public void startApplication() {
+        context = BenchmarkApplication.start(BenchmarkApplication.FILE, databaseName());
+        messageRepository = context.getBean(MessageRepository.class);
+        transactionTemplate = new TransactionTemplate(context.getBean(PlatformTransactionManager.class));
+        idGenerator = "random".equals(idStrategy) ? UUID::randomUUID : TimeOrderedUuidGenerator::generate;
+    }
+
+    @TearDown(Level.Trial)
+    public void stopApplication() {
+        context.getBean(JdbcTemplate.class).execute("SHUTDOWN");
+        context.close();
+        System.out.printf("%n%s: %d messages, database file %d bytes%n", databaseName(), inserted, BenchmarkApplication.fileDatabaseSize(databaseName()));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public void insertMessages() {
+        Instant timestamp = Instant.now();
+        List<MessageRecord> batch = new ArrayList<>(BATCH_SIZE);
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            batch.add(new MessageRecord(idGenerator.get(), "benchmark", 0, timestamp));
+        }
+        transactionTemplate.executeWithoutResult(status -> messageRepository.insertAll(batch));
+        inserted += BATCH_SIZE;
+    }
+
+    private String databaseName() {
+        return "message-id-" + idStrategy;
+    }
+}
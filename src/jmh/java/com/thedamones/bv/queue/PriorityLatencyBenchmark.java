@@ -0,0 +1,83 @@
+package com.thedamones.bv.queue;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Enqueue-to-dequeue latency of a high priority message with a backlog of {@link #backlog} low priority messages in
+ * front of it.  With the {@code (queue_name, state, priority desc, sequence_number)} index the urgent message is
+ * dequeued next, in the same time whether the backlog is empty or a million messages deep; in FIFO order it would wait
+ * for the whole backlog to drain.
+ * <p>
+ * The fairness guard is disabled so that every dequeue follows priority order.  Hibernate's insert path takes a while to
+ * be compiled, hence the long warmup.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 15, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class PriorityLatencyBenchmark {
+
+    private static final int INSERT_BATCH_SIZE = 10_000;
+    private static final EnqueueMessageRecord URGENT = new EnqueueMessageRecord("urgent", 0, Message.MAX_PRIORITY);
+
+    @Param({"0", "1000000"})
+    public int backlog;
+
+    private ConfigurableApplicationContext context;
+    private MessageService messageService;
+
+    @Setup(Level.Trial)
+    public void startApplication() {
+        context = BenchmarkApplication.start(BenchmarkApplication.MEM, "priority-latency-" + backlog,
+                "queue.dequeue.fairness-interval=0");
+        messageService = context.getBean(MessageService.class);
+        MessageRepository messageRepository = context.getBean(MessageRepository.class);
+        TransactionTemplate transactionTemplate = new TransactionTemplate(context.getBean(PlatformTransactionManager.class));
+
+        Instant timestamp = Instant.now();
+        for (int inserted = 0; inserted < backlog; inserted += INSERT_BATCH_SIZE) {
+            List<MessageRecord> batch = new ArrayList<>(INSERT_BATCH_SIZE);
+            for (int i = 0; i < Math.min(INSERT_BATCH_SIZE, backlog - inserted); i++) {
+                batch.add(new MessageRecord(TimeOrderedUuidGenerator.generate(), "backlog", 0, timestamp));
+            }
+            transactionTemplate.executeWithoutResult(status -> messageRepository.insertAll(batch));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void stopApplication() {
+        context.close();
+    }
+
+    @Benchmark
+    public MessageRecord urgentRoundTrip() {
+        MessageRecord enqueued = messageService.enqueueMessage(QueueRegistry.DEFAULT_QUEUE, URGENT);
+        MessageRecord dequeued = messageService.dequeueMessage(QueueRegistry.DEFAULT_QUEUE);
+        if (!dequeued.id().equals(enqueued.id())) {
+            throw new IllegalStateException("Dequeued " + dequeued.id() + " instead of the urgent message " + enqueued.id());
+        }
+        return dequeued;
+    }
+}
@@ -0,0 +1,74 @@
+package com.thedamones.bv.queue;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of {@link MessageService} on each {@link QueueStore}: the {@code message} table of the file database, the
+ * memory-mapped log, without forcing its segments to disk, next to the file database, and the lock-free queues in
+ * memory.  Each operation enqueues a message and dequeues the head of the queue, so the queue stays short and every
+ * store is measured at steady state.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Threads(4)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class QueueStoreBenchmark {
+
+    private static final String NAME = "queue-store";
+
+    @Param({"jpa", "mapped-log", "memory"})
+    public String store;
+
+    private ConfigurableApplicationContext context;
+    private MessageService messageService;
+    private final EnqueueMessageRecord request = new EnqueueMessageRecord("benchmark", 0);
+
+    @Setup(Level.Trial)
+    public void startApplication() {
+        // The log directory is named after the database, so it is deleted along with it
+        context = BenchmarkApplication.start(BenchmarkApplication.FILE, NAME,
+                "queue.store.type=" + store,
+                "queue.store.log.directory=target/jmh-data/" + NAME + ".log");
+        messageService = context.getBean(MessageService.class);
+    }
+
+    @TearDown(Level.Iteration)
+    public void clearQueue() {
+        messageService.clearQueue(QueueRegistry.DEFAULT_QUEUE);
+    }
+
+    @TearDown(Level.Trial)
+    public void stopApplication() {
+        context.close();
+    }
+
+    @Benchmark
+    public MessageRecord enqueueMessage() {
+        return messageService.enqueueMessage(QueueRegistry.DEFAULT_QUEUE, request);
+    }
+
+    @Benchmark
+    public MessageRecord enqueueAndDequeue() {
+        messageService.enqueueMessage(QueueRegistry.DEFAULT_QUEUE, request);
+        return messageService.dequeueMessage(QueueRegistry.DEFAULT_QUEUE);
+    }
+}
@@ -0,0 +1,124 @@
+package com.thedamones.bv.queue;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.support.StaticMessageSource;
+import org.springframework.hateoas.EntityModel;
+import org.springframework.hateoas.Link;
+import org.springframework.hateoas.mediatype.MessageResolver;
+import org.springframework.hateoas.mediatype.hal.CurieProvider;
+import org.springframework.hateoas.mediatype.hal.Jackson2HalModule;
+import org.springframework.hateoas.server.core.EvoInflectorLinkRelationProvider;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import java.time.Instant;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import static org.springframework.hateoas.server.mvc.WebMvcLinkBuilder.linkTo;
+import static org.springframework.hateoas.server.mvc.WebMvcLinkBuilder.methodOn;
+
+/**
+ * Cost of building the HATEOAS representation of a message with {@link MessageModelAssembler#toModel} and of the queue
+ * information links, through the {@link QueueLinks} templates and through {@code linkTo(methodOn(...))}, and of
+ * serializing a message to JSON, plain (as returned by {@code /v1}) and as HAL (as returned by {@code /v2}).
+ * <p>
+ * The request attributes are cleared before building links, so the per-request base URI is computed every time, as it
+ * is for each {@code /v2} response.  Run with {@code -Djmh.args="-prof gc"} to compare allocation per operation.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class RepresentationBenchmark {
+
+    private final QueueLinks queueLinks = new QueueLinks();
+    private final MessageModelAssembler assembler = new MessageModelAssembler(queueLinks);
+    private final MockHttpServletRequest request = new MockHttpServletRequest("GET", "/v2/queue/messages");
+    private final MessageRecord message = new MessageRecord(UUID.randomUUID(), "benchmark", 100, Instant.now());
+    private final ObjectMapper plainMapper = JsonMapper.builder()
+            .findAndAddModules()
+            .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+            .build();
+    private final ObjectMapper halMapper = halMapper(plainMapper);
+
+    private EntityModel<MessageRecord> model;
+
+    @Setup
+    public void bindRequest() {
+        // linkTo(methodOn(...)) builds links from the current request, like it does inside a controller
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(request));
+        model = assembler.toModel(message);
+    }
+
+    @TearDown
+    public void unbindRequest() {
+        RequestContextHolder.resetRequestAttributes();
+    }
+
+    @Benchmark
+    public EntityModel<MessageRecord> toModel() {
+        request.clearAttributes();
+        return assembler.toModel(message);
+    }
+
+    @Benchmark
+    public EntityModel<MessageRecord> toModelWithLinkTo() {
+        request.clearAttributes();
+        return EntityModel.of(message,
+                linkTo(methodOn(MessageController.class).getMessage(message.id())).withSelfRel(),
+                linkTo(methodOn(QueueController.class).getQueueInfo()).withRel("queue"));
+    }
+
+    @Benchmark
+    public Link[] queueInfoLinks() {
+        request.clearAttributes();
+        return queueLinks.queueInfo(queueLinks.baseUri(), QueueRegistry.DEFAULT_QUEUE);
+    }
+
+    @Benchmark
+    public Link[] queueInfoLinksWithLinkTo() {
+        request.clearAttributes();
+        return new Link[]{
+                linkTo(methodOn(QueueController.class).getQueueInfo()).withSelfRel(),
+                linkTo(methodOn(MessageController.class).enqueueMessage(null, null)).withRel("enqueue"),
+                linkTo(methodOn(MessageController.class).dequeueMessage()).withRel("dequeue"),
+                linkTo(methodOn(MessageController.class).getClass()).withRel("messages"),
+                linkTo(DeadLetterController.class).withRel("deadLetters")
+        };
+    }
+
+    @Benchmark
+    public String serializePlain() throws JsonProcessingException {
+        return plainMapper.writeValueAsString(message);
+    }
+
+    @Benchmark
+    public String serializeHal() throws JsonProcessingException {
+        return halMapper.writeValueAsString(model);
+    }
+
+    private static ObjectMapper halMapper(ObjectMapper plainMapper) {
+        ObjectMapper halMapper = plainMapper.copy().registerModule(new Jackson2HalModule());
+        halMapper.setHandlerInstantiator(new Jackson2HalModule.HalHandlerInstantiator(new EvoInflectorLinkRelationProvider(),
+                CurieProvider.NONE, MessageResolver.of(new StaticMessageSource())));
+        return halMapper;
+    }
+}
@@ -0,0 +1,179 @@
+package com.thedamones.bv.queue;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+/**
+ * Enqueue-to-processed latency of each {@link SchedulingPolicy} under a mixed-size workload, simulated in virtual time:
+ * {@value #MESSAGES} messages arrive as a Poisson process at {@value #UTILIZATION} of the capacity of {@value #WORKERS}
+ * workers, 90% of them taking about 10 ms to process, 9.9% about 500 ms and 0.1% a minute, which make up half of the
+ * work.  The real {@link QueueScheduler}, with the default {@code queue.scheduling.*} settings, picks every message from
+ * an in-memory model of the ready messages that leases the way the repository does; the database is left out so that
+ * hours of traffic run in about a second.
+ * <p>
+ * The workload is seeded, so every iteration simulates the same traffic.  The latency mean and percentiles, overall and
+ * for the cheap and expensive messages, are printed after the trial; the benchmark score itself is the time the
+ * simulation takes, dominated by the scheduler.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class SchedulingSimulationBenchmark {
+
+    private static final int MESSAGES = 200_000;
+    private static final int WORKERS = 4;
+    private static final double UTILIZATION = 0.8;
+    private static final long SEED = 42;
+
+    @Param({"FIFO", "SHORTEST_JOB_FIRST", "WEIGHTED_FAIR"})
+    public SchedulingPolicy policy;
+
+    private int[] dataSizes;
+    private long[] arrivals;
+    private long[] latencies;
+
+    @Setup(Level.Trial)
+    public void generateWorkload() {
+        Random random = new Random(SEED);
+        dataSizes = new int[MESSAGES];
+        for (int i = 0; i < MESSAGES; i++) {
+            double kind = random.nextDouble();
+            dataSizes[i] = kind < 0.9 ? 5 + random.nextInt(11)
+                    : kind < 0.999 ? 250 + random.nextInt(501)
+                    : 45_000 + random.nextInt(30_001);
+        }
+        double meanDataSize = Arrays.stream(dataSizes).average().orElseThrow();
+        double meanInterarrival = meanDataSize / (WORKERS * UTILIZATION);
+        arrivals = new long[MESSAGES];
+        double arrival = 0;
+        for (int i = 0; i < MESSAGES; i++) {
+            arrival += -Math.log(1 - random.nextDouble()) * meanInterarrival;
+            arrivals[i] = (long) arrival;
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void printLatencies() {
+        System.out.printf("%n%s, enqueue-to-processed latency in ms:%n", policy);
+        System.out.printf("  %-10s %10s %10s %10s %10s %10s%n", "messages", "mean", "p50", "p99", "p99.9", "max");
+        printLatencies("all", IntStream.range(0, MESSAGES));
+        printLatencies("< 100 ms", IntStream.range(0, MESSAGES).filter(i -> dataSizes[i] < 100));
+        printLatencies(">= 10 s", IntStream.range(0, MESSAGES).filter(i -> dataSizes[i] >= 10_000));
+    }
+
+    @Benchmark
+    public long[] simulate() {
+        latencies = new Simulation(new QueueScheduler(policy, new QueueProperties.Scheduling())).run();
+        return latencies;
+    }
+
+    private void printLatencies(String label, IntStream messages) {
+        long[] sorted = messages.mapToLong(i -> latencies[i]).sorted().toArray();
+        System.out.printf("  %-10s %10.1f %10d %10d %10d %10d%n", label, Arrays.stream(sorted).average().orElse(0),
+                percentile(sorted, 0.5), percentile(sorted, 0.99), percentile(sorted, 0.999), sorted[sorted.length - 1]);
+    }
+
+    private static long percentile(long[] sorted, double quantile) {
+        return sorted[(int) Math.min(sorted.length - 1, Math.ceil(quantile * sorted.length) - 1)];
+    }
+
+    /**
+     * One run of the workload through the workers, in virtual milliseconds.  Messages arriving while a worker is idle
+     * are leased right away, as they would be through the handoff buffer; the others wait for the scheduler.
+     */
+    private class Simulation implements QueueScheduler.Candidates {
+
+        private final QueueScheduler scheduler;
+        private final List<ArrayDeque<MessageRecord>> sizeClasses = IntStream.range(0, Message.SIZE_CLASSES)
+                .mapToObj(sizeClass -> new ArrayDeque<MessageRecord>())
+                .toList();
+        private final long[] latencies = new long[MESSAGES];
+
+        private Simulation(QueueScheduler scheduler) {
+            this.scheduler = scheduler;
+        }
+
+        private long[] run() {
+            PriorityQueue<Long> completions = new PriorityQueue<>();
+            int idleWorkers = WORKERS;
+            int arrived = 0;
+            int leased = 0;
+            long now = 0;
+            while (leased < MESSAGES) {
+                Optional<MessageRecord> next = idleWorkers > 0
+                        ? scheduler.next(this, Instant.ofEpochMilli(now))
+                        : Optional.empty();
+                if (next.isPresent()) {
+                    int index = (int) next.get().id().getLeastSignificantBits();
+                    long completedAt = now + dataSizes[index];
+                    latencies[index] = completedAt - arrivals[index];
+                    completions.add(completedAt);
+                    idleWorkers--;
+                    leased++;
+                } else if (arrived < MESSAGES && (completions.isEmpty() || arrivals[arrived] <= completions.peek())) {
+                    now = Math.max(now, arrivals[arrived]);
+                    MessageRecord message = new MessageRecord(new UUID(0, arrived), "simulated", dataSizes[arrived],
+                            Instant.ofEpochMilli(arrivals[arrived]));
+                    sizeClasses.get(Message.sizeClass(message.dataSize())).add(message);
+                    arrived++;
+                } else {
+                    now = completions.poll();
+                    idleWorkers++;
+                }
+            }
+            return latencies;
+        }
+
+        // Every simulated message has the same priority, so the head of the queue is the oldest message
+        @Override
+        public Optional<MessageRecord> first() {
+            return sizeClasses.stream()
+                    .filter(messages -> !messages.isEmpty())
+                    .min((a, b) -> Long.compare(index(a.peek()), index(b.peek())))
+                    .map(ArrayDeque::poll);
+        }
+
+        @Override
+        public Optional<MessageRecord> oldestReadySince(Instant readySince) {
+            return sizeClasses.stream()
+                    .filter(messages -> !messages.isEmpty())
+                    .min((a, b) -> Long.compare(index(a.peek()), index(b.peek())))
+                    .filter(messages -> !messages.peek().timestamp().isAfter(readySince))
+                    .map(ArrayDeque::poll);
+        }
+
+        @Override
+        public Optional<MessageRecord> firstInSizeClass(int sizeClass) {
+            return Optional.ofNullable(sizeClasses.get(sizeClass).poll());
+        }
+
+        private static long index(MessageRecord message) {
+            return message.id().getLeastSignificantBits();
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package com.thedamones.bv.queue;
+
+import java.util.SplittableRandom;
+
+/**
+ * Distribution of the {@code dataSize} of the messages a {@link LoadGenerator} enqueues, i.e. how many milliseconds the
+ * {@link QueueMessageProcessor} spends on each of them.
+ */
+@FunctionalInterface
+interface DataSizeDistribution {
+
+    /**
+     * Draws the next data size.
+     *
+     * @param random The producer's random number generator.
+     * @return The data size, never negative.
+     */
+    int next(SplittableRandom random);
+
+    /**
+     * Parses a distribution from one of:
+     * <ul>
+     *     <li>{@code fixed:<size>}, e.g. {@code fixed:0};</li>
+     *     <li>{@code uniform:<min>-<max>}, inclusive, e.g. {@code uniform:0-20};</li>
+     *     <li>{@code exponential:<mean>}, e.g. {@code exponential:5};</li>
+     *     <li>{@code weighted:<size>=<weight>,...}, e.g. {@code weighted:0=90,50=9,500=1}.</li>
+     * </ul>
+     *
+     * @param specification The distribution.
+     * @return The parsed distribution.
+     * @throws IllegalArgumentException If the distribution is not valid.
+     */
+    static DataSizeDistribution parse(String specification) {
+        String[] parts = specification.split(":", 2);
+        if (parts.length != 2) {
+            throw new IllegalArgumentException("Invalid data size distribution: " + specification);
+        }
+        try {
+            return switch (parts[0]) {
+                case "fixed" -> fixed(parseSize(parts[1]));
+                case "uniform" -> {
+                    String[] range = parts[1].split("-", 2);
+                    yield uniform(parseSize(range[0]), parseSize(range[1]));
+                }
+                case "exponential" -> exponential(Double.parseDouble(parts[1]));
+                case "weighted" -> weighted(parts[1]);
+                default -> throw new IllegalArgumentException("Unknown data size distribution: " + parts[0]);
+            };
+        } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("Invalid data size distribution: " + specification, e);
+        }
+    }
+
+    private static DataSizeDistribution fixed(int size) {
+        return random -> size;
+    }
+
+    private static DataSizeDistribution uniform(int min, int max) {
+        if (max < min) {
+            throw new IllegalArgumentException("Empty data size range: " + min + "-" + max);
+        }
+        return random -> random.nextInt(min, max + 1);
+    }
+
+    private static DataSizeDistribution exponential(double mean) {
+        if (!(mean >= 0)) {
+            throw new IllegalArgumentException("Negative mean data size: " + mean);
+        }
+        return random -> (int) Math.min(Integer.MAX_VALUE, Math.round(-mean * Math.log(1 - random.nextDouble())));
+    }
+
+    private static DataSizeDistribution weighted(String choices) {
+        String[] entries = choices.split(",");
+        int[] sizes = new int[entries.length];
+        long[] cumulativeWeights = new long[entries.length];
+        long totalWeight = 0;
+        for (int i = 0; i < entries.length; i++) {
+            String[] entry = entries[i].split("=", 2);
+            sizes[i] = parseSize(entry[0]);
+            long weight = Long.parseLong(entry[1].trim());
+            if (weight <= 0) {
+                throw new IllegalArgumentException("Data size weights must be positive: " + entries[i]);
+            }
+            totalWeight += weight;
+            cumulativeWeights[i] = totalWeight;
+        }
+        long bound = totalWeight;
+        return random -> {
+            long draw = random.nextLong(bound);
+            int i = 0;
+            while (cumulativeWeights[i] <= draw) {
+                i++;
+            }
+            return sizes[i];
+        };
+    }
+
+    private static int parseSize(String size) {
+        int parsed = Integer.parseInt(size.trim());
+        if (parsed < 0) {
+            throw new IllegalArgumentException("Negative data size: " + parsed);
+        }
+        return parsed;
+    }
+}
@@ -0,0 +1,248 @@
+package com.thedamones.bv.queue;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.support.GenericApplicationContext;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * End-to-end load harness.  Starts the application on a random port with the {@link QueueManager} workers running,
+ * enqueues messages from concurrent producers and dequeues them from concurrent consumers through the REST API, and
+ * reports the throughput and latency percentiles of:
+ * <ul>
+ *     <li>{@code enqueue}: the enqueue request, as seen by the producer;</li>
+ *     <li>{@code dequeue}: the dequeue request, as seen by the consumer, when it returned a message;</li>
+ *     <li>{@code processed}: from the message timestamp until a worker finished processing it.</li>
+ * </ul>
+ * The summary is printed and written as JSON to {@link LoadOptions#summary()}.  See {@link LoadOptions} for the options.
+ * <p>
+ * With a {@link LoadOptions#rate() rate}, each producer sends on a fixed schedule and enqueue latency is measured from
+ * when a request was due rather than when it was sent, so a stalled server shows up in the percentiles instead of
+ * slowing the producers down.
+ */
+public final class LoadGenerator {
+
+    private static final Path FILE_DATABASE_DIRECTORY = Path.of("target", "load-data");
+    private static final long EMPTY_QUEUE_BACKOFF_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(30);
+
+    private final LoadOptions options;
+    private final LoadStatistics enqueue = new LoadStatistics("enqueue");
+    private final LoadStatistics dequeue = new LoadStatistics("dequeue");
+    private final LoadStatistics processed = new LoadStatistics("processed");
+    private final HttpClient httpClient = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .connectTimeout(REQUEST_TIMEOUT)
+            .build();
+
+    private volatile boolean running = true;
+
+    private LoadGenerator(LoadOptions options) {
+        this.options = options;
+    }
+
+    public static void main(String[] args) throws Exception {
+        LoadOptions options = LoadOptions.parse(args);
+        LoadSummary summary = new LoadGenerator(options).run();
+
+        print(summary);
+        Path summaryFile = options.summary().toAbsolutePath();
+        Files.createDirectories(summaryFile.getParent());
+        new ObjectMapper().writerWithDefaultPrettyPrinter().writeValue(summaryFile.toFile(), summary);
+        System.out.printf("Summary written to %s%n", summaryFile);
+    }
+
+    private LoadSummary run() throws InterruptedException, IOException {
+        try (ConfigurableApplicationContext context = startApplication()) {
+            URI baseUri = URI.create("http://localhost:" + context.getEnvironment().getProperty("local.server.port"));
+            String startedAt = Instant.now().toString();
+
+            List<Thread> clients = new ArrayList<>();
+            for (int i = 0; i < options.producers(); i++) {
+                int producer = i;
+                clients.add(Thread.ofPlatform().name("load-producer-" + i).start(() -> produce(baseUri, producer)));
+            }
+            for (int i = 0; i < options.consumers(); i++) {
+                clients.add(Thread.ofPlatform().name("load-consumer-" + i).start(() -> consume(baseUri)));
+            }
+
+            System.out.printf("Warming up for %s against %s%n", options.warmup(), baseUri);
+            Thread.sleep(options.warmup());
+            enqueue.reset();
+            dequeue.reset();
+            processed.reset();
+
+            System.out.printf("Measuring for %s%n", options.duration());
+            long start = System.nanoTime();
+            Thread.sleep(options.duration());
+            Duration elapsed = Duration.ofNanos(System.nanoTime() - start);
+            List<LoadStatistics.Summary> operations = snapshot(elapsed);
+
+            running = false;
+            for (Thread client : clients) {
+                client.join(REQUEST_TIMEOUT);
+            }
+
+            long queueSize = context.getBean(MessageService.class).getQueueSize(QueueRegistry.DEFAULT_QUEUE);
+            return new LoadSummary(startedAt, options.asMap(), options.applicationProperties(),
+                    elapsed.toMillis() / 1000.0, operations, queueSize);
+        }
+    }
+
+    private ConfigurableApplicationContext startApplication() throws IOException {
+        Map<String, String> properties = new LinkedHashMap<>();
+        properties.put("spring.main.banner-mode", "off");
+        properties.put("logging.level.root", "WARN");
+        properties.put("server.port", "0");
+        properties.put("queue.workers.count", String.valueOf(options.workers()));
+        properties.put("spring.datasource.url", datasourceUrl());
+        properties.putAll(options.applicationProperties());
+
+        // Command line arguments take precedence over application.properties, unlike default properties
+        String[] args = properties.entrySet().stream()
+                .map(property -> "--" + property.getKey() + "=" + property.getValue())
+                .toArray(String[]::new);
+        return new SpringApplicationBuilder(QueueManagerApplication.class)
+                .initializers(context -> ((GenericApplicationContext) context).registerBean(RecordingProcessor.class,
+                        () -> new RecordingProcessor(processed), definition -> definition.setPrimary(true)))
+                .run(args);
+    }
+
+    private String datasourceUrl() throws IOException {
+        if ("mem".equals(options.database())) {
+            return "jdbc:h2:mem:load;DB_CLOSE_DELAY=-1";
+        }
+        FileSystemUtils.deleteRecursively(FILE_DATABASE_DIRECTORY);
+        return "jdbc:h2:file:./" + FILE_DATABASE_DIRECTORY.resolve("load") + ";DB_CLOSE_DELAY=-1";
+    }
+
+    private List<LoadStatistics.Summary> snapshot(Duration elapsed) {
+        return List.of(enqueue.snapshot(elapsed), dequeue.snapshot(elapsed), processed.snapshot(elapsed));
+    }
+
+    private void produce(URI baseUri, int producer) {
+        URI enqueueUri = baseUri.resolve("v1".equals(options.api()) ? "/v1/enqueue" : "/v2/queue/messages");
+        DataSizeDistribution dataSize = options.dataSize();
+        SplittableRandom random = new SplittableRandom(options.seed() + producer);
+        long intervalNanos = options.rate() > 0 ? TimeUnit.SECONDS.toNanos(options.producers()) / options.rate() : 0;
+        long due = System.nanoTime();
+
+        while (running) {
+            long start;
+            if (intervalNanos > 0) {
+                long wait;
+                while ((wait = due - System.nanoTime()) > 0) {
+                    LockSupport.parkNanos(wait);
+                }
+                start = due;
+                due += intervalNanos;
+            } else {
+                start = System.nanoTime();
+            }
+
+            String body = "{\"text\":\"load\",\"dataSize\":" + dataSize.next(random) + "}";
+            HttpRequest request = HttpRequest.newBuilder(enqueueUri)
+                    .timeout(REQUEST_TIMEOUT)
+                    .header("Content-Type", "application/json")
+                    .POST(HttpRequest.BodyPublishers.ofString(body))
+                    .build();
+            int status = send(request);
+            if (status == 201) {
+                enqueue.recordLatency(System.nanoTime() - start);
+            } else if (status >= 0) {
+                enqueue.recordFailure();
+            }
+        }
+    }
+
+    private void consume(URI baseUri) {
+        HttpRequest request = "v1".equals(options.api())
+                ? HttpRequest.newBuilder(baseUri.resolve("/v1/dequeue")).timeout(REQUEST_TIMEOUT).GET().build()
+                : HttpRequest.newBuilder(baseUri.resolve("/v2/queue/messages/first")).timeout(REQUEST_TIMEOUT).DELETE().build();
+
+        while (running) {
+            long start = System.nanoTime();
+            int status = send(request);
+            if (status == 200) {
+                dequeue.recordLatency(System.nanoTime() - start);
+            } else if (status == 404) {
+                dequeue.recordEmpty();
+                LockSupport.parkNanos(EMPTY_QUEUE_BACKOFF_NANOS);
+            } else if (status >= 0) {
+                dequeue.recordFailure();
+            }
+        }
+    }
+
+    /**
+     * Sends a request, discarding the response body.
+     *
+     * @return The response status, 0 if the request failed, or -1 if the client was interrupted.
+     */
+    private int send(HttpRequest request) {
+        try {
+            return httpClient.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+        } catch (IOException e) {
+            return 0;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            running = false;
+            return -1;
+        }
+    }
+
+    private static void print(LoadSummary summary) {
+        System.out.printf("%nQueue size at the end: %d%n", summary.queueSizeAtEnd());
+        System.out.printf("%-10s %10s %12s %10s %10s %10s %10s %10s %9s %9s%n",
+                "operation", "count", "per second", "mean us", "p50 us", "p99 us", "p99.9 us", "max us", "failures", "empty");
+        for (LoadStatistics.Summary operation : summary.operations()) {
+            System.out.printf("%-10s %10d %12.1f %10.1f %10d %10d %10d %10d %9d %9d%n",
+                    operation.operation(), operation.count(), operation.throughputPerSecond(), operation.meanMicros(),
+                    operation.p50Micros(), operation.p99Micros(), operation.p999Micros(), operation.maxMicros(),
+                    operation.failures(), operation.empty());
+        }
+    }
+
+    /**
+     * The result of a run, as written to the summary file.
+     */
+    record LoadSummary(String startedAt, Map<String, String> options, Map<String, String> applicationProperties,
+                       double durationSeconds, List<LoadStatistics.Summary> operations, long queueSizeAtEnd) {
+    }
+
+    /**
+     * Processes messages as usual, then records how long ago they were enqueued.
+     */
+    static class RecordingProcessor extends QueueMessageProcessor {
+
+        private final LoadStatistics processed;
+
+        RecordingProcessor(LoadStatistics processed) {
+            this.processed = processed;
+        }
+
+        @Override
+        public void process(MessageRecord message) {
+            super.process(message);
+            processed.recordLatency(Duration.between(message.timestamp(), Instant.now()).toNanos());
+        }
+    }
+}
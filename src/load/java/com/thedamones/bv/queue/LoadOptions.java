@@ -0,0 +1,184 @@
+package com.thedamones.bv.queue;
+
+import org.springframework.boot.convert.DurationStyle;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Options of a {@link LoadGenerator} run, parsed from {@code --name=value} arguments.  Arguments starting with
+ * {@code --queue.}, {@code --spring.} or {@code --server.} are passed to the application instead, e.g.
+ * {@code --queue.workers.handoff-capacity=0}.
+ */
+final class LoadOptions {
+
+    private static final Map<String, String> DEFAULTS = defaults();
+
+    private final Map<String, String> options;
+    private final Map<String, String> applicationProperties;
+
+    private LoadOptions(Map<String, String> options, Map<String, String> applicationProperties) {
+        this.options = Collections.unmodifiableMap(options);
+        this.applicationProperties = Collections.unmodifiableMap(applicationProperties);
+    }
+
+    /**
+     * Parses the options, falling back to the defaults for those not given.
+     *
+     * @param args The command line arguments.
+     * @return The options.
+     * @throws IllegalArgumentException If an argument is unknown or malformed.
+     */
+    static LoadOptions parse(String... args) {
+        Map<String, String> options = new LinkedHashMap<>(DEFAULTS);
+        Map<String, String> applicationProperties = new LinkedHashMap<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--") || !arg.contains("=")) {
+                throw new IllegalArgumentException("Expected --name=value but got: " + arg);
+            }
+            String[] option = arg.substring(2).split("=", 2);
+            if (option[0].startsWith("queue.") || option[0].startsWith("spring.") || option[0].startsWith("server.")) {
+                applicationProperties.put(option[0], option[1]);
+            } else if (DEFAULTS.containsKey(option[0])) {
+                options.put(option[0], option[1]);
+            } else {
+                throw new IllegalArgumentException("Unknown option: " + option[0] + ", expected one of " + DEFAULTS.keySet());
+            }
+        }
+
+        LoadOptions loadOptions = new LoadOptions(options, applicationProperties);
+        loadOptions.validate();
+        return loadOptions;
+    }
+
+    /**
+     * How long to run before measuring, so the JIT, connection pools and the database are warm.
+     */
+    Duration warmup() {
+        return DurationStyle.detectAndParse(options.get("warmup"));
+    }
+
+    /**
+     * How long to measure for.
+     */
+    Duration duration() {
+        return DurationStyle.detectAndParse(options.get("duration"));
+    }
+
+    /**
+     * Number of threads enqueueing messages through the REST API.
+     */
+    int producers() {
+        return Integer.parseInt(options.get("producers"));
+    }
+
+    /**
+     * Number of threads dequeueing messages through the REST API, competing with the {@link QueueManager} workers.
+     */
+    int consumers() {
+        return Integer.parseInt(options.get("consumers"));
+    }
+
+    /**
+     * Number of {@link QueueManager} workers processing messages in the background.
+     */
+    int workers() {
+        return Integer.parseInt(options.get("workers"));
+    }
+
+    /**
+     * Total enqueue rate in messages per second, spread over the producers.  Zero enqueues as fast as the API responds.
+     */
+    int rate() {
+        return Integer.parseInt(options.get("rate"));
+    }
+
+    /**
+     * The REST API version to use, {@code v1} or {@code v2}.
+     */
+    String api() {
+        return options.get("api");
+    }
+
+    /**
+     * The distribution of the {@code dataSize} of enqueued messages.
+     */
+    DataSizeDistribution dataSize() {
+        return DataSizeDistribution.parse(options.get("data-size"));
+    }
+
+    /**
+     * Where H2 keeps the queue, {@code mem} or {@code file}.
+     */
+    String database() {
+        return options.get("database");
+    }
+
+    /**
+     * Seed of the producers' random number generators, so data sizes are reproducible across runs.
+     */
+    long seed() {
+        return Long.parseLong(options.get("seed"));
+    }
+
+    /**
+     * The JSON file the summary is written to.
+     */
+    Path summary() {
+        return Path.of(options.get("summary"));
+    }
+
+    /**
+     * Gets every option, including the defaults, for the summary.
+     *
+     * @return The options by name.
+     */
+    Map<String, String> asMap() {
+        return options;
+    }
+
+    /**
+     * Gets the properties passed through to the application.
+     *
+     * @return The properties by name.
+     */
+    Map<String, String> applicationProperties() {
+        return applicationProperties;
+    }
+
+    private void validate() {
+        if (warmup().isNegative() || duration().isNegative() || duration().isZero()) {
+            throw new IllegalArgumentException("The warmup must not be negative and the duration must be positive");
+        }
+        if (producers() < 1 || consumers() < 0 || workers() < 0 || rate() < 0) {
+            throw new IllegalArgumentException("At least one producer is required, and consumers, workers and rate must not be negative");
+        }
+        if (!"v1".equals(api()) && !"v2".equals(api())) {
+            throw new IllegalArgumentException("Unknown API version: " + api());
+        }
+        if (!"mem".equals(database()) && !"file".equals(database())) {
+            throw new IllegalArgumentException("Unknown database: " + database());
+        }
+        dataSize();
+        seed();
+    }
+
+    private static Map<String, String> defaults() {
+        Map<String, String> defaults = new LinkedHashMap<>();
+        defaults.put("warmup", "10s");
+        defaults.put("duration", "30s");
+        defaults.put("producers", "4");
+        defaults.put("consumers", "1");
+        defaults.put("workers", "4");
+        defaults.put("rate", "0");
+        defaults.put("api", "v2");
+        defaults.put("data-size", "fixed:0");
+        defaults.put("database", "mem");
+        defaults.put("seed", "42");
+        defaults.put("summary", "target/load-summary.json");
+        return Collections.unmodifiableMap(defaults);
+    }
+}
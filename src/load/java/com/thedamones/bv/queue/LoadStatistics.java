@@ -0,0 +1,82 @@
+package com.thedamones.bv.queue;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latencies and failures of one operation of a {@link LoadGenerator} run, recorded concurrently.
+ */
+final class LoadStatistics {
+
+    private final String operation;
+    private final Recorder latencies = new Recorder(3);
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder empty = new LongAdder();
+
+    LoadStatistics(String operation) {
+        this.operation = operation;
+    }
+
+    /**
+     * Records a successful operation.
+     *
+     * @param latencyNanos How long the operation took, in nanoseconds.
+     */
+    void recordLatency(long latencyNanos) {
+        latencies.recordValue(Math.max(0, latencyNanos) / 1_000);
+    }
+
+    /**
+     * Counts an operation that failed, e.g. with a server error.
+     */
+    void recordFailure() {
+        failures.increment();
+    }
+
+    /**
+     * Counts a dequeue that found the queue empty.
+     */
+    void recordEmpty() {
+        empty.increment();
+    }
+
+    /**
+     * Discards everything recorded so far, e.g. during the warmup.
+     */
+    void reset() {
+        latencies.reset();
+        failures.reset();
+        empty.reset();
+    }
+
+    /**
+     * Summarises what was recorded since the last {@link #reset()}.
+     *
+     * @param elapsed The time since the last reset, for the throughput.
+     * @return The summary.
+     */
+    Summary snapshot(Duration elapsed) {
+        Histogram histogram = latencies.getIntervalHistogram();
+        double seconds = elapsed.toNanos() / 1e9;
+        return new Summary(operation,
+                histogram.getTotalCount(),
+                histogram.getTotalCount() / seconds,
+                histogram.getMean(),
+                histogram.getValueAtPercentile(50),
+                histogram.getValueAtPercentile(99),
+                histogram.getValueAtPercentile(99.9),
+                histogram.getMaxValue(),
+                failures.sumThenReset(),
+                empty.sumThenReset());
+    }
+
+    /**
+     * Summary of one operation, with latencies in microseconds.
+     */
+    record Summary(String operation, long count, double throughputPerSecond, double meanMicros, long p50Micros,
+                   long p99Micros, long p999Micros, long maxMicros, long failures, long empty) {
+    }
+}
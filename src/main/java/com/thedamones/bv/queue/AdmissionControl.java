@@ -0,0 +1,181 @@
+package com.thedamones.bv.queue;
+
+import jakarta.servlet.http.HttpServletRequest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.security.Principal;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Decides whether enqueue requests are admitted, so that producers get backpressure instead of growing a queue whose
+ * consumers fall behind without bound.
+ * <p>
+ * Each queue is limited by its depth, with hysteresis: it starts rejecting at {@code queue.admission.high-watermark}
+ * messages and accepts again once it drained to {@code queue.admission.low-watermark}, so producers are not flipped
+ * between accepted and rejected on every message.  The depth comes from the {@link QueueDepthCounter}, so the check
+ * never touches the {@link QueueStore}.  A rejected request is told to retry once the queue should have drained to the
+ * low watermark at its current dequeue rate.  Requests already admitted may take a queue past its high watermark by a
+ * batch each.
+ * <p>
+ * Each client, named by its authenticated principal, the {@code queue.admission.client-header} request header if set, or
+ * else its remote address, is also limited to {@code queue.admission.client-rate} messages per second by a
+ * {@link TokenBucket} holding {@code queue.admission.client-burst} messages, and told to retry once its bucket holds a
+ * message again.  Buckets that refilled completely are dropped periodically, so clients that stopped sending cost
+ * nothing, and at most {@code queue.admission.max-clients} buckets are kept, the least recently used being dropped, so
+ * a client making up names cannot exhaust the memory.
+ * <p>
+ * Only the REST enqueue endpoints are admitted; messages requeued or redriven by the application itself never are.
+ */
+@Component
+public class AdmissionControl {
+
+    /**
+     * The reason of a rejection by queue depth.
+     */
+    public static final String REASON_DEPTH = "depth";
+
+    /**
+     * The reason of a rejection by client rate.
+     */
+    public static final String REASON_RATE = "rate";
+
+    private static final Logger logger = LoggerFactory.getLogger(AdmissionControl.class);
+
+    private final QueueDepthCounter queueDepthCounter;
+    private final QueueRegistry queueRegistry;
+    private final QueueMetrics queueMetrics;
+    private final QueueProperties.Admission admissionProperties;
+
+    private final Set<String> rejectingQueues = ConcurrentHashMap.newKeySet();
+    private final Map<String, TokenBucket> clientBuckets;
+
+    @Autowired
+    public AdmissionControl(QueueDepthCounter queueDepthCounter, QueueRegistry queueRegistry, QueueMetrics queueMetrics,
+                            QueueProperties queueProperties) {
+        this.queueDepthCounter = queueDepthCounter;
+        this.queueRegistry = queueRegistry;
+        this.queueMetrics = queueMetrics;
+        this.admissionProperties = queueProperties.getAdmission();
+        int maxClients = admissionProperties.getMaxClients();
+        this.clientBuckets = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, TokenBucket> eldest) {
+                return size() > maxClients;
+            }
+        });
+    }
+
+    /**
+     * Admits an enqueue request, or rejects it if the queue is over its high watermark or the client is over its rate.
+     * Only an admitted request takes tokens from the client's bucket.
+     *
+     * @param queueName The name of the queue.
+     * @param count     The number of messages of the request.
+     * @param request   The HTTP request, which names the client.
+     * @throws QueueOverloadedException If the request is rejected.
+     */
+    public void admit(String queueName, int count, HttpServletRequest request) {
+        if (isRejecting(queueName)) {
+            queueMetrics.recordRejection(REASON_DEPTH);
+            throw new QueueOverloadedException("Queue " + queueName + " is over its high watermark of "
+                    + admissionProperties.getHighWatermark() + " messages", drainTime(queueName));
+        }
+        if (admissionProperties.getClientRate() > 0 && count > 0) {
+            String client = client(request);
+            long waitNanos = clientBuckets
+                    .computeIfAbsent(client, name -> new TokenBucket(admissionProperties.getClientRate(), admissionProperties.getClientBurst()))
+                    .tryTake(count);
+            if (waitNanos > 0) {
+                queueMetrics.recordRejection(REASON_RATE);
+                throw new QueueOverloadedException("Client " + client + " is over its rate of "
+                        + admissionProperties.getClientRate() + " messages per second", Duration.ofNanos(waitNanos));
+            }
+        }
+    }
+
+    /**
+     * Gets the admission state of a queue.
+     *
+     * @param queueName The name of the queue.
+     * @return The admission state, with the watermarks.
+     */
+    public AdmissionRecord getAdmission(String queueName) {
+        if (admissionProperties.getHighWatermark() <= 0) {
+            return new AdmissionRecord(AdmissionState.ACCEPTING, null, null);
+        }
+        AdmissionState state = isRejecting(queueName) ? AdmissionState.REJECTING : AdmissionState.ACCEPTING;
+        return new AdmissionRecord(state, admissionProperties.getHighWatermark(), lowWatermark());
+    }
+
+    /**
+     * Drops the buckets of clients that have not enqueued for long enough to refill them.
+     */
+    @Scheduled(initialDelayString = "${queue.admission.sweep-interval:PT1M}", fixedDelayString = "${queue.admission.sweep-interval:PT1M}")
+    public void sweepClients() {
+        int dropped;
+        synchronized (clientBuckets) {
+            int before = clientBuckets.size();
+            clientBuckets.values().removeIf(TokenBucket::isFull);
+            dropped = before - clientBuckets.size();
+        }
+        logger.debug("Dropped {} idle client bucket(s)", dropped);
+    }
+
+    /**
+     * Updates and tells whether a queue rejects enqueue requests, by its current depth.
+     */
+    private boolean isRejecting(String queueName) {
+        long highWatermark = admissionProperties.getHighWatermark();
+        if (highWatermark <= 0) {
+            return false;
+        }
+        long depth = queueDepthCounter.get(queueName);
+        if (depth >= highWatermark) {
+            if (rejectingQueues.add(queueName)) {
+                logger.warn("Queue {} reached its high watermark of {} messages, rejecting enqueues", queueName, highWatermark);
+            }
+        } else if (depth <= lowWatermark() && rejectingQueues.remove(queueName)) {
+            logger.info("Queue {} drained to {} messages, accepting enqueues", queueName, depth);
+        }
+        return rejectingQueues.contains(queueName);
+    }
+
+    private long lowWatermark() {
+        Long lowWatermark = admissionProperties.getLowWatermark();
+        return lowWatermark != null ? lowWatermark : admissionProperties.getHighWatermark() * 4 / 5;
+    }
+
+    /**
+     * Estimates how long a queue takes to drain to its low watermark at its current dequeue rate, up to
+     * {@code queue.admission.max-retry-after}.
+     */
+    private Duration drainTime(String queueName) {
+        Duration maxRetryAfter = admissionProperties.getMaxRetryAfter();
+        double dequeuedPerSecond = queueRegistry.get(queueName).toRecord().dequeuedPerSecond();
+        long excess = queueDepthCounter.get(queueName) - lowWatermark();
+        if (dequeuedPerSecond <= 0) {
+            return maxRetryAfter;
+        }
+        Duration drainTime = Duration.ofNanos((long) Math.ceil(Math.max(excess, 1) / dequeuedPerSecond * 1e9));
+        return drainTime.compareTo(maxRetryAfter) > 0 ? maxRetryAfter : drainTime;
+    }
+
+    private String client(HttpServletRequest request) {
+        Principal principal = request.getUserPrincipal();
+        if (principal != null) {
+            return principal.getName();
+        }
+        String clientHeader = admissionProperties.getClientHeader();
+        String client = clientHeader != null ? request.getHeader(clientHeader) : null;
+        return client == null || client.isBlank() ? request.getRemoteAddr() : client;
+    }
+}
@@ -0,0 +1,8 @@
+package com.thedamones.bv.queue;
+
+/**
+ * The admission state of a queue, and the watermarks it is decided by; the watermarks are {@code null} when the depth
+ * limit is disabled.
+ */
+public record AdmissionRecord(AdmissionState state, Long highWatermark, Long lowWatermark) {
+}
@@ -0,0 +1,17 @@
+package com.thedamones.bv.queue;
+
+/**
+ * Whether a queue accepts enqueue requests, as decided by the {@link AdmissionControl} from its depth.
+ */
+public enum AdmissionState {
+
+    /**
+     * The queue accepts enqueue requests, subject to the client rate limits.
+     */
+    ACCEPTING,
+
+    /**
+     * The queue reached its high watermark and rejects enqueue requests until it drains to its low watermark.
+     */
+    REJECTING
+}
@@ -0,0 +1,27 @@
+package com.thedamones.bv.queue;
+
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Processes the messages leased by the {@link QueueManager} workers.  With {@code queue.workers.batch-size} above one,
+ * each call receives up to that many messages of one queue, leased together, or whatever was leased within
+ * {@code queue.workers.batch-wait}; otherwise each call receives a single message.
+ * <p>
+ * Every message of a batch succeeds or fails on its own: failed messages are handed to
+ * {@link MessageService#failMessage(LeaseRecord, Exception)} for a retry or the dead-letter store, and the others are
+ * acknowledged.  {@link QueueMessageProcessor} adapts single-message processing to this interface; to process batches,
+ * register a primary bean implementing it.
+ */
+@FunctionalInterface
+public interface BatchMessageProcessor {
+
+    /**
+     * Processes a batch of messages.  Throwing fails every message of the batch with the thrown exception.
+     *
+     * @param messages The messages, all of the same queue, in the order they were leased.
+     * @return The error of each message that failed, by message ID; messages left out succeeded.
+     */
+    Map<UUID, Exception> processBatch(List<MessageRecord> messages);
+}
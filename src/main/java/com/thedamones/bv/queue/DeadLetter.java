@@ -0,0 +1,146 @@
+package com.thedamones.bv.queue;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
+
+import java.time.Instant;
+import java.util.UUID;
+
+/**
+ * A message that ran out of processing attempts, kept apart from its queue until it is requeued or purged.
+ */
+@Entity
+@Table(name = "dead_letter", indexes = {
+        @Index(name = "idx_dead_letter_queue_dead_lettered_at", columnList = "queue_name, dead_lettered_at")
+})
+public class DeadLetter {
+
+    /**
+     * The ID of the message, kept when it is dead-lettered and requeued.
+     */
+    @Id
+    private UUID id;
+
+    /**
+     * Name of the queue the message was taken from, and is requeued to.
+     */
+    @Column(name = "queue_name", nullable = false, length = 64)
+    private String queueName;
+
+    /**
+     * The textual content of the message.
+     */
+    private String text;
+
+    /**
+     * The size of the message data, used to simulate processing delays.
+     */
+    private Integer dataSize;
+
+    /**
+     * Priority of the message.
+     */
+    private int priority;
+
+    /**
+     * Timestamp indicating when the message was first added to the queue.
+     */
+    private Instant timestamp;
+
+    /**
+     * Number of failed processing attempts.
+     */
+    private int attempts;
+
+    /**
+     * The error of the last failed attempt.
+     */
+    @Column(name = "last_error", length = Message.MAX_ERROR_LENGTH)
+    private String lastError;
+
+    /**
+     * Timestamp indicating when the message was moved to the dead-letter store.
+     */
+    @Column(name = "dead_lettered_at", nullable = false)
+    private Instant deadLetteredAt;
+
+    /**
+     * Default constructor for JPA.
+     */
+    public DeadLetter() {
+    }
+
+    /**
+     * Constructs the dead letter of a message that failed its last attempt.
+     *
+     * @param message The message, with its attempts and last error.
+     */
+    public DeadLetter(MessageRecord message) {
+        this.id = message.id();
+        this.queueName = message.queue();
+        this.text = message.text();
+        this.dataSize = message.dataSize();
+        this.priority = message.priority();
+        this.timestamp = message.timestamp();
+        this.attempts = message.attempts();
+        this.lastError = message.lastError();
+        this.deadLetteredAt = Instant.now();
+    }
+
+    public UUID getId() {
+        return id;
+    }
+
+    public String getQueueName() {
+        return queueName;
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    public Integer getDataSize() {
+        return dataSize;
+    }
+
+    public int getPriority() {
+        return priority;
+    }
+
+    public Instant getTimestamp() {
+        return timestamp;
+    }
+
+    public int getAttempts() {
+        return attempts;
+    }
+
+    public String getLastError() {
+        return lastError;
+    }
+
+    public Instant getDeadLetteredAt() {
+        return deadLetteredAt;
+    }
+
+    /**
+     * Gets the record of this dead letter.
+     *
+     * @return The dead letter record.
+     */
+    public DeadLetterRecord toRecord() {
+        return new DeadLetterRecord(id, text, dataSize, timestamp, queueName, priority, attempts, lastError, deadLetteredAt);
+    }
+
+    /**
+     * Gets the message to put back in the queue: ready right away, with its attempts reset and its last error kept.
+     *
+     * @return The message record.
+     */
+    public MessageRecord toMessageRecord() {
+        return new MessageRecord(id, text, dataSize, timestamp, queueName, priority, null, 0, lastError);
+    }
+}
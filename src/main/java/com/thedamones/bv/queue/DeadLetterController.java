@@ -0,0 +1,87 @@
+package com.thedamones.bv.queue;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.hateoas.CollectionModel;
+import org.springframework.hateoas.EntityModel;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * The dead letters of the {@link QueueRegistry#DEFAULT_QUEUE default queue}.  Those of other queues are served by the
+ * {@link NamedQueueDeadLetterController}.
+ */
+@RestController
+@RequestMapping("/v2/queue/dead-letters")
+public class DeadLetterController {
+
+    private final DeadLetterService deadLetterService;
+    private final DeadLetterModelAssembler deadLetterModelAssembler;
+    private final MessageModelAssembler messageModelAssembler;
+
+    @Autowired
+    public DeadLetterController(DeadLetterService deadLetterService, DeadLetterModelAssembler deadLetterModelAssembler,
+                                MessageModelAssembler messageModelAssembler) {
+        this.deadLetterService = deadLetterService;
+        this.deadLetterModelAssembler = deadLetterModelAssembler;
+        this.messageModelAssembler = messageModelAssembler;
+    }
+
+    /**
+     * Gets the dead letters of the queue, oldest first.
+     *
+     * @param limit The maximum number of dead letters.
+     * @return The dead letters.
+     */
+    @GetMapping
+    public CollectionModel<EntityModel<DeadLetterRecord>> getDeadLetters(@RequestParam(defaultValue = "100") int limit) {
+        List<DeadLetterRecord> deadLetters = deadLetterService.getDeadLetters(QueueRegistry.DEFAULT_QUEUE, limit);
+        return deadLetterModelAssembler.toCollectionModel(QueueRegistry.DEFAULT_QUEUE, deadLetters);
+    }
+
+    /**
+     * Gets a dead letter of the queue by its ID.
+     *
+     * @param id The ID of the message.
+     * @return The dead letter.
+     */
+    @GetMapping("/{id}")
+    public EntityModel<DeadLetterRecord> getDeadLetter(@PathVariable UUID id) {
+        DeadLetterRecord deadLetter = deadLetterService.getDeadLetter(QueueRegistry.DEFAULT_QUEUE, id);
+        return deadLetterModelAssembler.toModel(deadLetter);
+    }
+
+    /**
+     * Moves a dead letter back to the end of the queue, with its attempts reset.
+     *
+     * @param id The ID of the message.
+     * @return The requeued message.
+     */
+    @PostMapping("/{id}/requeue")
+    public EntityModel<MessageRecord> requeueDeadLetter(@PathVariable UUID id) {
+        MessageRecord message = deadLetterService.requeueDeadLetter(QueueRegistry.DEFAULT_QUEUE, id);
+        return messageModelAssembler.toModel(message);
+    }
+
+    /**
+     * Deletes a dead letter of the queue.
+     *
+     * @param id The ID of the message.
+     */
+    @DeleteMapping("/{id}")
+    @ResponseStatus(HttpStatus.NO_CONTENT)
+    public void deleteDeadLetter(@PathVariable UUID id) {
+        deadLetterService.deleteDeadLetter(QueueRegistry.DEFAULT_QUEUE, id);
+    }
+
+    /**
+     * Deletes every dead letter of the queue.
+     */
+    @DeleteMapping
+    @ResponseStatus(HttpStatus.NO_CONTENT)
+    public void purgeDeadLetters() {
+        deadLetterService.purgeDeadLetters(QueueRegistry.DEFAULT_QUEUE);
+    }
+}
@@ -0,0 +1,44 @@
+package com.thedamones.bv.queue;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.hateoas.CollectionModel;
+import org.springframework.hateoas.EntityModel;
+import org.springframework.hateoas.IanaLinkRelations;
+import org.springframework.hateoas.server.RepresentationModelAssembler;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+@Component
+public class DeadLetterModelAssembler implements RepresentationModelAssembler<DeadLetterRecord, EntityModel<DeadLetterRecord>> {
+
+    private final QueueLinks queueLinks;
+
+    @Autowired
+    public DeadLetterModelAssembler(QueueLinks queueLinks) {
+        this.queueLinks = queueLinks;
+    }
+
+    @Override
+    public EntityModel<DeadLetterRecord> toModel(DeadLetterRecord deadLetter) {
+        String baseUri = queueLinks.baseUri();
+        return EntityModel.of(deadLetter,
+                queueLinks.deadLetter(baseUri, deadLetter.queue(), deadLetter.id(), IanaLinkRelations.SELF),
+                queueLinks.requeue(baseUri, deadLetter.queue(), deadLetter.id()),
+                queueLinks.queue(baseUri, deadLetter.queue(), QueueLinks.QUEUE));
+    }
+
+    /**
+     * Converts the dead letters of a queue, linking the collection to itself and to the queue.
+     *
+     * @param queueName   The name of the queue.
+     * @param deadLetters The dead letters.
+     * @return The dead letters with their links.
+     */
+    public CollectionModel<EntityModel<DeadLetterRecord>> toCollectionModel(String queueName, List<DeadLetterRecord> deadLetters) {
+        String baseUri = queueLinks.baseUri();
+        return toCollectionModel(deadLetters).add(
+                queueLinks.deadLetters(baseUri, queueName, IanaLinkRelations.SELF),
+                queueLinks.queue(baseUri, queueName, QueueLinks.QUEUE));
+    }
+}
@@ -0,0 +1,8 @@
+package com.thedamones.bv.queue;
+
+public class DeadLetterNotFoundException extends RuntimeException {
+
+    public DeadLetterNotFoundException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,8 @@
+package com.thedamones.bv.queue;
+
+import java.time.Instant;
+import java.util.UUID;
+
+public record DeadLetterRecord(UUID id, String text, Integer dataSize, Instant timestamp, String queue, int priority,
+                               int attempts, String lastError, Instant deadLetteredAt) {
+}
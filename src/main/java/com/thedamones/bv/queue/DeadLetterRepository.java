@@ -0,0 +1,44 @@
+package com.thedamones.bv.queue;
+
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+@Repository
+public interface DeadLetterRepository extends JpaRepository<DeadLetter, UUID> {
+
+    /**
+     * Finds the dead letters of a queue, oldest first, through the {@code (queue_name, dead_lettered_at)} index.
+     *
+     * @param queueName The name of the queue.
+     * @param limit     The maximum number of dead letters.
+     * @return The dead letters.
+     */
+    List<DeadLetter> findByQueueNameOrderByDeadLetteredAtAscIdAsc(String queueName, Limit limit);
+
+    /**
+     * Finds a dead letter of a queue by its ID.
+     *
+     * @param id        The ID of the message.
+     * @param queueName The name of the queue.
+     * @return The dead letter, if it belongs to the queue.
+     */
+    Optional<DeadLetter> findByIdAndQueueName(UUID id, String queueName);
+
+    /**
+     * Deletes every dead letter of a queue, in a single set-based statement.  Must be called within a transaction.
+     *
+     * @param queueName The name of the queue.
+     * @return The number of dead letters deleted.
+     */
+    @Modifying
+    @Query("delete from DeadLetter d where d.queueName = :queueName")
+    int deleteByQueueName(@Param("queueName") String queueName);
+}
@@ -0,0 +1,118 @@
+package com.thedamones.bv.queue;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Browses, requeues and purges the messages {@link MessageService#failMessage(LeaseRecord, Exception) dead-lettered}
+ * from a queue.  Dead letters are kept per queue, even after the queue itself is gone, and do not count towards its
+ * size.
+ */
+@Service
+public class DeadLetterService {
+
+    private static final Logger logger = LoggerFactory.getLogger(DeadLetterService.class);
+
+    /**
+     * Upper bound for the number of dead letters browsed at once.
+     */
+    public static final int MAX_BROWSE_LIMIT = 1000;
+
+    private final DeadLetterRepository deadLetterRepository;
+    private final MessageService messageService;
+    private final QueueRegistry queueRegistry;
+
+    @Autowired
+    public DeadLetterService(DeadLetterRepository deadLetterRepository, MessageService messageService,
+                             QueueRegistry queueRegistry) {
+        this.deadLetterRepository = deadLetterRepository;
+        this.messageService = messageService;
+        this.queueRegistry = queueRegistry;
+    }
+
+    /**
+     * Gets the dead letters of a queue, oldest first.
+     *
+     * @param queueName The name of the queue.
+     * @param limit     The maximum number of dead letters, capped at {@value #MAX_BROWSE_LIMIT}.
+     * @return The dead letters.
+     */
+    public List<DeadLetterRecord> getDeadLetters(String queueName, int limit) {
+        return deadLetterRepository.findByQueueNameOrderByDeadLetteredAtAscIdAsc(queueName, Limit.of(Math.clamp(limit, 1, MAX_BROWSE_LIMIT)))
+                .stream()
+                .map(DeadLetter::toRecord)
+                .toList();
+    }
+
+    /**
+     * Gets a dead letter of a queue by its ID.
+     *
+     * @param queueName The name of the queue.
+     * @param id        The ID of the message.
+     * @return The dead letter.
+     * @throws DeadLetterNotFoundException If the queue has no dead letter with this ID.
+     */
+    public DeadLetterRecord getDeadLetter(String queueName, UUID id) {
+        return findDeadLetter(queueName, id).toRecord();
+    }
+
+    /**
+     * Moves a dead letter back to the end of its queue, ready, with its attempts reset.  It keeps its ID, timestamp and
+     * last error.
+     *
+     * @param queueName The name of the queue.
+     * @param id        The ID of the message.
+     * @return The requeued message.
+     * @throws DeadLetterNotFoundException If the queue has no dead letter with this ID.
+     * @throws QueueLimitExceededException If the queue no longer exists and would exceed {@code queue.max-queues}.
+     */
+    @Transactional
+    public MessageRecord requeueDeadLetter(String queueName, UUID id) {
+        DeadLetter deadLetter = findDeadLetter(queueName, id);
+        queueRegistry.getOrCreate(queueName);
+        deadLetterRepository.delete(deadLetter);
+
+        MessageRecord message = deadLetter.toMessageRecord();
+        messageService.requeueMessages(List.of(message));
+        logger.debug("Requeued dead letter {} to queue {}", id, queueName);
+        return message;
+    }
+
+    /**
+     * Deletes a dead letter of a queue.
+     *
+     * @param queueName The name of the queue.
+     * @param id        The ID of the message.
+     * @throws DeadLetterNotFoundException If the queue has no dead letter with this ID.
+     */
+    @Transactional
+    public void deleteDeadLetter(String queueName, UUID id) {
+        deadLetterRepository.delete(findDeadLetter(queueName, id));
+    }
+
+    /**
+     * Deletes every dead letter of a queue, in a single statement: nothing but these requests reads the dead letters,
+     * so unlike {@link MessageService#clearQueue(String)} the purge is not chunked.
+     *
+     * @param queueName The name of the queue.
+     * @return The number of dead letters deleted.
+     */
+    @Transactional
+    public int purgeDeadLetters(String queueName) {
+        int deleted = deadLetterRepository.deleteByQueueName(queueName);
+        logger.debug("Purged {} dead letter(s) of queue {}", deleted, queueName);
+        return deleted;
+    }
+
+    private DeadLetter findDeadLetter(String queueName, UUID id) {
+        return deadLetterRepository.findByIdAndQueueName(id, queueName)
+                .orElseThrow(() -> new DeadLetterNotFoundException("Dead letter with ID " + id + " not found"));
+    }
+}
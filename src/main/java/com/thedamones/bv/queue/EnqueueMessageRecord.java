@@ -1,4 +1,30 @@
 package com.thedamones.bv.queue;
 
-public record EnqueueMessageRecord(String text, Integer dataSize) {
+import java.time.Instant;
+
+/**
+ * A message to enqueue.
+ *
+ * @param text         The message text.
+ * @param dataSize     The size of the message data.
+ * @param priority     The message priority, from {@value Message#DEFAULT_PRIORITY} to {@value Message#MAX_PRIORITY};
+ *                     {@code null} for {@value Message#DEFAULT_PRIORITY}.
+ * @param deliverAt    When to deliver the message, or {@code null} to deliver it right away.
+ * @param delaySeconds How many seconds to wait before delivering the message, instead of {@code deliverAt}.
+ */
+public record EnqueueMessageRecord(String text, Integer dataSize, Integer priority, Instant deliverAt, Long delaySeconds) {
+
+    /**
+     * Creates a message to enqueue with the {@link Message#DEFAULT_PRIORITY default priority}, for immediate delivery.
+     */
+    public EnqueueMessageRecord(String text, Integer dataSize) {
+        this(text, dataSize, null);
+    }
+
+    /**
+     * Creates a message to enqueue for immediate delivery.
+     */
+    public EnqueueMessageRecord(String text, Integer dataSize, Integer priority) {
+        this(text, dataSize, priority, null, null);
+    }
 }
@@ -1,6 +1,8 @@
 package com.thedamones.bv.queue;
 
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.ControllerAdvice;
 import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.ResponseStatus;
@@ -14,6 +16,67 @@ public class GlobalControllerExceptionHandler {
         // No return value
     }
 
+    @ResponseStatus(HttpStatus.NOT_FOUND)
+    @ExceptionHandler(PurgeNotFoundException.class)
+    public void handlePurgeNotFoundException(PurgeNotFoundException ex) {
+        // No return value
+    }
+
+    @ResponseStatus(HttpStatus.NOT_FOUND)
+    @ExceptionHandler(StreamNotFoundException.class)
+    public void handleStreamNotFoundException(StreamNotFoundException ex) {
+        // No return value
+    }
+
+    @ResponseStatus(HttpStatus.NOT_FOUND)
+    @ExceptionHandler(DeadLetterNotFoundException.class)
+    public void handleDeadLetterNotFoundException(DeadLetterNotFoundException ex) {
+        // No return value
+    }
+
+    @ResponseStatus(HttpStatus.NOT_FOUND)
+    @ExceptionHandler(LeaseNotFoundException.class)
+    public void handleLeaseNotFoundException(LeaseNotFoundException ex) {
+        // No return value
+    }
+
+    @ResponseStatus(HttpStatus.NOT_FOUND)
+    @ExceptionHandler(QueueNotFoundException.class)
+    public void handleQueueNotFoundException(QueueNotFoundException ex) {
+        // No return value
+    }
+
+    @ResponseStatus(HttpStatus.BAD_REQUEST)
+    @ExceptionHandler(InvalidQueueNameException.class)
+    public void handleInvalidQueueNameException(InvalidQueueNameException ex) {
+        // No return value
+    }
+
+    @ResponseStatus(HttpStatus.BAD_REQUEST)
+    @ExceptionHandler(InvalidMessageException.class)
+    public void handleInvalidMessageException(InvalidMessageException ex) {
+        // No return value
+    }
+
+    @ResponseStatus(HttpStatus.BAD_REQUEST)
+    @ExceptionHandler(InvalidLeaseException.class)
+    public void handleInvalidLeaseException(InvalidLeaseException ex) {
+        // No return value
+    }
+
+    @ResponseStatus(HttpStatus.CONFLICT)
+    @ExceptionHandler(QueueLimitExceededException.class)
+    public void handleQueueLimitExceededException(QueueLimitExceededException ex) {
+        // No return value
+    }
+
+    @ExceptionHandler(QueueOverloadedException.class)
+    public ResponseEntity<Void> handleQueueOverloadedException(QueueOverloadedException ex) {
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .header(HttpHeaders.RETRY_AFTER, Long.toString(ex.getRetryAfterSeconds()))
+                .build();
+    }
+
     @ResponseStatus(HttpStatus.INTERNAL_SERVER_ERROR)
     @ExceptionHandler(MessageEnqueueException.class)
     public void handleMessageEnqueueException(MessageEnqueueException ex) {
@@ -0,0 +1,173 @@
+package com.thedamones.bv.queue;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.ToIntFunction;
+
+/**
+ * Buffers items in memory and hands them to a flush function in batches, so that the items of concurrent callers share
+ * one transaction.
+ * <p>
+ * A single thread flushes {@code window} after the first item is added, or as soon as {@code batchSize} items are
+ * waiting, in batches of at most {@code batchSize} items, oldest first.  {@link #flush()} flushes in the calling thread
+ * instead, and {@link #stop()} flushes what is left once the thread has stopped.  Used by the {@link LeaseAcknowledger}
+ * and the {@link GroupCommitEnqueuer}.
+ *
+ * @param <T> The type of the buffered items.
+ */
+public class GroupCommitBatcher<T> {
+
+    private final String threadName;
+    private final int batchSize;
+    private final Duration window;
+    private final ToIntFunction<List<T>> flusher;
+    private final Consumer<Exception> errorHandler;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition added = lock.newCondition();
+    private final ReentrantLock flushLock = new ReentrantLock();
+    private List<T> pending = new ArrayList<>();
+    private volatile boolean running;
+    private Thread thread;
+
+    /**
+     * @param threadName   The name of the flushing thread.
+     * @param batchSize    The most items to flush at once.
+     * @param window       How long to wait for more items after the first one.
+     * @param flusher      Flushes a batch, returning the number of items flushed.
+     * @param errorHandler Handles what a flush by the thread throws.  The items of the batch are dropped.
+     */
+    public GroupCommitBatcher(String threadName, int batchSize, Duration window, ToIntFunction<List<T>> flusher,
+                              Consumer<Exception> errorHandler) {
+        this.threadName = threadName;
+        this.batchSize = batchSize;
+        this.window = window;
+        this.flusher = flusher;
+        this.errorHandler = errorHandler;
+    }
+
+    public void start() {
+        running = true;
+        thread = Thread.ofPlatform().name(threadName).daemon().start(this::run);
+    }
+
+    /**
+     * Stops the flushing thread, then flushes what is left.
+     */
+    public void stop() {
+        running = false;
+        if (thread != null) {
+            lock.lock();
+            try {
+                added.signal();
+            } finally {
+                lock.unlock();
+            }
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        flush();
+    }
+
+    /**
+     * @return Whether the flushing thread is running.  Items added while it is not are only flushed by {@link #flush()}.
+     */
+    public boolean isRunning() {
+        return running;
+    }
+
+    public void add(T item) {
+        addAll(List.of(item));
+    }
+
+    public void addAll(Collection<? extends T> items) {
+        lock.lock();
+        try {
+            boolean wasEmpty = pending.isEmpty();
+            pending.addAll(items);
+            if (wasEmpty || pending.size() >= batchSize) {
+                added.signal();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Flushes every item added so far, in the calling thread, once any flush in progress is done.
+     *
+     * @return The number of items flushed.
+     */
+    public int flush() {
+        flushLock.lock();
+        try {
+            int flushed = 0;
+            for (List<T> batch = drain(); !batch.isEmpty(); batch = drain()) {
+                flushed += flusher.applyAsInt(batch);
+            }
+            return flushed;
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    /**
+     * Takes up to a batch of the buffered items, oldest first.
+     */
+    private List<T> drain() {
+        lock.lock();
+        try {
+            if (pending.size() <= batchSize) {
+                List<T> batch = pending;
+                pending = new ArrayList<>();
+                return batch;
+            }
+            List<T> head = pending.subList(0, batchSize);
+            List<T> batch = new ArrayList<>(head);
+            head.clear();
+            return batch;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void run() {
+        while (running) {
+            try {
+                awaitFlush();
+                flush();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                errorHandler.accept(e);
+            }
+        }
+    }
+
+    /**
+     * Sleeps until something is added, then for the window unless the batch fills up first.
+     */
+    private void awaitFlush() throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            while (running && pending.isEmpty()) {
+                added.await();
+            }
+            long nanos = window.toNanos();
+            while (running && nanos > 0 && pending.size() < batchSize) {
+                nanos = added.awaitNanos(nanos);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+}
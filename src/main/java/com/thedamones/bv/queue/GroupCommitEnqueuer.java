@@ -0,0 +1,194 @@
+package com.thedamones.bv.queue;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+
+/**
+ * Stores single enqueued messages in shared transactions when {@code queue.group-commit.enabled} is set.
+ * <p>
+ * Each message is validated and given its ID in the calling thread, then buffered in a {@link GroupCommitBatcher}.  Its
+ * thread stores the buffer {@code queue.group-commit.window} after the first enqueue, or as soon as
+ * {@code queue.group-commit.batch-size} messages are waiting, as one transaction with a JDBC batch of inserts per
+ * queue.  Concurrent enqueues therefore share one commit, and one write of the database log, instead of paying for
+ * their own.  Each queue of the transaction gets a single {@link MessageEnqueuedEvent}, as for a batch enqueue.  If the
+ * transaction fails, each of its messages is stored again in a transaction of its own, so that a message that cannot be
+ * stored only fails its own caller.
+ * <p>
+ * {@link #enqueue} completes once the transaction has committed.  {@link #accept} returns as soon as the message is
+ * buffered: the message is lost if it cannot be stored or the application stops abruptly before it commits.  When
+ * group commit is disabled, both store the message in its own transaction before returning.  So they do with a
+ * {@link QueueStore} that is not transactional: it has no commit to share, and the appends of a failed group could not
+ * be undone.
+ */
+@Component
+public class GroupCommitEnqueuer {
+
+    private static final Logger logger = LoggerFactory.getLogger(GroupCommitEnqueuer.class);
+
+    private final MessageService messageService;
+    private final QueueMetrics queueMetrics;
+    private final TransactionTemplate transactionTemplate;
+    private final boolean enabled;
+    private final GroupCommitBatcher<Pending> batcher;
+
+    @Autowired
+    public GroupCommitEnqueuer(MessageService messageService, QueueStore queueStore, QueueMetrics queueMetrics,
+                               PlatformTransactionManager transactionManager, QueueProperties queueProperties) {
+        this.messageService = messageService;
+        this.queueMetrics = queueMetrics;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        QueueProperties.GroupCommit groupCommitProperties = queueProperties.getGroupCommit();
+        this.enabled = groupCommitProperties.isEnabled() && queueStore.isTransactional();
+        if (groupCommitProperties.isEnabled() && !enabled) {
+            logger.warn("Ignoring queue.group-commit.enabled: the {} store is not transactional", queueProperties.getStore().getType());
+        }
+        this.batcher = new GroupCommitBatcher<>("queue-group-commit", groupCommitProperties.getBatchSize(),
+                groupCommitProperties.getWindow(), this::flush, this::onError);
+    }
+
+    /**
+     * @return Whether enqueues are stored in shared transactions: {@code queue.group-commit.enabled} is set, and the
+     * {@link QueueStore} is transactional.
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        batcher.start();
+    }
+
+    /**
+     * Stops the flushing thread, then stores what is left.
+     */
+    @PreDestroy
+    public void stop() {
+        batcher.stop();
+    }
+
+    /**
+     * Enqueues a message with the next group commit.
+     *
+     * @param queueName The name of the queue.
+     * @param request   The message request record.
+     * @return The enqueued message record, once it is committed.  Completes with a {@link MessageEnqueueException} if
+     * the transaction fails.
+     * @throws InvalidQueueNameException   If the queue name is invalid.
+     * @throws QueueLimitExceededException If the queue would exceed {@code queue.max-queues}.
+     * @throws InvalidMessageException     If the priority or the delivery time is invalid.
+     */
+    public CompletableFuture<MessageRecord> enqueue(String queueName, EnqueueMessageRecord request) {
+        if (!enabled) {
+            return CompletableFuture.completedFuture(messageService.enqueueMessage(queueName, request));
+        }
+        return submit(queueName, request).committed();
+    }
+
+    /**
+     * Enqueues a message with the next group commit, without waiting for it to be committed.
+     *
+     * @param queueName The name of the queue.
+     * @param request   The message request record.
+     * @return The message record, with the ID it will be stored under.
+     * @throws InvalidQueueNameException   If the queue name is invalid.
+     * @throws QueueLimitExceededException If the queue would exceed {@code queue.max-queues}.
+     * @throws InvalidMessageException     If the priority or the delivery time is invalid.
+     */
+    public MessageRecord accept(String queueName, EnqueueMessageRecord request) {
+        if (!enabled) {
+            return messageService.enqueueMessage(queueName, request);
+        }
+        return submit(queueName, request).message();
+    }
+
+    /**
+     * Stores every message enqueued so far, in the calling thread, once any flush in progress is done.
+     *
+     * @return The number of messages stored.
+     */
+    public int flush() {
+        return batcher.flush();
+    }
+
+    private Pending submit(String queueName, EnqueueMessageRecord request) {
+        Pending message = new Pending(messageService.prepareMessage(queueName, request), new CompletableFuture<>());
+        batcher.add(message);
+        if (!batcher.isRunning()) {
+            // Stopped, nothing else stores it
+            flush();
+        }
+        return message;
+    }
+
+    private int flush(List<Pending> batch) {
+        Map<String, List<MessageRecord>> messagesByQueue = batch.stream()
+                .map(Pending::message)
+                .collect(Collectors.groupingBy(MessageRecord::queue, LinkedHashMap::new, Collectors.toList()));
+        try {
+            store(messagesByQueue);
+        } catch (RuntimeException e) {
+            if (batch.size() == 1) {
+                return fail(batch.getFirst(), e);
+            }
+            // One failing insert must not fail the whole group: store each message on its own
+            logger.warn("Error storing {} enqueued message(s), storing them one by one", batch.size(), e);
+            return batch.stream().mapToInt(this::flushAlone).sum();
+        }
+
+        queueMetrics.recordGroupCommit(batch.size());
+        batch.forEach(message -> message.committed().complete(message.message()));
+        logger.debug("Stored {} enqueued message(s) in {} queue(s)", batch.size(), messagesByQueue.size());
+        return batch.size();
+    }
+
+    private int flushAlone(Pending message) {
+        try {
+            store(Map.of(message.message().queue(), List.of(message.message())));
+        } catch (RuntimeException e) {
+            return fail(message, e);
+        }
+        queueMetrics.recordGroupCommit(1);
+        message.committed().complete(message.message());
+        return 1;
+    }
+
+    private void store(Map<String, List<MessageRecord>> messagesByQueue) {
+        transactionTemplate.executeWithoutResult(status -> {
+            queueMetrics.startTransactionTimer(QueueMetrics.GROUP_COMMIT);
+            messagesByQueue.forEach(messageService::enqueuePreparedMessages);
+        });
+    }
+
+    private int fail(Pending message, RuntimeException e) {
+        logger.error("Error storing enqueued message {}", message.message().id(), e);
+        message.committed().completeExceptionally(new MessageEnqueueException("Failed to enqueue message", e));
+        return 0;
+    }
+
+    private void onError(Exception e) {
+        queueMetrics.recordError(QueueMetrics.GROUP_COMMIT);
+        logger.error("Error storing enqueued messages", e);
+    }
+
+    /**
+     * A buffered message, and the future completed once it is committed.
+     */
+    private record Pending(MessageRecord message, CompletableFuture<MessageRecord> committed) {
+    }
+}
@@ -0,0 +1,8 @@
+package com.thedamones.bv.queue;
+
+public class InvalidLeaseException extends RuntimeException {
+
+    public InvalidLeaseException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,8 @@
+package com.thedamones.bv.queue;
+
+public class InvalidMessageException extends RuntimeException {
+
+    public InvalidMessageException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,8 @@
+package com.thedamones.bv.queue;
+
+public class InvalidQueueNameException extends RuntimeException {
+
+    public InvalidQueueNameException(String message) {
+        super(message);
+    }
+}
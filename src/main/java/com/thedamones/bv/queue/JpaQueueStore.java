@@ -0,0 +1,100 @@
+package com.thedamones.bv.queue;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.convert.ConversionService;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+/**
+ * Stores messages in the {@code message} table through the {@link MessageRepository}, the default
+ * {@code queue.store.type=jpa}.  New and requeued messages are inserted as JDBC batches; the head of a queue is popped
+ * with a single native statement, or locked, loaded and deleted through JPA when {@code queue.dequeue.native-pop} is
+ * disabled.  Positions are the messages' sequence numbers.
+ */
+@Component
+@ConditionalOnProperty(name = "queue.store.type", havingValue = "jpa", matchIfMissing = true)
+public class JpaQueueStore implements QueueStore {
+
+    private final MessageRepository messageRepository;
+    private final ConversionService conversionService;
+    private final QueueProperties.Dequeue dequeueProperties;
+
+    @Autowired
+    public JpaQueueStore(MessageRepository messageRepository, ConversionService conversionService,
+                         QueueProperties queueProperties) {
+        this.messageRepository = messageRepository;
+        this.conversionService = conversionService;
+        this.dequeueProperties = queueProperties.getDequeue();
+    }
+
+    @Override
+    public boolean isTransactional() {
+        return true;
+    }
+
+    @Override
+    public boolean supportsLeases() {
+        return true;
+    }
+
+    @Override
+    public void append(List<MessageRecord> messages) {
+        messageRepository.insertNew(messages);
+    }
+
+    @Override
+    public void requeue(List<MessageRecord> messages) {
+        messageRepository.insertAll(messages);
+    }
+
+    @Override
+    public Optional<MessageRecord> pop(String queueName, boolean oldest) {
+        if (dequeueProperties.isNativePop()) {
+            return oldest ? messageRepository.popOldest(queueName) : messageRepository.popFirst(queueName);
+        }
+        Optional<Message> message = oldest ? messageRepository.lockOldest(queueName) : messageRepository.lockFirst(queueName);
+        message.ifPresent(messageRepository::delete);
+        return message.map(this::toMessageRecord);
+    }
+
+    @Override
+    public Optional<MessageRecord> peek(String queueName) {
+        return messageRepository.findFirstInQueue(queueName).map(this::toMessageRecord);
+    }
+
+    @Override
+    public Optional<MessageRecord> findById(String queueName, UUID id) {
+        return messageRepository.findById(id)
+                .filter(message -> message.getQueueName().equals(queueName))
+                .map(this::toMessageRecord);
+    }
+
+    @Override
+    public Map<String, Long> sizes() {
+        return messageRepository.countByQueueName().stream()
+                .collect(Collectors.toMap(MessageRepository.QueueDepth::getQueueName, MessageRepository.QueueDepth::getDepth));
+    }
+
+    @Override
+    public long tail(String queueName) {
+        return messageRepository.findMaxSequenceNumber(queueName).orElse(0L);
+    }
+
+    /**
+     * Deletes the messages in a single set-based statement.  Must be called within a transaction.
+     */
+    @Override
+    public int purge(String queueName, long upTo, int limit) {
+        return messageRepository.deleteChunk(queueName, upTo, limit);
+    }
+
+    private MessageRecord toMessageRecord(Message message) {
+        return conversionService.convert(message, MessageRecord.class);
+    }
+}
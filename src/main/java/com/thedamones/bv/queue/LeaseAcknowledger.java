@@ -0,0 +1,129 @@
+package com.thedamones.bv.queue;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+/**
+ * Deletes the messages of acknowledged leases in bulk.
+ * <p>
+ * Acknowledgements are buffered in a {@link GroupCommitBatcher} and flushed by its thread every
+ * {@code queue.lease.ack-flush-interval}, or as soon as {@code queue.lease.ack-batch-size} of them are waiting, as one
+ * transaction with a JDBC batch of deletes per queue.  A consumer therefore pays for the lease update alone, and the deletes share their round trips and commit.
+ * Acknowledgements still buffered when the application stops abruptly are lost: their leases expire and the messages
+ * are delivered again, as with any consumer that fails to acknowledge.
+ */
+@Component
+public class LeaseAcknowledger {
+
+    private static final Logger logger = LoggerFactory.getLogger(LeaseAcknowledger.class);
+
+    private final MessageRepository messageRepository;
+    private final QueueDepthCounter queueDepthCounter;
+    private final QueueRegistry queueRegistry;
+    private final QueueMetrics queueMetrics;
+    private final TransactionTemplate transactionTemplate;
+    private final GroupCommitBatcher<Ack> batcher;
+
+    @Autowired
+    public LeaseAcknowledger(MessageRepository messageRepository, QueueDepthCounter queueDepthCounter,
+                             QueueRegistry queueRegistry, QueueMetrics queueMetrics,
+                             PlatformTransactionManager transactionManager, QueueProperties queueProperties) {
+        this.messageRepository = messageRepository;
+        this.queueDepthCounter = queueDepthCounter;
+        this.queueRegistry = queueRegistry;
+        this.queueMetrics = queueMetrics;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        QueueProperties.Lease leaseProperties = queueProperties.getLease();
+        this.batcher = new GroupCommitBatcher<>("queue-lease-acks", leaseProperties.getAckBatchSize(),
+                leaseProperties.getAckFlushInterval(), this::flush, this::onError);
+    }
+
+    @PostConstruct
+    public void start() {
+        batcher.start();
+    }
+
+    /**
+     * Stops the flushing thread, then flushes what is left.
+     */
+    @PreDestroy
+    public void stop() {
+        batcher.stop();
+    }
+
+    /**
+     * Acknowledges leases: their messages are deleted with the next flush.  Leases that expire before then, or that
+     * are unknown, are ignored.
+     *
+     * @param queueName The name of the queue of the leased messages.
+     * @param leaseIds  The IDs of the leases.
+     */
+    public void acknowledge(String queueName, List<UUID> leaseIds) {
+        batcher.addAll(leaseIds.stream().map(leaseId -> new Ack(queueName, leaseId)).toList());
+    }
+
+    /**
+     * Deletes the messages of every lease acknowledged so far, in the calling thread, once any flush in progress is
+     * done.
+     *
+     * @return The number of messages deleted.
+     */
+    public int flush() {
+        return batcher.flush();
+    }
+
+    private int flush(List<Ack> acks) {
+        Map<String, List<UUID>> leaseIdsByQueue = acks.stream()
+                .collect(Collectors.groupingBy(Ack::queueName, Collectors.mapping(Ack::leaseId, Collectors.toList())));
+        Integer deleted = transactionTemplate.execute(status -> {
+            queueMetrics.startTransactionTimer(QueueMetrics.ACK);
+            int count = 0;
+            for (Map.Entry<String, List<UUID>> entry : leaseIdsByQueue.entrySet()) {
+                count += delete(entry.getKey(), entry.getValue());
+            }
+            return count;
+        });
+        logger.debug("Flushed {} acknowledgement(s), deleting {} message(s)", acks.size(), deleted);
+        return deleted == null ? 0 : deleted;
+    }
+
+    private int delete(String queueName, List<UUID> leaseIds) {
+        int deleted = messageRepository.deleteLeases(queueName, leaseIds);
+        if (deleted > 0) {
+            QueueThroughput throughput = queueRegistry.get(queueName);
+            queueDepthCounter.adjustAfterCommit(queueName, -deleted);
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    throughput.recordDequeued(deleted);
+                }
+            });
+        }
+        return deleted;
+    }
+
+    private void onError(Exception e) {
+        // The leases of the dropped acknowledgements expire and their messages are delivered again
+        queueMetrics.recordError(QueueMetrics.ACK);
+        logger.error("Error deleting the messages of acknowledged leases", e);
+    }
+
+    /**
+     * An acknowledged lease.
+     */
+    private record Ack(String queueName, UUID leaseId) {
+    }
+}
@@ -0,0 +1,83 @@
+package com.thedamones.bv.queue;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.hateoas.EntityModel;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.*;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Leases of the {@link QueueRegistry#DEFAULT_QUEUE default queue}, for consumers that must not lose a message when they
+ * fail mid-processing: a leased message is only deleted once its lease is acknowledged, and becomes ready again when
+ * the lease expires.  Those of other queues are served by the {@link NamedQueueLeaseController}.
+ */
+@RestController
+@RequestMapping("/v2/queue/leases")
+public class LeaseController {
+
+    private final MessageService messageService;
+    private final LeaseModelAssembler leaseModelAssembler;
+
+    @Autowired
+    public LeaseController(MessageService messageService, LeaseModelAssembler leaseModelAssembler) {
+        this.messageService = messageService;
+        this.leaseModelAssembler = leaseModelAssembler;
+    }
+
+    /**
+     * Leases the message at the head of the queue.
+     *
+     * @param visibilityTimeout How long the message is leased, in seconds; {@code queue.lease.visibility-timeout} if
+     *                          not set.
+     * @return The lease, with the message.
+     */
+    @PostMapping
+    @ResponseStatus(HttpStatus.CREATED)
+    public EntityModel<LeaseRecord> leaseMessage(@RequestParam(required = false) Long visibilityTimeout) {
+        LeaseRecord lease = messageService.leaseMessage(QueueRegistry.DEFAULT_QUEUE, seconds(visibilityTimeout));
+        return leaseModelAssembler.toModel(lease);
+    }
+
+    /**
+     * Extends a lease that has not expired yet.
+     *
+     * @param id                The ID of the lease.
+     * @param visibilityTimeout How long the message stays leased from now, in seconds;
+     *                          {@code queue.lease.visibility-timeout} if not set.
+     * @return The extended lease.
+     */
+    @PostMapping("/{id}/extend")
+    public EntityModel<LeaseRecord> extendLease(@PathVariable UUID id, @RequestParam(required = false) Long visibilityTimeout) {
+        LeaseRecord lease = messageService.extendLease(QueueRegistry.DEFAULT_QUEUE, id, seconds(visibilityTimeout));
+        return leaseModelAssembler.toModel(lease);
+    }
+
+    /**
+     * Acknowledges a lease, deleting its message shortly after.
+     *
+     * @param id The ID of the lease.
+     */
+    @DeleteMapping("/{id}")
+    @ResponseStatus(HttpStatus.ACCEPTED)
+    public void acknowledgeLease(@PathVariable UUID id) {
+        messageService.acknowledgeLeases(QueueRegistry.DEFAULT_QUEUE, List.of(id));
+    }
+
+    /**
+     * Acknowledges a batch of leases, deleting their messages shortly after.
+     *
+     * @param ids The IDs of the leases.
+     */
+    @PostMapping("/acks")
+    @ResponseStatus(HttpStatus.ACCEPTED)
+    public void acknowledgeLeases(@RequestBody List<UUID> ids) {
+        messageService.acknowledgeLeases(QueueRegistry.DEFAULT_QUEUE, ids);
+    }
+
+    static Duration seconds(Long seconds) {
+        return seconds == null ? null : Duration.ofSeconds(seconds);
+    }
+}
@@ -0,0 +1,28 @@
+package com.thedamones.bv.queue;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.hateoas.EntityModel;
+import org.springframework.hateoas.server.RepresentationModelAssembler;
+import org.springframework.stereotype.Component;
+
+@Component
+public class LeaseModelAssembler implements RepresentationModelAssembler<LeaseRecord, EntityModel<LeaseRecord>> {
+
+    private final QueueLinks queueLinks;
+
+    @Autowired
+    public LeaseModelAssembler(QueueLinks queueLinks) {
+        this.queueLinks = queueLinks;
+    }
+
+    @Override
+    public EntityModel<LeaseRecord> toModel(LeaseRecord lease) {
+        String baseUri = queueLinks.baseUri();
+        String queueName = lease.message().queue();
+        return EntityModel.of(lease,
+                queueLinks.ack(baseUri, queueName, lease.id()),
+                queueLinks.extend(baseUri, queueName, lease.id()),
+                queueLinks.message(baseUri, queueName, lease.message().id(), QueueLinks.MESSAGE),
+                queueLinks.queue(baseUri, queueName, QueueLinks.QUEUE));
+    }
+}
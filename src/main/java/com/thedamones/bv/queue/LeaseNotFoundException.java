@@ -0,0 +1,8 @@
+package com.thedamones.bv.queue;
+
+public class LeaseNotFoundException extends RuntimeException {
+
+    public LeaseNotFoundException(String message) {
+        super(message);
+    }
+}
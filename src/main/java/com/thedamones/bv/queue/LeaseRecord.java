@@ -0,0 +1,21 @@
+package com.thedamones.bv.queue;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.UUID;
+
+/**
+ * A message leased to a consumer until {@code expiresAt}.  While leased, the message stays in its queue, in flight, with
+ * the expiry of the lease as its delivery time.
+ */
+public record LeaseRecord(UUID id, Instant expiresAt, MessageRecord message) {
+
+    /**
+     * Gets the time to look for this lease having expired: its expiry rounded up to the second, so that the leases
+     * taken within the same second share a single delivery pass.
+     */
+    public Instant expiryCheckAt() {
+        Instant second = expiresAt.truncatedTo(ChronoUnit.SECONDS);
+        return second.equals(expiresAt) ? second : second.plusSeconds(1);
+    }
+}
@@ -0,0 +1,155 @@
+package com.thedamones.bv.queue;
+
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Dequeues messages for REST consumers that are willing to wait for one to arrive.
+ * <p>
+ * Waiting consumers are parked as {@link CompletableFuture}s, so they hold no servlet thread.  The
+ * {@link MessageEnqueuedEvent} that wakes the {@link QueueManager} also dispatches messages to the waiters of its
+ * queue, oldest waiter first.  A message is popped and handed to a waiter in one transaction, which rolls back if the
+ * waiter has already timed out, so no message is lost to an expired request.  With a {@link QueueStore} that is not
+ * transactional, the message is requeued instead, at the back of the queue.
+ */
+@Service
+public class LongPollDequeueService {
+
+    private final MessageService messageService;
+    private final QueueStore queueStore;
+    private final QueueRegistry queueRegistry;
+    private final TransactionTemplate transactionTemplate;
+    private final QueueProperties.LongPoll longPollProperties;
+
+    private final Map<String, Waiters> queueWaiters = new ConcurrentHashMap<>();
+    private final ExecutorService dispatchExecutor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("queue-long-poll-", 0).factory());
+
+    @Autowired
+    public LongPollDequeueService(MessageService messageService, QueueStore queueStore, QueueRegistry queueRegistry,
+                                  PlatformTransactionManager transactionManager, QueueProperties queueProperties) {
+        this.messageService = messageService;
+        this.queueStore = queueStore;
+        this.queueRegistry = queueRegistry;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.longPollProperties = queueProperties.getLongPoll();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        dispatchExecutor.shutdownNow();
+    }
+
+    /**
+     * Dequeues the oldest message of a queue, waiting up to {@code wait} (capped at {@code queue.long-poll.max-wait})
+     * for one to be enqueued if the queue is empty.
+     *
+     * @param queueName The name of the queue.
+     * @param wait      How long to wait for a message.
+     * @return A future completed with the dequeued message, or with a {@link MessageNotFoundException} if none arrived
+     * in time.
+     * @throws QueueNotFoundException If the queue does not exist.
+     */
+    public CompletableFuture<MessageRecord> dequeueMessage(String queueName, Duration wait) {
+        queueRegistry.get(queueName);
+        Duration timeout = wait.compareTo(longPollProperties.getMaxWait()) < 0 ? wait : longPollProperties.getMaxWait();
+        Waiters waiters = queueWaiters.computeIfAbsent(queueName, Waiters::new);
+
+        CompletableFuture<MessageRecord> waiter = new CompletableFuture<>();
+        waiters.futures.add(waiter);
+        waiter.whenComplete((message, ex) -> waiters.futures.remove(waiter));
+        CompletableFuture.delayedExecutor(timeout.toMillis(), TimeUnit.MILLISECONDS)
+                .execute(() -> waiter.completeExceptionally(new MessageNotFoundException("Queue is empty")));
+
+        dispatchExecutor.execute(() -> dispatch(waiters));
+        return waiter;
+    }
+
+    @TransactionalEventListener
+    public void handleMessageEnqueuedEvent(MessageEnqueuedEvent event) {
+        Waiters waiters = queueWaiters.get(event.getQueue());
+        if (waiters == null) {
+            return;
+        }
+        waiters.enqueueSignals.incrementAndGet();
+        if (!waiters.futures.isEmpty()) {
+            dispatchExecutor.execute(() -> dispatch(waiters));
+        }
+    }
+
+    private void dispatch(Waiters waiters) {
+        CompletableFuture<MessageRecord> waiter;
+        while ((waiter = waiters.futures.pollFirst()) != null) {
+            if (waiter.isDone()) {
+                continue;
+            }
+
+            long signals = waiters.enqueueSignals.get();
+            if (!deliverNextMessage(waiters.queueName, waiter)) {
+                waiters.futures.offerFirst(waiter);
+                if (waiters.enqueueSignals.get() == signals) {
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Pops the next message of the queue for the waiter.
+     *
+     * @return False if the queue was empty.
+     */
+    private boolean deliverNextMessage(String queueName, CompletableFuture<MessageRecord> waiter) {
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                MessageRecord messageRecord = messageService.dequeueMessage(queueName);
+                if (waiter.complete(messageRecord)) {
+                    return;
+                }
+                // the waiter timed out meanwhile; put the message back for the next consumer
+                if (queueStore.isTransactional()) {
+                    status.setRollbackOnly();
+                } else {
+                    messageService.requeueMessages(List.of(messageRecord));
+                }
+            });
+            return true;
+        } catch (MessageNotFoundException e) {
+            return false;
+        }
+    }
+
+    /**
+     * The consumers waiting on one queue.
+     */
+    private static class Waiters {
+
+        private final String queueName;
+        private final ConcurrentLinkedDeque<CompletableFuture<MessageRecord>> futures = new ConcurrentLinkedDeque<>();
+
+        /*
+         * Bumped on every enqueue to the queue, so a dispatch that found it empty can tell whether a message arrived
+         * while it was putting its waiter back (when the event handler may have seen no waiters and skipped
+         * dispatching).
+         */
+        private final AtomicLong enqueueSignals = new AtomicLong();
+
+        private Waiters(String queueName) {
+            this.queueName = queueName;
+        }
+    }
+}
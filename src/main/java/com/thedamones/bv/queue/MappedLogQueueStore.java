@@ -0,0 +1,627 @@
+package com.thedamones.bv.queue;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * Stores messages in an append-only log per queue, {@code queue.store.type=mapped-log}.
+ * <p>
+ * Each queue has a directory under {@code queue.store.log.directory} holding memory-mapped segment files of
+ * {@code queue.store.log.segment-size}, named after the position of their first byte, and a {@value #HEAD_FILE} file
+ * holding the position of the next message to pop.  A message is appended as a record: the length of its content, a
+ * CRC-32C of the content, then the content.  The length is written last, so a record cut short by a crash has no length
+ * or a checksum that does not match, and recovery truncates the log there.  Popping a message only moves the head; once
+ * the head leaves a segment, the segment is deleted.  The position of a message is the position just past its record.
+ * <p>
+ * At startup the log of every queue is scanned from its head to rebuild the index of message IDs to record positions
+ * used by {@link #findById(String, UUID)}, which also counts the messages.  Writes reach the page cache as soon as they
+ * are made, so they survive the application crashing; with {@code queue.store.log.force} they are also forced to disk
+ * before the call returns.
+ * <p>
+ * The log is first in, first out: messages with a priority or a delivery time are rejected, and leases are not
+ * supported.  Each queue is guarded by its own lock.
+ */
+@Component
+@ConditionalOnProperty(name = "queue.store.type", havingValue = "mapped-log")
+public class MappedLogQueueStore implements QueueStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(MappedLogQueueStore.class);
+
+    static final String HEAD_FILE = "head";
+    static final String SEGMENT_SUFFIX = ".log";
+
+    /**
+     * The length and checksum of a record.
+     */
+    private static final int HEADER_SIZE = 2 * Integer.BYTES;
+
+    /**
+     * Written instead of a length where the records of a segment end, because the next one did not fit.
+     */
+    private static final int END_OF_SEGMENT = -1;
+
+    /**
+     * The fixed part of a record's content: ID, timestamp, priority, attempts and the flags of the optional fields.
+     */
+    private static final int FIXED_CONTENT_SIZE = 2 * Long.BYTES + Long.BYTES + Integer.BYTES + 2 * Integer.BYTES + Byte.BYTES;
+
+    private static final int HAS_TEXT = 1;
+    private static final int HAS_DATA_SIZE = 2;
+    private static final int HAS_DELIVER_AT = 4;
+    private static final int HAS_LAST_ERROR = 8;
+
+    private final Path directory;
+    private final int segmentSize;
+    private final boolean force;
+    private final Map<String, QueueLog> logs = new ConcurrentHashMap<>();
+
+    @Autowired
+    public MappedLogQueueStore(QueueProperties queueProperties) {
+        QueueProperties.Log logProperties = queueProperties.getStore().getLog();
+        long segmentSize = logProperties.getSegmentSize().toBytes();
+        if (segmentSize < 1024 || segmentSize > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("queue.store.log.segment-size must be between 1KB and 2GB: " + logProperties.getSegmentSize());
+        }
+        this.directory = logProperties.getDirectory();
+        this.segmentSize = (int) segmentSize;
+        this.force = logProperties.isForce();
+    }
+
+    /**
+     * Recovers the log of every queue found in the directory.
+     */
+    @PostConstruct
+    public void open() {
+        try {
+            Files.createDirectories(directory);
+            try (Stream<Path> queueDirectories = Files.list(directory)) {
+                queueDirectories.filter(Files::isDirectory).forEach(queueDirectory -> {
+                    QueueLog log = new QueueLog(queueDirectory.getFileName().toString(), queueDirectory);
+                    log.recover();
+                    logs.put(log.queueName, log);
+                });
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to open the message log in " + directory, e);
+        }
+        logger.info("Opened the message log of {} queue(s) in {}", logs.size(), directory);
+    }
+
+    /**
+     * Forces every log to disk.
+     */
+    @PreDestroy
+    public void close() {
+        logs.values().forEach(QueueLog::force);
+    }
+
+    @Override
+    public boolean isTransactional() {
+        return false;
+    }
+
+    @Override
+    public boolean supportsLeases() {
+        return false;
+    }
+
+    @Override
+    public void validate(MessageRecord message) {
+        if (message.priority() != Message.DEFAULT_PRIORITY) {
+            throw new InvalidMessageException("The message log does not support priorities: " + message.priority());
+        }
+        if (message.deliverAt() != null && message.deliverAt().isAfter(message.timestamp())) {
+            throw new InvalidMessageException("The message log does not support scheduled delivery: " + message.deliverAt());
+        }
+        if (recordSize(message) > segmentSize) {
+            throw new InvalidMessageException("Message does not fit in a log segment of " + segmentSize + " bytes");
+        }
+    }
+
+    @Override
+    public void append(List<MessageRecord> messages) {
+        if (!messages.isEmpty()) {
+            logs.computeIfAbsent(messages.getFirst().queue(), this::createLog).append(messages);
+        }
+    }
+
+    /**
+     * Appends messages again, with their last error shortened where needed for the record to fit in a segment: the
+     * message was validated without it, and a record is never split across segments.
+     */
+    @Override
+    public void requeue(List<MessageRecord> messages) {
+        append(messages.stream().map(this::fitToSegment).toList());
+    }
+
+    /**
+     * Pops the oldest message; every message of a log has the same priority.
+     */
+    @Override
+    public Optional<MessageRecord> pop(String queueName, boolean oldest) {
+        return log(queueName).flatMap(QueueLog::pop);
+    }
+
+    @Override
+    public Optional<MessageRecord> peek(String queueName) {
+        return log(queueName).flatMap(QueueLog::peek);
+    }
+
+    @Override
+    public Optional<MessageRecord> findById(String queueName, UUID id) {
+        return log(queueName).flatMap(log -> log.findById(id));
+    }
+
+    @Override
+    public Map<String, Long> sizes() {
+        return logs.values().stream()
+                .collect(Collectors.toMap(log -> log.queueName, QueueLog::size));
+    }
+
+    @Override
+    public long tail(String queueName) {
+        return log(queueName).map(QueueLog::tail).orElse(0L);
+    }
+
+    @Override
+    public int purge(String queueName, long upTo, int limit) {
+        return log(queueName).map(log -> log.purge(upTo, limit)).orElse(0);
+    }
+
+    private Optional<QueueLog> log(String queueName) {
+        return Optional.ofNullable(logs.get(queueName));
+    }
+
+    private QueueLog createLog(String queueName) {
+        QueueLog log = new QueueLog(queueName, directory.resolve(queueName));
+        log.create();
+        return log;
+    }
+
+    private MessageRecord fitToSegment(MessageRecord message) {
+        int excess = recordSize(message) - segmentSize;
+        if (excess <= 0 || message.lastError() == null) {
+            return message;
+        }
+        byte[] lastError = message.lastError().getBytes(StandardCharsets.UTF_8);
+        int length = Math.max(0, lastError.length - excess);
+        // cut before a character, not within its continuation bytes
+        while (length > 0 && (lastError[length] & 0xC0) == 0x80) {
+            length--;
+        }
+        logger.debug("Shortened the last error of message {} to fit in a log segment", message.id());
+        return new MessageRecord(message.id(), message.text(), message.dataSize(), message.timestamp(), message.queue(),
+                message.priority(), message.deliverAt(), message.attempts(), new String(lastError, 0, length, StandardCharsets.UTF_8));
+    }
+
+    private static int recordSize(MessageRecord message) {
+        return HEADER_SIZE + encode(message).length;
+    }
+
+    private static byte[] encode(MessageRecord message) {
+        byte[] text = message.text() == null ? null : message.text().getBytes(StandardCharsets.UTF_8);
+        byte[] lastError = message.lastError() == null ? null : message.lastError().getBytes(StandardCharsets.UTF_8);
+        int flags = (text != null ? HAS_TEXT : 0)
+                | (message.dataSize() != null ? HAS_DATA_SIZE : 0)
+                | (message.deliverAt() != null ? HAS_DELIVER_AT : 0)
+                | (lastError != null ? HAS_LAST_ERROR : 0);
+        int size = FIXED_CONTENT_SIZE
+                + (text != null ? Integer.BYTES + text.length : 0)
+                + (message.dataSize() != null ? Integer.BYTES : 0)
+                + (message.deliverAt() != null ? Long.BYTES + Integer.BYTES : 0)
+                + (lastError != null ? Integer.BYTES + lastError.length : 0);
+
+        ByteBuffer content = ByteBuffer.allocate(size)
+                .putLong(message.id().getMostSignificantBits())
+                .putLong(message.id().getLeastSignificantBits())
+                .putLong(message.timestamp().getEpochSecond())
+                .putInt(message.timestamp().getNano())
+                .putInt(message.priority())
+                .putInt(message.attempts())
+                .put((byte) flags);
+        if (text != null) {
+            content.putInt(text.length).put(text);
+        }
+        if (message.dataSize() != null) {
+            content.putInt(message.dataSize());
+        }
+        if (message.deliverAt() != null) {
+            content.putLong(message.deliverAt().getEpochSecond()).putInt(message.deliverAt().getNano());
+        }
+        if (lastError != null) {
+            content.putInt(lastError.length).put(lastError);
+        }
+        return content.array();
+    }
+
+    private static MessageRecord decode(String queueName, ByteBuffer content) {
+        UUID id = new UUID(content.getLong(), content.getLong());
+        Instant timestamp = Instant.ofEpochSecond(content.getLong(), content.getInt());
+        int priority = content.getInt();
+        int attempts = content.getInt();
+        int flags = content.get();
+        String text = (flags & HAS_TEXT) != 0 ? string(content) : null;
+        Integer dataSize = (flags & HAS_DATA_SIZE) != 0 ? content.getInt() : null;
+        Instant deliverAt = (flags & HAS_DELIVER_AT) != 0 ? Instant.ofEpochSecond(content.getLong(), content.getInt()) : null;
+        String lastError = (flags & HAS_LAST_ERROR) != 0 ? string(content) : null;
+        return new MessageRecord(id, text, dataSize, timestamp, queueName, priority, deliverAt, attempts, lastError);
+    }
+
+    private static String string(ByteBuffer content) {
+        byte[] bytes = new byte[content.getInt()];
+        content.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static int checksum(ByteBuffer content) {
+        CRC32C crc = new CRC32C();
+        crc.update(content);
+        return (int) crc.getValue();
+    }
+
+    /**
+     * Maps a file for reading and writing, in full if {@code size} is zero, otherwise growing it to {@code size}.
+     */
+    private static MappedByteBuffer map(Path path, long size) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, size == 0 ? channel.size() : Math.max(size, channel.size()));
+        }
+    }
+
+    /**
+     * A segment file, mapped in full.  Its records end at {@code limit}.
+     */
+    private static class Segment {
+
+        private final Path path;
+        private final long base;
+        private final MappedByteBuffer buffer;
+        private int limit;
+
+        private Segment(Path path, long base, MappedByteBuffer buffer) {
+            this.path = path;
+            this.base = base;
+            this.buffer = buffer;
+        }
+
+        private int capacity() {
+            return buffer.capacity();
+        }
+
+        private long end() {
+            return base + limit;
+        }
+
+        /**
+         * Gets the content of the record at an offset, or {@code null} if there is no complete record there.
+         */
+        private ByteBuffer content(int offset) {
+            if (offset + HEADER_SIZE > capacity()) {
+                return null;
+            }
+            int length = buffer.getInt(offset);
+            if (length <= 0 || length > capacity() - offset - HEADER_SIZE) {
+                return null;
+            }
+            ByteBuffer content = buffer.slice(offset + HEADER_SIZE, length);
+            if (checksum(content.duplicate()) != buffer.getInt(offset + Integer.BYTES)) {
+                return null;
+            }
+            return content;
+        }
+    }
+
+    /**
+     * The log of one queue: its segments by base position, its head and its index.
+     */
+    private class QueueLog {
+
+        private final String queueName;
+        private final Path queueDirectory;
+        private final ReentrantLock lock = new ReentrantLock();
+        private final TreeMap<Long, Segment> segments = new TreeMap<>();
+        private final Map<UUID, Long> index = new HashMap<>();
+        private MappedByteBuffer headBuffer;
+        private long head;
+
+        private QueueLog(String queueName, Path queueDirectory) {
+            this.queueName = queueName;
+            this.queueDirectory = queueDirectory;
+        }
+
+        private void create() {
+            try {
+                Files.createDirectories(queueDirectory);
+                headBuffer = map(queueDirectory.resolve(HEAD_FILE), Long.BYTES);
+                addSegment(0);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to create the message log of queue " + queueName, e);
+            }
+        }
+
+        /**
+         * Maps the segments from the one holding the head, deleting those before, and scans them to rebuild the index.
+         * The log is truncated at the first incomplete record.
+         */
+        private void recover() {
+            try {
+                headBuffer = map(queueDirectory.resolve(HEAD_FILE), Long.BYTES);
+                try (Stream<Path> files = Files.list(queueDirectory)) {
+                    for (Path path : files.filter(path -> path.getFileName().toString().endsWith(SEGMENT_SUFFIX)).toList()) {
+                        if (Files.size(path) == 0) {
+                            // created, but not mapped yet, when the application stopped
+                            Files.delete(path);
+                            continue;
+                        }
+                        String name = path.getFileName().toString();
+                        long base = Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+                        segments.put(base, new Segment(path, base, map(path, 0)));
+                    }
+                }
+            } catch (IOException | NumberFormatException e) {
+                throw new IllegalStateException("Failed to recover the message log of queue " + queueName, e);
+            }
+            if (segments.isEmpty()) {
+                addSegment(0);
+            }
+
+            head = headBuffer.getLong(0);
+            Long headBase = segments.floorKey(head);
+            if (headBase == null) {
+                head = segments.firstKey();
+                headBase = head;
+            }
+            while (segments.firstKey() < headBase) {
+                delete(segments.pollFirstEntry().getValue());
+            }
+
+            boolean truncated = false;
+            for (Segment segment : List.copyOf(segments.values())) {
+                if (truncated) {
+                    segments.remove(segment.base);
+                    delete(segment);
+                    continue;
+                }
+                truncated = !scan(segment, segment.base == headBase ? (int) (head - headBase) : 0);
+            }
+            writeHead();
+            releaseConsumed();
+            logger.debug("Recovered {} message(s) of queue {} from {} segment(s)", index.size(), queueName, segments.size());
+        }
+
+        /**
+         * Indexes the records of a segment from an offset.
+         *
+         * @return Whether the records end with an end-of-segment marker, so the log goes on in the next segment.
+         */
+        private boolean scan(Segment segment, int offset) {
+            ByteBuffer content;
+            while ((content = segment.content(offset)) != null) {
+                index.put(new UUID(content.getLong(0), content.getLong(Long.BYTES)), segment.base + offset);
+                offset += HEADER_SIZE + content.capacity();
+            }
+            segment.limit = offset;
+            if (offset + Integer.BYTES <= segment.capacity() && segment.buffer.getInt(offset) == END_OF_SEGMENT) {
+                return true;
+            }
+            if (offset + Integer.BYTES <= segment.capacity() && segment.buffer.getInt(offset) != 0) {
+                logger.warn("Truncated the message log of queue {} at an incomplete record at position {}", queueName, segment.base + offset);
+                for (int i = offset; i < segment.capacity(); i++) {
+                    segment.buffer.put(i, (byte) 0);
+                }
+            }
+            return offset + HEADER_SIZE > segment.capacity();
+        }
+
+        private void append(List<MessageRecord> messages) {
+            lock.lock();
+            try {
+                Segment segment = segments.lastEntry().getValue();
+                int start = segment.limit;
+                for (MessageRecord message : messages) {
+                    byte[] content = encode(message);
+                    if (segment.limit + HEADER_SIZE + content.length > segment.capacity()) {
+                        if (force) {
+                            segment.buffer.force(start, segment.limit - start);
+                        }
+                        segment = roll(segment);
+                        start = 0;
+                    }
+                    int offset = segment.limit;
+                    segment.buffer.put(offset + HEADER_SIZE, content);
+                    segment.buffer.putInt(offset + Integer.BYTES, checksum(ByteBuffer.wrap(content)));
+                    segment.buffer.putInt(offset, content.length);
+                    segment.limit += HEADER_SIZE + content.length;
+                    index.put(message.id(), segment.base + offset);
+                }
+                if (force) {
+                    segment.buffer.force(start, segment.limit - start);
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private Optional<MessageRecord> pop() {
+            return remove(content -> decode(queueName, content));
+        }
+
+        private Optional<MessageRecord> peek() {
+            lock.lock();
+            try {
+                if (index.isEmpty()) {
+                    return Optional.empty();
+                }
+                return Optional.of(decode(queueName, headContent()));
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private Optional<MessageRecord> findById(UUID id) {
+            lock.lock();
+            try {
+                Long position = index.get(id);
+                if (position == null) {
+                    return Optional.empty();
+                }
+                Segment segment = segments.floorEntry(position).getValue();
+                return Optional.of(decode(queueName, segment.content((int) (position - segment.base))));
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private long size() {
+            lock.lock();
+            try {
+                return index.size();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private long tail() {
+            lock.lock();
+            try {
+                return segments.lastEntry().getValue().end();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private int purge(long upTo, int limit) {
+            int removed = 0;
+            while (removed < limit && remove(content -> content, upTo).isPresent()) {
+                removed++;
+            }
+            return removed;
+        }
+
+        private <T> Optional<T> remove(Function<ByteBuffer, T> read) {
+            return remove(read, Long.MAX_VALUE);
+        }
+
+        /**
+         * Moves the head past the record at the head, if there is one that ends at or before {@code upTo}.
+         */
+        private <T> Optional<T> remove(Function<ByteBuffer, T> read, long upTo) {
+            lock.lock();
+            try {
+                if (index.isEmpty()) {
+                    return Optional.empty();
+                }
+                ByteBuffer content = headContent();
+                long next = head + HEADER_SIZE + content.capacity();
+                if (next > upTo) {
+                    return Optional.empty();
+                }
+                T removed = read.apply(content.duplicate());
+                index.remove(new UUID(content.getLong(0), content.getLong(Long.BYTES)));
+                head = next;
+                writeHead();
+                releaseConsumed();
+                return Optional.of(removed);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private ByteBuffer headContent() {
+            Segment segment = segments.firstEntry().getValue();
+            return segment.content((int) (head - segment.base));
+        }
+
+        private void force() {
+            lock.lock();
+            try {
+                segments.values().forEach(segment -> segment.buffer.force());
+                headBuffer.force();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Ends the active segment with a marker and starts the next one.
+         */
+        private Segment roll(Segment segment) {
+            if (segment.limit + Integer.BYTES <= segment.capacity()) {
+                segment.buffer.putInt(segment.limit, END_OF_SEGMENT);
+            }
+            Segment next = addSegment(segment.base + segment.capacity());
+            releaseConsumed();
+            return next;
+        }
+
+        private Segment addSegment(long base) {
+            Path path = queueDirectory.resolve(String.format("%020d%s", base, SEGMENT_SUFFIX));
+            try {
+                Segment segment = new Segment(path, base, map(path, segmentSize));
+                segments.put(base, segment);
+                return segment;
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to create log segment " + path, e);
+            }
+        }
+
+        /**
+         * Deletes the segments the head has left, moving the head to the start of the next one first.
+         */
+        private void releaseConsumed() {
+            while (segments.size() > 1 && head >= segments.firstEntry().getValue().end()) {
+                Segment consumed = segments.pollFirstEntry().getValue();
+                head = segments.firstKey();
+                writeHead();
+                delete(consumed);
+            }
+        }
+
+        private void writeHead() {
+            headBuffer.putLong(0, head);
+            if (force) {
+                headBuffer.force();
+            }
+        }
+
+        /**
+         * Deletes a segment file.  Its mapping is released once the buffer is garbage collected.
+         */
+        private void delete(Segment segment) {
+            try {
+                Files.deleteIfExists(segment.path);
+                logger.debug("Deleted consumed log segment {}", segment.path);
+            } catch (IOException e) {
+                logger.warn("Failed to delete consumed log segment {}", segment.path, e);
+            }
+        }
+    }
+}
@@ -0,0 +1,254 @@
+package com.thedamones.bv.queue;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Keeps messages in memory only, {@code queue.store.type=memory}, for queues whose messages may be lost when the
+ * application stops.
+ * <p>
+ * Each queue has one lock-free linked queue ({@link ConcurrentLinkedQueue}) per priority, so producers and consumers
+ * never block each other, and an index of message IDs ({@link ConcurrentHashMap}) that serves
+ * {@link #findById(String, UUID)} and counts the messages in constant time.  A message is taken by whichever consumer
+ * first flips its {@code taken} flag: popping it from its priority, removing it by ID or purging it.  A message removed
+ * by ID is not unlinked from its priority queue right away, as handed off messages are at its tail, but once it
+ * reaches the head, where the next pop or peek unlinks it, so reads never walk over more than one taken message.
+ * <p>
+ * Delivery times are rejected and leases are not supported.  The position of a message is its arrival number in its
+ * queue.
+ */
+@Component
+@ConditionalOnProperty(name = "queue.store.type", havingValue = "memory")
+public class MemoryQueueStore implements QueueStore {
+
+    private final Map<String, MemoryQueue> queues = new ConcurrentHashMap<>();
+
+    @Override
+    public boolean isTransactional() {
+        return false;
+    }
+
+    @Override
+    public boolean supportsLeases() {
+        return false;
+    }
+
+    @Override
+    public void validate(MessageRecord message) {
+        if (message.deliverAt() != null && message.deliverAt().isAfter(message.timestamp())) {
+            throw new InvalidMessageException("The memory store does not support scheduled delivery: " + message.deliverAt());
+        }
+    }
+
+    @Override
+    public void append(List<MessageRecord> messages) {
+        if (!messages.isEmpty()) {
+            MemoryQueue queue = queues.computeIfAbsent(messages.getFirst().queue(), name -> new MemoryQueue());
+            messages.forEach(queue::add);
+        }
+    }
+
+    @Override
+    public void requeue(List<MessageRecord> messages) {
+        append(messages);
+    }
+
+    @Override
+    public Optional<MessageRecord> pop(String queueName, boolean oldest) {
+        return queue(queueName).flatMap(queue -> queue.pop(oldest));
+    }
+
+    @Override
+    public Optional<MessageRecord> peek(String queueName) {
+        return queue(queueName).flatMap(MemoryQueue::peek);
+    }
+
+    @Override
+    public Optional<MessageRecord> findById(String queueName, UUID id) {
+        return queue(queueName).flatMap(queue -> queue.findById(id));
+    }
+
+    @Override
+    public Optional<MessageRecord> remove(String queueName, UUID id) {
+        return queue(queueName).flatMap(queue -> queue.remove(id));
+    }
+
+    @Override
+    public Map<String, Long> sizes() {
+        return queues.entrySet().stream()
+                .collect(Collectors.toMap(Map.Entry::getKey, entry -> entry.getValue().size()));
+    }
+
+    @Override
+    public long tail(String queueName) {
+        return queue(queueName).map(MemoryQueue::tail).orElse(0L);
+    }
+
+    @Override
+    public int purge(String queueName, long upTo, int limit) {
+        return queue(queueName).map(queue -> queue.purge(upTo, limit)).orElse(0);
+    }
+
+    private Optional<MemoryQueue> queue(String queueName) {
+        return Optional.ofNullable(queues.get(queueName));
+    }
+
+    /**
+     * A message with its arrival number, taken at most once.
+     */
+    private static final class Entry {
+
+        private final MessageRecord message;
+        private final long position;
+        private final AtomicBoolean taken = new AtomicBoolean();
+
+        private Entry(MessageRecord message, long position) {
+            this.message = message;
+            this.position = position;
+        }
+
+        private boolean take() {
+            return taken.compareAndSet(false, true);
+        }
+
+        private boolean isTaken() {
+            return taken.get();
+        }
+    }
+
+    /**
+     * The messages of one queue.
+     */
+    private static final class MemoryQueue {
+
+        private final List<ConcurrentLinkedQueue<Entry>> priorities = IntStream.rangeClosed(0, Message.MAX_PRIORITY)
+                .mapToObj(priority -> new ConcurrentLinkedQueue<Entry>())
+                .toList();
+        private final Map<UUID, Entry> index = new ConcurrentHashMap<>();
+        private final AtomicLong positions = new AtomicLong();
+
+        private void add(MessageRecord message) {
+            Entry entry = new Entry(message, positions.incrementAndGet());
+            // Indexed first, so a message can be found by ID as soon as it can be popped
+            index.put(message.id(), entry);
+            priorities.get(message.priority()).offer(entry);
+        }
+
+        private Optional<MessageRecord> pop(boolean oldest) {
+            if (oldest) {
+                return oldestPriority().flatMap(this::pop);
+            }
+            for (int priority = Message.MAX_PRIORITY; priority >= 0; priority--) {
+                Optional<MessageRecord> message = pop(priorities.get(priority));
+                if (message.isPresent()) {
+                    return message;
+                }
+            }
+            return Optional.empty();
+        }
+
+        private Optional<MessageRecord> pop(ConcurrentLinkedQueue<Entry> priority) {
+            Entry entry;
+            while ((entry = priority.poll()) != null) {
+                if (entry.take()) {
+                    index.remove(entry.message.id(), entry);
+                    return Optional.of(entry.message);
+                }
+            }
+            return Optional.empty();
+        }
+
+        /**
+         * Finds the priority whose first message arrived first.  A concurrent pop may take that message before it is
+         * popped from here, in which case the next message of the same priority is popped instead.
+         */
+        private Optional<ConcurrentLinkedQueue<Entry>> oldestPriority() {
+            ConcurrentLinkedQueue<Entry> oldest = null;
+            long oldestPosition = Long.MAX_VALUE;
+            for (ConcurrentLinkedQueue<Entry> priority : priorities) {
+                Entry first = first(priority);
+                if (first != null && first.position < oldestPosition) {
+                    oldest = priority;
+                    oldestPosition = first.position;
+                }
+            }
+            return Optional.ofNullable(oldest);
+        }
+
+        private Optional<MessageRecord> peek() {
+            for (int priority = Message.MAX_PRIORITY; priority >= 0; priority--) {
+                Entry first = first(priorities.get(priority));
+                if (first != null) {
+                    return Optional.of(first.message);
+                }
+            }
+            return Optional.empty();
+        }
+
+        private static Entry first(ConcurrentLinkedQueue<Entry> priority) {
+            Entry entry;
+            while ((entry = priority.peek()) != null && entry.isTaken()) {
+                priority.remove(entry);
+            }
+            return entry;
+        }
+
+        private Optional<MessageRecord> findById(UUID id) {
+            return Optional.ofNullable(index.get(id))
+                    .filter(entry -> !entry.isTaken())
+                    .map(entry -> entry.message);
+        }
+
+        private Optional<MessageRecord> remove(UUID id) {
+            Entry entry = index.get(id);
+            if (entry == null || !entry.take()) {
+                return Optional.empty();
+            }
+            index.remove(id, entry);
+            return Optional.of(entry.message);
+        }
+
+        private long size() {
+            return index.size();
+        }
+
+        private long tail() {
+            return positions.get();
+        }
+
+        /**
+         * Takes the messages that arrived up to {@code upTo}, first in each priority.  Concurrent producers may link
+         * their messages out of position order, so a later message does not end the scan of its priority.
+         */
+        private int purge(long upTo, int limit) {
+            int purged = 0;
+            for (ConcurrentLinkedQueue<Entry> priority : priorities) {
+                Iterator<Entry> entries = priority.iterator();
+                while (purged < limit && entries.hasNext()) {
+                    Entry entry = entries.next();
+                    if (entry.position > upTo) {
+                        continue;
+                    }
+                    entries.remove();
+                    if (entry.take()) {
+                        index.remove(entry.message.id(), entry);
+                        purged++;
+                    }
+                }
+            }
+            return purged;
+        }
+    }
+}
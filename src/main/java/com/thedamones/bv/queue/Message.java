@@ -1,9 +1,17 @@
 package com.thedamones.bv.queue;
 
+import jakarta.persistence.Column;
 import jakarta.persistence.Entity;
-import jakarta.persistence.GeneratedValue;
-import jakarta.persistence.GenerationType;
+import jakarta.persistence.EnumType;
+import jakarta.persistence.Enumerated;
 import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
+import org.hibernate.annotations.ColumnDefault;
+import org.hibernate.annotations.Formula;
+import org.hibernate.annotations.JdbcTypeCode;
+import org.hibernate.annotations.UuidGenerator;
+import org.hibernate.type.SqlTypes;
 
 import java.time.Instant;
 import java.util.UUID;
@@ -13,15 +21,118 @@ import java.util.UUID;
  * This entity contains the text and a data size, used for simulating processing delays.
  */
 @Entity
+@Table(indexes = {
+        @Index(name = "idx_message_queue_state_sequence_number", columnList = "queue_name, state, sequence_number", unique = true),
+        @Index(name = "idx_message_queue_state_priority_sequence_number", columnList = "queue_name, state, priority desc, sequence_number"),
+        @Index(name = "idx_message_state_deliver_at", columnList = "state, deliver_at"),
+        @Index(name = "idx_message_lease_id", columnList = "lease_id", unique = true)
+})
 public class Message {
 
+    /**
+     * Priority of a message enqueued without one.
+     */
+    public static final int DEFAULT_PRIORITY = 0;
+
+    /**
+     * Highest priority.  Priorities range from {@value #DEFAULT_PRIORITY} to {@value #MAX_PRIORITY}; higher priorities
+     * are dequeued first.
+     */
+    public static final int MAX_PRIORITY = 9;
+
+    /**
+     * Maximum length of the {@link #getLastError() last error} kept on a message.
+     */
+    public static final int MAX_ERROR_LENGTH = 1000;
+
+    /**
+     * Number of size classes.  A message of {@code dataSize} below 10 is in class 0, below 100 in class 1, and so on,
+     * with everything from {@code 10^(SIZE_CLASSES - 1)} up in the last class.
+     */
+    public static final int SIZE_CLASSES = 5;
+
     /**
      * Unique identifier for the message.
+     * Generated by {@link TimeOrderedUuidGenerator} so that inserts append to the primary key index; use
+     * {@code @UuidGenerator(style = UuidGenerator.Style.RANDOM)} for random (version 4) ids.
      */
     @Id
-    @GeneratedValue(strategy = GenerationType.UUID)
+    @UuidGenerator(algorithm = TimeOrderedUuidGenerator.class)
     private UUID id;
 
+    /**
+     * Name of the queue the message belongs to.  Together with the sequence number it forms the index every queue
+     * operation goes through, so each queue is a separate partition of that index.
+     */
+    @Column(name = "queue_name", length = 64, nullable = false)
+    @ColumnDefault("'" + QueueRegistry.DEFAULT_QUEUE + "'")
+    private String queueName;
+
+    /**
+     * Position of the message in its queue, generated by the database on insert.
+     * Monotonically increasing and indexed after the queue name, it defines FIFO order and makes head-of-queue lookups
+     * an index seek.
+     * Not populated on a newly persisted entity until it is re-read.
+     */
+    @Column(name = "sequence_number", insertable = false, updatable = false,
+            columnDefinition = "bigint generated by default as identity")
+    private Long sequenceNumber;
+
+    /**
+     * Priority of the message, from {@value #DEFAULT_PRIORITY} to {@value #MAX_PRIORITY}.  Messages of a queue are
+     * dequeued highest priority first, and in sequence number order within a priority.
+     */
+    @Column(name = "priority", nullable = false)
+    @ColumnDefault("" + DEFAULT_PRIORITY)
+    @JdbcTypeCode(SqlTypes.TINYINT)
+    private int priority;
+
+    /**
+     * Order of magnitude of the data size, see {@link #sizeClass(Integer)}, generated by the database so that rows
+     * written by native statements, and those written before the column existed, are classified too.  The
+     * {@link QueueScheduler} uses it as the cost of processing the message.
+     * The column and its index are created by {@code schema.sql} rather than by Hibernate, whose schema update cannot
+     * compare a generated column with its definition and would alter it on every start; it is only read here.
+     * Not populated on a newly persisted entity until it is re-read.
+     */
+    @Formula("size_class")
+    private Integer sizeClass;
+
+    /**
+     * Whether the message can be dequeued yet.
+     */
+    @Enumerated(EnumType.STRING)
+    @Column(name = "state", columnDefinition = "varchar(16) default 'READY' not null")
+    private MessageState state = MessageState.READY;
+
+    /**
+     * When a scheduled message becomes {@link MessageState#READY ready}, or {@code null} if it was enqueued for
+     * immediate delivery.  For an {@link MessageState#IN_FLIGHT in-flight} message, when its lease expires.
+     */
+    @Column(name = "deliver_at")
+    private Instant deliverAt;
+
+    /**
+     * The lease of an {@link MessageState#IN_FLIGHT in-flight} message, {@code null} otherwise.  Acknowledging or
+     * extending a lease looks the message up by this ID, so a consumer whose lease expired never acknowledges the
+     * message on behalf of the consumer that leased it next.
+     */
+    @Column(name = "lease_id")
+    private UUID leaseId;
+
+    /**
+     * Number of times processing the message failed.  A failed message is scheduled again with a backoff, until it
+     * runs out of attempts and is moved to the dead-letter store.
+     */
+    @Column(name = "attempts", columnDefinition = "int default 0 not null")
+    private int attempts;
+
+    /**
+     * The error of the last failed attempt, or {@code null} if processing never failed.
+     */
+    @Column(name = "last_error", length = MAX_ERROR_LENGTH)
+    private String lastError;
+
     /**
      * The textual content of the message.
      */
@@ -50,8 +161,33 @@ public class Message {
      * @param dataSize The size of the message data.
      */
     public Message(String text, Integer dataSize) {
+        this(QueueRegistry.DEFAULT_QUEUE, text, dataSize);
+    }
+
+    /**
+     * Constructs a new Message in the named queue with the specified text and data size.
+     *
+     * @param queueName The name of the queue.
+     * @param text      The message text.
+     * @param dataSize  The size of the message data.
+     */
+    public Message(String queueName, String text, Integer dataSize) {
+        this(queueName, text, dataSize, DEFAULT_PRIORITY);
+    }
+
+    /**
+     * Constructs a new Message in the named queue with the specified text, data size and priority.
+     *
+     * @param queueName The name of the queue.
+     * @param text      The message text.
+     * @param dataSize  The size of the message data.
+     * @param priority  The message priority.
+     */
+    public Message(String queueName, String text, Integer dataSize, int priority) {
+        this.queueName = queueName;
         this.text = text;
         this.dataSize = dataSize;
+        this.priority = priority;
         this.timestamp = Instant.now();
     }
 
@@ -73,6 +209,171 @@ public class Message {
         this.id = id;
     }
 
+    /**
+     * Gets the name of the queue the message belongs to.
+     *
+     * @return The queue name.
+     */
+    public String getQueueName() {
+        return queueName;
+    }
+
+    /**
+     * Sets the name of the queue the message belongs to.
+     *
+     * @param queueName The queue name.
+     */
+    public void setQueueName(String queueName) {
+        this.queueName = queueName;
+    }
+
+    /**
+     * Gets the message sequence number.
+     *
+     * @return The message sequence number.
+     */
+    public Long getSequenceNumber() {
+        return sequenceNumber;
+    }
+
+    /**
+     * Sets the message sequence number.
+     *
+     * @param sequenceNumber The message sequence number.
+     */
+    public void setSequenceNumber(Long sequenceNumber) {
+        this.sequenceNumber = sequenceNumber;
+    }
+
+    /**
+     * Gets the message priority.
+     *
+     * @return The message priority.
+     */
+    public int getPriority() {
+        return priority;
+    }
+
+    /**
+     * Sets the message priority.
+     *
+     * @param priority The message priority.
+     */
+    public void setPriority(int priority) {
+        this.priority = priority;
+    }
+
+    /**
+     * Gets the size class of the message, generated by the database.
+     *
+     * @return The size class, or {@code null} if the message was not read from the database.
+     */
+    public Integer getSizeClass() {
+        return sizeClass;
+    }
+
+    /**
+     * Gets the size class of a data size: its order of magnitude, capped at {@code SIZE_CLASSES - 1}.  The same
+     * classification as the generated {@code size_class} column.
+     *
+     * @param dataSize The size of the message data.
+     * @return The size class, from 0 to {@code SIZE_CLASSES - 1}.
+     */
+    public static int sizeClass(Integer dataSize) {
+        if (dataSize == null) {
+            return SIZE_CLASSES - 1;
+        }
+        int sizeClass = 0;
+        for (long bound = 10; sizeClass < SIZE_CLASSES - 1 && dataSize >= bound; bound *= 10) {
+            sizeClass++;
+        }
+        return sizeClass;
+    }
+
+    /**
+     * Gets the message state.
+     *
+     * @return The message state.
+     */
+    public MessageState getState() {
+        return state;
+    }
+
+    /**
+     * Sets the message state.
+     *
+     * @param state The message state.
+     */
+    public void setState(MessageState state) {
+        this.state = state;
+    }
+
+    /**
+     * Gets the time the message is delivered at.
+     *
+     * @return The delivery time, or {@code null} for immediate delivery.
+     */
+    public Instant getDeliverAt() {
+        return deliverAt;
+    }
+
+    /**
+     * Schedules the message for delivery at a later time.  A delivery time that is not after the message timestamp
+     * leaves the message ready.
+     *
+     * @param deliverAt The delivery time, or {@code null} for immediate delivery.
+     */
+    public void setDeliverAt(Instant deliverAt) {
+        this.deliverAt = deliverAt;
+        this.state = deliverAt != null && deliverAt.isAfter(timestamp) ? MessageState.SCHEDULED : MessageState.READY;
+    }
+
+    /**
+     * Gets the number of failed processing attempts.
+     *
+     * @return The number of failed attempts.
+     */
+    public int getAttempts() {
+        return attempts;
+    }
+
+    /**
+     * Sets the number of failed processing attempts.
+     *
+     * @param attempts The number of failed attempts.
+     */
+    public void setAttempts(int attempts) {
+        this.attempts = attempts;
+    }
+
+    /**
+     * Gets the error of the last failed processing attempt.
+     *
+     * @return The last error, or {@code null} if processing never failed.
+     */
+    public String getLastError() {
+        return lastError;
+    }
+
+    /**
+     * Sets the error of the last failed processing attempt.
+     *
+     * @param lastError The last error.
+     */
+    public void setLastError(String lastError) {
+        this.lastError = lastError;
+    }
+
+    /**
+     * Gets the lease of the message.  Leases are only taken and released by the native statements of
+     * {@link MessageRepositoryCustom}.
+     *
+     * @return The lease ID, or {@code null} if the message is not in flight.
+     */
+    public UUID getLeaseId() {
+        return leaseId;
+    }
+
     /**
      * Gets the message text.
      *
@@ -1,39 +1,100 @@
 package com.thedamones.bv.queue;
 
+import jakarta.servlet.http.HttpServletRequest;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.hateoas.CollectionModel;
 import org.springframework.hateoas.EntityModel;
+import org.springframework.hateoas.IanaLinkRelations;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.time.Duration;
+import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 
-import static org.springframework.hateoas.server.mvc.WebMvcLinkBuilder.linkTo;
-import static org.springframework.hateoas.server.mvc.WebMvcLinkBuilder.methodOn;
-
+/**
+ * The messages of the {@link QueueRegistry#DEFAULT_QUEUE default queue}.  Other queues are served by the
+ * {@link NamedQueueMessageController}.
+ */
 @RestController
 @RequestMapping("/v2/queue/messages")
 public class MessageController {
 
     private final MessageService messageService;
+    private final GroupCommitEnqueuer groupCommitEnqueuer;
+    private final LongPollDequeueService longPollDequeueService;
     private final MessageModelAssembler messageModelAssembler;
+    private final QueueLinks queueLinks;
+    private final AdmissionControl admissionControl;
 
     @Autowired
-    public MessageController(MessageService messageService, MessageModelAssembler messageModelAssembler) {
+    public MessageController(MessageService messageService, GroupCommitEnqueuer groupCommitEnqueuer,
+                             LongPollDequeueService longPollDequeueService,
+                             MessageModelAssembler messageModelAssembler, QueueLinks queueLinks,
+                             AdmissionControl admissionControl) {
         this.messageService = messageService;
+        this.groupCommitEnqueuer = groupCommitEnqueuer;
+        this.longPollDequeueService = longPollDequeueService;
         this.messageModelAssembler = messageModelAssembler;
+        this.queueLinks = queueLinks;
+        this.admissionControl = admissionControl;
     }
 
     /**
-     * Adds a message to the queue.
+     * Adds a message to the queue.  With {@code queue.group-commit.enabled}, the message is stored along with other
+     * enqueues, and the response is sent once they are committed.  Responds with {@code 429 Too Many Requests} if the
+     * {@link AdmissionControl} rejects the request.
      *
-     * @param request The message to enqueue.
+     * @param request        The message to enqueue.
+     * @param servletRequest The HTTP request, which names the client.
      * @return The enqueued message.
      */
     @PostMapping
     @ResponseStatus(HttpStatus.CREATED)
-    public EntityModel<MessageRecord> enqueueMessage(@RequestBody EnqueueMessageRecord request) {
-        MessageRecord enqueuedMessage = messageService.enqueueMessage(request);
-        return messageModelAssembler.toModel(enqueuedMessage);
+    public CompletableFuture<EntityModel<MessageRecord>> enqueueMessage(@RequestBody EnqueueMessageRecord request,
+                                                                        HttpServletRequest servletRequest) {
+        admissionControl.admit(QueueRegistry.DEFAULT_QUEUE, 1, servletRequest);
+        // the message may be committed on another thread; links are built against this request
+        String baseUri = queueLinks.baseUri();
+        return groupCommitEnqueuer.enqueue(QueueRegistry.DEFAULT_QUEUE, request)
+                .thenApply(message -> messageModelAssembler.toModel(message, baseUri));
+    }
+
+    /**
+     * Adds a message to the queue without waiting for it to be stored.  With {@code queue.group-commit.enabled}, the
+     * response is {@code 202 Accepted}, sent as soon as the message has its ID, and the message is lost if it cannot be
+     * stored.  Otherwise {@code durable=false} is ignored: the message is stored first, and the response is
+     * {@code 201 Created}.
+     *
+     * @param request        The message to enqueue.
+     * @param servletRequest The HTTP request, which names the client.
+     * @return The accepted message.
+     */
+    @PostMapping(params = "durable=false")
+    public ResponseEntity<EntityModel<MessageRecord>> acceptMessage(@RequestBody EnqueueMessageRecord request,
+                                                                    HttpServletRequest servletRequest) {
+        admissionControl.admit(QueueRegistry.DEFAULT_QUEUE, 1, servletRequest);
+        MessageRecord acceptedMessage = groupCommitEnqueuer.accept(QueueRegistry.DEFAULT_QUEUE, request);
+        HttpStatus status = groupCommitEnqueuer.isEnabled() ? HttpStatus.ACCEPTED : HttpStatus.CREATED;
+        return ResponseEntity.status(status).body(messageModelAssembler.toModel(acceptedMessage));
+    }
+
+    /**
+     * Adds a batch of messages to the queue in a single transaction.
+     *
+     * @param requests       The messages to enqueue.
+     * @param servletRequest The HTTP request, which names the client.
+     * @return The enqueued messages, in request order.
+     */
+    @PostMapping("/batch")
+    @ResponseStatus(HttpStatus.CREATED)
+    public CollectionModel<EntityModel<MessageRecord>> enqueueMessages(@RequestBody List<EnqueueMessageRecord> requests,
+                                                                       HttpServletRequest servletRequest) {
+        admissionControl.admit(QueueRegistry.DEFAULT_QUEUE, requests.size(), servletRequest);
+        List<MessageRecord> enqueuedMessages = messageService.enqueueMessages(QueueRegistry.DEFAULT_QUEUE, requests);
+        return messageModelAssembler.toCollectionModel(enqueuedMessages);
     }
 
     /**
@@ -43,21 +104,65 @@ public class MessageController {
      */
     @DeleteMapping("/first")
     public EntityModel<MessageRecord> dequeueMessage() {
-        MessageRecord dequeuedMessage = messageService.dequeueMessage();
+        MessageRecord dequeuedMessage = messageService.dequeueMessage(QueueRegistry.DEFAULT_QUEUE);
         return messageModelAssembler.toModel(dequeuedMessage);
     }
 
+    /**
+     * Gets and removes a message from the queue, waiting up to {@code wait} seconds for one to be enqueued if the queue
+     * is empty.  The request is parked without holding a servlet thread.  This message will be deleted without being
+     * processed.
+     *
+     * @param waitSeconds How long to wait for a message, in seconds.
+     * @return The dequeued message.
+     */
+    @DeleteMapping(value = "/first", params = "wait")
+    public CompletableFuture<EntityModel<MessageRecord>> dequeueMessage(@RequestParam("wait") long waitSeconds) {
+        // the message is delivered on another thread; links are built against this request
+        String baseUri = queueLinks.baseUri();
+        return longPollDequeueService.dequeueMessage(QueueRegistry.DEFAULT_QUEUE, Duration.ofSeconds(waitSeconds))
+                .thenApply(message -> messageModelAssembler.toModel(message, baseUri));
+    }
+
+    /**
+     * Removes every message currently in the queue.  Messages enqueued while the purge runs are kept.
+     *
+     * @return The queue information after the purge.
+     */
     @DeleteMapping
     public EntityModel<QueueRecord> clearQueue() {
-        messageService.clearQueue();
+        messageService.clearQueue(QueueRegistry.DEFAULT_QUEUE);
+
+        QueueRecord queueRecord = messageService.getQueue(QueueRegistry.DEFAULT_QUEUE);
+
+        return EntityModel.of(queueRecord, queueLinks.queueInfo(queueLinks.baseUri(), QueueRegistry.DEFAULT_QUEUE));
+    }
+
+    /**
+     * Starts removing every message currently in the queue in the background.
+     *
+     * @return The running purge, linking to its progress resource.
+     */
+    @DeleteMapping(params = "async=true")
+    @ResponseStatus(HttpStatus.ACCEPTED)
+    public EntityModel<PurgeRecord> clearQueueAsync() {
+        PurgeRecord purgeRecord = messageService.clearQueueAsync(QueueRegistry.DEFAULT_QUEUE);
 
-        QueueRecord queueRecord = new QueueRecord(0);
+        String baseUri = queueLinks.baseUri();
+        return EntityModel.of(purgeRecord,
+                queueLinks.purge(baseUri, purgeRecord.id(), IanaLinkRelations.SELF),
+                queueLinks.queue(baseUri, QueueRegistry.DEFAULT_QUEUE, QueueLinks.QUEUE));
+    }
 
-        return EntityModel.of(queueRecord,
-                linkTo(methodOn(QueueController.class).getQueueInfo()).withSelfRel(),
-                linkTo(methodOn(MessageController.class).enqueueMessage(null)).withRel("enqueue"),
-                linkTo(methodOn(MessageController.class).dequeueMessage()).withRel("dequeue"),
-                linkTo(methodOn(MessageController.class).getClass()).withRel("messages"));
+    /**
+     * Gets the message at the head of the queue without removing it.
+     *
+     * @return The message the next dequeue takes.
+     */
+    @GetMapping("/first")
+    public EntityModel<MessageRecord> peekMessage() {
+        MessageRecord message = messageService.peekMessage(QueueRegistry.DEFAULT_QUEUE);
+        return messageModelAssembler.toModel(message);
     }
 
     /**
@@ -68,7 +173,7 @@ public class MessageController {
      */
     @GetMapping("/{id}")
     public EntityModel<MessageRecord> getMessage(@PathVariable UUID id) {
-        MessageRecord message = messageService.getMessageById(id);
+        MessageRecord message = messageService.getMessageById(QueueRegistry.DEFAULT_QUEUE, id);
         return messageModelAssembler.toModel(message);
     }
 
@@ -5,4 +5,8 @@ public class MessageEnqueueException extends RuntimeException {
     public MessageEnqueueException(String message) {
         super(message);
     }
+
+    public MessageEnqueueException(String message, Throwable cause) {
+        super(message, cause);
+    }
 }
@@ -1,17 +1,35 @@
 package com.thedamones.bv.queue;
 
+import java.util.List;
+
 /**
- * Event published after a message is successfully enqueued.
+ * Event published after one or more messages are successfully enqueued to a queue.
+ * A batch enqueue publishes a single event carrying every message in the batch.
  */
 public class MessageEnqueuedEvent {
 
-    private final MessageRecord messageRecord;
+    private final List<MessageRecord> messageRecords;
 
     public MessageEnqueuedEvent(MessageRecord messageRecord) {
-        this.messageRecord = messageRecord;
+        this(List.of(messageRecord));
+    }
+
+    public MessageEnqueuedEvent(List<MessageRecord> messageRecords) {
+        this.messageRecords = List.copyOf(messageRecords);
+    }
+
+    /**
+     * Gets the name of the queue the messages were enqueued to.
+     */
+    public String getQueue() {
+        return messageRecords.getFirst().queue();
     }
 
     public MessageRecord getMessageRecord() {
-        return messageRecord;
+        return messageRecords.getFirst();
+    }
+
+    public List<MessageRecord> getMessageRecords() {
+        return messageRecords;
     }
 }
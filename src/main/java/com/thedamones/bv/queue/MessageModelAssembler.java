@@ -1,19 +1,36 @@
 package com.thedamones.bv.queue;
 
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.hateoas.EntityModel;
+import org.springframework.hateoas.IanaLinkRelations;
 import org.springframework.hateoas.server.RepresentationModelAssembler;
 import org.springframework.stereotype.Component;
 
-import static org.springframework.hateoas.server.mvc.WebMvcLinkBuilder.linkTo;
-import static org.springframework.hateoas.server.mvc.WebMvcLinkBuilder.methodOn;
-
 @Component
 public class MessageModelAssembler implements RepresentationModelAssembler<MessageRecord, EntityModel<MessageRecord>> {
 
+    private final QueueLinks queueLinks;
+
+    @Autowired
+    public MessageModelAssembler(QueueLinks queueLinks) {
+        this.queueLinks = queueLinks;
+    }
+
     @Override
     public EntityModel<MessageRecord> toModel(MessageRecord message) {
+        return toModel(message, queueLinks.baseUri());
+    }
+
+    /**
+     * Converts a message, building its links against the given base URI rather than the current request.
+     *
+     * @param message The message.
+     * @param baseUri The base URI, see {@link QueueLinks#baseUri()}.
+     * @return The message with its links.
+     */
+    public EntityModel<MessageRecord> toModel(MessageRecord message, String baseUri) {
         return EntityModel.of(message,
-                linkTo(methodOn(MessageController.class).getMessage(message.id())).withSelfRel(),
-                linkTo(methodOn(QueueController.class).getQueueInfo()).withRel("queue"));
+                queueLinks.message(baseUri, message.queue(), message.id(), IanaLinkRelations.SELF),
+                queueLinks.queue(baseUri, message.queue(), QueueLinks.QUEUE));
     }
 }
@@ -3,5 +3,65 @@ package com.thedamones.bv.queue;
 import java.time.Instant;
 import java.util.UUID;
 
-public record MessageRecord(UUID id, String text, Integer dataSize, Instant timestamp) {
+public record MessageRecord(UUID id, String text, Integer dataSize, Instant timestamp, String queue, int priority,
+                            Instant deliverAt, int attempts, String lastError) {
+
+    /**
+     * Creates a record of a message with the {@link Message#DEFAULT_PRIORITY default priority} in the
+     * {@link QueueRegistry#DEFAULT_QUEUE default queue}.
+     */
+    public MessageRecord(UUID id, String text, Integer dataSize, Instant timestamp) {
+        this(id, text, dataSize, timestamp, QueueRegistry.DEFAULT_QUEUE);
+    }
+
+    /**
+     * Creates a record of a message with the {@link Message#DEFAULT_PRIORITY default priority}.
+     */
+    public MessageRecord(UUID id, String text, Integer dataSize, Instant timestamp, String queue) {
+        this(id, text, dataSize, timestamp, queue, Message.DEFAULT_PRIORITY);
+    }
+
+    /**
+     * Creates a record of a message enqueued for immediate delivery.
+     */
+    public MessageRecord(UUID id, String text, Integer dataSize, Instant timestamp, String queue, int priority) {
+        this(id, text, dataSize, timestamp, queue, priority, null);
+    }
+
+    /**
+     * Creates a record of a message that has never failed processing.
+     */
+    public MessageRecord(UUID id, String text, Integer dataSize, Instant timestamp, String queue, int priority,
+                         Instant deliverAt) {
+        this(id, text, dataSize, timestamp, queue, priority, deliverAt, 0, null);
+    }
+
+    /**
+     * Gets a copy of this record after a failed processing attempt.
+     *
+     * @param error         The error of the failed attempt.
+     * @param nextAttemptAt The time of the next attempt, {@code null} if there is none.
+     * @return The failed message, with one more attempt.
+     */
+    public MessageRecord withFailure(String error, Instant nextAttemptAt) {
+        return new MessageRecord(id, text, dataSize, timestamp, queue, priority, nextAttemptAt, attempts + 1, error);
+    }
+
+    /**
+     * Gets a copy of this record with another delivery time, e.g. the expiry of its lease.
+     *
+     * @param deliverAt The delivery time.
+     * @return The message, deliverable at {@code deliverAt}.
+     */
+    public MessageRecord withDeliverAt(Instant deliverAt) {
+        return new MessageRecord(id, text, dataSize, timestamp, queue, priority, deliverAt, attempts, lastError);
+    }
+
+    /**
+     * Gets the time the message became (or becomes) deliverable: its delivery time if it was scheduled, otherwise the
+     * time it was enqueued.
+     */
+    public Instant deliverableAt() {
+        return deliverAt != null ? deliverAt : timestamp;
+    }
 }
@@ -0,0 +1,30 @@
+package com.thedamones.bv.queue;
+
+import org.springframework.jdbc.core.RowMapper;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Instant;
+import java.util.UUID;
+
+/**
+ * Maps a row of the {@code message} table straight to a {@link MessageRecord}, bypassing the managed {@link Message}
+ * entity.
+ */
+public class MessageRecordRowMapper implements RowMapper<MessageRecord> {
+
+    @Override
+    public MessageRecord mapRow(ResultSet rs, int rowNum) throws SQLException {
+        return new MessageRecord(
+                rs.getObject("id", UUID.class),
+                rs.getString("text"),
+                rs.getObject("data_size", Integer.class),
+                rs.getObject("timestamp", Instant.class),
+                rs.getString("queue_name"),
+                rs.getInt("priority"),
+                rs.getObject("deliver_at", Instant.class),
+                rs.getInt("attempts"),
+                rs.getString("last_error")
+        );
+    }
+}
@@ -1,12 +1,158 @@
 package com.thedamones.bv.queue;
 
+import jakarta.persistence.LockModeType;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.Instant;
+import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.function.Supplier;
 
 @Repository
-public interface MessageRepository extends JpaRepository<Message, UUID> {
-    Optional<Message> findFirstByOrderByTimestampAsc();
+public interface MessageRepository extends JpaRepository<Message, UUID>, MessageRepositoryCustom {
+
+    /**
+     * Finds the message at the head of a queue (the highest priority ready message, then the lowest sequence number),
+     * without locking it.
+     * <p>
+     * Ordering by the queue name and state as well, although both are fixed, lets H2 walk the
+     * {@code (queue_name, state, priority desc, sequence_number)} index in order and stop at the first row, however
+     * many lower priority or scheduled messages are waiting.
+     *
+     * @param queueName The name of the queue.
+     * @return The message at the head of the queue, if any.
+     */
+    @Query("""
+            select m from Message m where m.queueName = :queueName and m.state = com.thedamones.bv.queue.MessageState.READY
+            order by m.queueName, m.state, m.priority desc, m.sequenceNumber limit 1""")
+    Optional<Message> findFirstInQueue(@Param("queueName") String queueName);
+
+    /**
+     * Finds the oldest ready message of a queue (lowest sequence number) regardless of its priority, without locking
+     * it, through the {@code (queue_name, state, sequence_number)} index.
+     *
+     * @param queueName The name of the queue.
+     * @return The oldest message of the queue, if any.
+     */
+    @Query("""
+            select m from Message m where m.queueName = :queueName and m.state = com.thedamones.bv.queue.MessageState.READY
+            order by m.queueName, m.state, m.sequenceNumber limit 1""")
+    Optional<Message> findOldestInQueue(@Param("queueName") String queueName);
+
+    /**
+     * Finds the earliest delivery time of the scheduled messages of every queue, through the
+     * {@code (state, deliver_at)} index.
+     *
+     * @return The next delivery time, if any message is scheduled.
+     */
+    @Query("""
+            select m.deliverAt from Message m where m.state = com.thedamones.bv.queue.MessageState.SCHEDULED
+            order by m.state, m.deliverAt limit 1""")
+    Optional<Instant> findNextDeliverAt();
+
+    /**
+     * Finds the earliest lease expiry of the in-flight messages of every queue, through the {@code (state, deliver_at)}
+     * index.
+     *
+     * @return The next lease expiry, if any message is in flight.
+     */
+    @Query("""
+            select m.deliverAt from Message m where m.state = com.thedamones.bv.queue.MessageState.IN_FLIGHT
+            order by m.state, m.deliverAt limit 1""")
+    Optional<Instant> findNextLeaseExpiry();
+
+    /**
+     * Finds a message by its ID if it is in a given state, and locks its row for the rest of the transaction.
+     *
+     * @param id    The ID of the message.
+     * @param state The state the message must be in.
+     * @return The message, if it still exists in that state once the lock is acquired.
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    Optional<Message> findLockedByIdAndState(UUID id, MessageState state);
+
+    /**
+     * Finds the message at the head of a queue and locks its row for the rest of the transaction, so concurrent
+     * consumers never claim the same message.
+     * <p>
+     * The head is looked up without a lock and then locked by primary key: H2 locks every row that matches a
+     * {@code SELECT ... FOR UPDATE} before applying {@code FETCH FIRST}, so locking the head query directly would lock
+     * the whole queue.  The lock only matches the head while it is still ready: a consumer that loses the race for it
+     * finds it gone, leased or scheduled again once it gets the lock, and tries the new head.
+     *
+     * @param queueName The name of the queue.
+     * @return The locked message at the head of the queue, if the queue is not empty.
+     */
+    default Optional<Message> lockFirst(String queueName) {
+        return lockHead(() -> findFirstInQueue(queueName));
+    }
+
+    /**
+     * Finds the oldest message of a queue regardless of its priority and locks its row for the rest of the
+     * transaction, the same way as {@link #lockFirst(String)}.
+     *
+     * @param queueName The name of the queue.
+     * @return The locked oldest message of the queue, if the queue is not empty.
+     */
+    default Optional<Message> lockOldest(String queueName) {
+        return lockHead(() -> findOldestInQueue(queueName));
+    }
+
+    private Optional<Message> lockHead(Supplier<Optional<Message>> findHead) {
+        Optional<Message> head;
+        while ((head = findHead.get()).isPresent()) {
+            Optional<Message> locked = findLockedByIdAndState(head.get().getId(), MessageState.READY);
+            if (locked.isPresent()) {
+                return locked;
+            }
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Finds the sequence number of the most recently enqueued message of a queue.
+     *
+     * @param queueName The name of the queue.
+     * @return The highest sequence number, if the queue is not empty.
+     */
+    @Query("select max(m.sequenceNumber) from Message m where m.queueName = :queueName")
+    Optional<Long> findMaxSequenceNumber(@Param("queueName") String queueName);
+
+    /**
+     * Counts the messages of every non-empty queue.
+     *
+     * @return The depth of each queue that has messages.
+     */
+    @Query("select m.queueName as queueName, count(m) as depth from Message m group by m.queueName")
+    List<QueueDepth> countByQueueName();
+
+    /**
+     * Deletes up to {@code limit} messages of a queue with a sequence number up to and including
+     * {@code upToSequenceNumber}, in a single set-based statement.  Must be called within a transaction.
+     *
+     * @param queueName          The name of the queue.
+     * @param upToSequenceNumber The highest sequence number to delete.
+     * @param limit              The maximum number of messages to delete.
+     * @return The number of messages deleted.
+     */
+    @Modifying
+    @Query(nativeQuery = true, value = """
+            DELETE FROM message WHERE queue_name = :queueName AND sequence_number <= :upTo FETCH FIRST :limit ROWS ONLY""")
+    int deleteChunk(@Param("queueName") String queueName, @Param("upTo") long upToSequenceNumber, @Param("limit") int limit);
+
+    /**
+     * The number of messages in one queue.
+     */
+    interface QueueDepth {
+
+        String getQueueName();
+
+        long getDepth();
+    }
 }
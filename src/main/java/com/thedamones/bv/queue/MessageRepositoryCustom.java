@@ -0,0 +1,179 @@
+package com.thedamones.bv.queue;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * Native queue operations that bypass the JPA persistence context.
+ */
+public interface MessageRepositoryCustom {
+
+    /**
+     * Atomically removes the ready message at the head of a queue (highest priority, then oldest) and returns its contents,
+     * in a single statement that is repeated only if a concurrent consumer removed the head first.
+     *
+     * @param queueName The name of the queue.
+     * @return The removed message, if the queue was not empty.
+     */
+    Optional<MessageRecord> popFirst(String queueName);
+
+    /**
+     * Atomically removes the oldest ready message of a queue regardless of its priority and returns its contents, the same
+     * way as {@link #popFirst(String)}.
+     *
+     * @param queueName The name of the queue.
+     * @return The removed message, if the queue was not empty.
+     */
+    Optional<MessageRecord> popOldest(String queueName);
+
+    /**
+     * Makes scheduled messages whose delivery time has come ready, in a single statement.
+     *
+     * @param now   The current time.
+     * @param limit The maximum number of messages to deliver.
+     * @return The delivered messages, of any queue, in no particular order.
+     */
+    List<MessageRecord> deliverDue(Instant now, int limit);
+
+    /**
+     * Atomically leases the ready message at the head of a queue (highest priority, then oldest) and returns its
+     * contents, like {@link #popFirst(String)} but leaving the message in the queue, in flight, until the lease is
+     * acknowledged or expires.  The head is read, then leased by primary key only if it is still ready; a consumer that
+     * loses the race for it reads the new head.
+     *
+     * @param queueName The name of the queue.
+     * @param leaseId   The ID of the new lease.
+     * @param expiresAt The expiry of the lease.
+     * @return The leased message as it was before the lease, if the queue was not empty.
+     */
+    Optional<MessageRecord> leaseFirst(String queueName, UUID leaseId, Instant expiresAt);
+
+    /**
+     * Atomically leases the oldest ready message of a queue regardless of its priority, the same way as
+     * {@link #leaseFirst(String, UUID, Instant)}.
+     *
+     * @param queueName The name of the queue.
+     * @param leaseId   The ID of the new lease.
+     * @param expiresAt The expiry of the lease.
+     * @return The leased message as it was before the lease, if the queue was not empty.
+     */
+    Optional<MessageRecord> leaseOldest(String queueName, UUID leaseId, Instant expiresAt);
+
+    /**
+     * Atomically leases the oldest ready message of a queue, the same way as
+     * {@link #leaseOldest(String, UUID, Instant)}, but only if it has been ready since {@code readySince}: its delivery
+     * time, or its enqueue time if it was never scheduled, is not after it.
+     *
+     * @param queueName  The name of the queue.
+     * @param readySince The latest time the message may have become ready at.
+     * @param leaseId    The ID of the new lease.
+     * @param expiresAt  The expiry of the lease.
+     * @return The leased message as it was before the lease, if the oldest message was ready for long enough.
+     */
+    Optional<MessageRecord> leaseOldestReadySince(String queueName, Instant readySince, UUID leaseId, Instant expiresAt);
+
+    /**
+     * Atomically leases the ready message at the head of one size class of a queue (highest priority, then oldest),
+     * the same way as {@link #leaseFirst(String, UUID, Instant)}.
+     *
+     * @param queueName The name of the queue.
+     * @param sizeClass The size class, see {@link Message#sizeClass(Integer)}.
+     * @param leaseId   The ID of the new lease.
+     * @param expiresAt The expiry of the lease.
+     * @return The leased message as it was before the lease, if the size class had ready messages.
+     */
+    Optional<MessageRecord> leaseFirstInSizeClass(String queueName, int sizeClass, UUID leaseId, Instant expiresAt);
+
+    /**
+     * Atomically leases up to {@code limit} ready messages at the head of a queue (highest priority, then oldest), the
+     * same way as {@link #leaseFirst(String, UUID, Instant)} but claiming them in one JDBC batch.  The messages that
+     * concurrent consumers took first are left out rather than replaced.  Every message gets a lease of its own, so each
+     * is acknowledged, extended or failed on its own.
+     *
+     * @param queueName The name of the queue.
+     * @param limit     The maximum number of messages to lease.
+     * @param expiresAt The expiry of the leases.
+     * @return The leases, with the messages as they were before the lease, in head order; empty if the queue was empty.
+     */
+    List<LeaseRecord> leaseFirst(String queueName, int limit, Instant expiresAt);
+
+    /**
+     * Atomically leases up to {@code limit} of the oldest ready messages of a queue regardless of their priority, the
+     * same way as {@link #leaseFirst(String, int, Instant)}.
+     *
+     * @param queueName The name of the queue.
+     * @param limit     The maximum number of messages to lease.
+     * @param expiresAt The expiry of the leases.
+     * @return The leases, with the messages as they were before the lease, oldest first; empty if the queue was empty.
+     */
+    List<LeaseRecord> leaseOldest(String queueName, int limit, Instant expiresAt);
+
+    /**
+     * Leases a specific ready message by primary key, in a single statement.
+     *
+     * @param id        The ID of the message.
+     * @param leaseId   The ID of the new lease.
+     * @param expiresAt The expiry of the lease.
+     * @return {@code true} if the message was leased, {@code false} if another consumer took it first.
+     */
+    boolean leaseById(UUID id, UUID leaseId, Instant expiresAt);
+
+    /**
+     * Moves the expiry of a lease that has not expired yet.
+     *
+     * @param queueName The name of the queue of the leased message.
+     * @param leaseId   The ID of the lease.
+     * @param now       The current time.
+     * @param expiresAt The new expiry of the lease.
+     * @return The leased message, if the lease is still held.
+     */
+    Optional<MessageRecord> extendLease(String queueName, UUID leaseId, Instant now, Instant expiresAt);
+
+    /**
+     * Releases the lease of a message whose processing failed, scheduling the message for another attempt.
+     *
+     * @param leaseId The ID of the lease.
+     * @param retry   The message after the failed attempt, with its delivery time, attempts and last error.
+     * @return {@code true} if the lease was still held, {@code false} if it expired meanwhile.
+     */
+    boolean retryLease(UUID leaseId, MessageRecord retry);
+
+    /**
+     * Makes the in-flight messages whose lease has expired ready again, in a single statement, counting a failed
+     * attempt for each of them.
+     *
+     * @param now   The current time.
+     * @param error The last error recorded on the messages.
+     * @param limit The maximum number of leases to expire.
+     * @return The messages made ready, of any queue, in no particular order.
+     */
+    List<MessageRecord> expireLeases(Instant now, String error, int limit);
+
+    /**
+     * Deletes the messages of acknowledged leases, as a single JDBC batch.  Leases that expired or belong to another
+     * queue are skipped.
+     *
+     * @param queueName The name of the queue of the leased messages.
+     * @param leaseIds  The IDs of the leases.
+     * @return The number of messages deleted.
+     */
+    int deleteLeases(String queueName, List<UUID> leaseIds);
+
+    /**
+     * Inserts previously dequeued messages at the back of their queues, ready, keeping their IDs, timestamps, delivery
+     * times and attempts.
+     *
+     * @param messages The messages to insert.
+     */
+    void insertAll(List<MessageRecord> messages);
+
+    /**
+     * Inserts new messages with IDs assigned by the caller, in order, at the back of their queues: ready, or scheduled
+     * if their delivery time is after their timestamp.
+     *
+     * @param messages The messages to insert.
+     */
+    void insertNew(List<MessageRecord> messages);
+}
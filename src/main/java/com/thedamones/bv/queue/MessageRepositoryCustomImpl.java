@@ -0,0 +1,304 @@
+package com.thedamones.bv.queue;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.function.Function;
+import java.util.stream.IntStream;
+
+/**
+ * H2 implementation of {@link MessageRepositoryCustom}, picked up by Spring Data as a repository fragment.
+ */
+public class MessageRepositoryCustomImpl implements MessageRepositoryCustom {
+
+    /*
+     * An H2 data change delta table: the DELETE runs and the SELECT reads the deleted row in the same statement.
+     * The subquery walks the ready messages of the queue in the (queue_name, state, priority desc, sequence_number)
+     * index from the start and stops at the first row, so the highest priority message is found in constant time
+     * however many lower priority or scheduled messages wait beside it.  It orders by all the index columns because H2
+     * only reads an index in order when the ORDER BY covers its leading columns, and MIN(sequence_number) with a
+     * queue_name condition is not a direct index lookup.  A competing pop waits for the head row, then re-evaluates the
+     * subquery and usually deletes the new head; when it deletes nothing instead, pop() retries while the queue still
+     * has ready messages.  FOR UPDATE is not used because H2 would lock every row of the queue.
+     */
+    private static final String POP_FIRST_SQL = """
+            SELECT id, text, data_size, timestamp, queue_name, priority, deliver_at, attempts, last_error
+            FROM OLD TABLE (
+                DELETE FROM message
+                WHERE queue_name = ?1 AND state = 'READY' AND sequence_number = (
+                    SELECT sequence_number FROM message
+                    WHERE queue_name = ?1 AND state = 'READY'
+                    ORDER BY queue_name, state, priority DESC, sequence_number
+                    FETCH FIRST 1 ROWS ONLY)
+            )""";
+
+    // The same, through the (queue_name, state, sequence_number) index, ignoring priorities
+    private static final String POP_OLDEST_SQL = """
+            SELECT id, text, data_size, timestamp, queue_name, priority, deliver_at, attempts, last_error
+            FROM OLD TABLE (
+                DELETE FROM message
+                WHERE queue_name = ?1 AND state = 'READY' AND sequence_number = (
+                    SELECT sequence_number FROM message
+                    WHERE queue_name = ?1 AND state = 'READY'
+                    ORDER BY queue_name, state, sequence_number
+                    FETCH FIRST 1 ROWS ONLY)
+            )""";
+
+    // Reads the updated rows; the condition is a range of the (state, deliver_at) index
+    private static final String DELIVER_DUE_SQL = """
+            SELECT id, text, data_size, timestamp, queue_name, priority, deliver_at, attempts, last_error
+            FROM FINAL TABLE (
+                UPDATE message SET state = 'READY'
+                WHERE state = 'SCHEDULED' AND deliver_at <= ?
+                FETCH FIRST ? ROWS ONLY
+            )""";
+
+    /*
+     * Leasing reads the head of the queue through the same indexes as the pops, up to ?2 messages, then claims each
+     * message by primary key with CLAIM_SQL.  Updating the head in one statement, as the pops delete it, is not safe:
+     * H2 does not re-check the condition of an UPDATE inside a data change delta table once it holds the row lock, so
+     * two concurrent leases could take the same row, the second overwriting the lease ID of the first.  A plain UPDATE
+     * is re-checked, and a consumer that loses the race reads the new head.  The head is read before it is updated, so
+     * the leased message keeps the delivery time it was dequeued at.
+     */
+    private static final String FIRST_HEAD_SQL = """
+            SELECT id, text, data_size, timestamp, queue_name, priority, deliver_at, attempts, last_error
+            FROM message
+            WHERE queue_name = ?1 AND state = 'READY'
+            ORDER BY queue_name, state, priority DESC, sequence_number
+            FETCH FIRST ?2 ROWS ONLY""";
+
+    private static final String OLDEST_HEAD_SQL = """
+            SELECT id, text, data_size, timestamp, queue_name, priority, deliver_at, attempts, last_error
+            FROM message
+            WHERE queue_name = ?1 AND state = 'READY'
+            ORDER BY queue_name, state, sequence_number
+            FETCH FIRST ?2 ROWS ONLY""";
+
+    // A compare-and-set; the attempts also fail it on a message leased, expired and ready again since it was read
+    private static final String CLAIM_SQL = """
+            UPDATE message SET state = 'IN_FLIGHT', deliver_at = ?, lease_id = ?
+            WHERE id = ? AND state = 'READY' AND attempts = ?""";
+
+    // The head of one size class, through the (queue_name, state, size_class, priority desc, sequence_number) index
+    private static final String FIRST_IN_SIZE_CLASS_HEAD_SQL = """
+            SELECT id, text, data_size, timestamp, queue_name, priority, deliver_at, attempts, last_error
+            FROM message
+            WHERE queue_name = ?1 AND state = 'READY' AND size_class = ?3
+            ORDER BY queue_name, state, size_class, priority DESC, sequence_number
+            FETCH FIRST ?2 ROWS ONLY""";
+
+    private static final String LEASE_BY_ID_SQL = """
+            UPDATE message SET state = 'IN_FLIGHT', deliver_at = ?, lease_id = ? WHERE id = ? AND state = 'READY'""";
+
+    // A lease past its expiry is not extended, even before the delivery timer has made its message ready again
+    private static final String EXTEND_LEASE_SQL = """
+            SELECT id, text, data_size, timestamp, queue_name, priority, deliver_at, attempts, last_error
+            FROM FINAL TABLE (
+                UPDATE message SET deliver_at = ?
+                WHERE lease_id = ? AND queue_name = ? AND state = 'IN_FLIGHT' AND deliver_at > ?
+            )""";
+
+    private static final String RETRY_LEASE_SQL = """
+            UPDATE message SET state = 'SCHEDULED', deliver_at = ?, attempts = ?, last_error = ?, lease_id = NULL
+            WHERE lease_id = ? AND state = 'IN_FLIGHT'""";
+
+    // The same (state, deliver_at) range as DELIVER_DUE_SQL; an expired lease counts as a failed attempt
+    private static final String EXPIRE_LEASES_SQL = """
+            SELECT id, text, data_size, timestamp, queue_name, priority, deliver_at, attempts, last_error
+            FROM FINAL TABLE (
+                UPDATE message SET state = 'READY', lease_id = NULL, attempts = attempts + 1, last_error = ?
+                WHERE state = 'IN_FLIGHT' AND deliver_at <= ?
+                FETCH FIRST ? ROWS ONLY
+            )""";
+
+    private static final String DELETE_LEASE_SQL = "DELETE FROM message WHERE lease_id = ? AND queue_name = ?";
+
+    private static final String HAS_MESSAGES_SQL = "SELECT EXISTS (SELECT 1 FROM message WHERE queue_name = ? AND state = 'READY')";
+
+    private static final String INSERT_SQL = """
+            INSERT INTO message (id, text, data_size, timestamp, queue_name, priority, deliver_at, attempts, last_error, state)
+            VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)""";
+
+    private static final MessageRecordRowMapper MESSAGE_RECORD_ROW_MAPPER = new MessageRecordRowMapper();
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    public MessageRepositoryCustomImpl(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @Override
+    public Optional<MessageRecord> popFirst(String queueName) {
+        return pop(POP_FIRST_SQL, queueName);
+    }
+
+    @Override
+    public Optional<MessageRecord> popOldest(String queueName) {
+        return pop(POP_OLDEST_SQL, queueName);
+    }
+
+    @Override
+    public Optional<MessageRecord> leaseFirst(String queueName, UUID leaseId, Instant expiresAt) {
+        return lease(leaseId, expiresAt, FIRST_HEAD_SQL, queueName, 1);
+    }
+
+    @Override
+    public Optional<MessageRecord> leaseOldest(String queueName, UUID leaseId, Instant expiresAt) {
+        return lease(leaseId, expiresAt, OLDEST_HEAD_SQL, queueName, 1);
+    }
+
+    // A head that lost its race, or one not ready for long enough: either way the scheduler looks elsewhere
+    @Override
+    public Optional<MessageRecord> leaseOldestReadySince(String queueName, Instant readySince, UUID leaseId, Instant expiresAt) {
+        return head(OLDEST_HEAD_SQL, queueName, 1).stream().findFirst()
+                .filter(message -> !message.deliverableAt().isAfter(readySince))
+                .filter(message -> claim(message, leaseId, expiresAt));
+    }
+
+    @Override
+    public Optional<MessageRecord> leaseFirstInSizeClass(String queueName, int sizeClass, UUID leaseId, Instant expiresAt) {
+        return lease(leaseId, expiresAt, FIRST_IN_SIZE_CLASS_HEAD_SQL, queueName, 1, sizeClass);
+    }
+
+    @Override
+    public List<LeaseRecord> leaseFirst(String queueName, int limit, Instant expiresAt) {
+        return lease(FIRST_HEAD_SQL, queueName, limit, expiresAt);
+    }
+
+    @Override
+    public List<LeaseRecord> leaseOldest(String queueName, int limit, Instant expiresAt) {
+        return lease(OLDEST_HEAD_SQL, queueName, limit, expiresAt);
+    }
+
+    /**
+     * Reads up to {@code limit} messages from the head of a queue and claims them in one JDBC batch, until it claims
+     * at least one or the queue has no ready message left.  Messages that other consumers took first are left out.
+     */
+    private List<LeaseRecord> lease(String headSql, String queueName, int limit, Instant expiresAt) {
+        List<MessageRecord> head;
+        while (!(head = head(headSql, queueName, limit)).isEmpty()) {
+            List<LeaseRecord> leases = head.stream()
+                    .map(message -> new LeaseRecord(UUID.randomUUID(), expiresAt, message))
+                    .toList();
+            int[] counts = Arrays.stream(jdbcTemplate.batchUpdate(CLAIM_SQL, leases, leases.size(), (ps, lease) -> {
+                ps.setObject(1, expiresAt);
+                ps.setObject(2, lease.id());
+                ps.setObject(3, lease.message().id());
+                ps.setInt(4, lease.message().attempts());
+            })).flatMapToInt(Arrays::stream).toArray();
+            List<LeaseRecord> claimed = IntStream.range(0, leases.size())
+                    .filter(i -> counts[i] == 1)
+                    .mapToObj(leases::get)
+                    .toList();
+            if (!claimed.isEmpty()) {
+                return claimed;
+            }
+        }
+        return List.of();
+    }
+
+    /**
+     * Runs a statement that takes the head of a queue until it takes a message or the queue has no ready message left.
+     */
+    private Optional<MessageRecord> pop(String popSql, String queueName) {
+        do {
+            Optional<MessageRecord> popped = jdbcTemplate.query(popSql, MESSAGE_RECORD_ROW_MAPPER, queueName).stream().findFirst();
+            if (popped.isPresent()) {
+                return popped;
+            }
+        } while (Boolean.TRUE.equals(jdbcTemplate.queryForObject(HAS_MESSAGES_SQL, Boolean.class, queueName)));
+        return Optional.empty();
+    }
+
+    /**
+     * Reads a head and claims it, until it claims a message or the head query finds no ready message left.
+     */
+    private Optional<MessageRecord> lease(UUID leaseId, Instant expiresAt, String headSql, Object... headParameters) {
+        List<MessageRecord> head;
+        while (!(head = head(headSql, headParameters)).isEmpty()) {
+            if (claim(head.getFirst(), leaseId, expiresAt)) {
+                return Optional.of(head.getFirst());
+            }
+        }
+        return Optional.empty();
+    }
+
+    private List<MessageRecord> head(String headSql, Object... parameters) {
+        return jdbcTemplate.query(headSql, MESSAGE_RECORD_ROW_MAPPER, parameters);
+    }
+
+    /**
+     * Leases a message read from the head of its queue, unless another consumer took it, or it changed, since.
+     */
+    private boolean claim(MessageRecord message, UUID leaseId, Instant expiresAt) {
+        return jdbcTemplate.update(CLAIM_SQL, expiresAt, leaseId, message.id(), message.attempts()) == 1;
+    }
+
+    @Override
+    public List<MessageRecord> deliverDue(Instant now, int limit) {
+        return jdbcTemplate.query(DELIVER_DUE_SQL, MESSAGE_RECORD_ROW_MAPPER, now, limit);
+    }
+
+    @Override
+    public boolean leaseById(UUID id, UUID leaseId, Instant expiresAt) {
+        return jdbcTemplate.update(LEASE_BY_ID_SQL, expiresAt, leaseId, id) == 1;
+    }
+
+    @Override
+    public Optional<MessageRecord> extendLease(String queueName, UUID leaseId, Instant now, Instant expiresAt) {
+        return jdbcTemplate.query(EXTEND_LEASE_SQL, MESSAGE_RECORD_ROW_MAPPER, expiresAt, leaseId, queueName, now).stream().findFirst();
+    }
+
+    @Override
+    public boolean retryLease(UUID leaseId, MessageRecord retry) {
+        return jdbcTemplate.update(RETRY_LEASE_SQL, retry.deliverAt(), retry.attempts(), retry.lastError(), leaseId) == 1;
+    }
+
+    @Override
+    public List<MessageRecord> expireLeases(Instant now, String error, int limit) {
+        return jdbcTemplate.query(EXPIRE_LEASES_SQL, MESSAGE_RECORD_ROW_MAPPER, error, now, limit);
+    }
+
+    @Override
+    public int deleteLeases(String queueName, List<UUID> leaseIds) {
+        int[][] counts = jdbcTemplate.batchUpdate(DELETE_LEASE_SQL, leaseIds, leaseIds.size(), (ps, leaseId) -> {
+            ps.setObject(1, leaseId);
+            ps.setString(2, queueName);
+        });
+        return Arrays.stream(counts).flatMapToInt(Arrays::stream).sum();
+    }
+
+    @Override
+    public void insertAll(List<MessageRecord> messages) {
+        insert(messages, message -> MessageState.READY);
+    }
+
+    @Override
+    public void insertNew(List<MessageRecord> messages) {
+        insert(messages, message -> message.deliverAt() != null && message.deliverAt().isAfter(message.timestamp())
+                ? MessageState.SCHEDULED
+                : MessageState.READY);
+    }
+
+    private void insert(List<MessageRecord> messages, Function<MessageRecord, MessageState> state) {
+        jdbcTemplate.batchUpdate(INSERT_SQL, messages, messages.size(), (ps, message) -> {
+            ps.setObject(1, message.id());
+            ps.setString(2, message.text());
+            ps.setObject(3, message.dataSize());
+            ps.setObject(4, message.timestamp());
+            ps.setString(5, message.queue());
+            ps.setInt(6, message.priority());
+            ps.setObject(7, message.deliverAt());
+            ps.setInt(8, message.attempts());
+            ps.setString(9, message.lastError());
+            ps.setString(10, state.apply(message).name());
+        });
+    }
+}
@@ -0,0 +1,23 @@
+package com.thedamones.bv.queue;
+
+import java.time.Instant;
+
+/**
+ * Event published after one or more messages are successfully enqueued for delivery at a later time.  The messages are
+ * announced with a {@link MessageEnqueuedEvent} once they are delivered.
+ */
+public class MessageScheduledEvent {
+
+    private final Instant deliverAt;
+
+    /**
+     * @param deliverAt The earliest delivery time of the scheduled messages.
+     */
+    public MessageScheduledEvent(Instant deliverAt) {
+        this.deliverAt = deliverAt;
+    }
+
+    public Instant getDeliverAt() {
+        return deliverAt;
+    }
+}
@@ -4,111 +4,771 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.ApplicationEventPublisher;
-import org.springframework.core.convert.ConversionService;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Function;
 import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @Service
 public class MessageService {
 
     private static final Logger logger = LoggerFactory.getLogger(MessageService.class);
 
+    /**
+     * The last error of a message whose lease expired before it was acknowledged.
+     */
+    public static final String LEASE_EXPIRED_ERROR = "Lease expired";
+
     private final MessageRepository messageRepository;
-    private final ConversionService conversionService;
+    private final QueueStore queueStore;
+    private final DeadLetterRepository deadLetterRepository;
     private final ApplicationEventPublisher eventPublisher;
+    private final QueueDepthCounter queueDepthCounter;
+    private final QueueRegistry queueRegistry;
+    private final QueuePurger queuePurger;
+    private final QueueMetrics queueMetrics;
+    private final LeaseAcknowledger leaseAcknowledger;
+    private final AdmissionControl admissionControl;
+    private final QueueProperties.Dequeue dequeueProperties;
+    private final QueueProperties.Delivery deliveryProperties;
+    private final QueueProperties.Retry retryProperties;
+    private final QueueProperties.Lease leaseProperties;
+    private final int maxBatchSize;
+    private final Map<String, AtomicLong> dequeueCounts = new ConcurrentHashMap<>();
 
     @Autowired
-    public MessageService(MessageRepository messageRepository, ConversionService conversionService, ApplicationEventPublisher eventPublisher) {
+    public MessageService(MessageRepository messageRepository, QueueStore queueStore,
+                          DeadLetterRepository deadLetterRepository, ApplicationEventPublisher eventPublisher,
+                          QueueDepthCounter queueDepthCounter, QueueRegistry queueRegistry, QueuePurger queuePurger,
+                          QueueMetrics queueMetrics, LeaseAcknowledger leaseAcknowledger, AdmissionControl admissionControl,
+                          QueueProperties queueProperties) {
         this.messageRepository = messageRepository;
-        this.conversionService = conversionService;
+        this.queueStore = queueStore;
+        this.deadLetterRepository = deadLetterRepository;
         this.eventPublisher = eventPublisher;
+        this.queueDepthCounter = queueDepthCounter;
+        this.queueRegistry = queueRegistry;
+        this.queuePurger = queuePurger;
+        this.queueMetrics = queueMetrics;
+        this.leaseAcknowledger = leaseAcknowledger;
+        this.admissionControl = admissionControl;
+        this.dequeueProperties = queueProperties.getDequeue();
+        this.deliveryProperties = queueProperties.getDelivery();
+        this.retryProperties = queueProperties.getRetry();
+        this.leaseProperties = queueProperties.getLease();
+        this.maxBatchSize = queueProperties.getMaxBatchSize();
     }
 
     /**
-     * Enqueues a new message.
+     * Enqueues a new message, creating the queue if it does not exist yet.  A message with a delivery time in the
+     * future is scheduled: it is stored right away, but only dequeued once the {@link QueueManager} delivers it.
      *
-     * @param request The message request record.
+     * @param queueName The name of the queue.
+     * @param request   The message request record.
      * @return The enqueued message record.
+     * @throws InvalidQueueNameException   If the queue name is invalid.
+     * @throws QueueLimitExceededException If the queue would exceed {@code queue.max-queues}.
+     * @throws InvalidMessageException     If the priority or the delivery time is invalid, or the {@link QueueStore}
+     *                                     cannot hold the message.
      */
     @Transactional
-    public MessageRecord enqueueMessage(EnqueueMessageRecord request) {
-        return createMessage(request)
-                .map(saveMessage())
-                .map(toMessageRecord())
+    public MessageRecord enqueueMessage(String queueName, EnqueueMessageRecord request) {
+        QueueThroughput throughput = queueRegistry.getOrCreate(queueName);
+        queueMetrics.startTransactionTimer(QueueMetrics.ENQUEUE);
+        return createMessage(queueName, request)
+                .map(appendMessage())
                 .map(publishEnqueueEvent())
+                .map(recordEnqueued(throughput))
                 .orElseThrow(this::messageEnqueueException);
     }
 
     /**
-     * Dequeues the oldest message from the queue.
+     * Enqueues a batch of messages in a single transaction, creating the queue if it does not exist yet.  The messages
+     * are appended to the {@link QueueStore} together, as JDBC batches with the JPA store, and a single
+     * {@link MessageEnqueuedEvent} is published for the messages of the batch that are ready, and a single
+     * {@link MessageScheduledEvent} for those that are scheduled.
+     *
+     * @param queueName The name of the queue.
+     * @param requests  The message request records.
+     * @return The enqueued message records, in request order.
+     * @throws InvalidQueueNameException   If the queue name is invalid.
+     * @throws QueueLimitExceededException If the queue would exceed {@code queue.max-queues}.
+     * @throws InvalidMessageException     If the batch holds more than {@code queue.max-batch-size} messages, a priority
+     *                                     or a delivery time is invalid, or the {@link QueueStore} cannot hold a message.
+     */
+    @Transactional
+    public List<MessageRecord> enqueueMessages(String queueName, List<EnqueueMessageRecord> requests) {
+        if (requests.size() > maxBatchSize) {
+            throw new InvalidMessageException("A batch holds at most " + maxBatchSize + " messages, not " + requests.size());
+        }
+        QueueThroughput throughput = queueRegistry.getOrCreate(queueName);
+        if (requests.isEmpty()) {
+            return List.of();
+        }
+
+        queueMetrics.startTransactionTimer(QueueMetrics.ENQUEUE_BATCH);
+        List<MessageRecord> messageRecords = requests.stream()
+                .map(request -> newMessageRecord(queueName, request))
+                .toList();
+
+        queueStore.append(messageRecords);
+        publishEnqueueEvents(messageRecords);
+        queueDepthCounter.adjustAfterCommit(queueName, messageRecords.size());
+        afterCommit(() -> throughput.recordEnqueued(messageRecords.size()));
+        return messageRecords;
+    }
+
+    /**
+     * Validates a message to enqueue and assigns its ID and timestamp without storing it, creating the queue if it does
+     * not exist yet.  The message is stored by {@link #enqueuePreparedMessages(String, List)}, typically by the
+     * {@link GroupCommitEnqueuer} along with other prepared messages.
+     *
+     * @param queueName The name of the queue.
+     * @param request   The message request record.
+     * @return The message record, with the ID it will be stored under.
+     * @throws InvalidQueueNameException   If the queue name is invalid.
+     * @throws QueueLimitExceededException If the queue would exceed {@code queue.max-queues}.
+     * @throws InvalidMessageException     If the priority or the delivery time is invalid, or the {@link QueueStore}
+     *                                     cannot hold the message.
+     */
+    public MessageRecord prepareMessage(String queueName, EnqueueMessageRecord request) {
+        queueRegistry.getOrCreate(queueName);
+        return newMessageRecord(queueName, request);
+    }
+
+    /**
+     * Stores messages returned by {@link #prepareMessage(String, EnqueueMessageRecord)}, in order, as one append to the
+     * {@link QueueStore}.
+     * Events are published as for {@link #enqueueMessages(String, List)}.
+     *
+     * @param queueName The name of the queue of the messages.
+     * @param messages  The prepared messages.
+     */
+    @Transactional
+    public void enqueuePreparedMessages(String queueName, List<MessageRecord> messages) {
+        QueueThroughput throughput = queueRegistry.getOrCreate(queueName);
+        if (messages.isEmpty()) {
+            return;
+        }
+
+        queueStore.append(messages);
+        publishEnqueueEvents(messages);
+        queueDepthCounter.adjustAfterCommit(queueName, messages.size());
+        afterCommit(() -> throughput.recordEnqueued(messages.size()));
+    }
+
+    /**
+     * Dequeues the oldest ready message of the highest priority from a queue.  Every
+     * {@code queue.dequeue.fairness-interval}-th dequeue of the queue takes the oldest message regardless of priority
+     * instead, so low priority messages keep moving while higher priorities are busy.  The message is popped from the
+     * {@link QueueStore}.
      *
+     * @param queueName The name of the queue.
      * @return The dequeued message record.
+     * @throws QueueNotFoundException   If the queue does not exist.
      * @throws MessageNotFoundException If the queue is empty.
      */
     @Transactional
-    public MessageRecord dequeueMessage() {
-        return messageRepository.findFirstByOrderByTimestampAsc()
-                .map(deleteMessage())
-                .map(toMessageRecord())
+    public MessageRecord dequeueMessage(String queueName) {
+        QueueThroughput throughput = queueRegistry.get(queueName);
+        QueueMetrics.TransactionTimer timer = queueMetrics.startTransactionTimer(QueueMetrics.DEQUEUE);
+        Optional<MessageRecord> message = queueStore.pop(queueName, isFairnessTurn(queueName));
+        if (message.isEmpty()) {
+            timer.setOutcome(QueueMetrics.OUTCOME_EMPTY);
+        }
+        return message
+                .map(queueMetrics::recordMessageAge)
+                .map(recordDequeued(throughput))
+                .orElseThrow(this::emptyQueueException);
+    }
+
+    /**
+     * Leases the head of a queue, picked the same way as {@link #dequeueMessage(String)}.  The message stays in the
+     * queue, in flight, until the lease is {@link #acknowledgeLeases(String, List) acknowledged}, which deletes it.  If
+     * the lease expires first, the message becomes ready again with one more failed attempt, and is dead-lettered once
+     * it has used up {@code queue.retry.max-attempts}.  Leasing is always done with native statements, whatever
+     * {@code queue.dequeue.native-pop}.
+     * <p>
+     * With a {@link QueueStore} that does not {@link QueueStore#supportsLeases() support leases}, the message is popped
+     * instead: it leaves the queue before it is processed, and acknowledging the lease does nothing.
+     *
+     * @param queueName         The name of the queue.
+     * @param visibilityTimeout How long the message is leased, {@code queue.lease.visibility-timeout} if {@code null}.
+     * @return The lease, with the message.
+     * @throws QueueNotFoundException   If the queue does not exist.
+     * @throws MessageNotFoundException If the queue has no ready message.
+     * @throws InvalidLeaseException    If the visibility timeout is not positive or exceeds
+     *                                  {@code queue.lease.max-visibility-timeout}.
+     */
+    @Transactional
+    public LeaseRecord leaseMessage(String queueName, Duration visibilityTimeout) {
+        return lease(queueName, visibilityTimeout, QueueScheduler.Candidates::first);
+    }
+
+    /**
+     * Leases the next message of a queue for a {@link QueueManager} worker, picked by the queue's scheduler; with the
+     * {@link SchedulingPolicy#FIFO FIFO} policy the same message as {@link #leaseMessage(String, Duration)}.  With a
+     * {@link QueueStore} that does not support leases, the head of the queue is popped whatever the policy.
+     *
+     * @param queueName         The name of the queue.
+     * @param visibilityTimeout How long the message is leased, {@code queue.lease.visibility-timeout} if {@code null}.
+     * @param scheduler         The scheduler of the queue.
+     * @return The lease, with the message.
+     * @throws QueueNotFoundException   If the queue does not exist.
+     * @throws MessageNotFoundException If the queue has no ready message.
+     * @throws InvalidLeaseException    If the visibility timeout is not positive or exceeds
+     *                                  {@code queue.lease.max-visibility-timeout}.
+     */
+    @Transactional
+    public LeaseRecord leaseMessage(String queueName, Duration visibilityTimeout, QueueScheduler scheduler) {
+        return lease(queueName, visibilityTimeout, candidates -> scheduler.next(candidates, Instant.now()));
+    }
+
+    /**
+     * Leases up to {@code limit} ready messages of a queue at once, for a {@link QueueManager} worker that processes
+     * them with a {@link BatchMessageProcessor}.  The messages are the head of the queue, highest priority first, or
+     * its oldest messages on a fairness turn, leased with one JDBC batch; each message gets a lease of its own.
+     * The scheduling policy of the queue does not apply.  With a {@link QueueStore} that does not support leases, the
+     * head of the queue is popped up to {@code limit} times instead.
+     *
+     * @param queueName         The name of the queue.
+     * @param limit             The maximum number of messages to lease.
+     * @param visibilityTimeout How long the messages are leased, {@code queue.lease.visibility-timeout} if
+     *                          {@code null}.
+     * @return The leases, with their messages, in the order they were taken; empty if the queue has no ready message.
+     * @throws QueueNotFoundException If the queue does not exist.
+     * @throws InvalidLeaseException  If the visibility timeout is not positive or exceeds
+     *                                {@code queue.lease.max-visibility-timeout}.
+     */
+    @Transactional
+    public List<LeaseRecord> leaseMessages(String queueName, int limit, Duration visibilityTimeout) {
+        QueueThroughput throughput = queueRegistry.get(queueName);
+        Instant expiresAt = Instant.now().plus(visibilityTimeout(visibilityTimeout));
+        QueueMetrics.TransactionTimer timer = queueMetrics.startTransactionTimer(QueueMetrics.LEASE);
+        boolean oldest = isFairnessTurn(queueName);
+        List<LeaseRecord> leases;
+        if (queueStore.supportsLeases()) {
+            leases = (oldest
+                    ? messageRepository.leaseOldest(queueName, limit, expiresAt)
+                    : messageRepository.leaseFirst(queueName, limit, expiresAt)).stream()
+                    .map(lease -> new LeaseRecord(lease.id(), expiresAt,
+                            queueMetrics.recordMessageAge(lease.message()).withDeliverAt(expiresAt)))
+                    .toList();
+        } else {
+            leases = new ArrayList<>();
+            Optional<MessageRecord> message;
+            while (leases.size() < limit && (message = queueStore.pop(queueName, oldest)).isPresent()) {
+                MessageRecord popped = queueMetrics.recordMessageAge(recordDequeued(throughput).apply(message.get()));
+                leases.add(new LeaseRecord(UUID.randomUUID(), expiresAt, popped.withDeliverAt(expiresAt)));
+            }
+        }
+        if (leases.isEmpty()) {
+            timer.setOutcome(QueueMetrics.OUTCOME_EMPTY);
+        } else if (queueStore.supportsLeases()) {
+            eventPublisher.publishEvent(new MessageScheduledEvent(leases.getFirst().expiryCheckAt()));
+        }
+        return leases;
+    }
+
+    private LeaseRecord lease(String queueName, Duration visibilityTimeout,
+                              Function<QueueScheduler.Candidates, Optional<MessageRecord>> pick) {
+        QueueThroughput throughput = queueRegistry.get(queueName);
+        Instant expiresAt = Instant.now().plus(visibilityTimeout(visibilityTimeout));
+        QueueMetrics.TransactionTimer timer = queueMetrics.startTransactionTimer(QueueMetrics.LEASE);
+        UUID leaseId = UUID.randomUUID();
+        Optional<MessageRecord> message = queueStore.supportsLeases()
+                ? pick.apply(new LeaseCandidates(queueName, leaseId, expiresAt))
+                : queueStore.pop(queueName, isFairnessTurn(queueName)).map(recordDequeued(throughput));
+        if (message.isEmpty()) {
+            timer.setOutcome(QueueMetrics.OUTCOME_EMPTY);
+        }
+        LeaseRecord lease = message
+                .map(queueMetrics::recordMessageAge)
+                .map(leased -> new LeaseRecord(leaseId, expiresAt, leased.withDeliverAt(expiresAt)))
                 .orElseThrow(this::emptyQueueException);
+        if (queueStore.supportsLeases()) {
+            eventPublisher.publishEvent(new MessageScheduledEvent(lease.expiryCheckAt()));
+        }
+        return lease;
+    }
+
+    /**
+     * Leases a specific message, typically one handed to a consumer in memory right after it was enqueued, by primary
+     * key.  Unlike {@link #leaseMessage(String, Duration)} this never looks for the head of the queue, and outside a
+     * surrounding transaction it runs as a single auto-committed statement; no {@link MessageScheduledEvent} is
+     * published for the lease expiry, which the caller schedules itself.
+     *
+     * @param message           The message to lease.
+     * @param visibilityTimeout How long the message is leased.
+     * @return The lease, or empty if another consumer took the message first.  With a {@link QueueStore} that does not
+     * support leases, the message is {@link QueueStore#remove(String, UUID) removed} from the queue instead, and the
+     * lease is empty if the store cannot remove it, so that the caller leases the head of the queue.
+     */
+    public Optional<LeaseRecord> leaseMessage(MessageRecord message, Duration visibilityTimeout) {
+        UUID leaseId = UUID.randomUUID();
+        Instant expiresAt = Instant.now().plus(visibilityTimeout);
+        if (!queueStore.supportsLeases()) {
+            return queueStore.remove(message.queue(), message.id())
+                    .map(recordDequeued(queueRegistry.get(message.queue())))
+                    .map(queueMetrics::recordMessageAge)
+                    .map(removed -> new LeaseRecord(leaseId, expiresAt, removed.withDeliverAt(expiresAt)));
+        }
+        if (!messageRepository.leaseById(message.id(), leaseId, expiresAt)) {
+            return Optional.empty();
+        }
+        queueMetrics.recordMessageAge(message);
+        return Optional.of(new LeaseRecord(leaseId, expiresAt, message.withDeliverAt(expiresAt)));
+    }
+
+    /**
+     * Extends a lease that has not expired yet, to {@code visibilityTimeout} from now.
+     *
+     * @param queueName         The name of the queue.
+     * @param leaseId           The ID of the lease.
+     * @param visibilityTimeout How long the message stays leased, {@code queue.lease.visibility-timeout} if
+     *                          {@code null}.
+     * @return The extended lease.
+     * @throws LeaseNotFoundException If the queue has no such lease, or it has expired.
+     * @throws InvalidLeaseException  If the visibility timeout is not positive or exceeds
+     *                                {@code queue.lease.max-visibility-timeout}.
+     */
+    @Transactional
+    public LeaseRecord extendLease(String queueName, UUID leaseId, Duration visibilityTimeout) {
+        Instant now = Instant.now();
+        Instant expiresAt = now.plus(visibilityTimeout(visibilityTimeout));
+        LeaseRecord lease = messageRepository.extendLease(queueName, leaseId, now, expiresAt)
+                .map(message -> new LeaseRecord(leaseId, expiresAt, message))
+                .orElseThrow(() -> new LeaseNotFoundException("Lease with ID " + leaseId + " not found"));
+        eventPublisher.publishEvent(new MessageScheduledEvent(lease.expiryCheckAt()));
+        return lease;
+    }
+
+    /**
+     * Acknowledges a lease once its message has been processed.  See {@link #acknowledgeLeases(String, List)}.
+     *
+     * @param lease The lease.
+     */
+    public void acknowledge(LeaseRecord lease) {
+        acknowledgeLeases(lease.message().queue(), List.of(lease.id()));
+    }
+
+    /**
+     * Acknowledges leases, deleting their messages.  The deletes are buffered by the {@link LeaseAcknowledger} and
+     * run in bulk shortly after; leases that are unknown or have expired by then are ignored.  Nothing happens with a
+     * {@link QueueStore} that does not support leases, whose leased messages have already left the queue.
+     *
+     * @param queueName The name of the queue.
+     * @param leaseIds  The IDs of the leases.
+     */
+    public void acknowledgeLeases(String queueName, List<UUID> leaseIds) {
+        if (queueStore.supportsLeases()) {
+            leaseAcknowledger.acknowledge(queueName, leaseIds);
+        }
     }
 
+    /**
+     * Puts messages that were dequeued but never consumed back at the back of their queue, keeping their IDs and
+     * timestamps.  The messages must all belong to the same queue.
+     *
+     * @param messages The messages to requeue.
+     */
     @Transactional
-    public void clearQueue() {
-        messageRepository.deleteAll();
+    public void requeueMessages(List<MessageRecord> messages) {
+        if (messages.isEmpty()) {
+            return;
+        }
+
+        queueStore.requeue(messages);
+        eventPublisher.publishEvent(new MessageEnqueuedEvent(messages));
+        queueDepthCounter.adjustAfterCommit(messages.getFirst().queue(), messages.size());
+    }
+
+    /**
+     * Handles a leased message whose processing failed.  The message is scheduled for another attempt after an
+     * exponential backoff ({@code queue.retry.*}), so that no consumer waits for it meanwhile; once it has used up
+     * {@code queue.retry.max-attempts} it is moved to the dead-letter store instead.  Either way it keeps its ID, the
+     * number of failed attempts and the last error.  Nothing happens if the lease has expired meanwhile, since the
+     * message is then back in the queue.
+     * <p>
+     * With a {@link QueueStore} that does not support leases, the message has already left the queue: it is requeued at
+     * the back of the queue right away, without a backoff, until it has used up its attempts.
+     *
+     * @param lease The lease of the message that failed.
+     * @param error The processing error.
+     */
+    @Transactional
+    public void failMessage(LeaseRecord lease, Exception error) {
+        MessageRecord message = lease.message();
+        String lastError = describe(error);
+        int failures = message.attempts() + 1;
+        if (!queueStore.supportsLeases()) {
+            failPoppedMessage(message.withFailure(lastError, null));
+            return;
+        }
+        if (failures >= retryProperties.getMaxAttempts()) {
+            if (messageRepository.deleteLeases(message.queue(), List.of(lease.id())) == 0) {
+                logger.debug("Lease {} of message {} expired before it failed", lease.id(), message.id());
+                return;
+            }
+            deadLetter(message.withFailure(lastError, null));
+            return;
+        }
+
+        MessageRecord retry = message.withFailure(lastError, Instant.now().plus(retryProperties.getBackoff(failures)));
+        if (!messageRepository.retryLease(lease.id(), retry)) {
+            logger.debug("Lease {} of message {} expired before it failed", lease.id(), message.id());
+            return;
+        }
+        eventPublisher.publishEvent(new MessageScheduledEvent(retry.deliverAt()));
+        queueMetrics.recordRetry();
+        logger.debug("Message {} of queue {} failed {} time(s), retrying at {}", message.id(), message.queue(), failures, retry.deliverAt());
+    }
+
+    /**
+     * Removes every message enqueued to a queue before the call, using chunked set-based deletes.  Messages enqueued
+     * while the purge runs are kept.
+     *
+     * @param queueName The name of the queue.
+     * @return The completed purge.
+     * @throws QueueNotFoundException If the queue does not exist.
+     */
+    public PurgeRecord clearQueue(String queueName) {
+        queueRegistry.get(queueName);
+        return queuePurger.purge(queueName);
+    }
+
+    /**
+     * Starts removing every message enqueued to a queue before the call in the background.
+     *
+     * @param queueName The name of the queue.
+     * @return The running purge.
+     * @throws QueueNotFoundException If the queue does not exist.
+     */
+    public PurgeRecord clearQueueAsync(String queueName) {
+        queueRegistry.get(queueName);
+        return queuePurger.startPurge(queueName);
     }
 
     /**
-     * Gets a message by its ID.
+     * Gets the progress of a purge started by {@link #clearQueueAsync(String)}.
      *
-     * @param id The ID of the message.
+     * @param id The ID of the purge.
+     * @return The purge.
+     * @throws PurgeNotFoundException If the purge is not found.
+     */
+    public PurgeRecord getPurge(UUID id) {
+        return queuePurger.getPurge(id);
+    }
+
+    /**
+     * Gets a message of a queue by its ID.
+     *
+     * @param queueName The name of the queue.
+     * @param id        The ID of the message.
      * @return The message record.
-     * @throws MessageNotFoundException if the message is not found.
+     * @throws MessageNotFoundException if the message is not found in the queue.
      */
-    public MessageRecord getMessageById(UUID id) {
-        return messageRepository.findById(id)
-                .map(toMessageRecord())
+    public MessageRecord getMessageById(String queueName, UUID id) {
+        return queueStore.findById(queueName, id)
                 .orElseThrow(messageNotFoundException(id));
     }
 
     /**
-     * Gets the current size of the message queue.
+     * Gets the head of a queue without removing it: the message {@link #dequeueMessage(String)} takes next, unless it is
+     * the queue's fairness turn.
+     *
+     * @param queueName The name of the queue.
+     * @return The message record.
+     * @throws QueueNotFoundException   If the queue does not exist.
+     * @throws MessageNotFoundException If the queue has no ready message.
+     */
+    public MessageRecord peekMessage(String queueName) {
+        queueRegistry.get(queueName);
+        return queueStore.peek(queueName)
+                .orElseThrow(this::emptyQueueException);
+    }
+
+    /**
+     * Gets the current size of a queue, scheduled messages included.  Served from memory by the {@link QueueDepthCounter}.
+     *
+     * @param queueName The name of the queue.
+     * @return The queue size, zero if the queue does not exist.
+     */
+    public long getQueueSize(String queueName) {
+        return queueDepthCounter.get(queueName);
+    }
+
+    /**
+     * Gets the size, throughput and admission state of a queue, served from memory.
+     *
+     * @param queueName The name of the queue.
+     * @return The queue information.
+     * @throws QueueNotFoundException If the queue does not exist.
+     */
+    public QueueRecord getQueue(String queueName) {
+        QueueThroughput throughput = queueRegistry.get(queueName);
+        return new QueueRecord(queueName, queueDepthCounter.get(queueName), throughput.toRecord(),
+                admissionControl.getAdmission(queueName));
+    }
+
+    /**
+     * Gets the size, throughput and admission state of every queue, served from memory.
      *
-     * @return The queue size.
+     * @return The queue information, in alphabetical order of the queue names.
+     */
+    public List<QueueRecord> getQueues() {
+        return queueRegistry.getQueueNames().stream()
+                .map(this::getQueue)
+                .toList();
+    }
+
+    /**
+     * Makes the scheduled messages of every queue whose delivery time has come ready, and the in-flight messages whose
+     * lease has expired, up to {@code queue.delivery.batch-size} of each, and publishes a {@link MessageEnqueuedEvent}
+     * per queue for them.  Expired messages that have used up {@code queue.retry.max-attempts} are dead-lettered
+     * instead.
+     *
+     * @return The earliest delivery time or lease expiry still ahead, in the past if more are already due.
+     */
+    @Transactional
+    public Optional<Instant> deliverDueMessages() {
+        Instant now = Instant.now();
+        List<MessageRecord> delivered = messageRepository.deliverDue(now, deliveryProperties.getBatchSize());
+        Map<Boolean, List<MessageRecord>> expired = messageRepository.expireLeases(now, LEASE_EXPIRED_ERROR, deliveryProperties.getBatchSize())
+                .stream()
+                .collect(Collectors.partitioningBy(message -> message.attempts() >= retryProperties.getMaxAttempts()));
+        if (!expired.get(true).isEmpty()) {
+            messageRepository.deleteAllByIdInBatch(expired.get(true).stream().map(MessageRecord::id).toList());
+            expired.get(true).forEach(this::deadLetter);
+        }
+
+        Stream.concat(delivered.stream(), expired.get(false).stream())
+                .collect(Collectors.groupingBy(MessageRecord::queue))
+                .values()
+                .forEach(messageRecords -> eventPublisher.publishEvent(new MessageEnqueuedEvent(messageRecords)));
+        if (!delivered.isEmpty() || !expired.get(false).isEmpty()) {
+            logger.debug("Delivered {} scheduled message(s) and {} message(s) with an expired lease", delivered.size(), expired.get(false).size());
+        }
+        return Stream.of(messageRepository.findNextDeliverAt(), messageRepository.findNextLeaseExpiry())
+                .flatMap(Optional::stream)
+                .min(Comparator.naturalOrder());
+    }
+
+    private Optional<MessageRecord> createMessage(String queueName, EnqueueMessageRecord request) {
+        return Optional.of(newMessageRecord(queueName, request));
+    }
+
+    /**
+     * Validates a message to enqueue and gives it its ID and timestamp.
+     */
+    private MessageRecord newMessageRecord(String queueName, EnqueueMessageRecord request) {
+        Message message = newMessage(queueName, request);
+        MessageRecord messageRecord = new MessageRecord(TimeOrderedUuidGenerator.generate(), message.getText(),
+                message.getDataSize(), message.getTimestamp(), queueName, message.getPriority(), message.getDeliverAt());
+        queueStore.validate(messageRecord);
+        return messageRecord;
+    }
+
+    private static Message newMessage(String queueName, EnqueueMessageRecord request) {
+        Message message = new Message(queueName, request.text(), request.dataSize(), priority(request));
+        message.setDeliverAt(deliverAt(request, message.getTimestamp()));
+        return message;
+    }
+
+    private static Instant deliverAt(EnqueueMessageRecord request, Instant now) {
+        if (request.deliverAt() != null && request.delaySeconds() != null) {
+            throw new InvalidMessageException("Set either deliverAt or delaySeconds, not both");
+        }
+        if (request.delaySeconds() != null) {
+            if (request.delaySeconds() < 0) {
+                throw new InvalidMessageException("delaySeconds must not be negative: " + request.delaySeconds());
+            }
+            return now.plusSeconds(request.delaySeconds());
+        }
+        return request.deliverAt();
+    }
+
+    /**
+     * Whether a message was enqueued for later delivery, by the same rule as {@link Message#setDeliverAt(Instant)}.
+     */
+    private static boolean isScheduled(MessageRecord message) {
+        return message.deliverAt() != null && message.deliverAt().isAfter(message.timestamp());
+    }
+
+    private void publishEnqueueEvents(List<MessageRecord> messageRecords) {
+        Map<Boolean, List<MessageRecord>> scheduled = messageRecords.stream()
+                .collect(Collectors.partitioningBy(MessageService::isScheduled));
+        if (!scheduled.get(false).isEmpty()) {
+            eventPublisher.publishEvent(new MessageEnqueuedEvent(scheduled.get(false)));
+        }
+        scheduled.get(true).stream()
+                .map(MessageRecord::deliverAt)
+                .min(Comparator.naturalOrder())
+                .ifPresent(deliverAt -> eventPublisher.publishEvent(new MessageScheduledEvent(deliverAt)));
+    }
+
+    /**
+     * Moves a message, already deleted from its queue, to the dead-letter store.
+     */
+    private void deadLetter(MessageRecord message) {
+        queueDepthCounter.adjustAfterCommit(message.queue(), -1);
+        storeDeadLetter(message);
+    }
+
+    private void storeDeadLetter(MessageRecord message) {
+        deadLetterRepository.save(new DeadLetter(message));
+        queueMetrics.recordDeadLetter();
+        logger.warn("Message {} of queue {} failed {} time(s) and was dead-lettered: {}", message.id(), message.queue(), message.attempts(), message.lastError());
+    }
+
+    /**
+     * Requeues a message that failed after it was popped from a store without leases, or dead-letters it once it has
+     * used up {@code queue.retry.max-attempts}.
+     */
+    private void failPoppedMessage(MessageRecord failed) {
+        if (failed.attempts() >= retryProperties.getMaxAttempts()) {
+            storeDeadLetter(failed);
+            return;
+        }
+        requeueMessages(List.of(failed));
+        queueMetrics.recordRetry();
+        logger.debug("Message {} of queue {} failed {} time(s), requeued", failed.id(), failed.queue(), failed.attempts());
+    }
+
+    private Duration visibilityTimeout(Duration requested) {
+        if (requested == null) {
+            return leaseProperties.getVisibilityTimeout();
+        }
+        if (requested.isNegative() || requested.isZero() || requested.compareTo(leaseProperties.getMaxVisibilityTimeout()) > 0) {
+            throw new InvalidLeaseException("Visibility timeout must be positive and at most "
+                    + leaseProperties.getMaxVisibilityTimeout() + ": " + requested);
+        }
+        return requested;
+    }
+
+    private static String describe(Exception error) {
+        String description = error.toString();
+        return description.length() > Message.MAX_ERROR_LENGTH ? description.substring(0, Message.MAX_ERROR_LENGTH) : description;
+    }
+
+    private static int priority(EnqueueMessageRecord request) {
+        if (request.priority() == null) {
+            return Message.DEFAULT_PRIORITY;
+        }
+        if (request.priority() < Message.DEFAULT_PRIORITY || request.priority() > Message.MAX_PRIORITY) {
+            throw new InvalidMessageException("Priority must be between " + Message.DEFAULT_PRIORITY + " and "
+                    + Message.MAX_PRIORITY + ": " + request.priority());
+        }
+        return request.priority();
+    }
+
+    /**
+     * Counts the dequeues of a queue and tells whether this one should take the oldest message rather than the highest
+     * priority one.  The count is kept in memory per queue; dequeues that find the queue empty count too, which only
+     * shifts the next turn.
      */
-    public long getQueueSize() {
-        return messageRepository.count();
+    private boolean isFairnessTurn(String queueName) {
+        int interval = dequeueProperties.getFairnessInterval();
+        if (interval <= 0) {
+            return false;
+        }
+        long count = dequeueCounts.computeIfAbsent(queueName, name -> new AtomicLong()).incrementAndGet();
+        return count % interval == 0;
     }
 
-    private Optional<Message> createMessage(EnqueueMessageRecord request) {
-        return Optional.of(new Message(request.text(), request.dataSize()));
+    /**
+     * Leases from one queue with one lease ID, whichever lookup the scheduler picks.  The head of the queue is subject
+     * to the fairness guard, as with dequeues.
+     */
+    private class LeaseCandidates implements QueueScheduler.Candidates {
+
+        private final String queueName;
+        private final UUID leaseId;
+        private final Instant expiresAt;
+
+        private LeaseCandidates(String queueName, UUID leaseId, Instant expiresAt) {
+            this.queueName = queueName;
+            this.leaseId = leaseId;
+            this.expiresAt = expiresAt;
+        }
+
+        @Override
+        public Optional<MessageRecord> first() {
+            return isFairnessTurn(queueName)
+                    ? messageRepository.leaseOldest(queueName, leaseId, expiresAt)
+                    : messageRepository.leaseFirst(queueName, leaseId, expiresAt);
+        }
+
+        @Override
+        public Optional<MessageRecord> oldestReadySince(Instant readySince) {
+            return messageRepository.leaseOldestReadySince(queueName, readySince, leaseId, expiresAt);
+        }
+
+        @Override
+        public Optional<MessageRecord> firstInSizeClass(int sizeClass) {
+            return messageRepository.leaseFirstInSizeClass(queueName, sizeClass, leaseId, expiresAt);
+        }
     }
 
-    private Function<Message, Message> saveMessage() {
-        return messageRepository::save;
+    private Function<MessageRecord, MessageRecord> appendMessage() {
+        return message -> {
+            queueStore.append(List.of(message));
+            return message;
+        };
     }
 
     private Function<MessageRecord, MessageRecord> publishEnqueueEvent() {
         return message -> {
-            eventPublisher.publishEvent(new MessageEnqueuedEvent(message));
+            publishEnqueueEvents(List.of(message));
+            return message;
+        };
+    }
+
+    private Function<MessageRecord, MessageRecord> recordEnqueued(QueueThroughput throughput) {
+        return message -> {
+            queueDepthCounter.adjustAfterCommit(message.queue(), 1);
+            afterCommit(() -> throughput.recordEnqueued(1));
             return message;
         };
     }
 
-    private Function<Message, Message> deleteMessage() {
+    private Function<MessageRecord, MessageRecord> recordDequeued(QueueThroughput throughput) {
         return message -> {
-            messageRepository.delete(message);
+            queueDepthCounter.adjustAfterCommit(message.queue(), -1);
+            afterCommit(() -> throughput.recordDequeued(1));
             return message;
         };
     }
 
-    private Function<Message, MessageRecord> toMessageRecord() {
-        return message -> conversionService.convert(message, MessageRecord.class);
+    /**
+     * Runs {@code action} once the current transaction commits, or immediately if there is no transaction.
+     */
+    private static void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
     }
 
     private MessageEnqueueException messageEnqueueException() {
@@ -0,0 +1,24 @@
+package com.thedamones.bv.queue;
+
+/**
+ * Where a message stands in its queue.  Only {@link #READY} messages are dequeued; the state leads the dequeue indexes
+ * so that head lookups never walk over messages that are not due yet.
+ */
+public enum MessageState {
+
+    /**
+     * Waiting to be dequeued.
+     */
+    READY,
+
+    /**
+     * Enqueued for delivery at a later time, see {@link Message#getDeliverAt()}.
+     */
+    SCHEDULED,
+
+    /**
+     * Leased to a consumer, which deletes it by acknowledging the lease.  It becomes ready again once the lease
+     * expires, at {@link Message#getDeliverAt()}.
+     */
+    IN_FLIGHT
+}
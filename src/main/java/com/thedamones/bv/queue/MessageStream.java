@@ -0,0 +1,235 @@
+package com.thedamones.bv.queue;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A streaming consumer connection, opened by {@link MessageStreamService}.
+ * <p>
+ * The stream runs its own consumer loop on one queue: it dequeues messages and pushes them to the client as Server-Sent Events
+ * while the number of unacknowledged messages is below its credits, then waits for acknowledgements.  Messages pushed
+ * but not acknowledged when the stream closes are requeued.
+ */
+public class MessageStream {
+
+    private static final Logger logger = LoggerFactory.getLogger(MessageStream.class);
+
+    private static final Duration HEARTBEAT_INTERVAL = Duration.ofSeconds(15);
+
+    private final UUID id = UUID.randomUUID();
+    private final String queueName;
+    private final int credits;
+    private final SseEmitter emitter;
+    private final MessageService messageService;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition changed = lock.newCondition();
+    private final Map<UUID, MessageRecord> inFlightMessages = new LinkedHashMap<>();
+    private long enqueueSignals;
+    private volatile boolean open = true;
+
+    MessageStream(String queueName, int credits, SseEmitter emitter, MessageService messageService) {
+        this.queueName = queueName;
+        this.credits = credits;
+        this.emitter = emitter;
+        this.messageService = messageService;
+
+        emitter.onCompletion(this::close);
+        emitter.onTimeout(this::close);
+        emitter.onError(ex -> close());
+    }
+
+    public UUID getId() {
+        return id;
+    }
+
+    public String getQueueName() {
+        return queueName;
+    }
+
+    public SseEmitter getEmitter() {
+        return emitter;
+    }
+
+    /**
+     * Gets the IDs of the messages pushed to the client and not acknowledged yet.
+     *
+     * @return The unacknowledged message IDs, oldest first.
+     */
+    public List<UUID> getInFlightMessageIds() {
+        lock.lock();
+        try {
+            return List.copyOf(inFlightMessages.keySet());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Acknowledges messages consumed by the client, returning their credits.  Unknown IDs are ignored.
+     *
+     * @param messageIds The IDs of the consumed messages.
+     */
+    public void acknowledge(Collection<UUID> messageIds) {
+        lock.lock();
+        try {
+            messageIds.forEach(inFlightMessages::remove);
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Closes the stream.  The consumer loop stops and requeues the unacknowledged messages.
+     */
+    public void close() {
+        lock.lock();
+        try {
+            open = false;
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void signalEnqueue() {
+        lock.lock();
+        try {
+            enqueueSignals++;
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void run() {
+        try {
+            emitter.send(SseEmitter.event().name("stream").data(new MessageStreamRecord(id, credits)));
+            while (open) {
+                if (!awaitCredit()) {
+                    sendHeartbeat();
+                    continue;
+                }
+
+                long signals = currentEnqueueSignals();
+                try {
+                    MessageRecord messageRecord = messageService.dequeueMessage(queueName);
+                    addInFlight(messageRecord);
+                    emitter.send(SseEmitter.event().id(messageRecord.id().toString()).name("message").data(messageRecord));
+                } catch (MessageNotFoundException e) {
+                    if (!awaitEnqueue(signals)) {
+                        sendHeartbeat();
+                    }
+                }
+            }
+        } catch (IOException e) {
+            logger.debug("Stream {} disconnected", id);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            logger.error("Stream {} failed", id, e);
+        } finally {
+            close();
+            requeueInFlightMessages();
+            emitter.complete();
+        }
+    }
+
+    /**
+     * Waits until a credit is available.
+     *
+     * @return False if the stream closed, or the heartbeat interval elapsed first.
+     */
+    private boolean awaitCredit() throws InterruptedException {
+        lock.lock();
+        try {
+            long nanos = HEARTBEAT_INTERVAL.toNanos();
+            while (open && inFlightMessages.size() >= credits) {
+                if (nanos <= 0) {
+                    return false;
+                }
+                nanos = changed.awaitNanos(nanos);
+            }
+            return open;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Waits until a message is enqueued after {@code signals} was read.
+     *
+     * @return False if the heartbeat interval elapsed first.
+     */
+    private boolean awaitEnqueue(long signals) throws InterruptedException {
+        lock.lock();
+        try {
+            long nanos = HEARTBEAT_INTERVAL.toNanos();
+            while (open && enqueueSignals == signals) {
+                if (nanos <= 0) {
+                    return false;
+                }
+                nanos = changed.awaitNanos(nanos);
+            }
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Sends an SSE comment, so a client that went away is detected even while the stream is idle.
+     */
+    private void sendHeartbeat() throws IOException {
+        if (open) {
+            emitter.send(SseEmitter.event().comment("heartbeat"));
+        }
+    }
+
+    private long currentEnqueueSignals() {
+        lock.lock();
+        try {
+            return enqueueSignals;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void addInFlight(MessageRecord messageRecord) {
+        lock.lock();
+        try {
+            inFlightMessages.put(messageRecord.id(), messageRecord);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void requeueInFlightMessages() {
+        List<MessageRecord> unacknowledged;
+        lock.lock();
+        try {
+            unacknowledged = new ArrayList<>(inFlightMessages.values());
+            inFlightMessages.clear();
+        } finally {
+            lock.unlock();
+        }
+
+        if (!unacknowledged.isEmpty()) {
+            messageService.requeueMessages(unacknowledged);
+            logger.info("Stream {} closed, requeued {} unacknowledged message(s)", id, unacknowledged.size());
+        }
+    }
+}
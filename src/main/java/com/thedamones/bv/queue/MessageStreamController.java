@@ -0,0 +1,47 @@
+package com.thedamones.bv.queue;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.List;
+import java.util.UUID;
+
+@RestController
+@RequestMapping("/v2/queue")
+public class MessageStreamController {
+
+    private final MessageStreamService messageStreamService;
+
+    @Autowired
+    public MessageStreamController(MessageStreamService messageStreamService) {
+        this.messageStreamService = messageStreamService;
+    }
+
+    /**
+     * Opens a Server-Sent Events stream of messages dequeued from the default queue.  The first event ({@code stream}) carries the stream ID;
+     * each following event ({@code message}) carries one message.  At most {@code credits} messages are pushed before
+     * they are acknowledged.  Unacknowledged messages are requeued when the stream closes.
+     *
+     * @param credits The maximum number of unacknowledged messages.
+     * @return The event stream.
+     */
+    @GetMapping(value = "/messages/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamMessages(@RequestParam(defaultValue = "10") int credits) {
+        return messageStreamService.openStream(QueueRegistry.DEFAULT_QUEUE, credits).getEmitter();
+    }
+
+    /**
+     * Acknowledges messages received through a stream, returning their credits to it.
+     *
+     * @param id         The ID of the stream.
+     * @param messageIds The IDs of the consumed messages.
+     */
+    @PostMapping("/streams/{id}/acks")
+    @ResponseStatus(HttpStatus.NO_CONTENT)
+    public void acknowledgeMessages(@PathVariable UUID id, @RequestBody List<UUID> messageIds) {
+        messageStreamService.acknowledge(id, messageIds);
+    }
+}
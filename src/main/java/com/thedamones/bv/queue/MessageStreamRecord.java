@@ -0,0 +1,6 @@
+package com.thedamones.bv.queue;
+
+import java.util.UUID;
+
+public record MessageStreamRecord(UUID id, int credits) {
+}
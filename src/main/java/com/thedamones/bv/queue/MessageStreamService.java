@@ -0,0 +1,99 @@
+package com.thedamones.bv.queue;
+
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Manages {@link MessageStream}s: long-lived connections that push messages to a consumer as they become available,
+ * with credit-based flow control.
+ * <p>
+ * A stream never has more unacknowledged messages than its credits, so a slow client cannot make the server buffer
+ * without bound.  Each stream runs its consumer loop on its own virtual thread and is woken by the same
+ * {@link MessageEnqueuedEvent} as the {@link QueueManager}.
+ */
+@Service
+public class MessageStreamService {
+
+    private final MessageService messageService;
+    private final QueueRegistry queueRegistry;
+    private final QueueProperties.Stream streamProperties;
+
+    private final Map<UUID, MessageStream> streams = new ConcurrentHashMap<>();
+    private final ThreadFactory streamThreadFactory = Thread.ofVirtual().name("queue-stream-", 0).factory();
+
+    @Autowired
+    public MessageStreamService(MessageService messageService, QueueRegistry queueRegistry, QueueProperties queueProperties) {
+        this.messageService = messageService;
+        this.queueRegistry = queueRegistry;
+        this.streamProperties = queueProperties.getStream();
+    }
+
+    /**
+     * Opens a stream on a queue and starts pushing its messages to it.
+     *
+     * @param queueName The name of the queue.
+     * @param credits   The maximum number of unacknowledged messages, capped at {@code queue.stream.max-credits}.
+     * @return The open stream.
+     * @throws QueueNotFoundException If the queue does not exist.
+     */
+    public MessageStream openStream(String queueName, int credits) {
+        queueRegistry.get(queueName);
+        int boundedCredits = Math.clamp(credits, 1, streamProperties.getMaxCredits());
+        MessageStream stream = new MessageStream(queueName, boundedCredits, new SseEmitter(streamProperties.getTimeout().toMillis()), messageService);
+        streams.put(stream.getId(), stream);
+
+        streamThreadFactory.newThread(() -> {
+            try {
+                stream.run();
+            } finally {
+                streams.remove(stream.getId());
+            }
+        }).start();
+        return stream;
+    }
+
+    /**
+     * Acknowledges messages consumed through a stream, allowing it to push more.
+     *
+     * @param streamId   The ID of the stream.
+     * @param messageIds The IDs of the consumed messages.
+     * @throws StreamNotFoundException If the stream is not open.
+     */
+    public void acknowledge(UUID streamId, Collection<UUID> messageIds) {
+        getStream(streamId).acknowledge(messageIds);
+    }
+
+    /**
+     * Gets an open stream.
+     *
+     * @param streamId The ID of the stream.
+     * @return The stream.
+     * @throws StreamNotFoundException If the stream is not open.
+     */
+    public MessageStream getStream(UUID streamId) {
+        return Optional.ofNullable(streams.get(streamId))
+                .orElseThrow(() -> new StreamNotFoundException("Stream with ID " + streamId + " not found"));
+    }
+
+    @TransactionalEventListener
+    public void handleMessageEnqueuedEvent(MessageEnqueuedEvent event) {
+        streams.values().stream()
+                .filter(stream -> stream.getQueueName().equals(event.getQueue()))
+                .forEach(MessageStream::signalEnqueue);
+    }
+
+    @PreDestroy
+    public void closeStreams() {
+        streams.values().forEach(MessageStream::close);
+    }
+}
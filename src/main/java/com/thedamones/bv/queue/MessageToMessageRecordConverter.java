@@ -12,7 +12,12 @@ public class MessageToMessageRecordConverter implements Converter<Message, Messa
                 source.getId(),
                 source.getText(),
                 source.getDataSize(),
-                source.getTimestamp()
+                source.getTimestamp(),
+                source.getQueueName(),
+                source.getPriority(),
+                source.getDeliverAt(),
+                source.getAttempts(),
+                source.getLastError()
         );
     }
 }
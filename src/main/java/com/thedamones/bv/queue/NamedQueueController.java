@@ -0,0 +1,56 @@
+package com.thedamones.bv.queue;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.hateoas.CollectionModel;
+import org.springframework.hateoas.EntityModel;
+import org.springframework.hateoas.IanaLinkRelations;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.List;
+
+@RestController
+@RequestMapping("/v2/queues")
+public class NamedQueueController {
+
+    private final MessageService messageService;
+    private final QueueLinks queueLinks;
+
+    @Autowired
+    public NamedQueueController(MessageService messageService, QueueLinks queueLinks) {
+        this.messageService = messageService;
+        this.queueLinks = queueLinks;
+    }
+
+    /**
+     * Gets the depth and throughput of every queue.
+     *
+     * @return The queues, in alphabetical order of their names.
+     */
+    @GetMapping
+    public CollectionModel<EntityModel<QueueRecord>> getQueues() {
+        String baseUri = queueLinks.baseUri();
+        List<EntityModel<QueueRecord>> queues = messageService.getQueues().stream()
+                .map(queueRecord -> EntityModel.of(queueRecord, queueLinks.queueInfo(baseUri, queueRecord.name())))
+                .toList();
+
+        return CollectionModel.of(queues, queueLinks.queues(baseUri, IanaLinkRelations.SELF));
+    }
+
+    /**
+     * Gets the depth and throughput of a queue.
+     *
+     * @param name The name of the queue.
+     * @return The queue information.
+     */
+    @GetMapping("/{name}")
+    public EntityModel<QueueRecord> getQueue(@PathVariable String name) {
+        QueueRecord queueRecord = messageService.getQueue(name);
+
+        String baseUri = queueLinks.baseUri();
+        return EntityModel.of(queueRecord, queueLinks.queueInfo(baseUri, name))
+                .add(queueLinks.queues(baseUri, QueueLinks.QUEUES));
+    }
+}
@@ -0,0 +1,94 @@
+package com.thedamones.bv.queue;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.hateoas.CollectionModel;
+import org.springframework.hateoas.EntityModel;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * The dead letters of a named queue.  They are kept after the queue itself is gone; requeueing one creates the queue
+ * again if needed.
+ */
+@RestController
+@RequestMapping("/v2/queues/{name}/dead-letters")
+public class NamedQueueDeadLetterController {
+
+    private final DeadLetterService deadLetterService;
+    private final DeadLetterModelAssembler deadLetterModelAssembler;
+    private final MessageModelAssembler messageModelAssembler;
+
+    @Autowired
+    public NamedQueueDeadLetterController(DeadLetterService deadLetterService, DeadLetterModelAssembler deadLetterModelAssembler,
+                                          MessageModelAssembler messageModelAssembler) {
+        this.deadLetterService = deadLetterService;
+        this.deadLetterModelAssembler = deadLetterModelAssembler;
+        this.messageModelAssembler = messageModelAssembler;
+    }
+
+    /**
+     * Gets the dead letters of the queue, oldest first.
+     *
+     * @param name  The name of the queue.
+     * @param limit The maximum number of dead letters.
+     * @return The dead letters.
+     */
+    @GetMapping
+    public CollectionModel<EntityModel<DeadLetterRecord>> getDeadLetters(@PathVariable String name,
+                                                                         @RequestParam(defaultValue = "100") int limit) {
+        List<DeadLetterRecord> deadLetters = deadLetterService.getDeadLetters(name, limit);
+        return deadLetterModelAssembler.toCollectionModel(name, deadLetters);
+    }
+
+    /**
+     * Gets a dead letter of the queue by its ID.
+     *
+     * @param name The name of the queue.
+     * @param id   The ID of the message.
+     * @return The dead letter.
+     */
+    @GetMapping("/{id}")
+    public EntityModel<DeadLetterRecord> getDeadLetter(@PathVariable String name, @PathVariable UUID id) {
+        DeadLetterRecord deadLetter = deadLetterService.getDeadLetter(name, id);
+        return deadLetterModelAssembler.toModel(deadLetter);
+    }
+
+    /**
+     * Moves a dead letter back to the end of the queue, with its attempts reset.
+     *
+     * @param name The name of the queue.
+     * @param id   The ID of the message.
+     * @return The requeued message.
+     */
+    @PostMapping("/{id}/requeue")
+    public EntityModel<MessageRecord> requeueDeadLetter(@PathVariable String name, @PathVariable UUID id) {
+        MessageRecord message = deadLetterService.requeueDeadLetter(name, id);
+        return messageModelAssembler.toModel(message);
+    }
+
+    /**
+     * Deletes a dead letter of the queue.
+     *
+     * @param name The name of the queue.
+     * @param id   The ID of the message.
+     */
+    @DeleteMapping("/{id}")
+    @ResponseStatus(HttpStatus.NO_CONTENT)
+    public void deleteDeadLetter(@PathVariable String name, @PathVariable UUID id) {
+        deadLetterService.deleteDeadLetter(name, id);
+    }
+
+    /**
+     * Deletes every dead letter of the queue.
+     *
+     * @param name The name of the queue.
+     */
+    @DeleteMapping
+    @ResponseStatus(HttpStatus.NO_CONTENT)
+    public void purgeDeadLetters(@PathVariable String name) {
+        deadLetterService.purgeDeadLetters(name);
+    }
+}
@@ -0,0 +1,84 @@
+package com.thedamones.bv.queue;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.hateoas.EntityModel;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+import java.util.UUID;
+
+import static com.thedamones.bv.queue.LeaseController.seconds;
+
+/**
+ * Leases of a named queue, see {@link LeaseController}.  Leasing from a queue that does not exist responds with
+ * {@code 404 Not Found}.
+ */
+@RestController
+@RequestMapping("/v2/queues/{name}/leases")
+public class NamedQueueLeaseController {
+
+    private final MessageService messageService;
+    private final LeaseModelAssembler leaseModelAssembler;
+
+    @Autowired
+    public NamedQueueLeaseController(MessageService messageService, LeaseModelAssembler leaseModelAssembler) {
+        this.messageService = messageService;
+        this.leaseModelAssembler = leaseModelAssembler;
+    }
+
+    /**
+     * Leases the message at the head of the queue.
+     *
+     * @param name              The name of the queue.
+     * @param visibilityTimeout How long the message is leased, in seconds; {@code queue.lease.visibility-timeout} if
+     *                          not set.
+     * @return The lease, with the message.
+     */
+    @PostMapping
+    @ResponseStatus(HttpStatus.CREATED)
+    public EntityModel<LeaseRecord> leaseMessage(@PathVariable String name, @RequestParam(required = false) Long visibilityTimeout) {
+        LeaseRecord lease = messageService.leaseMessage(name, seconds(visibilityTimeout));
+        return leaseModelAssembler.toModel(lease);
+    }
+
+    /**
+     * Extends a lease that has not expired yet.
+     *
+     * @param name              The name of the queue.
+     * @param id                The ID of the lease.
+     * @param visibilityTimeout How long the message stays leased from now, in seconds;
+     *                          {@code queue.lease.visibility-timeout} if not set.
+     * @return The extended lease.
+     */
+    @PostMapping("/{id}/extend")
+    public EntityModel<LeaseRecord> extendLease(@PathVariable String name, @PathVariable UUID id,
+                                                @RequestParam(required = false) Long visibilityTimeout) {
+        LeaseRecord lease = messageService.extendLease(name, id, seconds(visibilityTimeout));
+        return leaseModelAssembler.toModel(lease);
+    }
+
+    /**
+     * Acknowledges a lease, deleting its message shortly after.
+     *
+     * @param name The name of the queue.
+     * @param id   The ID of the lease.
+     */
+    @DeleteMapping("/{id}")
+    @ResponseStatus(HttpStatus.ACCEPTED)
+    public void acknowledgeLease(@PathVariable String name, @PathVariable UUID id) {
+        messageService.acknowledgeLeases(name, List.of(id));
+    }
+
+    /**
+     * Acknowledges a batch of leases, deleting their messages shortly after.
+     *
+     * @param name The name of the queue.
+     * @param ids  The IDs of the leases.
+     */
+    @PostMapping("/acks")
+    @ResponseStatus(HttpStatus.ACCEPTED)
+    public void acknowledgeLeases(@PathVariable String name, @RequestBody List<UUID> ids) {
+        messageService.acknowledgeLeases(name, ids);
+    }
+}
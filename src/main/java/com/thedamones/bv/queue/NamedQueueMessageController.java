@@ -0,0 +1,209 @@
+package com.thedamones.bv.queue;
+
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.hateoas.CollectionModel;
+import org.springframework.hateoas.EntityModel;
+import org.springframework.hateoas.IanaLinkRelations;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * The messages of a named queue.  A queue is created by the first message enqueued to it; reading from a queue that
+ * does not exist responds with {@code 404 Not Found}.
+ */
+@RestController
+@RequestMapping("/v2/queues/{name}/messages")
+public class NamedQueueMessageController {
+
+    private final MessageService messageService;
+    private final GroupCommitEnqueuer groupCommitEnqueuer;
+    private final LongPollDequeueService longPollDequeueService;
+    private final MessageStreamService messageStreamService;
+    private final MessageModelAssembler messageModelAssembler;
+    private final QueueLinks queueLinks;
+    private final AdmissionControl admissionControl;
+
+    @Autowired
+    public NamedQueueMessageController(MessageService messageService, GroupCommitEnqueuer groupCommitEnqueuer,
+                                       LongPollDequeueService longPollDequeueService,
+                                       MessageStreamService messageStreamService, MessageModelAssembler messageModelAssembler,
+                                       QueueLinks queueLinks, AdmissionControl admissionControl) {
+        this.messageService = messageService;
+        this.groupCommitEnqueuer = groupCommitEnqueuer;
+        this.longPollDequeueService = longPollDequeueService;
+        this.messageStreamService = messageStreamService;
+        this.messageModelAssembler = messageModelAssembler;
+        this.queueLinks = queueLinks;
+        this.admissionControl = admissionControl;
+    }
+
+    /**
+     * Adds a message to the queue, creating the queue if needed.  With {@code queue.group-commit.enabled}, the message
+     * is stored along with other enqueues, and the response is sent once they are committed.  Responds with
+     * {@code 429 Too Many Requests} if the {@link AdmissionControl} rejects the request.
+     *
+     * @param name           The name of the queue.
+     * @param request        The message to enqueue.
+     * @param servletRequest The HTTP request, which names the client.
+     * @return The enqueued message.
+     */
+    @PostMapping
+    @ResponseStatus(HttpStatus.CREATED)
+    public CompletableFuture<EntityModel<MessageRecord>> enqueueMessage(@PathVariable String name,
+                                                                        @RequestBody EnqueueMessageRecord request,
+                                                                        HttpServletRequest servletRequest) {
+        admissionControl.admit(name, 1, servletRequest);
+        // the message may be committed on another thread; links are built against this request
+        String baseUri = queueLinks.baseUri();
+        return groupCommitEnqueuer.enqueue(name, request)
+                .thenApply(message -> messageModelAssembler.toModel(message, baseUri));
+    }
+
+    /**
+     * Adds a message to the queue without waiting for it to be stored.  With {@code queue.group-commit.enabled}, the
+     * response is {@code 202 Accepted}, sent as soon as the message has its ID, and the message is lost if it cannot be
+     * stored.  Otherwise {@code durable=false} is ignored: the message is stored first, and the response is
+     * {@code 201 Created}.
+     *
+     * @param name           The name of the queue.
+     * @param request        The message to enqueue.
+     * @param servletRequest The HTTP request, which names the client.
+     * @return The accepted message.
+     */
+    @PostMapping(params = "durable=false")
+    public ResponseEntity<EntityModel<MessageRecord>> acceptMessage(@PathVariable String name,
+                                                                    @RequestBody EnqueueMessageRecord request,
+                                                                    HttpServletRequest servletRequest) {
+        admissionControl.admit(name, 1, servletRequest);
+        MessageRecord acceptedMessage = groupCommitEnqueuer.accept(name, request);
+        HttpStatus status = groupCommitEnqueuer.isEnabled() ? HttpStatus.ACCEPTED : HttpStatus.CREATED;
+        return ResponseEntity.status(status).body(messageModelAssembler.toModel(acceptedMessage));
+    }
+
+    /**
+     * Adds a batch of messages to the queue in a single transaction, creating the queue if needed.
+     *
+     * @param name           The name of the queue.
+     * @param requests       The messages to enqueue.
+     * @param servletRequest The HTTP request, which names the client.
+     * @return The enqueued messages, in request order.
+     */
+    @PostMapping("/batch")
+    @ResponseStatus(HttpStatus.CREATED)
+    public CollectionModel<EntityModel<MessageRecord>> enqueueMessages(@PathVariable String name,
+                                                                       @RequestBody List<EnqueueMessageRecord> requests,
+                                                                       HttpServletRequest servletRequest) {
+        admissionControl.admit(name, requests.size(), servletRequest);
+        List<MessageRecord> enqueuedMessages = messageService.enqueueMessages(name, requests);
+        return messageModelAssembler.toCollectionModel(enqueuedMessages);
+    }
+
+    /**
+     * Gets and removes a message from the queue.  This message will be deleted without being processed.
+     *
+     * @param name The name of the queue.
+     * @return The dequeued message.
+     */
+    @DeleteMapping("/first")
+    public EntityModel<MessageRecord> dequeueMessage(@PathVariable String name) {
+        MessageRecord dequeuedMessage = messageService.dequeueMessage(name);
+        return messageModelAssembler.toModel(dequeuedMessage);
+    }
+
+    /**
+     * Gets and removes a message from the queue, waiting up to {@code wait} seconds for one to be enqueued if the queue
+     * is empty.  The request is parked without holding a servlet thread.  This message will be deleted without being
+     * processed.
+     *
+     * @param name        The name of the queue.
+     * @param waitSeconds How long to wait for a message, in seconds.
+     * @return The dequeued message.
+     */
+    @DeleteMapping(value = "/first", params = "wait")
+    public CompletableFuture<EntityModel<MessageRecord>> dequeueMessage(@PathVariable String name, @RequestParam("wait") long waitSeconds) {
+        // the message is delivered on another thread; links are built against this request
+        String baseUri = queueLinks.baseUri();
+        return longPollDequeueService.dequeueMessage(name, Duration.ofSeconds(waitSeconds))
+                .thenApply(message -> messageModelAssembler.toModel(message, baseUri));
+    }
+
+    /**
+     * Removes every message currently in the queue.  Messages enqueued while the purge runs are kept.
+     *
+     * @param name The name of the queue.
+     * @return The queue information after the purge.
+     */
+    @DeleteMapping
+    public EntityModel<QueueRecord> clearQueue(@PathVariable String name) {
+        messageService.clearQueue(name);
+
+        QueueRecord queueRecord = messageService.getQueue(name);
+
+        return EntityModel.of(queueRecord, queueLinks.queueInfo(queueLinks.baseUri(), name));
+    }
+
+    /**
+     * Starts removing every message currently in the queue in the background.
+     *
+     * @param name The name of the queue.
+     * @return The running purge, linking to its progress resource.
+     */
+    @DeleteMapping(params = "async=true")
+    @ResponseStatus(HttpStatus.ACCEPTED)
+    public EntityModel<PurgeRecord> clearQueueAsync(@PathVariable String name) {
+        PurgeRecord purgeRecord = messageService.clearQueueAsync(name);
+
+        String baseUri = queueLinks.baseUri();
+        return EntityModel.of(purgeRecord,
+                queueLinks.purge(baseUri, purgeRecord.id(), IanaLinkRelations.SELF),
+                queueLinks.queue(baseUri, name, QueueLinks.QUEUE));
+    }
+
+    /**
+     * Gets the message at the head of the queue without removing it.
+     *
+     * @param name The name of the queue.
+     * @return The message the next dequeue takes.
+     */
+    @GetMapping("/first")
+    public EntityModel<MessageRecord> peekMessage(@PathVariable String name) {
+        MessageRecord message = messageService.peekMessage(name);
+        return messageModelAssembler.toModel(message);
+    }
+
+    /**
+     * Gets a message of the queue by its ID.
+     *
+     * @param name The name of the queue.
+     * @param id   The ID of the message.
+     * @return The message.
+     */
+    @GetMapping("/{id}")
+    public EntityModel<MessageRecord> getMessage(@PathVariable String name, @PathVariable UUID id) {
+        MessageRecord message = messageService.getMessageById(name, id);
+        return messageModelAssembler.toModel(message);
+    }
+
+    /**
+     * Opens a Server-Sent Events stream of messages dequeued from the queue, see
+     * {@link MessageStreamController#streamMessages(int)}.  Messages are acknowledged through
+     * {@code POST /v2/queue/streams/{id}/acks}.
+     *
+     * @param name    The name of the queue.
+     * @param credits The maximum number of unacknowledged messages.
+     * @return The event stream.
+     */
+    @GetMapping(value = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamMessages(@PathVariable String name, @RequestParam(defaultValue = "10") int credits) {
+        return messageStreamService.openStream(name, credits).getEmitter();
+    }
+}
@@ -0,0 +1,42 @@
+package com.thedamones.bv.queue;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.hateoas.EntityModel;
+import org.springframework.hateoas.IanaLinkRelations;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.UUID;
+
+@RestController
+@RequestMapping("/v2/queue/purges")
+public class PurgeController {
+
+    private final MessageService messageService;
+    private final QueueLinks queueLinks;
+
+    @Autowired
+    public PurgeController(MessageService messageService, QueueLinks queueLinks) {
+        this.messageService = messageService;
+        this.queueLinks = queueLinks;
+    }
+
+    /**
+     * Gets the progress of a purge started with {@code DELETE /v2/queue/messages?async=true} or
+     * {@code DELETE /v2/queues/{name}/messages?async=true}.
+     *
+     * @param id The ID of the purge.
+     * @return The purge progress.
+     */
+    @GetMapping("/{id}")
+    public EntityModel<PurgeRecord> getPurge(@PathVariable UUID id) {
+        PurgeRecord purgeRecord = messageService.getPurge(id);
+
+        String baseUri = queueLinks.baseUri();
+        return EntityModel.of(purgeRecord,
+                queueLinks.purge(baseUri, id, IanaLinkRelations.SELF),
+                queueLinks.queue(baseUri, purgeRecord.queue(), QueueLinks.QUEUE));
+    }
+}
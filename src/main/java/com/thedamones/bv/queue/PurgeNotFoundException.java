@@ -0,0 +1,8 @@
+package com.thedamones.bv.queue;
+
+public class PurgeNotFoundException extends RuntimeException {
+
+    public PurgeNotFoundException(String message) {
+        super(message);
+    }
+}
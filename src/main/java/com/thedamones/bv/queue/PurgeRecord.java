@@ -0,0 +1,8 @@
+package com.thedamones.bv.queue;
+
+import java.time.Instant;
+import java.util.UUID;
+
+public record PurgeRecord(UUID id, String queue, PurgeStatus status, long estimatedTotal, long deleted, Instant startedAt,
+                          Instant completedAt) {
+}
@@ -0,0 +1,7 @@
+package com.thedamones.bv.queue;
+
+public enum PurgeStatus {
+    RUNNING,
+    COMPLETED,
+    FAILED
+}
@@ -6,18 +6,20 @@ import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
-import static org.springframework.hateoas.server.mvc.WebMvcLinkBuilder.linkTo;
-import static org.springframework.hateoas.server.mvc.WebMvcLinkBuilder.methodOn;
-
+/**
+ * The {@link QueueRegistry#DEFAULT_QUEUE default queue}.  Other queues are served by the {@link NamedQueueController}.
+ */
 @RestController
 @RequestMapping("/v2/queue")
 public class QueueController {
 
     private final MessageService messageService;
+    private final QueueLinks queueLinks;
 
     @Autowired
-    public QueueController(MessageService messageService) {
+    public QueueController(MessageService messageService, QueueLinks queueLinks) {
         this.messageService = messageService;
+        this.queueLinks = queueLinks;
     }
 
     /**
@@ -27,13 +29,8 @@ public class QueueController {
      */
     @GetMapping
     public EntityModel<QueueRecord> getQueueInfo() {
-        long queueSize = messageService.getQueueSize();
-        QueueRecord queueRecord = new QueueRecord(queueSize);
+        QueueRecord queueRecord = messageService.getQueue(QueueRegistry.DEFAULT_QUEUE);
 
-        return EntityModel.of(queueRecord,
-                linkTo(methodOn(QueueController.class).getQueueInfo()).withSelfRel(),
-                linkTo(methodOn(MessageController.class).enqueueMessage(null)).withRel("enqueue"),
-                linkTo(methodOn(MessageController.class).dequeueMessage()).withRel("dequeue"),
-                linkTo(methodOn(MessageController.class).getClass()).withRel("messages"));
+        return EntityModel.of(queueRecord, queueLinks.queueInfo(queueLinks.baseUri(), QueueRegistry.DEFAULT_QUEUE));
     }
 }
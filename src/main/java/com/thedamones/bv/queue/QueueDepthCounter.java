@@ -0,0 +1,181 @@
+package com.thedamones.bv.queue;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps the depth of every queue in memory so size requests never touch the {@link QueueStore}.
+ * <p>
+ * Enqueue, dequeue and clear operations adjust the depth once their transaction commits.  The depths are loaded from
+ * the {@link QueueStore} at startup and periodically reconciled with it, to correct any drift (for example rows changed
+ * outside the application).  Each queue's depth is published as the {@code queue.depth} gauge, tagged with the
+ * {@code queue}.
+ */
+@Component
+public class QueueDepthCounter implements MeterBinder {
+
+    private static final Logger logger = LoggerFactory.getLogger(QueueDepthCounter.class);
+
+    private final QueueStore queueStore;
+
+    private final Map<String, AtomicLong> depths = new ConcurrentHashMap<>();
+    private volatile MeterRegistry meterRegistry;
+
+    /*
+     * Used by reconcile() to detect transactions that committed, or might commit, while the store was being counted.
+     * A synchronization bumps pendingTransactions when registered and only decrements it after applying its delta and
+     * bumping modifications.
+     */
+    private final AtomicLong modifications = new AtomicLong();
+    private final AtomicInteger pendingTransactions = new AtomicInteger();
+
+    @Autowired
+    public QueueDepthCounter(QueueStore queueStore) {
+        this.queueStore = queueStore;
+    }
+
+    @PostConstruct
+    public void initialize() {
+        countQueues().forEach((queueName, count) -> depth(queueName).set(count));
+        logger.info("Initialized queue depth of {} queue(s)", depths.size());
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        meterRegistry = registry;
+        depths.keySet().forEach(this::registerGauge);
+    }
+
+    /**
+     * Gets the current depth of a queue.
+     *
+     * @param queueName The name of the queue.
+     * @return The number of messages in the queue.
+     */
+    public long get(String queueName) {
+        AtomicLong depth = depths.get(queueName);
+        return depth == null ? 0 : depth.get();
+    }
+
+    /**
+     * Gets the names of the queues that had messages at startup or have been adjusted since.
+     *
+     * @return The queue names.
+     */
+    public Set<String> getQueueNames() {
+        return Set.copyOf(depths.keySet());
+    }
+
+    /**
+     * Starts tracking a queue, so its gauge is published even while it is empty.
+     *
+     * @param queueName The name of the queue.
+     */
+    public void track(String queueName) {
+        depth(queueName);
+    }
+
+    /**
+     * Adjusts the depth of a queue by {@code delta} once the current transaction commits, or immediately if there is
+     * no transaction.  Nothing changes if the transaction rolls back.
+     *
+     * @param queueName The name of the queue.
+     * @param delta     The change in depth.
+     */
+    public void adjustAfterCommit(String queueName, long delta) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            apply(queueName, delta);
+            return;
+        }
+
+        pendingTransactions.incrementAndGet();
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                if (status == STATUS_COMMITTED) {
+                    apply(queueName, delta);
+                }
+                pendingTransactions.decrementAndGet();
+            }
+        });
+    }
+
+    /**
+     * Replaces the in-memory depths with the counts from the {@link QueueStore}, unless a transaction that changes a
+     * depth was in progress or completed while counting, in which case this round is skipped.
+     *
+     * @return Whether the depths were reconciled.
+     */
+    @Scheduled(initialDelayString = "${queue.depth.reconcile-interval:PT1M}", fixedDelayString = "${queue.depth.reconcile-interval:PT1M}")
+    public boolean reconcile() {
+        long modificationsBefore = modifications.get();
+        if (pendingTransactions.get() > 0) {
+            return false;
+        }
+
+        Map<String, Long> counts = countQueues();
+
+        if (pendingTransactions.get() > 0 || modifications.get() != modificationsBefore) {
+            logger.debug("Skipped queue depth reconciliation, a queue changed while counting");
+            return false;
+        }
+
+        counts.keySet().forEach(this::depth);
+        depths.forEach((queueName, depth) -> {
+            long count = counts.getOrDefault(queueName, 0L);
+            long previous = depth.getAndSet(count);
+            if (previous != count) {
+                logger.warn("Reconciled depth of queue {} from {} to {}", queueName, previous, count);
+            }
+        });
+        return true;
+    }
+
+    private Map<String, Long> countQueues() {
+        return queueStore.sizes();
+    }
+
+    private void apply(String queueName, long delta) {
+        depth(queueName).addAndGet(delta);
+        modifications.incrementAndGet();
+    }
+
+    private AtomicLong depth(String queueName) {
+        AtomicLong depth = depths.get(queueName);
+        if (depth != null) {
+            return depth;
+        }
+        AtomicLong created = new AtomicLong();
+        depth = depths.putIfAbsent(queueName, created);
+        if (depth != null) {
+            return depth;
+        }
+        registerGauge(queueName);
+        return created;
+    }
+
+    private void registerGauge(String queueName) {
+        MeterRegistry registry = meterRegistry;
+        if (registry != null) {
+            Gauge.builder("queue.depth", this, counter -> counter.get(queueName))
+                    .tag("queue", queueName)
+                    .description("Number of messages in the queue")
+                    .register(registry);
+        }
+    }
+}
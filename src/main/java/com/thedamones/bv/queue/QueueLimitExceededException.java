@@ -0,0 +1,8 @@
+package com.thedamones.bv.queue;
+
+public class QueueLimitExceededException extends RuntimeException {
+
+    public QueueLimitExceededException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,272 @@
+package com.thedamones.bv.queue;
+
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.hateoas.IanaLinkRelations;
+import org.springframework.hateoas.Link;
+import org.springframework.hateoas.LinkRelation;
+import org.springframework.hateoas.server.core.AnnotationMappingDiscoverer;
+import org.springframework.hateoas.server.core.DummyInvocationUtils;
+import org.springframework.hateoas.server.core.MappingDiscoverer;
+import org.springframework.hateoas.server.core.MethodInvocation;
+import org.springframework.hateoas.server.core.UriMapping;
+import org.springframework.stereotype.Component;
+import org.springframework.util.ReflectionUtils;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
+
+import java.lang.reflect.Method;
+import java.util.UUID;
+import java.util.regex.Pattern;
+
+import static org.springframework.hateoas.server.mvc.WebMvcLinkBuilder.methodOn;
+
+/**
+ * Builds the {@code /v2} hypermedia links.
+ * <p>
+ * {@code linkTo(methodOn(...))} creates a proxy, invokes it and parses a URI template for every link.  Instead, the link
+ * paths are resolved from the controller mappings once, when this bean is created, and each link is the request's base
+ * URI followed by a path with its variables filled in.  The {@link QueueRegistry#DEFAULT_QUEUE default queue} keeps
+ * its {@code /v2/queue} links; other queues link to {@code /v2/queues/{name}}.  The base URI is computed once per
+ * request, the same way {@code linkTo} does it, so the scheme, host, port and context path (including those set from
+ * forwarded headers) are unchanged.
+ */
+@Component
+public class QueueLinks {
+
+    public static final LinkRelation QUEUE = LinkRelation.of("queue");
+    public static final LinkRelation QUEUES = LinkRelation.of("queues");
+    public static final LinkRelation MESSAGES = LinkRelation.of("messages");
+    public static final LinkRelation ENQUEUE = LinkRelation.of("enqueue");
+    public static final LinkRelation DEQUEUE = LinkRelation.of("dequeue");
+    public static final LinkRelation DEAD_LETTERS = LinkRelation.of("deadLetters");
+    public static final LinkRelation REQUEUE = LinkRelation.of("requeue");
+    public static final LinkRelation MESSAGE = LinkRelation.of("message");
+    public static final LinkRelation LEASE = LinkRelation.of("lease");
+    public static final LinkRelation ACK = LinkRelation.of("ack");
+    public static final LinkRelation EXTEND = LinkRelation.of("extend");
+
+    private static final String BASE_URI_ATTRIBUTE = QueueLinks.class.getName() + ".baseUri";
+
+    private static final MappingDiscoverer MAPPINGS = new AnnotationMappingDiscoverer(RequestMapping.class);
+
+    private final PathTemplate queuePath = template(methodOn(QueueController.class).getQueueInfo());
+    private final PathTemplate messagesPath = template(MessageController.class);
+    private final PathTemplate enqueuePath = template(MessageController.class, "enqueueMessage", EnqueueMessageRecord.class,
+            HttpServletRequest.class);
+    private final PathTemplate dequeuePath = template(methodOn(MessageController.class).dequeueMessage());
+    private final PathTemplate messagePath = template(methodOn(MessageController.class).getMessage(null));
+    private final PathTemplate purgePath = template(methodOn(PurgeController.class).getPurge(null));
+    private final PathTemplate deadLettersPath = template(DeadLetterController.class);
+    private final PathTemplate deadLetterPath = template(methodOn(DeadLetterController.class).getDeadLetter(null));
+    private final PathTemplate requeuePath = template(methodOn(DeadLetterController.class).requeueDeadLetter(null));
+    private final PathTemplate leasePath = template(methodOn(LeaseController.class).leaseMessage(null));
+    private final PathTemplate ackPath = template(LeaseController.class, "acknowledgeLease", UUID.class);
+    private final PathTemplate extendPath = template(methodOn(LeaseController.class).extendLease(null, null));
+
+    private final PathTemplate queuesPath = template(methodOn(NamedQueueController.class).getQueues());
+    private final PathTemplate namedQueuePath = template(methodOn(NamedQueueController.class).getQueue(null));
+    private final PathTemplate namedMessagesPath = template(NamedQueueMessageController.class);
+    private final PathTemplate namedEnqueuePath = template(NamedQueueMessageController.class, "enqueueMessage", String.class,
+            EnqueueMessageRecord.class, HttpServletRequest.class);
+    private final PathTemplate namedDequeuePath = template(methodOn(NamedQueueMessageController.class).dequeueMessage(null));
+    private final PathTemplate namedMessagePath = template(methodOn(NamedQueueMessageController.class).getMessage(null, null));
+    private final PathTemplate namedDeadLettersPath = template(NamedQueueDeadLetterController.class);
+    private final PathTemplate namedDeadLetterPath = template(methodOn(NamedQueueDeadLetterController.class).getDeadLetter(null, null));
+    private final PathTemplate namedRequeuePath = template(methodOn(NamedQueueDeadLetterController.class).requeueDeadLetter(null, null));
+    private final PathTemplate namedLeasePath = template(methodOn(NamedQueueLeaseController.class).leaseMessage(null, null));
+    private final PathTemplate namedAckPath = template(NamedQueueLeaseController.class, "acknowledgeLease", String.class, UUID.class);
+    private final PathTemplate namedExtendPath = template(methodOn(NamedQueueLeaseController.class).extendLease(null, null, null));
+
+    /**
+     * Gets the base URI links are built against: the scheme, host, port, context path and servlet path of the current
+     * request.  Links built on another thread, e.g. when a long-polling request completes, must capture it on the
+     * request thread first.  Outside a request, links are relative.
+     *
+     * @return The base URI, without a trailing slash.
+     */
+    public String baseUri() {
+        RequestAttributes requestAttributes = RequestContextHolder.getRequestAttributes();
+        if (requestAttributes == null) {
+            return "";
+        }
+        String baseUri = (String) requestAttributes.getAttribute(BASE_URI_ATTRIBUTE, RequestAttributes.SCOPE_REQUEST);
+        if (baseUri == null) {
+            baseUri = ServletUriComponentsBuilder.fromCurrentServletMapping().toUriString();
+            requestAttributes.setAttribute(BASE_URI_ATTRIBUTE, baseUri, RequestAttributes.SCOPE_REQUEST);
+        }
+        return baseUri;
+    }
+
+    /**
+     * Links to the list of queues, {@code GET /v2/queues}.
+     */
+    public Link queues(String baseUri, LinkRelation relation) {
+        return Link.of(baseUri + queuesPath.expand(), relation);
+    }
+
+    /**
+     * Links to the queue information, {@code GET /v2/queue} or {@code GET /v2/queues/{name}}.
+     */
+    public Link queue(String baseUri, String queueName, LinkRelation relation) {
+        String path = isDefault(queueName) ? queuePath.expand() : namedQueuePath.expand(queueName);
+        return Link.of(baseUri + path, relation);
+    }
+
+    /**
+     * Links to the message collection, {@code /v2/queue/messages} or {@code /v2/queues/{name}/messages}.
+     */
+    public Link messages(String baseUri, String queueName, LinkRelation relation) {
+        String path = isDefault(queueName) ? messagesPath.expand() : namedMessagesPath.expand(queueName);
+        return Link.of(baseUri + path, relation);
+    }
+
+    /**
+     * Links to enqueueing a message, {@code POST /v2/queue/messages} or {@code POST /v2/queues/{name}/messages}.
+     */
+    public Link enqueue(String baseUri, String queueName) {
+        String path = isDefault(queueName) ? enqueuePath.expand() : namedEnqueuePath.expand(queueName);
+        return Link.of(baseUri + path, ENQUEUE);
+    }
+
+    /**
+     * Links to dequeueing a message, {@code DELETE /v2/queue/messages/first} or
+     * {@code DELETE /v2/queues/{name}/messages/first}.
+     */
+    public Link dequeue(String baseUri, String queueName) {
+        String path = isDefault(queueName) ? dequeuePath.expand() : namedDequeuePath.expand(queueName);
+        return Link.of(baseUri + path, DEQUEUE);
+    }
+
+    /**
+     * Links to a message, {@code GET /v2/queue/messages/{id}} or {@code GET /v2/queues/{name}/messages/{id}}.
+     */
+    public Link message(String baseUri, String queueName, UUID id, LinkRelation relation) {
+        String path = isDefault(queueName) ? messagePath.expand(id.toString()) : namedMessagePath.expand(queueName, id.toString());
+        return Link.of(baseUri + path, relation);
+    }
+
+    /**
+     * Links to a purge, {@code GET /v2/queue/purges/{id}}.
+     */
+    public Link purge(String baseUri, UUID id, LinkRelation relation) {
+        return Link.of(baseUri + purgePath.expand(id.toString()), relation);
+    }
+
+    /**
+     * Links to the dead letters of a queue, {@code /v2/queue/dead-letters} or {@code /v2/queues/{name}/dead-letters}.
+     */
+    public Link deadLetters(String baseUri, String queueName, LinkRelation relation) {
+        String path = isDefault(queueName) ? deadLettersPath.expand() : namedDeadLettersPath.expand(queueName);
+        return Link.of(baseUri + path, relation);
+    }
+
+    /**
+     * Links to a dead letter, {@code GET /v2/queue/dead-letters/{id}} or {@code GET /v2/queues/{name}/dead-letters/{id}}.
+     */
+    public Link deadLetter(String baseUri, String queueName, UUID id, LinkRelation relation) {
+        String path = isDefault(queueName) ? deadLetterPath.expand(id.toString()) : namedDeadLetterPath.expand(queueName, id.toString());
+        return Link.of(baseUri + path, relation);
+    }
+
+    /**
+     * Links to requeueing a dead letter, {@code POST /v2/queue/dead-letters/{id}/requeue} or
+     * {@code POST /v2/queues/{name}/dead-letters/{id}/requeue}.
+     */
+    public Link requeue(String baseUri, String queueName, UUID id) {
+        String path = isDefault(queueName) ? requeuePath.expand(id.toString()) : namedRequeuePath.expand(queueName, id.toString());
+        return Link.of(baseUri + path, REQUEUE);
+    }
+
+    /**
+     * Links to leasing a message, {@code POST /v2/queue/leases} or {@code POST /v2/queues/{name}/leases}.
+     */
+    public Link lease(String baseUri, String queueName) {
+        String path = isDefault(queueName) ? leasePath.expand() : namedLeasePath.expand(queueName);
+        return Link.of(baseUri + path, LEASE);
+    }
+
+    /**
+     * Links to acknowledging a lease, {@code DELETE /v2/queue/leases/{id}} or {@code DELETE /v2/queues/{name}/leases/{id}}.
+     */
+    public Link ack(String baseUri, String queueName, UUID id) {
+        String path = isDefault(queueName) ? ackPath.expand(id.toString()) : namedAckPath.expand(queueName, id.toString());
+        return Link.of(baseUri + path, ACK);
+    }
+
+    /**
+     * Links to extending a lease, {@code POST /v2/queue/leases/{id}/extend} or
+     * {@code POST /v2/queues/{name}/leases/{id}/extend}.
+     */
+    public Link extend(String baseUri, String queueName, UUID id) {
+        String path = isDefault(queueName) ? extendPath.expand(id.toString()) : namedExtendPath.expand(queueName, id.toString());
+        return Link.of(baseUri + path, EXTEND);
+    }
+
+    /**
+     * Gets the links of the queue information: itself, enqueueing, dequeueing, leasing and listing messages, and its
+     * dead letters.
+     *
+     * @param baseUri   The base URI, see {@link #baseUri()}.
+     * @param queueName The name of the queue.
+     * @return The links.
+     */
+    public Link[] queueInfo(String baseUri, String queueName) {
+        return new Link[]{
+                queue(baseUri, queueName, IanaLinkRelations.SELF),
+                enqueue(baseUri, queueName),
+                dequeue(baseUri, queueName),
+                lease(baseUri, queueName),
+                messages(baseUri, queueName, MESSAGES),
+                deadLetters(baseUri, queueName, DEAD_LETTERS)
+        };
+    }
+
+    private static boolean isDefault(String queueName) {
+        return QueueRegistry.DEFAULT_QUEUE.equals(queueName);
+    }
+
+    private static PathTemplate template(Object invocationValue) {
+        MethodInvocation invocation = DummyInvocationUtils.getLastInvocationAware(invocationValue).getLastInvocation();
+        return new PathTemplate(MAPPINGS.getUriMapping(invocation.getTargetType(), invocation.getMethod()));
+    }
+
+    private static PathTemplate template(Class<?> controller) {
+        return new PathTemplate(MAPPINGS.getUriMapping(controller));
+    }
+
+    // For controller methods whose return type methodOn cannot proxy: void, or a JDK class such as CompletableFuture
+    private static PathTemplate template(Class<?> controller, String methodName, Class<?>... parameterTypes) {
+        Method method = ReflectionUtils.findMethod(controller, methodName, parameterTypes);
+        return new PathTemplate(MAPPINGS.getUriMapping(controller, method));
+    }
+
+    /**
+     * A mapping path split around its {@code {variables}}, expanded by concatenation.  Queue names and IDs only contain
+     * characters that are valid in a path segment, so the values are not encoded.
+     */
+    private static class PathTemplate {
+
+        private static final Pattern VARIABLE = Pattern.compile("\\{[^}]+}");
+
+        private final String path;
+        private final String[] literals;
+
+        private PathTemplate(UriMapping mapping) {
+            this.path = mapping.getMapping();
+            this.literals = VARIABLE.split(path, -1);
+        }
+
+        private String expand(String... values) {
+            if (values.length != literals.length - 1) {
+                throw new IllegalArgumentException("Expected " + (literals.length - 1) + " value(s) for " + path);
+            }
+            StringBuilder expanded = new StringBuilder(literals[0]);
+            for (int i = 0; i < values.length; i++) {
+                expanded.append(values[i]).append(literals[i + 1]);
+            }
+            return expanded.toString();
+        }
+    }
+}
@@ -5,78 +5,473 @@ import jakarta.annotation.PreDestroy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Component;
 import org.springframework.transaction.event.TransactionalEventListener;
 
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.PriorityQueue;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Collectors;
+
+/**
+ * Runs the background consumers.  Every queue has its own group of workers, sized by
+ * {@link QueueProperties#getWorkerCount(String)}, with its own wake-ups and handoff buffer, so a queue whose
+ * messages are slow to process never holds up the workers of another queue.  Workers lease their messages for
+ * {@code queue.lease.visibility-timeout} and acknowledge the lease once the message is processed, so a message is only
+ * deleted after it succeeded, and one whose worker died with the application is delivered again when its lease
+ * expires.  A message whose processing fails is handed to {@link MessageService#failMessage(LeaseRecord, Exception)},
+ * which schedules it for a retry or dead-letters it, and the worker moves on.  Which message a worker leases next is
+ * up to the {@link QueueScheduler} of its queue, by {@link QueueProperties#getSchedulingPolicy(String)}.
+ * <p>
+ * Messages are processed by the {@link BatchMessageProcessor}, one at a time by default.  With
+ * {@code queue.workers.batch-size} above one, each worker leases up to that many messages at once
+ * ({@link MessageService#leaseMessages(String, int, Duration)}), waiting up to {@code queue.workers.batch-wait} for a
+ * partial batch to fill up, and hands them to the processor together.  Every message of a batch then succeeds or fails
+ * on its own: the succeeded leases are acknowledged together, and the failed messages are retried or dead-lettered one
+ * by one.  Batches are leased in priority order, with the fairness guard, whatever the scheduling policy, and skip
+ * the handoff buffer.
+ * <p>
+ * Also delivers scheduled messages and expires leases: a {@link TimerWheel} holds the delivery times announced by
+ * {@link MessageScheduledEvent}s and, when one comes, makes the due messages ready through
+ * {@link MessageService#deliverDueMessages()}, whose {@link MessageEnqueuedEvent}s then wake the workers (and any
+ * long-polling or streaming consumer).  Each delivery looks up the next delivery time or lease expiry in the database,
+ * so the schedule survives restarts with nothing but the first lookup once the application is ready.
+ */
 @Component
 public class QueueManager {
 
     private static final Logger logger = LoggerFactory.getLogger(QueueManager.class);
 
-    private final MessageService messageService;
-    private final QueueMessageProcessor messageProcessor;
+    private static final Duration DELIVERY_RETRY_DELAY = Duration.ofSeconds(1);
 
-    private volatile boolean running = true;
-    private Thread processingThread;
-    private final Object processingLock = new Object();
+    private final MessageService messageService;
+    private final BatchMessageProcessor messageProcessor;
+    private final QueueMetrics queueMetrics;
+    private final QueueRegistry queueRegistry;
+    private final QueueProperties queueProperties;
+    private final QueueProperties.Workers workerProperties;
 
+    private volatile boolean running;
+    private final Map<String, QueueWorkers> queueWorkers = new ConcurrentHashMap<>();
+    private final TimerWheel deliveryTimer;
 
     @Autowired
-    public QueueManager(MessageService messageService, QueueMessageProcessor messageProcessor) {
+    public QueueManager(MessageService messageService, BatchMessageProcessor messageProcessor, QueueMetrics queueMetrics,
+                        QueueRegistry queueRegistry, QueueProperties queueProperties) {
         this.messageService = messageService;
         this.messageProcessor = messageProcessor;
+        this.queueMetrics = queueMetrics;
+        this.queueRegistry = queueRegistry;
+        this.queueProperties = queueProperties;
+        this.workerProperties = queueProperties.getWorkers();
+        QueueProperties.Delivery deliveryProperties = queueProperties.getDelivery();
+        this.deliveryTimer = new TimerWheel("queue-delivery-timer", deliveryProperties.getTick(),
+                deliveryProperties.getWheelSize(), this::deliverDueMessages);
     }
 
     @PostConstruct
     public void startProcessing() {
-        processingThread = new Thread(this::processingLoop);
-        processingThread.start();
+        running = true;
+        queueRegistry.getQueueNames().forEach(this::workersFor);
+        logger.info("Started queue workers for {} queue(s)", queueWorkers.size());
+        deliveryTimer.start();
+    }
+
+    /**
+     * Delivers what came due while the application was down, and picks up the schedule from the database.  Waits for the
+     * application to be ready: the event listeners are only registered once every singleton is created, and the
+     * {@link MessageEnqueuedEvent}s of an earlier delivery would leave the delivered messages to the next wake-up.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void startDelivery() {
+        deliveryTimer.schedule(Instant.EPOCH);
     }
 
     @PreDestroy
     public void stopProcessing() {
         running = false;
-        processingThread.interrupt();
+        deliveryTimer.stop();
+        queueWorkers.values().forEach(QueueWorkers::interrupt);
+        for (QueueWorkers workers : queueWorkers.values()) {
+            if (!workers.join()) {
+                break;
+            }
+        }
+        queueWorkers.clear();
     }
 
-    public void processingLoop() {
-        while (running) {
+    @TransactionalEventListener
+    public void handleMessageEnqueuedEvent(MessageEnqueuedEvent event) {
+        logger.debug("Message enqueued event received: {} message(s) in queue {}", event.getMessageRecords().size(), event.getQueue());
+        QueueWorkers workers = workersFor(event.getQueue());
+        if (workers != null) {
+            workers.notifyProcessing(event.getMessageRecords());
+        }
+    }
+
+    @TransactionalEventListener
+    public void handleMessageScheduledEvent(MessageScheduledEvent event) {
+        logger.debug("Message scheduled event received: delivery at {}", event.getDeliverAt());
+        deliveryTimer.schedule(event.getDeliverAt());
+    }
+
+    private void deliverDueMessages() {
+        try {
+            messageService.deliverDueMessages().ifPresent(deliveryTimer::schedule);
+        } catch (Exception e) {
+            queueMetrics.recordError(QueueMetrics.DELIVERY);
+            logger.error("Error delivering scheduled messages. Retrying in {}.", DELIVERY_RETRY_DELAY, e);
+            deliveryTimer.schedule(Instant.now().plus(DELIVERY_RETRY_DELAY));
+        }
+    }
+
+    /**
+     * Gets the number of workers of a queue waiting for messages.
+     */
+    int getIdleWorkers(String queueName) {
+        QueueWorkers workers = queueWorkers.get(queueName);
+        return workers == null ? 0 : workers.getIdleWorkers();
+    }
+
+    /**
+     * Gets the workers of a queue, starting them the first time a message is enqueued to a queue created after
+     * startup.
+     *
+     * @return The workers, or {@code null} once processing has stopped.
+     */
+    private QueueWorkers workersFor(String queueName) {
+        QueueWorkers workers = queueWorkers.get(queueName);
+        if (workers != null || !running) {
+            return workers;
+        }
+        return queueWorkers.computeIfAbsent(queueName, name -> {
+            QueueScheduler scheduler = new QueueScheduler(queueProperties.getSchedulingPolicy(name), queueProperties.getScheduling());
+            QueueWorkers started = new QueueWorkers(name, scheduler);
+            started.start(queueProperties.getWorkerCount(name));
+            return started;
+        });
+    }
+
+    /**
+     * A message in a handoff buffer, with the order in which it was handed off.
+     */
+    private record HandedOff(MessageRecord message, long sequence) {
+    }
+
+    /**
+     * The workers draining one queue.
+     */
+    private class QueueWorkers {
+
+        private final String queueName;
+        private final QueueScheduler scheduler;
+        private final List<Thread> workerThreads = new ArrayList<>();
+
+        /*
+         * Idle workers park themselves (LockSupport.park, which also unmounts virtual threads from their carrier) after
+         * pushing themselves on idleWorkers, and notifications unpark them, without any lock: an enqueue while every
+         * worker is busy only bumps enqueueSignals.  A worker only parks if no notification arrived since it last looked
+         * at the queue, and it registers before checking, so an enqueue that lands between an empty dequeue and the park
+         * either is seen by the check or finds the worker to unpark.  The most recently idle worker is woken first.
+         *
+         * Messages committed while a worker is idle are also put in the handoff buffer, so the woken worker leases them
+         * by primary key instead of searching the database for the head of the queue.  Idle workers have already seen
+         * an empty queue, so nothing older is waiting in the database.  The rows stay committed until leased, so
+         * anything that does not fit in the buffer, or is lost with it on restart, is still picked up from the
+         * database.
+         *
+         * The buffer is ordered like the scheduler would pick from the database: by the scheduler's handoff order
+         * (highest priority first, or cheapest size class first), then in the order messages were handed off.  When a
+         * message that was not handed off outranks something in the buffer, the buffer is dropped so that the workers
+         * go back to the database and find it first.  The buffer is guarded by handoffLock.
+         */
+        private final AtomicLong enqueueSignals = new AtomicLong();
+        private final ConcurrentLinkedDeque<Thread> idleWorkers = new ConcurrentLinkedDeque<>();
+        private final ReentrantLock handoffLock = new ReentrantLock();
+        private final PriorityQueue<HandedOff> handoffBuffer;
+        private long handoffSequence;
+
+        private QueueWorkers(String queueName, QueueScheduler scheduler) {
+            this.queueName = queueName;
+            this.scheduler = scheduler;
+            this.handoffBuffer = new PriorityQueue<>(Comparator
+                    .comparing(HandedOff::message, scheduler.handoffOrder())
+                    .thenComparingLong(HandedOff::sequence));
+        }
+
+        private void start(int workerCount) {
+            String namePrefix = "queue-worker-" + queueName + "-";
+            ThreadFactory threadFactory = workerProperties.isVirtualThreads()
+                    ? Thread.ofVirtual().name(namePrefix, 0).factory()
+                    : Thread.ofPlatform().name(namePrefix, 0).factory();
+
+            for (int i = 0; i < workerCount; i++) {
+                Thread workerThread = threadFactory.newThread(this::processingLoop);
+                workerThreads.add(workerThread);
+                workerThread.start();
+            }
+            logger.info("Started {} queue worker(s) for queue {}", workerThreads.size(), queueName);
+        }
+
+        private void interrupt() {
+            workerThreads.forEach(Thread::interrupt);
+        }
+
+        /**
+         * Waits for the workers to stop.
+         *
+         * @return False if the calling thread was interrupted.
+         */
+        private boolean join() {
+            try {
+                for (Thread workerThread : workerThreads) {
+                    if (!workerThread.join(workerProperties.getShutdownTimeout())) {
+                        logger.warn("Queue worker {} did not stop within {}", workerThread.getName(), workerProperties.getShutdownTimeout());
+                    }
+                }
+                return true;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            } finally {
+                handoffLock.lock();
+                try {
+                    handoffBuffer.clear();
+                } finally {
+                    handoffLock.unlock();
+                }
+            }
+        }
+
+        private void processingLoop() {
+            while (running && !Thread.currentThread().isInterrupted()) {
+                long signals = enqueueSignals.get();
+                try {
+                    if (workerProperties.getBatchSize() > 1) {
+                        List<LeaseRecord> batch = nextBatch();
+                        if (batch.isEmpty()) {
+                            awaitNotification(signals);
+                        } else {
+                            process(batch);
+                        }
+                    } else {
+                        process(nextLease());
+                    }
+                } catch (MessageNotFoundException e) {
+                    awaitNotification(signals);
+                } catch (Exception e) {
+                    queueMetrics.recordError(QueueMetrics.PROCESSING);
+                    logger.error("Error processing next message of queue {}.", queueName, e);
+                }
+            }
+        }
+
+        private void awaitNotification(long signals) {
+            logger.debug("No messages to process in queue {}. Waiting for notification.", queueName);
+            queueMetrics.recordIdleWait();
+            awaitProcessing(signals, 0);
+            logger.debug("Processing of queue {} has been notified.", queueName);
+        }
+
+        /**
+         * Processes a leased message and acknowledges the lease, or hands the message back to the
+         * {@link MessageService} for a later retry or the dead-letter store if processing fails, so that the worker
+         * moves on to the next message right away.
+         */
+        private void process(LeaseRecord lease) {
+            Exception error;
             try {
-                MessageRecord messageRecord = messageService.dequeueMessage();
-                messageProcessor.process(messageRecord);
-            } catch (MessageNotFoundException e) {
-                logger.info("No messages to process. Waiting for notification.");
-                awaitProcessing();
-                logger.info("Processing has been notified.");
+                error = queueMetrics.recordProcessing(() -> messageProcessor.processBatch(List.of(lease.message())))
+                        .get(lease.message().id());
             } catch (Exception e) {
-                logger.error("Error processing next message.", e);
+                error = e;
+            }
+            if (error != null) {
+                fail(lease, error);
+                return;
             }
+            messageService.acknowledge(lease);
         }
-    }
 
-    private void awaitProcessing() {
-        synchronized (processingLock) {
+        /**
+         * Processes a batch of leased messages, then acknowledges the leases of the messages that succeeded together
+         * and fails the others one by one.  If the processor throws, every message of the batch fails.
+         */
+        private void process(List<LeaseRecord> batch) {
+            List<MessageRecord> messages = batch.stream().map(LeaseRecord::message).toList();
+            Map<UUID, Exception> errors;
             try {
-                logger.info("Awaiting processing");
-                processingLock.wait();
-            } catch (InterruptedException e) {
-                // TODO should either just log this or let the queue manager handle the interrupted exception
-                throw new RuntimeException(e);
+                errors = queueMetrics.recordProcessing(() -> messageProcessor.processBatch(messages));
+            } catch (Exception e) {
+                errors = messages.stream().collect(Collectors.toMap(MessageRecord::id, message -> e));
+            }
+            List<UUID> succeeded = new ArrayList<>(batch.size());
+            for (LeaseRecord lease : batch) {
+                Exception error = errors.get(lease.message().id());
+                if (error == null) {
+                    succeeded.add(lease.id());
+                } else {
+                    fail(lease, error);
+                }
+            }
+            if (!succeeded.isEmpty()) {
+                messageService.acknowledgeLeases(queueName, succeeded);
             }
         }
-    }
 
-    private void notifyProcessing() {
-        synchronized (processingLock) {
-            logger.info("Notifying processing");
-            processingLock.notify();
+        private void fail(LeaseRecord lease, Exception error) {
+            queueMetrics.recordError(QueueMetrics.PROCESSING);
+            logger.error("Error processing message {} of queue {}.", lease.message().id(), queueName, error);
+            messageService.failMessage(lease, error);
         }
-    }
 
-    @TransactionalEventListener
-    public void handleMessageEnqueuedEvent(MessageEnqueuedEvent event) {
-        logger.info("Message enqueued event received: {}", event.getMessageRecord().id());
-        notifyProcessing();
-    }
+        /**
+         * Leases up to {@code queue.workers.batch-size} messages.  A partial batch waits up to
+         * {@code queue.workers.batch-wait} for more messages, leasing whatever each enqueue notification brings, and is
+         * returned as it is once the wait is over.
+         *
+         * @return The batch, empty if the queue has no ready message.
+         */
+        private List<LeaseRecord> nextBatch() {
+            Duration visibilityTimeout = queueProperties.getLease().getVisibilityTimeout();
+            int batchSize = workerProperties.getBatchSize();
+            long deadline = System.nanoTime() + workerProperties.getBatchWait().toNanos();
+            List<LeaseRecord> batch = new ArrayList<>(batchSize);
+            while (true) {
+                long signals = enqueueSignals.get();
+                batch.addAll(messageService.leaseMessages(queueName, batchSize - batch.size(), visibilityTimeout));
+                if (batch.isEmpty() || batch.size() == batchSize || workerProperties.getBatchWait().isZero()
+                        || !awaitProcessing(signals, deadline)) {
+                    return batch;
+                }
+            }
+        }
+
+        /**
+         * Leases the next message from the handoff buffer, falling back to the database once the buffer is empty.  A
+         * handed off message that another consumer took first is skipped.
+         */
+        private LeaseRecord nextLease() {
+            Duration visibilityTimeout = queueProperties.getLease().getVisibilityTimeout();
+            MessageRecord handedOff;
+            while ((handedOff = pollHandoff()) != null) {
+                Optional<LeaseRecord> lease = messageService.leaseMessage(handedOff, visibilityTimeout);
+                if (lease.isPresent()) {
+                    scheduler.charge(handedOff);
+                    deliveryTimer.schedule(lease.get().expiryCheckAt());
+                    return lease.get();
+                }
+            }
+            return messageService.leaseMessage(queueName, visibilityTimeout, scheduler);
+        }
 
+        private MessageRecord pollHandoff() {
+            handoffLock.lock();
+            try {
+                HandedOff handedOff = handoffBuffer.poll();
+                return handedOff == null ? null : handedOff.message();
+            } finally {
+                handoffLock.unlock();
+            }
+        }
+
+        /**
+         * Parks the calling worker until a notification arrives after {@code signals}, or until {@code deadline}, in
+         * {@link System#nanoTime()} terms, unless it is zero.
+         *
+         * @return True if a notification arrived, false if the deadline passed or processing stopped.
+         */
+        private boolean awaitProcessing(long signals, long deadline) {
+            logger.debug("Awaiting processing of queue {}", queueName);
+            Thread worker = Thread.currentThread();
+            idleWorkers.push(worker);
+            try {
+                // Only stopProcessing interrupts the workers, which unparks them; the flag stays set so the loop exits.
+                while (running && enqueueSignals.get() == signals && !worker.isInterrupted()) {
+                    if (deadline == 0) {
+                        LockSupport.park(this);
+                    } else {
+                        long remaining = deadline - System.nanoTime();
+                        if (remaining <= 0) {
+                            return false;
+                        }
+                        LockSupport.parkNanos(this, remaining);
+                    }
+                }
+                return enqueueSignals.get() != signals;
+            } finally {
+                idleWorkers.remove(worker);
+            }
+        }
+
+        private void notifyProcessing(List<MessageRecord> messageRecords) {
+            logger.debug("Notifying processing of queue {}", queueName);
+            enqueueSignals.incrementAndGet();
+            if (workerProperties.getHandoffCapacity() > 0 && workerProperties.getBatchSize() <= 1) {
+                handoffLock.lock();
+                try {
+                    List<MessageRecord> notHandedOff = idleWorkers.isEmpty() ? messageRecords : handOff(messageRecords);
+                    if (outranksHandoff(notHandedOff)) {
+                        handoffBuffer.clear();
+                    }
+                } finally {
+                    handoffLock.unlock();
+                }
+            }
+            if (messageRecords.size() == 1) {
+                Thread idleWorker = idleWorkers.poll();
+                if (idleWorker != null) {
+                    LockSupport.unpark(idleWorker);
+                }
+            } else {
+                idleWorkers.forEach(LockSupport::unpark);
+            }
+        }
+
+        private int getIdleWorkers() {
+            return idleWorkers.size();
+        }
+
+        /**
+         * Hands off as many messages as the buffer has room for, first in handoff order.
+         *
+         * @return The messages left in the database only.
+         */
+        private List<MessageRecord> handOff(List<MessageRecord> messageRecords) {
+            int capacity = Math.max(workerProperties.getHandoffCapacity() - handoffBuffer.size(), 0);
+            if (capacity == 0) {
+                return messageRecords;
+            }
+            List<MessageRecord> ordered = messageRecords.stream()
+                    .sorted(scheduler.handoffOrder())
+                    .toList();
+            ordered.stream()
+                    .limit(capacity)
+                    .forEach(messageRecord -> handoffBuffer.add(new HandedOff(messageRecord, handoffSequence++)));
+            return ordered.subList(Math.min(capacity, ordered.size()), ordered.size());
+        }
+
+        private boolean outranksHandoff(List<MessageRecord> messageRecords) {
+            if (handoffBuffer.isEmpty() || messageRecords.isEmpty()) {
+                return false;
+            }
+            Comparator<MessageRecord> order = scheduler.handoffOrder();
+            MessageRecord first = messageRecords.stream().min(order).orElseThrow();
+            return handoffBuffer.stream().anyMatch(handedOff -> order.compare(first, handedOff.message()) < 0);
+        }
+    }
 }
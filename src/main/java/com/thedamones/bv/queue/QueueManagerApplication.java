@@ -2,9 +2,13 @@ package com.thedamones.bv.queue;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.context.properties.ConfigurationPropertiesScan;
 import org.springframework.hateoas.config.EnableHypermediaSupport;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication
+@ConfigurationPropertiesScan
+@EnableScheduling
 @EnableHypermediaSupport(type = EnableHypermediaSupport.HypermediaType.HAL)
 public class QueueManagerApplication {
 
@@ -6,23 +6,45 @@ import org.springframework.stereotype.Component;
 
 import java.time.Duration;
 import java.time.Instant;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
 import java.util.concurrent.TimeUnit;
 
 @Component
-public class QueueMessageProcessor {
+public class QueueMessageProcessor implements BatchMessageProcessor {
 
     private static final Logger logger = LoggerFactory.getLogger(QueueMessageProcessor.class);
 
     public void process(MessageRecord message) {
-        logger.info("Processing message: {}", message.id());
-        logger.info("Message received at: {} ({} milliseconds ago)", message.timestamp(), Duration.between(message.timestamp(), Instant.now()).toMillis());
+        if (logger.isDebugEnabled()) {
+            logger.debug("Processing message: {}", message.id());
+            logger.debug("Message received at: {} ({} milliseconds ago)", message.timestamp(), Duration.between(message.timestamp(), Instant.now()).toMillis());
+            logger.debug("Message data size: {}", message.dataSize());
+        }
 
         try {
-            logger.info("Message data size: {}", message.dataSize());
             TimeUnit.MILLISECONDS.sleep(message.dataSize());
-            logger.info("Message processed: {}", message.id());
+            logger.debug("Message processed: {}", message.id());
         } catch (InterruptedException e) {
             logger.error("Message processing interrupted: {}", message.id());
         }
     }
+
+    /**
+     * Processes the messages one by one with {@link #process(MessageRecord)}, each failing on its own.
+     */
+    @Override
+    public Map<UUID, Exception> processBatch(List<MessageRecord> messages) {
+        Map<UUID, Exception> failures = new HashMap<>();
+        for (MessageRecord message : messages) {
+            try {
+                process(message);
+            } catch (Exception e) {
+                failures.put(message.id(), e);
+            }
+        }
+        return failures;
+    }
 }
\ No newline at end of file
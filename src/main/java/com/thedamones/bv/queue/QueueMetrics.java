@@ -0,0 +1,200 @@
+package com.thedamones.bv.queue;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.function.Supplier;
+
+/**
+ * Micrometer instrumentation for the queue hot paths.  The depth gauge is bound by {@link QueueDepthCounter}.
+ * <p>
+ * Meters (dots become underscores in the Prometheus format):
+ * <ul>
+ *     <li>{@code queue.enqueue}, {@code queue.enqueue.batch}, {@code queue.dequeue}: timers tagged with the
+ *     {@code outcome}, measured until the transaction completes so the commit is included.</li>
+ *     <li>{@code queue.enqueue.group.commit}: timer of the {@link GroupCommitEnqueuer} transactions, as above, and
+ *     {@code queue.enqueue.group.commit.size}: histogram of the number of messages each of them stored.</li>
+ *     <li>{@code queue.message.processing}: histogram of {@link BatchMessageProcessor} durations, per message or per batch.</li>
+ *     <li>{@code queue.message.age}: histogram of the time messages spent in the queue once due, taken when dequeued.</li>
+ *     <li>{@code queue.worker.idle.waits}: how often a worker found the queue empty and waited.</li>
+ *     <li>{@code queue.message.retries}, {@code queue.message.dead.letters}: failed messages scheduled for another
+ *     attempt, and moved to the dead-letter store.</li>
+ *     <li>{@code queue.errors}: failures tagged with the {@code operation}.</li>
+ * </ul>
+ */
+@Component
+public class QueueMetrics {
+
+    public static final String ENQUEUE = "enqueue";
+    public static final String ENQUEUE_BATCH = "enqueue.batch";
+    public static final String GROUP_COMMIT = "enqueue.group.commit";
+    public static final String DEQUEUE = "dequeue";
+    public static final String LEASE = "lease";
+    public static final String ACK = "ack";
+    public static final String PROCESSING = "processing";
+    public static final String DELIVERY = "delivery";
+
+    public static final String OUTCOME_SUCCESS = "success";
+    public static final String OUTCOME_EMPTY = "empty";
+    public static final String OUTCOME_ROLLED_BACK = "rolled_back";
+
+    private final MeterRegistry meterRegistry;
+    private final Timer processingTimer;
+    private final Timer messageAgeTimer;
+    private final Counter idleWaitCounter;
+    private final Counter retryCounter;
+    private final Counter deadLetterCounter;
+    private final DistributionSummary groupCommitSize;
+
+    @Autowired
+    public QueueMetrics(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+        this.processingTimer = Timer.builder("queue.message.processing")
+                .description("Time spent processing a message, or a batch of messages")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.messageAgeTimer = Timer.builder("queue.message.age")
+                .description("Time a message spent in the queue before it was dequeued")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.idleWaitCounter = Counter.builder("queue.worker.idle.waits")
+                .description("Number of times a worker found the queue empty and waited for a message")
+                .register(meterRegistry);
+        this.retryCounter = Counter.builder("queue.message.retries")
+                .description("Number of failed messages scheduled for another attempt")
+                .register(meterRegistry);
+        this.deadLetterCounter = Counter.builder("queue.message.dead.letters")
+                .description("Number of failed messages moved to the dead-letter store")
+                .register(meterRegistry);
+        this.groupCommitSize = DistributionSummary.builder("queue.enqueue.group.commit.size")
+                .description("Number of messages stored by a group commit")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+
+    /**
+     * Starts timing {@code operation} until the current transaction completes.  A rolled back transaction is counted
+     * as an error, unless its outcome was set to {@link #OUTCOME_EMPTY}.  Nothing is recorded outside a transaction.
+     *
+     * @param operation The operation, e.g. {@link #ENQUEUE}.
+     * @return The timer, to set the outcome of the operation.
+     */
+    public TransactionTimer startTransactionTimer(String operation) {
+        TransactionTimer transactionTimer = new TransactionTimer(operation, Timer.start(meterRegistry));
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(transactionTimer);
+        }
+        return transactionTimer;
+    }
+
+    /**
+     * Processes a message or a batch of messages, recording the duration in the processing histogram.
+     *
+     * @param processing The processing.
+     * @return The result of the processing.
+     */
+    public <T> T recordProcessing(Supplier<T> processing) {
+        return processingTimer.record(processing);
+    }
+
+    /**
+     * Records how long a message spent in the queue, from the time it became deliverable until now.
+     *
+     * @param message The dequeued message.
+     * @return The message, for chaining.
+     */
+    public MessageRecord recordMessageAge(MessageRecord message) {
+        messageAgeTimer.record(Duration.between(message.deliverableAt(), Instant.now()));
+        return message;
+    }
+
+    /**
+     * Counts a worker going idle because the queue is empty.
+     */
+    public void recordIdleWait() {
+        idleWaitCounter.increment();
+    }
+
+    /**
+     * Counts a failed message scheduled for another attempt.
+     */
+    public void recordRetry() {
+        retryCounter.increment();
+    }
+
+    /**
+     * Counts a failed message moved to the dead-letter store.
+     */
+    public void recordDeadLetter() {
+        deadLetterCounter.increment();
+    }
+
+    /**
+     * Records the number of messages stored by a group commit.
+     *
+     * @param size The number of messages.
+     */
+    public void recordGroupCommit(int size) {
+        groupCommitSize.record(size);
+    }
+
+    /**
+     * Counts an enqueue request rejected by the {@link AdmissionControl}.
+     *
+     * @param reason The reason, {@link AdmissionControl#REASON_DEPTH} or {@link AdmissionControl#REASON_RATE}.
+     */
+    public void recordRejection(String reason) {
+        meterRegistry.counter("queue.admission.rejections", "reason", reason).increment();
+    }
+
+    /**
+     * Counts a failed operation.
+     *
+     * @param operation The operation, e.g. {@link #PROCESSING}.
+     */
+    public void recordError(String operation) {
+        meterRegistry.counter("queue.errors", "operation", operation).increment();
+    }
+
+    /**
+     * Times a queue operation until its transaction completes.
+     */
+    public class TransactionTimer implements TransactionSynchronization {
+
+        private final String operation;
+        private final Timer.Sample sample;
+        private volatile String outcome = OUTCOME_SUCCESS;
+
+        private TransactionTimer(String operation, Timer.Sample sample) {
+            this.operation = operation;
+            this.sample = sample;
+        }
+
+        /**
+         * Sets the outcome the operation is tagged with if the transaction commits.
+         *
+         * @param outcome The outcome, e.g. {@link #OUTCOME_EMPTY}.
+         */
+        public void setOutcome(String outcome) {
+            this.outcome = outcome;
+        }
+
+        @Override
+        public void afterCompletion(int status) {
+            String completedOutcome = outcome;
+            if (status != STATUS_COMMITTED && !OUTCOME_EMPTY.equals(completedOutcome)) {
+                completedOutcome = OUTCOME_ROLLED_BACK;
+                recordError(operation);
+            }
+            sample.stop(meterRegistry.timer("queue." + operation, "outcome", completedOutcome));
+        }
+    }
+}
@@ -0,0 +1,8 @@
+package com.thedamones.bv.queue;
+
+public class QueueNotFoundException extends RuntimeException {
+
+    public QueueNotFoundException(String message) {
+        super(message);
+    }
+}
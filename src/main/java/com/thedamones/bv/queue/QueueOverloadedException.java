@@ -0,0 +1,31 @@
+package com.thedamones.bv.queue;
+
+import java.time.Duration;
+
+/**
+ * Thrown by the {@link AdmissionControl} when an enqueue request is rejected, with how long the client should wait
+ * before trying again.
+ */
+public class QueueOverloadedException extends RuntimeException {
+
+    private final Duration retryAfter;
+
+    public QueueOverloadedException(String message, Duration retryAfter) {
+        super(message);
+        this.retryAfter = retryAfter;
+    }
+
+    public Duration getRetryAfter() {
+        return retryAfter;
+    }
+
+    /**
+     * Gets the wait as a {@code Retry-After} header value: whole seconds, rounded up, at least one.
+     *
+     * @return The number of seconds.
+     */
+    public long getRetryAfterSeconds() {
+        long seconds = retryAfter.toSeconds();
+        return Math.max(retryAfter.equals(Duration.ofSeconds(seconds)) ? seconds : seconds + 1, 1);
+    }
+}
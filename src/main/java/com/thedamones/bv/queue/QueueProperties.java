@@ -0,0 +1,806 @@
+package com.thedamones.bv.queue;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Configuration properties for the queue, bound from the {@code queue.*} namespace.
+ */
+@ConfigurationProperties(prefix = "queue")
+public class QueueProperties {
+
+    private final Workers workers = new Workers();
+    private final Dequeue dequeue = new Dequeue();
+    private final Purge purge = new Purge();
+    private final LongPoll longPoll = new LongPoll();
+    private final Stream stream = new Stream();
+    private final Delivery delivery = new Delivery();
+    private final Retry retry = new Retry();
+    private final Lease lease = new Lease();
+    private final Scheduling scheduling = new Scheduling();
+    private final GroupCommit groupCommit = new GroupCommit();
+    private final Store store = new Store();
+    private final Admission admission = new Admission();
+    private final Map<String, NamedQueue> queues = new LinkedHashMap<>();
+
+    /**
+     * Maximum number of queues.  Enqueueing to a new queue fails once it is reached.
+     */
+    private int maxQueues = 100;
+
+    /**
+     * Maximum number of messages enqueued by one batch request.  Larger batches are rejected, so one request cannot
+     * build an arbitrarily large transaction.
+     */
+    private int maxBatchSize = 1000;
+
+    public Workers getWorkers() {
+        return workers;
+    }
+
+    public Dequeue getDequeue() {
+        return dequeue;
+    }
+
+    public Purge getPurge() {
+        return purge;
+    }
+
+    public LongPoll getLongPoll() {
+        return longPoll;
+    }
+
+    public Stream getStream() {
+        return stream;
+    }
+
+    public Delivery getDelivery() {
+        return delivery;
+    }
+
+    public Retry getRetry() {
+        return retry;
+    }
+
+    public Lease getLease() {
+        return lease;
+    }
+
+    public Scheduling getScheduling() {
+        return scheduling;
+    }
+
+    public GroupCommit getGroupCommit() {
+        return groupCommit;
+    }
+
+    public Store getStore() {
+        return store;
+    }
+
+    public Admission getAdmission() {
+        return admission;
+    }
+
+    /**
+     * Gets the settings of individual queues, bound from {@code queue.queues.<name>.*}.  Configured queues exist from
+     * startup, even before anything is enqueued to them.
+     */
+    public Map<String, NamedQueue> getQueues() {
+        return queues;
+    }
+
+    public int getMaxQueues() {
+        return maxQueues;
+    }
+
+    public void setMaxQueues(int maxQueues) {
+        this.maxQueues = maxQueues;
+    }
+
+    public int getMaxBatchSize() {
+        return maxBatchSize;
+    }
+
+    public void setMaxBatchSize(int maxBatchSize) {
+        this.maxBatchSize = maxBatchSize;
+    }
+
+    /**
+     * Gets the number of consumers draining a queue: {@code queue.queues.<name>.workers} if set, otherwise
+     * {@code queue.workers.count}.
+     *
+     * @param queueName The name of the queue.
+     * @return The number of consumers.
+     */
+    public int getWorkerCount(String queueName) {
+        NamedQueue namedQueue = queues.get(queueName);
+        return namedQueue != null && namedQueue.getWorkers() != null ? namedQueue.getWorkers() : workers.getCount();
+    }
+
+    /**
+     * Gets how the workers of a queue pick their next message: {@code queue.queues.<name>.scheduling-policy} if set,
+     * otherwise {@code queue.scheduling.policy}.
+     *
+     * @param queueName The name of the queue.
+     * @return The scheduling policy.
+     */
+    public SchedulingPolicy getSchedulingPolicy(String queueName) {
+        NamedQueue namedQueue = queues.get(queueName);
+        return namedQueue != null && namedQueue.getSchedulingPolicy() != null
+                ? namedQueue.getSchedulingPolicy()
+                : scheduling.getPolicy();
+    }
+
+    /**
+     * Settings for the background consumers started by the {@link QueueManager}.
+     */
+    public static class Workers {
+
+        /**
+         * Number of consumers draining each queue concurrently, unless overridden for the queue.  Zero disables
+         * background processing.
+         */
+        private int count = 1;
+
+        /**
+         * Whether consumers run on virtual threads rather than platform threads.
+         */
+        private boolean virtualThreads = true;
+
+        /**
+         * How long {@link QueueManager#stopProcessing()} waits for each consumer to finish.
+         */
+        private Duration shutdownTimeout = Duration.ofSeconds(10);
+
+        /**
+         * Maximum number of freshly enqueued messages handed to the idle consumers of a queue in memory.  Zero disables
+         * the handoff, so consumers always read the queue from the database.
+         */
+        private int handoffCapacity = 1024;
+
+        /**
+         * Maximum number of messages a consumer leases at once and hands to the {@link BatchMessageProcessor} together.
+         * One leases and processes messages one by one, through the handoff and the scheduling policy.
+         */
+        private int batchSize = 1;
+
+        /**
+         * How long a consumer waits for more messages once it leased fewer than {@link #batchSize}.  Zero processes
+         * whatever the first lease returned.  Keep it well below the visibility timeout, which runs while waiting.
+         */
+        private Duration batchWait = Duration.ZERO;
+
+        public int getCount() {
+            return count;
+        }
+
+        public void setCount(int count) {
+            this.count = count;
+        }
+
+        public boolean isVirtualThreads() {
+            return virtualThreads;
+        }
+
+        public void setVirtualThreads(boolean virtualThreads) {
+            this.virtualThreads = virtualThreads;
+        }
+
+        public Duration getShutdownTimeout() {
+            return shutdownTimeout;
+        }
+
+        public void setShutdownTimeout(Duration shutdownTimeout) {
+            this.shutdownTimeout = shutdownTimeout;
+        }
+
+        public int getHandoffCapacity() {
+            return handoffCapacity;
+        }
+
+        public void setHandoffCapacity(int handoffCapacity) {
+            this.handoffCapacity = handoffCapacity;
+        }
+
+        public int getBatchSize() {
+            return batchSize;
+        }
+
+        public void setBatchSize(int batchSize) {
+            this.batchSize = batchSize;
+        }
+
+        public Duration getBatchWait() {
+            return batchWait;
+        }
+
+        public void setBatchWait(Duration batchWait) {
+            this.batchWait = batchWait;
+        }
+    }
+
+    /**
+     * Settings for one queue.
+     */
+    public static class NamedQueue {
+
+        /**
+         * Number of consumers draining this queue concurrently.  Defaults to {@code queue.workers.count}.
+         */
+        private Integer workers;
+
+        /**
+         * How this queue's workers pick their next message.  Defaults to {@code queue.scheduling.policy}.
+         */
+        private SchedulingPolicy schedulingPolicy;
+
+        public Integer getWorkers() {
+            return workers;
+        }
+
+        public void setWorkers(Integer workers) {
+            this.workers = workers;
+        }
+
+        public SchedulingPolicy getSchedulingPolicy() {
+            return schedulingPolicy;
+        }
+
+        public void setSchedulingPolicy(SchedulingPolicy schedulingPolicy) {
+            this.schedulingPolicy = schedulingPolicy;
+        }
+    }
+
+    /**
+     * Settings for {@link MessageService#dequeueMessage(String)}.
+     */
+    public static class Dequeue {
+
+        /**
+         * Whether to dequeue with a single native delete-returning statement instead of loading and deleting the
+         * {@link Message} entity through JPA.
+         */
+        private boolean nativePop = true;
+
+        /**
+         * Every n-th dequeue of a queue takes its oldest message regardless of priority, so a steady stream of high
+         * priority messages cannot starve the lower priorities.  Zero disables the guard (strict priority order); one
+         * ignores priorities (strict FIFO).
+         */
+        private int fairnessInterval = 10;
+
+        public boolean isNativePop() {
+            return nativePop;
+        }
+
+        public void setNativePop(boolean nativePop) {
+            this.nativePop = nativePop;
+        }
+
+        public int getFairnessInterval() {
+            return fairnessInterval;
+        }
+
+        public void setFairnessInterval(int fairnessInterval) {
+            this.fairnessInterval = fairnessInterval;
+        }
+    }
+
+    /**
+     * Settings for the {@link QueuePurger}.
+     */
+    public static class Purge {
+
+        /**
+         * Maximum number of messages deleted per transaction.
+         */
+        private int chunkSize = 1000;
+
+        public int getChunkSize() {
+            return chunkSize;
+        }
+
+        public void setChunkSize(int chunkSize) {
+            this.chunkSize = chunkSize;
+        }
+    }
+
+    /**
+     * Settings for the {@link LongPollDequeueService}.
+     */
+    public static class LongPoll {
+
+        /**
+         * Upper bound for the {@code wait} requested by a long-polling consumer.  Keep it below the servlet async
+         * request timeout ({@code spring.mvc.async.request-timeout}).
+         */
+        private Duration maxWait = Duration.ofSeconds(20);
+
+        public Duration getMaxWait() {
+            return maxWait;
+        }
+
+        public void setMaxWait(Duration maxWait) {
+            this.maxWait = maxWait;
+        }
+    }
+
+    /**
+     * Settings for the {@link MessageStreamService}.
+     */
+    public static class Stream {
+
+        /**
+         * Upper bound for the credits (unacknowledged messages) a streaming consumer may request.
+         */
+        private int maxCredits = 1000;
+
+        /**
+         * How long a stream stays open before the consumer has to reconnect.
+         */
+        private Duration timeout = Duration.ofMinutes(30);
+
+        public int getMaxCredits() {
+            return maxCredits;
+        }
+
+        public void setMaxCredits(int maxCredits) {
+            this.maxCredits = maxCredits;
+        }
+
+        public Duration getTimeout() {
+            return timeout;
+        }
+
+        public void setTimeout(Duration timeout) {
+            this.timeout = timeout;
+        }
+    }
+
+    /**
+     * Settings for the delivery of scheduled messages by the {@link QueueManager}.
+     */
+    public static class Delivery {
+
+        /**
+         * Resolution of the delivery timer: scheduled messages become ready at most this long after their delivery
+         * time.
+         */
+        private Duration tick = Duration.ofMillis(10);
+
+        /**
+         * Number of slots of the delivery timer wheel.  Delivery times further ahead than {@code tick * wheel-size} go
+         * round the wheel more than once.
+         */
+        private int wheelSize = 512;
+
+        /**
+         * Maximum number of scheduled messages made ready per transaction.
+         */
+        private int batchSize = 1000;
+
+        public Duration getTick() {
+            return tick;
+        }
+
+        public void setTick(Duration tick) {
+            this.tick = tick;
+        }
+
+        public int getWheelSize() {
+            return wheelSize;
+        }
+
+        public void setWheelSize(int wheelSize) {
+            this.wheelSize = wheelSize;
+        }
+
+        public int getBatchSize() {
+            return batchSize;
+        }
+
+        public void setBatchSize(int batchSize) {
+            this.batchSize = batchSize;
+        }
+    }
+
+    /**
+     * Settings for retrying messages whose processing failed, see {@link MessageService#failMessage(LeaseRecord, Exception)}.
+     */
+    public static class Retry {
+
+        /**
+         * Number of times a message is processed before it is moved to the dead-letter store.  One disables retries.
+         */
+        private int maxAttempts = 5;
+
+        /**
+         * Delay before the second attempt.
+         */
+        private Duration initialBackoff = Duration.ofSeconds(1);
+
+        /**
+         * Factor the delay grows by after each further failed attempt.
+         */
+        private double multiplier = 2.0;
+
+        /**
+         * Upper bound for the delay between two attempts.
+         */
+        private Duration maxBackoff = Duration.ofMinutes(5);
+
+        public int getMaxAttempts() {
+            return maxAttempts;
+        }
+
+        public void setMaxAttempts(int maxAttempts) {
+            this.maxAttempts = maxAttempts;
+        }
+
+        public Duration getInitialBackoff() {
+            return initialBackoff;
+        }
+
+        public void setInitialBackoff(Duration initialBackoff) {
+            this.initialBackoff = initialBackoff;
+        }
+
+        public double getMultiplier() {
+            return multiplier;
+        }
+
+        public void setMultiplier(double multiplier) {
+            this.multiplier = multiplier;
+        }
+
+        public Duration getMaxBackoff() {
+            return maxBackoff;
+        }
+
+        public void setMaxBackoff(Duration maxBackoff) {
+            this.maxBackoff = maxBackoff;
+        }
+
+        /**
+         * Gets the delay before the next attempt of a message: {@code initial-backoff * multiplier^(failures - 1)},
+         * capped at {@code max-backoff}.
+         *
+         * @param failures The number of failed attempts so far, at least one.
+         * @return The delay.
+         */
+        public Duration getBackoff(int failures) {
+            double backoffMillis = initialBackoff.toMillis() * Math.pow(multiplier, failures - 1);
+            return backoffMillis >= maxBackoff.toMillis() ? maxBackoff : Duration.ofMillis((long) backoffMillis);
+        }
+    }
+
+    /**
+     * Settings for leasing messages to consumers, see {@link MessageService#leaseMessage(String, Duration)}.
+     */
+    public static class Lease {
+
+        /**
+         * How long a message stays leased when no visibility timeout is requested, and for the background workers.
+         */
+        private Duration visibilityTimeout = Duration.ofSeconds(30);
+
+        /**
+         * Upper bound for a requested visibility timeout.
+         */
+        private Duration maxVisibilityTimeout = Duration.ofHours(12);
+
+        /**
+         * Number of buffered acknowledgements that triggers a flush before the flush interval is up.
+         */
+        private int ackBatchSize = 500;
+
+        /**
+         * How long acknowledgements are buffered before the leased messages are deleted.
+         */
+        private Duration ackFlushInterval = Duration.ofMillis(10);
+
+        public Duration getVisibilityTimeout() {
+            return visibilityTimeout;
+        }
+
+        public void setVisibilityTimeout(Duration visibilityTimeout) {
+            this.visibilityTimeout = visibilityTimeout;
+        }
+
+        public Duration getMaxVisibilityTimeout() {
+            return maxVisibilityTimeout;
+        }
+
+        public void setMaxVisibilityTimeout(Duration maxVisibilityTimeout) {
+            this.maxVisibilityTimeout = maxVisibilityTimeout;
+        }
+
+        public int getAckBatchSize() {
+            return ackBatchSize;
+        }
+
+        public void setAckBatchSize(int ackBatchSize) {
+            this.ackBatchSize = ackBatchSize;
+        }
+
+        public Duration getAckFlushInterval() {
+            return ackFlushInterval;
+        }
+
+        public void setAckFlushInterval(Duration ackFlushInterval) {
+            this.ackFlushInterval = ackFlushInterval;
+        }
+    }
+
+    /**
+     * Settings for the {@link QueueScheduler} of the background workers.
+     */
+    public static class Scheduling {
+
+        /**
+         * How the workers of a queue pick their next message, unless set per queue.
+         */
+        private SchedulingPolicy policy = SchedulingPolicy.FIFO;
+
+        /**
+         * With {@link SchedulingPolicy#SHORTEST_JOB_FIRST}, how long a message can be ready before it is leased ahead
+         * of cheaper messages.
+         */
+        private Duration aging = Duration.ofSeconds(60);
+
+        /**
+         * With {@link SchedulingPolicy#WEIGHTED_FAIR}, the relative share of processing time of each size class, from
+         * the cheapest to the most expensive.  Equal weights give every busy class the same processing time.
+         */
+        private List<Double> weights = new ArrayList<>(Collections.nCopies(Message.SIZE_CLASSES, 1.0));
+
+        public SchedulingPolicy getPolicy() {
+            return policy;
+        }
+
+        public void setPolicy(SchedulingPolicy policy) {
+            this.policy = policy;
+        }
+
+        public Duration getAging() {
+            return aging;
+        }
+
+        public void setAging(Duration aging) {
+            this.aging = aging;
+        }
+
+        public List<Double> getWeights() {
+            return weights;
+        }
+
+        public void setWeights(List<Double> weights) {
+            this.weights = weights;
+        }
+    }
+
+    /**
+     * Settings for the {@link GroupCommitEnqueuer}.
+     */
+    public static class GroupCommit {
+
+        /**
+         * Whether single-message REST enqueues are collected and stored in shared transactions.
+         */
+        private boolean enabled = false;
+
+        /**
+         * How long enqueues are collected, from the first one, before they are stored.
+         */
+        private Duration window = Duration.ofMillis(2);
+
+        /**
+         * Maximum number of enqueues stored in one transaction; a full batch is stored before the window is up.
+         */
+        private int batchSize = 500;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public Duration getWindow() {
+            return window;
+        }
+
+        public void setWindow(Duration window) {
+            this.window = window;
+        }
+
+        public int getBatchSize() {
+            return batchSize;
+        }
+
+        public void setBatchSize(int batchSize) {
+            this.batchSize = batchSize;
+        }
+    }
+
+    /**
+     * Settings for the {@link QueueStore} that holds the messages.
+     */
+    public static class Store {
+
+        /**
+         * Which store holds the messages, {@code jpa}, {@code mapped-log} or {@code memory}.
+         */
+        private QueueStoreType type = QueueStoreType.JPA;
+
+        private final Log log = new Log();
+
+        public QueueStoreType getType() {
+            return type;
+        }
+
+        public void setType(QueueStoreType type) {
+            this.type = type;
+        }
+
+        public Log getLog() {
+            return log;
+        }
+    }
+
+    /**
+     * Settings for the {@link MappedLogQueueStore}, bound from {@code queue.store.log.*}.
+     */
+    public static class Log {
+
+        /**
+         * Directory of the logs, with a subdirectory per queue.
+         */
+        private Path directory = Path.of("target", "data", "log");
+
+        /**
+         * Size of each segment file.  A message must fit in a single segment.
+         */
+        private DataSize segmentSize = DataSize.ofMegabytes(64);
+
+        /**
+         * Whether every append and pop forces the mapped pages to disk, so that messages survive an operating system
+         * crash and not only an application crash.
+         */
+        private boolean force = false;
+
+        public Path getDirectory() {
+            return directory;
+        }
+
+        public void setDirectory(Path directory) {
+            this.directory = directory;
+        }
+
+        public DataSize getSegmentSize() {
+            return segmentSize;
+        }
+
+        public void setSegmentSize(DataSize segmentSize) {
+            this.segmentSize = segmentSize;
+        }
+
+        public boolean isForce() {
+            return force;
+        }
+
+        public void setForce(boolean force) {
+            this.force = force;
+        }
+    }
+
+    /**
+     * Settings for the {@link AdmissionControl} of enqueue requests, bound from {@code queue.admission.*}.
+     */
+    public static class Admission {
+
+        /**
+         * Depth at which a queue starts rejecting enqueue requests.  Zero disables the depth limit.
+         */
+        private long highWatermark = 0;
+
+        /**
+         * Depth a rejecting queue has to drain to before it accepts enqueue requests again.  Defaults to 80% of the
+         * high watermark.
+         */
+        private Long lowWatermark;
+
+        /**
+         * Messages per second each client may enqueue, on average.  Zero disables the client rate limits.
+         */
+        private double clientRate = 0;
+
+        /**
+         * Messages a client may enqueue at once above its rate, after being idle.
+         */
+        private int clientBurst = 100;
+
+        /**
+         * Request header naming the client, for requests without an authenticated principal.  Requests without it are
+         * limited by their remote address.  Clients can rotate the header to escape their limit, so only set it when a
+         * trusted gateway sets the header.
+         */
+        private String clientHeader;
+
+        /**
+         * Maximum number of clients whose rate is tracked.  Beyond it, the client seen least recently is forgotten.
+         */
+        private int maxClients = 10_000;
+
+        /**
+         * Upper bound of the {@code Retry-After} of rejected requests.
+         */
+        private Duration maxRetryAfter = Duration.ofSeconds(60);
+
+        public long getHighWatermark() {
+            return highWatermark;
+        }
+
+        public void setHighWatermark(long highWatermark) {
+            this.highWatermark = highWatermark;
+        }
+
+        public Long getLowWatermark() {
+            return lowWatermark;
+        }
+
+        public void setLowWatermark(Long lowWatermark) {
+            this.lowWatermark = lowWatermark;
+        }
+
+        public double getClientRate() {
+            return clientRate;
+        }
+
+        public void setClientRate(double clientRate) {
+            this.clientRate = clientRate;
+        }
+
+        public int getClientBurst() {
+            return clientBurst;
+        }
+
+        public void setClientBurst(int clientBurst) {
+            this.clientBurst = clientBurst;
+        }
+
+        public String getClientHeader() {
+            return clientHeader;
+        }
+
+        public void setClientHeader(String clientHeader) {
+            this.clientHeader = clientHeader;
+        }
+
+        public int getMaxClients() {
+            return maxClients;
+        }
+
+        public void setMaxClients(int maxClients) {
+            this.maxClients = maxClients;
+        }
+
+        public Duration getMaxRetryAfter() {
+            return maxRetryAfter;
+        }
+
+        public void setMaxRetryAfter(Duration maxRetryAfter) {
+            this.maxRetryAfter = maxRetryAfter;
+        }
+    }
+}
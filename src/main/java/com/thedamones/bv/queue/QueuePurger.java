@@ -0,0 +1,168 @@
+package com.thedamones.bv.queue;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Purges a queue through the {@link QueueStore}, set-based deletes with the JPA store, in chunks that each commit on
+ * their own.
+ * <p>
+ * A purge removes every message enqueued to its queue before it started, up to the store's
+ * {@link QueueStore#tail(String) tail} at the time; other queues are untouched.  Chunking keeps each transaction (and
+ * the row locks it holds) short, so workers dequeueing concurrently are never blocked behind one huge delete, and the
+ * {@link QueueDepthCounter} is adjusted by the rows each chunk actually deleted.
+ */
+@Component
+public class QueuePurger {
+
+    private static final Logger logger = LoggerFactory.getLogger(QueuePurger.class);
+
+    private static final int MAX_RETAINED_PURGES = 100;
+
+    private final QueueStore queueStore;
+    private final QueueDepthCounter queueDepthCounter;
+    private final TransactionTemplate transactionTemplate;
+    private final QueueProperties.Purge purgeProperties;
+
+    private final ExecutorService purgeExecutor = Executors.newSingleThreadExecutor(Thread.ofVirtual().name("queue-purge-", 0).factory());
+
+    private final Map<UUID, PurgeProgress> purges = new LinkedHashMap<>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<UUID, PurgeProgress> eldest) {
+            return size() > MAX_RETAINED_PURGES;
+        }
+    };
+
+    @Autowired
+    public QueuePurger(QueueStore queueStore, QueueDepthCounter queueDepthCounter,
+                       PlatformTransactionManager transactionManager, QueueProperties queueProperties) {
+        this.queueStore = queueStore;
+        this.queueDepthCounter = queueDepthCounter;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.purgeProperties = queueProperties.getPurge();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        purgeExecutor.shutdownNow();
+    }
+
+    /**
+     * Purges a queue in the calling thread.
+     *
+     * @param queueName The name of the queue.
+     * @return The completed purge.
+     */
+    public PurgeRecord purge(String queueName) {
+        PurgeProgress progress = newPurge(queueName);
+        run(progress);
+        return progress.toRecord();
+    }
+
+    /**
+     * Starts purging a queue in the background.
+     *
+     * @param queueName The name of the queue.
+     * @return The purge, which can be polled with {@link #getPurge(UUID)}.
+     */
+    public PurgeRecord startPurge(String queueName) {
+        PurgeProgress progress = newPurge(queueName);
+        purgeExecutor.execute(() -> run(progress));
+        return progress.toRecord();
+    }
+
+    /**
+     * Gets the progress of a recent purge.
+     *
+     * @param id The ID of the purge.
+     * @return The purge.
+     * @throws PurgeNotFoundException If the purge is unknown or too old to be retained.
+     */
+    public PurgeRecord getPurge(UUID id) {
+        synchronized (purges) {
+            return Optional.ofNullable(purges.get(id))
+                    .map(PurgeProgress::toRecord)
+                    .orElseThrow(() -> new PurgeNotFoundException("Purge with ID " + id + " not found"));
+        }
+    }
+
+    private PurgeProgress newPurge(String queueName) {
+        PurgeProgress progress = new PurgeProgress(queueName, queueStore.tail(queueName), queueDepthCounter.get(queueName));
+        synchronized (purges) {
+            purges.put(progress.id, progress);
+        }
+        return progress;
+    }
+
+    private void run(PurgeProgress progress) {
+        try {
+            int deleted;
+            do {
+                deleted = deleteChunk(progress.queueName, progress.upToPosition);
+                progress.deleted.addAndGet(deleted);
+            } while (deleted > 0 && !Thread.currentThread().isInterrupted());
+
+            if (deleted > 0) {
+                progress.complete(PurgeStatus.FAILED);
+                logger.warn("Purge {} of queue {} interrupted after deleting {} message(s)", progress.id, progress.queueName, progress.deleted.get());
+            } else {
+                progress.complete(PurgeStatus.COMPLETED);
+                logger.info("Purge {} of queue {} deleted {} message(s)", progress.id, progress.queueName, progress.deleted.get());
+            }
+        } catch (RuntimeException e) {
+            progress.complete(PurgeStatus.FAILED);
+            logger.error("Purge {} of queue {} failed after deleting {} message(s)", progress.id, progress.queueName, progress.deleted.get(), e);
+            throw e;
+        }
+    }
+
+    private int deleteChunk(String queueName, long upToPosition) {
+        Integer deleted = transactionTemplate.execute(status -> {
+            int count = queueStore.purge(queueName, upToPosition, purgeProperties.getChunkSize());
+            queueDepthCounter.adjustAfterCommit(queueName, -count);
+            return count;
+        });
+        return deleted == null ? 0 : deleted;
+    }
+
+    private static class PurgeProgress {
+
+        private final UUID id = UUID.randomUUID();
+        private final String queueName;
+        private final long upToPosition;
+        private final long estimatedTotal;
+        private final Instant startedAt = Instant.now();
+        private final AtomicLong deleted = new AtomicLong();
+        private volatile PurgeStatus status = PurgeStatus.RUNNING;
+        private volatile Instant completedAt;
+
+        private PurgeProgress(String queueName, long upToPosition, long estimatedTotal) {
+            this.queueName = queueName;
+            this.upToPosition = upToPosition;
+            this.estimatedTotal = estimatedTotal;
+        }
+
+        private void complete(PurgeStatus status) {
+            this.completedAt = Instant.now();
+            this.status = status;
+        }
+
+        private PurgeRecord toRecord() {
+            return new PurgeRecord(id, queueName, status, estimatedTotal, deleted.get(), startedAt, completedAt);
+        }
+    }
+}
@@ -1,4 +1,4 @@
 package com.thedamones.bv.queue;
 
-public record QueueRecord(long size) {
+public record QueueRecord(String name, long size, ThroughputRecord throughput, AdmissionRecord admission) {
 }
@@ -0,0 +1,114 @@
+package com.thedamones.bv.queue;
+
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+/**
+ * Keeps track of the named queues and their throughput.
+ * <p>
+ * The {@link #DEFAULT_QUEUE default queue}, the queues configured under {@code queue.queues.*} and the queues that
+ * have messages in the database exist from startup.  Other queues are created when a message is first enqueued to
+ * them, up to {@code queue.max-queues}.  Queues are never removed while the application runs; an empty queue costs
+ * its idle workers and a few counters.
+ */
+@Component
+public class QueueRegistry {
+
+    /**
+     * The queue addressed by the {@code /v1} and {@code /v2/queue} endpoints.
+     */
+    public static final String DEFAULT_QUEUE = "default";
+
+    private static final Logger logger = LoggerFactory.getLogger(QueueRegistry.class);
+
+    private static final Pattern QUEUE_NAME_PATTERN = Pattern.compile("[A-Za-z0-9][A-Za-z0-9._-]{0,63}");
+
+    private final QueueDepthCounter queueDepthCounter;
+    private final QueueProperties queueProperties;
+
+    private final Map<String, QueueThroughput> queues = new ConcurrentHashMap<>();
+
+    @Autowired
+    public QueueRegistry(QueueDepthCounter queueDepthCounter, QueueProperties queueProperties) {
+        this.queueDepthCounter = queueDepthCounter;
+        this.queueProperties = queueProperties;
+    }
+
+    @PostConstruct
+    public void initialize() {
+        register(DEFAULT_QUEUE);
+        queueProperties.getQueues().keySet().forEach(queueName -> register(validate(queueName)));
+        queueDepthCounter.getQueueNames().forEach(this::register);
+        logger.info("Registered {} queue(s)", queues.size());
+    }
+
+    /**
+     * Gets an existing queue.
+     *
+     * @param queueName The name of the queue.
+     * @return The throughput of the queue.
+     * @throws QueueNotFoundException If the queue does not exist.
+     */
+    public QueueThroughput get(String queueName) {
+        return Optional.ofNullable(queues.get(queueName))
+                .orElseThrow(() -> new QueueNotFoundException("Queue " + queueName + " not found"));
+    }
+
+    /**
+     * Gets a queue, creating it if it does not exist yet.
+     *
+     * @param queueName The name of the queue.
+     * @return The throughput of the queue.
+     * @throws InvalidQueueNameException   If the name is not 1 to 64 letters, digits, dots, dashes or underscores,
+     *                                     starting with a letter or digit.
+     * @throws QueueLimitExceededException If the queue does not exist and {@code queue.max-queues} are in use.
+     */
+    public QueueThroughput getOrCreate(String queueName) {
+        QueueThroughput throughput = queues.get(queueName);
+        if (throughput != null) {
+            return throughput;
+        }
+
+        validate(queueName);
+        synchronized (queues) {
+            if (!queues.containsKey(queueName) && queues.size() >= queueProperties.getMaxQueues()) {
+                throw new QueueLimitExceededException("Cannot create queue " + queueName + ", the limit of "
+                        + queueProperties.getMaxQueues() + " queues is reached");
+            }
+            return register(queueName);
+        }
+    }
+
+    /**
+     * Gets the names of every queue.
+     *
+     * @return The queue names, in alphabetical order.
+     */
+    public List<String> getQueueNames() {
+        return queues.keySet().stream().sorted().toList();
+    }
+
+    private QueueThroughput register(String queueName) {
+        return queues.computeIfAbsent(queueName, name -> {
+            queueDepthCounter.track(name);
+            logger.debug("Registered queue {}", name);
+            return new QueueThroughput();
+        });
+    }
+
+    private static String validate(String queueName) {
+        if (queueName == null || !QUEUE_NAME_PATTERN.matcher(queueName).matches()) {
+            throw new InvalidQueueNameException("Invalid queue name " + queueName);
+        }
+        return queueName;
+    }
+}
@@ -0,0 +1,152 @@
+package com.thedamones.bv.queue;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.IntStream;
+
+/**
+ * Picks the next message the {@link QueueManager} workers of one queue process, by the queue's
+ * {@link SchedulingPolicy}.  The scheduler only decides where to look; every lookup of its {@link Candidates} leases the
+ * message it finds, so a message is never picked twice.
+ * <p>
+ * {@link SchedulingPolicy#WEIGHTED_FAIR} is start-time fair queuing over the size classes: leasing a message charges
+ * its class {@code dataSize / weight} of virtual time, and the next lease tries the classes in order of the virtual time
+ * they would start at.  A class that was idle starts at the current virtual time, so it gets its share from then on
+ * rather than a burst for the time it was idle.  The accounting is in memory, per queue, and starts over on restart.
+ */
+public class QueueScheduler {
+
+    private static final Comparator<MessageRecord> PRIORITY_ORDER = Comparator
+            .comparingInt(MessageRecord::priority).reversed();
+
+    private static final Comparator<MessageRecord> SIZE_CLASS_ORDER = Comparator
+            .comparingInt((MessageRecord message) -> Message.sizeClass(message.dataSize()))
+            .thenComparing(PRIORITY_ORDER);
+
+    private static final int[] CHEAPEST_FIRST = IntStream.range(0, Message.SIZE_CLASSES).toArray();
+
+    private final SchedulingPolicy policy;
+    private final Duration aging;
+    private final double[] weights;
+
+    // Guarded by this
+    private final double[] finishTimes = new double[Message.SIZE_CLASSES];
+    private double virtualTime;
+
+    /**
+     * Creates the scheduler of one queue.
+     *
+     * @param policy     How the queue's workers pick their next message.
+     * @param properties The {@code queue.scheduling.*} settings.
+     * @throws IllegalArgumentException If there is not one positive weight per size class.
+     */
+    public QueueScheduler(SchedulingPolicy policy, QueueProperties.Scheduling properties) {
+        List<Double> weights = properties.getWeights();
+        if (weights.size() != Message.SIZE_CLASSES || weights.stream().anyMatch(weight -> !(weight > 0))) {
+            throw new IllegalArgumentException("queue.scheduling.weights needs " + Message.SIZE_CLASSES
+                    + " positive weights, got " + weights);
+        }
+        this.policy = policy;
+        this.aging = properties.getAging();
+        this.weights = weights.stream().mapToDouble(Double::doubleValue).toArray();
+    }
+
+    public SchedulingPolicy getPolicy() {
+        return policy;
+    }
+
+    /**
+     * Gets the order in which messages handed to idle workers in memory are processed, the closest to
+     * {@link #next(Candidates, Instant)} that needs no lookup: by priority, or by size class then priority.
+     *
+     * @return The comparator, first message first.
+     */
+    public Comparator<MessageRecord> handoffOrder() {
+        return policy == SchedulingPolicy.FIFO ? PRIORITY_ORDER : SIZE_CLASS_ORDER;
+    }
+
+    /**
+     * Leases the next message.
+     *
+     * @param candidates Where to lease it from.
+     * @param now        The current time, for aging.
+     * @return The leased message, or empty if there is no ready message.
+     */
+    public Optional<MessageRecord> next(Candidates candidates, Instant now) {
+        return switch (policy) {
+            case FIFO -> candidates.first();
+            case SHORTEST_JOB_FIRST -> candidates.oldestReadySince(now.minus(aging))
+                    .or(() -> firstInSizeClasses(candidates, CHEAPEST_FIRST));
+            case WEIGHTED_FAIR -> firstInSizeClasses(candidates, fairOrder()).map(this::charge);
+        };
+    }
+
+    /**
+     * Accounts for a message leased without {@link #next(Candidates, Instant)}, such as a handed off one.
+     *
+     * @param message The leased message.
+     * @return The message.
+     */
+    public MessageRecord charge(MessageRecord message) {
+        if (policy == SchedulingPolicy.WEIGHTED_FAIR) {
+            int sizeClass = Message.sizeClass(message.dataSize());
+            double cost = Math.max(message.dataSize() == null ? 0 : message.dataSize(), 1);
+            synchronized (this) {
+                double start = Math.max(finishTimes[sizeClass], virtualTime);
+                finishTimes[sizeClass] = start + cost / weights[sizeClass];
+                virtualTime = start;
+            }
+        }
+        return message;
+    }
+
+    private static Optional<MessageRecord> firstInSizeClasses(Candidates candidates, int[] sizeClasses) {
+        for (int sizeClass : sizeClasses) {
+            Optional<MessageRecord> message = candidates.firstInSizeClass(sizeClass);
+            if (message.isPresent()) {
+                return message;
+            }
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Gets the size classes by the virtual time their next message would start at, cheapest first on ties.
+     */
+    private synchronized int[] fairOrder() {
+        double[] startTimes = new double[Message.SIZE_CLASSES];
+        for (int sizeClass = 0; sizeClass < startTimes.length; sizeClass++) {
+            startTimes[sizeClass] = Math.max(finishTimes[sizeClass], virtualTime);
+        }
+        return IntStream.range(0, Message.SIZE_CLASSES)
+                .boxed()
+                .sorted(Comparator.comparingDouble((Integer sizeClass) -> startTimes[sizeClass])
+                        .thenComparingInt(Integer::intValue))
+                .mapToInt(Integer::intValue)
+                .toArray();
+    }
+
+    /**
+     * The lookups a scheduler chooses from.  Each one leases the message it finds.
+     */
+    public interface Candidates {
+
+        /**
+         * Leases the highest priority, then oldest, ready message.
+         */
+        Optional<MessageRecord> first();
+
+        /**
+         * Leases the oldest ready message if it has been ready since {@code readySince} or earlier.
+         */
+        Optional<MessageRecord> oldestReadySince(Instant readySince);
+
+        /**
+         * Leases the highest priority, then oldest, ready message of a size class.
+         */
+        Optional<MessageRecord> firstInSizeClass(int sizeClass);
+    }
+}
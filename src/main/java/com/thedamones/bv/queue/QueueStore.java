@@ -0,0 +1,124 @@
+package com.thedamones.bv.queue;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * Stores the messages of every queue for the {@link MessageService}.  The store is picked with {@code queue.store.type}:
+ * {@link JpaQueueStore} (the default) keeps messages in the database, {@link MappedLogQueueStore} in an append-only log
+ * of memory-mapped files, and {@link MemoryQueueStore} in memory only.
+ * <p>
+ * Messages reach a store with their ID and timestamp already assigned.  Leases, scheduled delivery, retries and dead
+ * letters need the database: a store that does not {@link #supportsLeases() support leases} only holds ready messages,
+ * and the {@link MessageService} pops messages from it where it would otherwise lease them.
+ * <p>
+ * Stores are called inside the {@link MessageService} transactions; a store that is not
+ * {@link #isTransactional() transactional} applies every change right away, even if the surrounding transaction rolls
+ * back, so callers undo its changes explicitly instead of rolling back.
+ */
+public interface QueueStore {
+
+    /**
+     * Whether changes are undone when the surrounding transaction rolls back.
+     *
+     * @return {@code true} if the store takes part in the transactions.
+     */
+    boolean isTransactional();
+
+    /**
+     * Whether messages can be leased in place, scheduled for later delivery and retried after a backoff.
+     *
+     * @return {@code true} if the store supports leases.
+     */
+    boolean supportsLeases();
+
+    /**
+     * Checks that a message can be stored, before it is stored or buffered for a later append.
+     *
+     * @param message The message to enqueue.
+     * @throws InvalidMessageException If the store cannot hold the message.
+     */
+    default void validate(MessageRecord message) {
+    }
+
+    /**
+     * Appends new messages, in order, to the back of their queue.  Messages with a delivery time after their timestamp
+     * are scheduled rather than ready.
+     *
+     * @param messages The messages, all of the same queue.
+     */
+    void append(List<MessageRecord> messages);
+
+    /**
+     * Puts messages that left their queue back at its back, ready, keeping their IDs, timestamps, attempts and last
+     * errors.
+     *
+     * @param messages The messages, all of the same queue.
+     */
+    void requeue(List<MessageRecord> messages);
+
+    /**
+     * Removes and returns the head of a queue: its oldest ready message of the highest priority.
+     *
+     * @param queueName The name of the queue.
+     * @param oldest    Whether to take the oldest ready message regardless of priority instead.
+     * @return The message, or empty if the queue has no ready message.
+     */
+    Optional<MessageRecord> pop(String queueName, boolean oldest);
+
+    /**
+     * Removes a message by its ID, for a consumer it was handed to in memory, with a store that does not
+     * {@link #supportsLeases() support leases}.
+     *
+     * @param queueName The name of the queue.
+     * @param id        The ID of the message.
+     * @return The message, or empty if it is no longer in the queue or the store cannot remove messages by ID.
+     */
+    default Optional<MessageRecord> remove(String queueName, UUID id) {
+        return Optional.empty();
+    }
+
+    /**
+     * Gets the head of a queue without removing it.
+     *
+     * @param queueName The name of the queue.
+     * @return The message {@link #pop(String, boolean)} would return next, or empty if the queue has no ready message.
+     */
+    Optional<MessageRecord> peek(String queueName);
+
+    /**
+     * Gets a message of a queue by its ID.
+     *
+     * @param queueName The name of the queue.
+     * @param id        The ID of the message.
+     * @return The message, or empty if it is not in the queue.
+     */
+    Optional<MessageRecord> findById(String queueName, UUID id);
+
+    /**
+     * Counts the messages of every queue, scheduled and in-flight messages included.
+     *
+     * @return The number of messages by queue name.
+     */
+    Map<String, Long> sizes();
+
+    /**
+     * Gets the position of the last message appended to a queue, for {@link #purge(String, long, int)}.
+     *
+     * @param queueName The name of the queue.
+     * @return The position, zero if the queue is empty.
+     */
+    long tail(String queueName);
+
+    /**
+     * Removes up to {@code limit} messages of a queue that were appended at or before a {@link #tail(String) position}.
+     *
+     * @param queueName The name of the queue.
+     * @param upTo      The position of the last message to remove.
+     * @param limit     The maximum number of messages to remove.
+     * @return The number of messages removed, zero once none is left.
+     */
+    int purge(String queueName, long upTo, int limit);
+}
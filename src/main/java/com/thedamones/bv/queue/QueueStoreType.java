@@ -0,0 +1,23 @@
+package com.thedamones.bv.queue;
+
+/**
+ * Which {@link QueueStore} holds the messages, set with {@code queue.store.type}.
+ */
+public enum QueueStoreType {
+
+    /**
+     * The {@code message} table, through JPA and JDBC: every feature, durable once the transaction commits.
+     */
+    JPA,
+
+    /**
+     * An append-only log of memory-mapped files per queue: first in, first out only, without leases, priorities or
+     * scheduled delivery.
+     */
+    MAPPED_LOG,
+
+    /**
+     * Lock-free queues in memory: fast, but lost when the application stops, and without leases or scheduled delivery.
+     */
+    MEMORY
+}
@@ -0,0 +1,107 @@
+package com.thedamones.bv.queue;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Counts the messages enqueued to and dequeued from one queue.
+ * <p>
+ * Besides the totals, each direction keeps a one-minute exponentially weighted moving average of its rate, updated
+ * every five seconds, like the load average of a Unix system.  Recording is a {@link LongAdder} increment, so it does
+ * not contend between workers; the averages are only brought up to date when they are read or recorded to after a
+ * tick has passed.
+ */
+public class QueueThroughput {
+
+    private static final long TICK_NANOS = TimeUnit.SECONDS.toNanos(5);
+    private static final double TICK_SECONDS = TICK_NANOS / 1e9;
+    private static final double ALPHA = 1 - Math.exp(-TICK_SECONDS / 60);
+
+    private final Rate enqueued;
+    private final Rate dequeued;
+
+    public QueueThroughput() {
+        this(System::nanoTime);
+    }
+
+    QueueThroughput(LongSupplier nanoClock) {
+        this.enqueued = new Rate(nanoClock);
+        this.dequeued = new Rate(nanoClock);
+    }
+
+    /**
+     * Counts enqueued messages.
+     *
+     * @param count The number of messages.
+     */
+    public void recordEnqueued(long count) {
+        enqueued.mark(count);
+    }
+
+    /**
+     * Counts dequeued messages.
+     *
+     * @param count The number of messages.
+     */
+    public void recordDequeued(long count) {
+        dequeued.mark(count);
+    }
+
+    /**
+     * Gets the totals and the current one-minute rates.
+     *
+     * @return The throughput.
+     */
+    public ThroughputRecord toRecord() {
+        return new ThroughputRecord(enqueued.total(), dequeued.total(), enqueued.perSecond(), dequeued.perSecond());
+    }
+
+    private static class Rate {
+
+        private final LongSupplier nanoClock;
+        private final LongAdder total = new LongAdder();
+        private final LongAdder uncounted = new LongAdder();
+        private final AtomicLong lastTick;
+        private volatile double perSecond;
+
+        private Rate(LongSupplier nanoClock) {
+            this.nanoClock = nanoClock;
+            this.lastTick = new AtomicLong(nanoClock.getAsLong());
+        }
+
+        private void mark(long count) {
+            tickIfNecessary();
+            total.add(count);
+            uncounted.add(count);
+        }
+
+        private long total() {
+            return total.sum();
+        }
+
+        private double perSecond() {
+            tickIfNecessary();
+            return perSecond;
+        }
+
+        /**
+         * Folds the counts of every tick that passed into the average.  Only the thread that advances
+         * {@code lastTick} does so, so each tick is applied once.
+         */
+        private void tickIfNecessary() {
+            long previousTick = lastTick.get();
+            long age = nanoClock.getAsLong() - previousTick;
+            if (age < TICK_NANOS) {
+                return;
+            }
+            long ticks = age / TICK_NANOS;
+            if (lastTick.compareAndSet(previousTick, previousTick + ticks * TICK_NANOS)) {
+                double average = perSecond + ALPHA * (uncounted.sumThenReset() / TICK_SECONDS - perSecond);
+                // every further tick passed without any messages
+                perSecond = average * Math.pow(1 - ALPHA, ticks - 1);
+            }
+        }
+    }
+}
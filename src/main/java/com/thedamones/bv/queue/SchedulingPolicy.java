@@ -0,0 +1,27 @@
+package com.thedamones.bv.queue;
+
+/**
+ * How the {@link QueueManager} workers of a queue pick the next message, see {@link QueueScheduler}.  The cost of a
+ * message is its {@link Message#getSizeClass() size class}, the order of magnitude of its {@code dataSize}.
+ */
+public enum SchedulingPolicy {
+
+    /**
+     * Highest priority first, then in arrival order, with the {@code queue.dequeue.fairness-interval} guard; the order
+     * every other consumer dequeues in.
+     */
+    FIFO,
+
+    /**
+     * Cheapest size class first, then by priority and arrival order.  A message that has been ready for longer than
+     * {@code queue.scheduling.aging} is leased before anything cheaper, so expensive messages are never starved.
+     */
+    SHORTEST_JOB_FIRST,
+
+    /**
+     * Each size class gets a share of the workers' processing time proportional to its
+     * {@code queue.scheduling.weights} entry, so cheap messages keep flowing while expensive ones are processed, and
+     * expensive ones still get their share under a flood of cheap ones.  Within a class, by priority and arrival order.
+     */
+    WEIGHTED_FAIR
+}
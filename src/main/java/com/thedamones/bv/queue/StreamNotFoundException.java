@@ -0,0 +1,8 @@
+package com.thedamones.bv.queue;
+
+public class StreamNotFoundException extends RuntimeException {
+
+    public StreamNotFoundException(String message) {
+        super(message);
+    }
+}
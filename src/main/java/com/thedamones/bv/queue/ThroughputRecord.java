@@ -0,0 +1,7 @@
+package com.thedamones.bv.queue;
+
+/**
+ * Messages enqueued to and dequeued from a queue since startup, and the rates over roughly the last minute.
+ */
+public record ThroughputRecord(long enqueued, long dequeued, double enqueuedPerSecond, double dequeuedPerSecond) {
+}
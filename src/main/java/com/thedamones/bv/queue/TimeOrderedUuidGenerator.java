@@ -0,0 +1,51 @@
+package com.thedamones.bv.queue;
+
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.id.uuid.UuidValueGenerator;
+
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Generates time-ordered, version 7 UUIDs (RFC 9562) for {@link Message} ids.
+ * <p>
+ * The most significant 48 bits hold the Unix epoch milliseconds, followed by a 12-bit counter that keeps ids generated
+ * within the same millisecond in order (method 1 of RFC 9562, section 6.2).  When the counter overflows it carries into
+ * the millisecond field, so ids are strictly increasing within this JVM.  The remaining 62 bits are random.
+ * <p>
+ * Because new ids always sort after existing ones, primary key inserts append to the right-hand edge of the index
+ * instead of landing on random B-tree pages.
+ */
+public class TimeOrderedUuidGenerator implements UuidValueGenerator {
+
+    private static final long VERSION_7 = 0x7000L;
+    private static final long VARIANT_RFC_9562 = 0x8000000000000000L;
+    private static final long COUNTER_BITS = 12;
+    private static final long COUNTER_MASK = (1L << COUNTER_BITS) - 1;
+    private static final long RANDOM_MASK = 0x3FFFFFFFFFFFFFFFL;
+
+    /**
+     * Last issued epoch milliseconds (upper bits) and counter (lower {@value #COUNTER_BITS} bits).
+     */
+    private static final AtomicLong lastTimeAndCounter = new AtomicLong();
+
+    @Override
+    public UUID generateUuid(SharedSessionContractImplementor session) {
+        return generate();
+    }
+
+    /**
+     * Generates the next time-ordered UUID.
+     *
+     * @return A version 7 UUID greater than any previously generated by this class.
+     */
+    public static UUID generate() {
+        long now = System.currentTimeMillis() << COUNTER_BITS;
+        long timeAndCounter = lastTimeAndCounter.updateAndGet(last -> Math.max(now, last + 1));
+
+        long mostSigBits = (timeAndCounter >>> COUNTER_BITS) << 16 | VERSION_7 | (timeAndCounter & COUNTER_MASK);
+        long leastSigBits = ThreadLocalRandom.current().nextLong() & RANDOM_MASK | VARIANT_RFC_9562;
+        return new UUID(mostSigBits, leastSigBits);
+    }
+}
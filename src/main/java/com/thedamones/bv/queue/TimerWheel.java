@@ -0,0 +1,188 @@
+package com.thedamones.bv.queue;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+
+/**
+ * A hashed timer wheel that runs a task on its own thread whenever one of its deadlines expires.
+ * <p>
+ * Time is cut into ticks; a deadline goes into the slot of its tick modulo the wheel size, so scheduling is constant
+ * time whatever the number of pending deadlines, and each tick only looks at one slot.  Deadlines falling in the same
+ * tick are kept once, and the task runs once per tick in which anything expired, so the wheel holds wake-up times
+ * rather than one entry per message.  Deadlines are rounded up to the next tick, so the task never runs before a
+ * deadline, and at most one tick after it.  The thread sleeps until the next tick while deadlines are pending, and
+ * until the next {@link #schedule(Instant)} otherwise.
+ */
+public class TimerWheel {
+
+    private static final Logger logger = LoggerFactory.getLogger(TimerWheel.class);
+
+    private final String name;
+    private final long tickMillis;
+    private final List<Set<Long>> slots;
+    private final Runnable task;
+    private final LongSupplier clock;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition scheduled = lock.newCondition();
+    private long nextTick;
+    private int pending;
+    private volatile boolean running;
+    private Thread thread;
+
+    /**
+     * Creates a timer wheel on the system clock.
+     *
+     * @param name      The name of the timer thread.
+     * @param tick      The resolution of the wheel.
+     * @param wheelSize The number of slots.
+     * @param task      The task to run when deadlines expire.
+     */
+    public TimerWheel(String name, Duration tick, int wheelSize, Runnable task) {
+        this(name, tick, wheelSize, task, System::currentTimeMillis);
+    }
+
+    TimerWheel(String name, Duration tick, int wheelSize, Runnable task, LongSupplier clock) {
+        this.name = name;
+        this.tickMillis = Math.max(tick.toMillis(), 1);
+        this.slots = new ArrayList<>(wheelSize);
+        for (int i = 0; i < wheelSize; i++) {
+            slots.add(new HashSet<>());
+        }
+        this.task = task;
+        this.clock = clock;
+        this.nextTick = clock.getAsLong() / tickMillis;
+    }
+
+    /**
+     * Starts the timer thread.
+     */
+    public void start() {
+        running = true;
+        thread = Thread.ofPlatform().name(name).daemon().start(this::run);
+    }
+
+    /**
+     * Stops the timer thread, after the task if it is running, and drops the pending deadlines.  The thread is woken
+     * rather than interrupted, so that a running task is not interrupted in the middle of database I/O.
+     */
+    public void stop() {
+        running = false;
+        if (thread == null) {
+            return;
+        }
+        lock.lock();
+        try {
+            scheduled.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Runs the task once {@code deadline} has passed; right away (on the timer thread) if it already has.
+     *
+     * @param deadline The deadline.
+     */
+    public void schedule(Instant deadline) {
+        // Rounded up to the millisecond too: toEpochMilli() truncates
+        long millis = deadline.toEpochMilli() + (deadline.getNano() % 1_000_000 == 0 ? 0 : 1);
+        long tick = Math.ceilDiv(millis, tickMillis);
+        lock.lock();
+        try {
+            tick = Math.max(tick, nextTick);
+            if (slot(tick).add(tick)) {
+                pending++;
+                scheduled.signal();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Gets the number of distinct ticks with pending deadlines.
+     */
+    int getPending() {
+        lock.lock();
+        try {
+            return pending;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void run() {
+        while (running) {
+            try {
+                if (awaitExpiry()) {
+                    task.run();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                logger.error("Timer {} task failed", name, e);
+            }
+        }
+    }
+
+    /**
+     * Waits for the next tick and expires its deadlines, along with those of any tick missed meanwhile.
+     *
+     * @return Whether any deadline expired.
+     */
+    private boolean awaitExpiry() throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            if (!running) {
+                return false;
+            }
+            if (pending == 0) {
+                scheduled.await();
+                return false;
+            }
+            long now = clock.getAsLong();
+            long currentTick = now / tickMillis;
+            if (currentTick < nextTick) {
+                scheduled.await(nextTick * tickMillis - now, TimeUnit.MILLISECONDS);
+                return false;
+            }
+
+            // Catching up on more ticks than there are slots visits every slot once
+            int expired = 0;
+            long ticks = Math.min(currentTick - nextTick + 1, slots.size());
+            for (long tick = nextTick; tick < nextTick + ticks; tick++) {
+                Set<Long> slot = slot(tick);
+                int before = slot.size();
+                slot.removeIf(deadlineTick -> deadlineTick <= currentTick);
+                expired += before - slot.size();
+            }
+            pending -= expired;
+            nextTick = currentTick + 1;
+            return expired > 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private Set<Long> slot(long tick) {
+        return slots.get((int) Math.floorMod(tick, (long) slots.size()));
+    }
+}
@@ -0,0 +1,66 @@
+package com.thedamones.bv.queue;
+
+import java.util.function.LongSupplier;
+
+/**
+ * A token bucket refilled at a constant rate up to its capacity, starting full.
+ * <p>
+ * Taking tokens only requires the bucket to hold one, and may leave it in debt: a batch larger than the capacity is
+ * still admitted once, and the following requests wait for the debt to be paid back.  The bucket is refilled lazily,
+ * from the time elapsed since it was last used, so an idle bucket costs nothing.
+ */
+public class TokenBucket {
+
+    private final double tokensPerNano;
+    private final double capacity;
+    private final LongSupplier nanoClock;
+    private double tokens;
+    private long refilledAt;
+
+    /**
+     * Creates a full bucket.
+     *
+     * @param tokensPerSecond The refill rate.
+     * @param capacity        The number of tokens the bucket holds when full.
+     */
+    public TokenBucket(double tokensPerSecond, double capacity) {
+        this(tokensPerSecond, capacity, System::nanoTime);
+    }
+
+    TokenBucket(double tokensPerSecond, double capacity, LongSupplier nanoClock) {
+        this.tokensPerNano = tokensPerSecond / 1e9;
+        this.capacity = capacity;
+        this.nanoClock = nanoClock;
+        this.tokens = capacity;
+        this.refilledAt = nanoClock.getAsLong();
+    }
+
+    /**
+     * Takes tokens if the bucket holds at least one.
+     *
+     * @param count The number of tokens.
+     * @return Zero if the tokens were taken, otherwise how many nanoseconds to wait until the bucket holds one.
+     */
+    public synchronized long tryTake(int count) {
+        refill();
+        if (tokens >= 1) {
+            tokens -= count;
+            return 0;
+        }
+        return (long) Math.ceil((1 - tokens) / tokensPerNano);
+    }
+
+    /**
+     * Tells whether the bucket has refilled completely, i.e. it is in the state of a new bucket.
+     */
+    public synchronized boolean isFull() {
+        refill();
+        return tokens >= capacity;
+    }
+
+    private void refill() {
+        long now = nanoClock.getAsLong();
+        tokens = Math.min(capacity, tokens + (now - refilledAt) * tokensPerNano);
+        refilledAt = now;
+    }
+}
@@ -1,36 +1,67 @@
 package com.thedamones.bv.queue;
 
+import jakarta.servlet.http.HttpServletRequest;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * The original API, addressing the {@link QueueRegistry#DEFAULT_QUEUE default queue}.
+ */
 @RestController
 @RequestMapping("/v1")
 public class V1QueueManagerController {
 
     private final MessageService messageService;
+    private final GroupCommitEnqueuer groupCommitEnqueuer;
+    private final LongPollDequeueService longPollDequeueService;
+    private final AdmissionControl admissionControl;
 
     @Autowired
-    public V1QueueManagerController(MessageService messageService) {
+    public V1QueueManagerController(MessageService messageService, GroupCommitEnqueuer groupCommitEnqueuer,
+                                    LongPollDequeueService longPollDequeueService, AdmissionControl admissionControl) {
         this.messageService = messageService;
+        this.groupCommitEnqueuer = groupCommitEnqueuer;
+        this.longPollDequeueService = longPollDequeueService;
+        this.admissionControl = admissionControl;
     }
 
     @PostMapping("/enqueue")
-    public ResponseEntity<MessageRecord> enqueueMessage(@RequestBody EnqueueMessageRecord request) {
-        MessageRecord enqueuedMessage = messageService.enqueueMessage(request);
-        return ResponseEntity.status(HttpStatus.CREATED).body(enqueuedMessage);
+    public CompletableFuture<ResponseEntity<MessageRecord>> enqueueMessage(@RequestBody EnqueueMessageRecord request,
+                                                                           HttpServletRequest servletRequest) {
+        admissionControl.admit(QueueRegistry.DEFAULT_QUEUE, 1, servletRequest);
+        return groupCommitEnqueuer.enqueue(QueueRegistry.DEFAULT_QUEUE, request)
+                .thenApply(enqueuedMessage -> ResponseEntity.status(HttpStatus.CREATED).body(enqueuedMessage));
+    }
+
+    @PostMapping("/enqueue-batch")
+    public ResponseEntity<List<MessageRecord>> enqueueMessages(@RequestBody List<EnqueueMessageRecord> requests,
+                                                               HttpServletRequest servletRequest) {
+        admissionControl.admit(QueueRegistry.DEFAULT_QUEUE, requests.size(), servletRequest);
+        List<MessageRecord> enqueuedMessages = messageService.enqueueMessages(QueueRegistry.DEFAULT_QUEUE, requests);
+        return ResponseEntity.status(HttpStatus.CREATED).body(enqueuedMessages);
     }
 
     @GetMapping("/dequeue")
     public ResponseEntity<MessageRecord> dequeueMessage() {
-        MessageRecord dequeuedMessage = messageService.dequeueMessage();
+        MessageRecord dequeuedMessage = messageService.dequeueMessage(QueueRegistry.DEFAULT_QUEUE);
         return ResponseEntity.ok(dequeuedMessage);
     }
 
+    @GetMapping(value = "/dequeue", params = "wait")
+    public CompletableFuture<ResponseEntity<MessageRecord>> dequeueMessage(@RequestParam("wait") long waitSeconds) {
+        return longPollDequeueService.dequeueMessage(QueueRegistry.DEFAULT_QUEUE, Duration.ofSeconds(waitSeconds))
+                .thenApply(ResponseEntity::ok);
+    }
+
     @GetMapping("/queue-size")
     public ResponseEntity<Long> getQueueSize() {
-        long queueSize = messageService.getQueueSize();
+        long queueSize = messageService.getQueueSize(QueueRegistry.DEFAULT_QUEUE);
         return ResponseEntity.ok(queueSize);
     }
 }
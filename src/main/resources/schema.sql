@@ -0,0 +1,9 @@
+-- Run after Hibernate has created or updated the message table, see spring.jpa.defer-datasource-initialization.
+
+-- The size class of Message.sizeClass(Integer), generated so that native inserts and older rows are classified too.
+ALTER TABLE message ADD COLUMN IF NOT EXISTS size_class TINYINT GENERATED ALWAYS AS (
+    CASE WHEN data_size < 10 THEN 0 WHEN data_size < 100 THEN 1 WHEN data_size < 1000 THEN 2
+        WHEN data_size < 10000 THEN 3 ELSE 4 END);
+
+CREATE INDEX IF NOT EXISTS idx_message_queue_state_size_class_priority_sequence_number
+    ON message (queue_name, state, size_class, priority DESC, sequence_number);
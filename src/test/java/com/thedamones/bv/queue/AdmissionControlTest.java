@@ -0,0 +1,154 @@
+package com.thedamones.bv.queue;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+import java.time.Duration;
+
+import static com.thedamones.bv.queue.QueueRegistry.DEFAULT_QUEUE;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class AdmissionControlTest {
+
+    @Mock
+    private QueueDepthCounter queueDepthCounter;
+
+    @Mock
+    private QueueRegistry queueRegistry;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final QueueProperties queueProperties = new QueueProperties();
+    private final MockHttpServletRequest request = new MockHttpServletRequest();
+    private AdmissionControl admissionControl;
+
+    @BeforeEach
+    void setUp() {
+        admissionControl = new AdmissionControl(queueDepthCounter, queueRegistry, new QueueMetrics(meterRegistry), queueProperties);
+        lenient().when(queueRegistry.get(DEFAULT_QUEUE)).thenReturn(new QueueThroughput());
+    }
+
+    @Test
+    void admit_withoutLimits_shouldAdmitWithoutReadingDepth() {
+        admissionControl.admit(DEFAULT_QUEUE, 1000, request);
+
+        verifyNoInteractions(queueDepthCounter);
+        assertEquals(new AdmissionRecord(AdmissionState.ACCEPTING, null, null), admissionControl.getAdmission(DEFAULT_QUEUE));
+    }
+
+    @Test
+    void admit_shouldRejectFromHighWatermarkUntilDrainedToLowWatermark() {
+        queueProperties.getAdmission().setHighWatermark(100);
+        queueProperties.getAdmission().setLowWatermark(50L);
+
+        when(queueDepthCounter.get(DEFAULT_QUEUE)).thenReturn(99L);
+        admissionControl.admit(DEFAULT_QUEUE, 1, request);
+
+        when(queueDepthCounter.get(DEFAULT_QUEUE)).thenReturn(100L);
+        assertThrows(QueueOverloadedException.class, () -> admissionControl.admit(DEFAULT_QUEUE, 1, request));
+        assertEquals(new AdmissionRecord(AdmissionState.REJECTING, 100L, 50L), admissionControl.getAdmission(DEFAULT_QUEUE));
+
+        // still rejecting between the watermarks
+        when(queueDepthCounter.get(DEFAULT_QUEUE)).thenReturn(51L);
+        assertThrows(QueueOverloadedException.class, () -> admissionControl.admit(DEFAULT_QUEUE, 1, request));
+
+        when(queueDepthCounter.get(DEFAULT_QUEUE)).thenReturn(50L);
+        admissionControl.admit(DEFAULT_QUEUE, 1, request);
+        assertEquals(AdmissionState.ACCEPTING, admissionControl.getAdmission(DEFAULT_QUEUE).state());
+        assertEquals(2, meterRegistry.counter("queue.admission.rejections", "reason", AdmissionControl.REASON_DEPTH).count());
+    }
+
+    @Test
+    void admit_whenRejectedByDepth_shouldRetryAfterDrainTimeUpToMax() {
+        queueProperties.getAdmission().setHighWatermark(100);
+        when(queueDepthCounter.get(DEFAULT_QUEUE)).thenReturn(100L);
+
+        // nothing dequeued yet, so no drain rate to go by
+        QueueOverloadedException rejection = assertThrows(QueueOverloadedException.class,
+                () -> admissionControl.admit(DEFAULT_QUEUE, 1, request));
+
+        assertEquals(queueProperties.getAdmission().getMaxRetryAfter(), rejection.getRetryAfter());
+        assertEquals(80L, admissionControl.getAdmission(DEFAULT_QUEUE).lowWatermark());
+    }
+
+    @Test
+    void admit_withClientRate_shouldLimitEachClientOnItsOwn() {
+        queueProperties.getAdmission().setClientRate(1);
+        queueProperties.getAdmission().setClientBurst(2);
+        queueProperties.getAdmission().setClientHeader("X-Client-Id");
+        request.addHeader("X-Client-Id", "producer-1");
+        MockHttpServletRequest otherClient = new MockHttpServletRequest();
+
+        admissionControl.admit(DEFAULT_QUEUE, 2, request);
+        QueueOverloadedException rejection = assertThrows(QueueOverloadedException.class,
+                () -> admissionControl.admit(DEFAULT_QUEUE, 1, request));
+        admissionControl.admit(DEFAULT_QUEUE, 2, otherClient);
+
+        assertEquals(1, rejection.getRetryAfterSeconds());
+        assertEquals(1, meterRegistry.counter("queue.admission.rejections", "reason", AdmissionControl.REASON_RATE).count());
+    }
+
+    @Test
+    void admit_withoutClientHeader_shouldLimitByRemoteAddress() {
+        queueProperties.getAdmission().setClientRate(0.001);
+        queueProperties.getAdmission().setClientBurst(1);
+        admissionControl.admit(DEFAULT_QUEUE, 1, request);
+
+        MockHttpServletRequest renamed = new MockHttpServletRequest();
+        renamed.addHeader("X-Client-Id", "producer-2");
+
+        assertThrows(QueueOverloadedException.class, () -> admissionControl.admit(DEFAULT_QUEUE, 1, renamed));
+    }
+
+    @Test
+    void admit_beyondMaxClients_shouldForgetLeastRecentlySeenClient() {
+        queueProperties.getAdmission().setClientRate(0.001);
+        queueProperties.getAdmission().setClientBurst(1);
+        queueProperties.getAdmission().setMaxClients(2);
+        admissionControl = new AdmissionControl(queueDepthCounter, queueRegistry, new QueueMetrics(meterRegistry), queueProperties);
+        MockHttpServletRequest second = remoteRequest("10.0.0.2");
+        MockHttpServletRequest third = remoteRequest("10.0.0.3");
+
+        admissionControl.admit(DEFAULT_QUEUE, 1, request);
+        admissionControl.admit(DEFAULT_QUEUE, 1, second);
+        admissionControl.admit(DEFAULT_QUEUE, 1, third);
+
+        // the first client was forgotten, the others are still limited
+        admissionControl.admit(DEFAULT_QUEUE, 1, request);
+        assertThrows(QueueOverloadedException.class, () -> admissionControl.admit(DEFAULT_QUEUE, 1, request));
+        assertThrows(QueueOverloadedException.class, () -> admissionControl.admit(DEFAULT_QUEUE, 1, third));
+    }
+
+    @Test
+    void sweepClients_shouldKeepBucketsThatHaveNotRefilled() {
+        queueProperties.getAdmission().setClientRate(0.001);
+        queueProperties.getAdmission().setClientBurst(1);
+        admissionControl.admit(DEFAULT_QUEUE, 1, request);
+
+        admissionControl.sweepClients();
+
+        assertThrows(QueueOverloadedException.class, () -> admissionControl.admit(DEFAULT_QUEUE, 1, request));
+    }
+
+    @Test
+    void getRetryAfterSeconds_shouldRoundUpToWholeSeconds() {
+        assertEquals(1, new QueueOverloadedException("", Duration.ofMillis(1)).getRetryAfterSeconds());
+        assertEquals(2, new QueueOverloadedException("", Duration.ofSeconds(2)).getRetryAfterSeconds());
+        assertEquals(3, new QueueOverloadedException("", Duration.ofMillis(2001)).getRetryAfterSeconds());
+    }
+
+    private static MockHttpServletRequest remoteRequest(String remoteAddr) {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setRemoteAddr(remoteAddr);
+        return request;
+    }
+}
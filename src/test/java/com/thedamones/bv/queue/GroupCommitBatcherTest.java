@@ -0,0 +1,115 @@
+package com.thedamones.bv.queue;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class GroupCommitBatcherTest {
+
+    private final List<List<Integer>> batches = new CopyOnWriteArrayList<>();
+
+    private GroupCommitBatcher<Integer> batcher;
+
+    @AfterEach
+    void stopBatcher() {
+        if (batcher != null) {
+            batcher.stop();
+        }
+    }
+
+    @Test
+    void flush_shouldFlushInBatchesOfAtMostBatchSizeOldestFirst() {
+        batcher = new GroupCommitBatcher<>("test-batcher", 2, Duration.ofHours(1), this::record, e -> {
+        });
+        batcher.addAll(List.of(1, 2, 3));
+        batcher.add(4);
+        batcher.add(5);
+
+        assertEquals(5, batcher.flush());
+        assertEquals(List.of(List.of(1, 2), List.of(3, 4), List.of(5)), batches);
+        assertEquals(0, batcher.flush());
+    }
+
+    @Test
+    void start_shouldFlushOnceBatchIsFullWithoutWaitingForWindow() throws InterruptedException {
+        CountDownLatch flushed = new CountDownLatch(1);
+        batcher = new GroupCommitBatcher<>("test-batcher", 3, Duration.ofHours(1), batch -> {
+            record(batch);
+            flushed.countDown();
+            return batch.size();
+        }, e -> {
+        });
+        batcher.start();
+        batcher.add(1);
+        batcher.addAll(List.of(2, 3));
+
+        assertTrue(flushed.await(5, TimeUnit.SECONDS));
+        assertEquals(List.of(List.of(1, 2, 3)), batches);
+    }
+
+    @Test
+    void start_shouldFlushAfterWindow() throws InterruptedException {
+        CountDownLatch flushed = new CountDownLatch(1);
+        batcher = new GroupCommitBatcher<>("test-batcher", 100, Duration.ofMillis(50), batch -> {
+            record(batch);
+            flushed.countDown();
+            return batch.size();
+        }, e -> {
+        });
+        batcher.start();
+        batcher.add(1);
+
+        assertTrue(flushed.await(5, TimeUnit.SECONDS));
+        assertEquals(List.of(List.of(1)), batches);
+    }
+
+    @Test
+    void start_shouldHandOnFlushErrorAndKeepFlushing() throws InterruptedException {
+        AtomicReference<Exception> error = new AtomicReference<>();
+        CountDownLatch flushed = new CountDownLatch(1);
+        batcher = new GroupCommitBatcher<>("test-batcher", 1, Duration.ZERO, batch -> {
+            if (batch.contains(1)) {
+                throw new IllegalStateException("poison");
+            }
+            record(batch);
+            flushed.countDown();
+            return batch.size();
+        }, error::set);
+        batcher.start();
+        batcher.add(1);
+        batcher.add(2);
+
+        assertTrue(flushed.await(5, TimeUnit.SECONDS));
+        assertEquals("poison", error.get().getMessage());
+        assertEquals(List.of(List.of(2)), batches);
+    }
+
+    @Test
+    void stop_shouldFlushWhatIsLeft() {
+        batcher = new GroupCommitBatcher<>("test-batcher", 100, Duration.ofHours(1), this::record, e -> {
+        });
+        batcher.start();
+        assertTrue(batcher.isRunning());
+        batcher.add(1);
+
+        batcher.stop();
+
+        assertFalse(batcher.isRunning());
+        assertEquals(List.of(List.of(1)), batches);
+    }
+
+    private int record(List<Integer> batch) {
+        batches.add(List.copyOf(batch));
+        return batch.size();
+    }
+}
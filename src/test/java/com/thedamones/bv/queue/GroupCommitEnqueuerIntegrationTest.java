@@ -0,0 +1,152 @@
+package com.thedamones.bv.queue;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.event.ApplicationEvents;
+import org.springframework.test.context.event.RecordApplicationEvents;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Exercises the {@link GroupCommitEnqueuer} against a private H2 database, with the background workers disabled.  The
+ * window is long enough for a test to buffer several messages and flush them itself.
+ */
+@SpringBootTest(properties = {
+        "queue.workers.count=0",
+        "queue.dequeue.fairness-interval=0",
+        "queue.group-commit.enabled=true",
+        "queue.group-commit.window=100ms",
+        "queue.group-commit.batch-size=50",
+        "queue.queues.orders.workers=0",
+        "spring.datasource.url=jdbc:h2:mem:group-commit-integration;DB_CLOSE_DELAY=-1"
+})
+@RecordApplicationEvents
+class GroupCommitEnqueuerIntegrationTest {
+
+    private static final int MESSAGE_COUNT = 200;
+    private static final int PRODUCER_COUNT = 8;
+
+    @Autowired
+    private GroupCommitEnqueuer groupCommitEnqueuer;
+
+    @Autowired
+    private MessageService messageService;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private ApplicationEvents applicationEvents;
+
+    @BeforeEach
+    void clearQueues() {
+        groupCommitEnqueuer.flush();
+        messageService.clearQueue(QueueRegistry.DEFAULT_QUEUE);
+        messageService.clearQueue("orders");
+    }
+
+    @Test
+    void enqueue_withConcurrentProducers_shouldShareTransactionsAndKeepEveryMessage() throws Exception {
+        long groupCommits = groupCommitCount();
+
+        List<CompletableFuture<MessageRecord>> enqueued = new ArrayList<>();
+        try (ExecutorService producers = Executors.newFixedThreadPool(PRODUCER_COUNT)) {
+            List<Future<CompletableFuture<MessageRecord>>> futures = new ArrayList<>();
+            for (int i = 0; i < MESSAGE_COUNT; i++) {
+                EnqueueMessageRecord request = new EnqueueMessageRecord("Message " + i, 0);
+                futures.add(producers.submit(() -> groupCommitEnqueuer.enqueue(QueueRegistry.DEFAULT_QUEUE, request)));
+            }
+            for (Future<CompletableFuture<MessageRecord>> future : futures) {
+                enqueued.add(future.get());
+            }
+        }
+
+        HashSet<MessageRecord> committed = new HashSet<>();
+        for (CompletableFuture<MessageRecord> future : enqueued) {
+            committed.add(future.get());
+        }
+        assertEquals(MESSAGE_COUNT, committed.size());
+        assertEquals(MESSAGE_COUNT, messageService.getQueueSize(QueueRegistry.DEFAULT_QUEUE));
+        assertTrue(groupCommitCount() - groupCommits < MESSAGE_COUNT);
+    }
+
+    @Test
+    void accept_shouldReturnIdThenStoreMessageWithNextGroupCommit() {
+        MessageRecord accepted = groupCommitEnqueuer.accept("orders", new EnqueueMessageRecord("Accepted", 5, 3));
+        // the group commit thread may store it first, at the end of a window opened by an earlier test
+        groupCommitEnqueuer.flush();
+
+        MessageRecord stored = messageService.getMessageById("orders", accepted.id());
+        assertEquals(accepted.text(), stored.text());
+        assertEquals(accepted.dataSize(), stored.dataSize());
+        assertEquals(3, stored.priority());
+    }
+
+    @Test
+    void flush_shouldPublishOneEnqueuedEventPerQueue() {
+        groupCommitEnqueuer.accept(QueueRegistry.DEFAULT_QUEUE, new EnqueueMessageRecord("First", 0));
+        groupCommitEnqueuer.accept("orders", new EnqueueMessageRecord("Second", 0));
+        groupCommitEnqueuer.accept(QueueRegistry.DEFAULT_QUEUE, new EnqueueMessageRecord("Third", 0));
+        groupCommitEnqueuer.flush();
+
+        List<MessageEnqueuedEvent> events = applicationEvents.stream(MessageEnqueuedEvent.class).toList();
+        assertEquals(2, events.size());
+        assertEquals(List.of("First", "Third"), events.getFirst().getMessageRecords().stream().map(MessageRecord::text).toList());
+        assertEquals("orders", events.get(1).getQueue());
+        assertEquals("First", messageService.dequeueMessage(QueueRegistry.DEFAULT_QUEUE).text());
+    }
+
+    @Test
+    void accept_withDelay_shouldStoreScheduledMessage() {
+        groupCommitEnqueuer.accept(QueueRegistry.DEFAULT_QUEUE,
+                new EnqueueMessageRecord("Later", 0, null, null, 3600L));
+        groupCommitEnqueuer.flush();
+
+        assertEquals(1, messageService.getQueueSize(QueueRegistry.DEFAULT_QUEUE));
+        assertThrows(MessageNotFoundException.class, () -> messageService.dequeueMessage(QueueRegistry.DEFAULT_QUEUE));
+    }
+
+    @Test
+    void enqueue_withInvalidPriority_shouldThrowBeforeBuffering() {
+        assertThrows(InvalidMessageException.class, () -> groupCommitEnqueuer.enqueue(QueueRegistry.DEFAULT_QUEUE,
+                new EnqueueMessageRecord("Invalid", 0, Message.MAX_PRIORITY + 1)));
+        assertEquals(0, groupCommitEnqueuer.flush());
+    }
+
+    @Test
+    void enqueue_withMessageFailingToInsert_shouldFailOnlyThatMessage() {
+        // Longer than the text column, which only the insert finds out
+        CompletableFuture<MessageRecord> tooLong = groupCommitEnqueuer.enqueue(QueueRegistry.DEFAULT_QUEUE,
+                new EnqueueMessageRecord("x".repeat(1000), 0));
+        CompletableFuture<MessageRecord> first = groupCommitEnqueuer.enqueue(QueueRegistry.DEFAULT_QUEUE,
+                new EnqueueMessageRecord("First", 0));
+        CompletableFuture<MessageRecord> second = groupCommitEnqueuer.enqueue("orders", new EnqueueMessageRecord("Second", 0));
+        groupCommitEnqueuer.flush();
+
+        ExecutionException failure = assertThrows(ExecutionException.class, tooLong::get);
+        assertInstanceOf(MessageEnqueueException.class, failure.getCause());
+        assertEquals("First", first.join().text());
+        assertEquals("Second", second.join().text());
+        assertEquals(1, messageService.getQueueSize(QueueRegistry.DEFAULT_QUEUE));
+        assertEquals(1, messageService.getQueueSize("orders"));
+    }
+
+    private long groupCommitCount() {
+        return meterRegistry.summary("queue.enqueue.group.commit.size").count();
+    }
+}
@@ -0,0 +1,113 @@
+package com.thedamones.bv.queue;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.core.convert.support.DefaultConversionService;
+import org.springframework.core.convert.support.GenericConversionService;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static com.thedamones.bv.queue.QueueRegistry.DEFAULT_QUEUE;
+import static com.thedamones.bv.queue.TestMessages.*;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class JpaQueueStoreTest {
+
+    @Mock
+    private MessageRepository messageRepository;
+
+    private final QueueProperties queueProperties = new QueueProperties();
+
+    private JpaQueueStore queueStore;
+
+    @BeforeEach
+    void setUp() {
+        GenericConversionService conversionService = new DefaultConversionService();
+        conversionService.addConverter(new MessageToMessageRecordConverter());
+        queueStore = new JpaQueueStore(messageRepository, conversionService, queueProperties);
+    }
+
+    @Test
+    void pop_shouldUseNativePop() {
+        when(messageRepository.popFirst(DEFAULT_QUEUE)).thenReturn(Optional.of(createTestMessageRecord()));
+
+        assertTestMessageRecord(queueStore.pop(DEFAULT_QUEUE, false).orElseThrow());
+        verify(messageRepository, never()).delete(any(Message.class));
+    }
+
+    @Test
+    void pop_oldest_shouldPopOldestMessage() {
+        when(messageRepository.popOldest(DEFAULT_QUEUE)).thenReturn(Optional.of(createTestMessageRecord()));
+
+        assertTestMessageRecord(queueStore.pop(DEFAULT_QUEUE, true).orElseThrow());
+        verify(messageRepository, never()).popFirst(any());
+    }
+
+    @Test
+    void pop_withNativePopDisabled_shouldReturnAndRemoveOldestMessage() {
+        queueProperties.getDequeue().setNativePop(false);
+        Message message = createTestMessage();
+        when(messageRepository.lockFirst(DEFAULT_QUEUE)).thenReturn(Optional.of(message));
+
+        assertTestMessageRecord(queueStore.pop(DEFAULT_QUEUE, false).orElseThrow());
+        verify(messageRepository).delete(message);
+        verify(messageRepository, never()).popFirst(any());
+    }
+
+    @Test
+    void pop_withNativePopDisabled_whenEmpty_shouldReturnEmpty() {
+        queueProperties.getDequeue().setNativePop(false);
+        when(messageRepository.lockFirst(DEFAULT_QUEUE)).thenReturn(Optional.empty());
+
+        assertTrue(queueStore.pop(DEFAULT_QUEUE, false).isEmpty());
+        verify(messageRepository, never()).delete(any(Message.class));
+    }
+
+    @Test
+    void findById_whenInAnotherQueue_shouldReturnEmpty() {
+        Message message = createTestMessage();
+        when(messageRepository.findById(message.getId())).thenReturn(Optional.of(message));
+
+        assertTestMessageRecord(queueStore.findById(DEFAULT_QUEUE, message.getId()).orElseThrow());
+        assertTrue(queueStore.findById("orders", message.getId()).isEmpty());
+    }
+
+    @Test
+    void tail_whenEmpty_shouldReturnZero() {
+        when(messageRepository.findMaxSequenceNumber(DEFAULT_QUEUE)).thenReturn(Optional.empty());
+
+        assertEquals(0, queueStore.tail(DEFAULT_QUEUE));
+    }
+
+    @Test
+    void sizes_shouldCountEveryQueue() {
+        when(messageRepository.countByQueueName()).thenReturn(List.of(queueDepth(DEFAULT_QUEUE, 42), queueDepth("orders", 7)));
+
+        assertEquals(Map.of(DEFAULT_QUEUE, 42L, "orders", 7L), queueStore.sizes());
+    }
+
+    private static MessageRepository.QueueDepth queueDepth(String queueName, long depth) {
+        return new MessageRepository.QueueDepth() {
+            @Override
+            public String getQueueName() {
+                return queueName;
+            }
+
+            @Override
+            public long getDepth() {
+                return depth;
+            }
+        };
+    }
+}
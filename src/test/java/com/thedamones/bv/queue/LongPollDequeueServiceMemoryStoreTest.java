@@ -0,0 +1,74 @@
+package com.thedamones.bv.queue;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.bean.override.mockito.MockitoSpyBean;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+
+/**
+ * Exercises the {@link LongPollDequeueService} on the {@link MemoryQueueStore}, which ignores rollbacks.  Dequeues are
+ * slowed down so that the waiter always times out between the pop and its delivery.
+ */
+@SpringBootTest(properties = {
+        "queue.workers.count=0",
+        "queue.store.type=memory",
+        "spring.datasource.url=jdbc:h2:mem:long-poll-memory;DB_CLOSE_DELAY=-1"
+})
+class LongPollDequeueServiceMemoryStoreTest {
+
+    private static final Duration WAIT = Duration.ofMillis(100);
+
+    @Autowired
+    private LongPollDequeueService longPollDequeueService;
+
+    @MockitoSpyBean
+    private MessageService messageService;
+
+    @BeforeEach
+    void slowDownDequeues() {
+        messageService.clearQueue(QueueRegistry.DEFAULT_QUEUE);
+        doAnswer(invocation -> {
+            Object message = invocation.callRealMethod();
+            Thread.sleep(WAIT.multipliedBy(3));
+            return message;
+        }).when(messageService).dequeueMessage(anyString());
+    }
+
+    @Test
+    void dequeueMessage_whenWaiterExpiresDuringDequeue_shouldRequeueMessage() throws Exception {
+        MessageRecord enqueued = messageService.enqueueMessage(QueueRegistry.DEFAULT_QUEUE, new EnqueueMessageRecord("Expired", 0));
+
+        CompletableFuture<MessageRecord> waiter = longPollDequeueService.dequeueMessage(QueueRegistry.DEFAULT_QUEUE, WAIT);
+
+        ExecutionException exception = assertThrows(ExecutionException.class, () -> waiter.get(1, TimeUnit.SECONDS));
+        assertInstanceOf(MessageNotFoundException.class, exception.getCause());
+        // the dispatch requeues the message once its slowed down dequeue returns
+        for (int i = 0; i < 20 && !isQueued(enqueued); i++) {
+            Thread.sleep(50);
+        }
+        assertEquals(1, messageService.getQueueSize(QueueRegistry.DEFAULT_QUEUE));
+        assertEquals(enqueued, messageService.dequeueMessage(QueueRegistry.DEFAULT_QUEUE));
+        assertEquals(0, messageService.getQueueSize(QueueRegistry.DEFAULT_QUEUE));
+    }
+
+    private boolean isQueued(MessageRecord message) {
+        try {
+            messageService.getMessageById(QueueRegistry.DEFAULT_QUEUE, message.id());
+            return true;
+        } catch (MessageNotFoundException e) {
+            return false;
+        }
+    }
+}
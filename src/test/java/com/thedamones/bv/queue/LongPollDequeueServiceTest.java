@@ -0,0 +1,70 @@
+package com.thedamones.bv.queue;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+@SpringBootTest(properties = {
+        "queue.workers.count=0",
+        "spring.datasource.url=jdbc:h2:mem:long-poll-dequeue;DB_CLOSE_DELAY=-1"
+})
+class LongPollDequeueServiceTest {
+
+    @Autowired
+    private LongPollDequeueService longPollDequeueService;
+
+    @Autowired
+    private MessageService messageService;
+
+    @BeforeEach
+    void clearQueue() {
+        messageService.clearQueue(QueueRegistry.DEFAULT_QUEUE);
+    }
+
+    @Test
+    void dequeueMessage_whenMessageAvailable_shouldCompleteImmediately() throws Exception {
+        MessageRecord enqueued = messageService.enqueueMessage(QueueRegistry.DEFAULT_QUEUE, new EnqueueMessageRecord("Ready", 0));
+
+        MessageRecord dequeued = longPollDequeueService.dequeueMessage(QueueRegistry.DEFAULT_QUEUE, Duration.ofSeconds(5)).get(1, TimeUnit.SECONDS);
+
+        assertEquals(enqueued.id(), dequeued.id());
+    }
+
+    @Test
+    void dequeueMessage_shouldReceiveMessageEnqueuedWhileWaiting() throws Exception {
+        CompletableFuture<MessageRecord> waiter = longPollDequeueService.dequeueMessage(QueueRegistry.DEFAULT_QUEUE, Duration.ofSeconds(5));
+        Thread.sleep(100);
+        assertFalse(waiter.isDone());
+
+        MessageRecord enqueued = messageService.enqueueMessage(QueueRegistry.DEFAULT_QUEUE, new EnqueueMessageRecord("Late", 0));
+
+        assertEquals(enqueued.id(), waiter.get(1, TimeUnit.SECONDS).id());
+        // the waiter is completed just before the dequeue commits
+        for (int i = 0; i < 20 && messageService.getQueueSize(QueueRegistry.DEFAULT_QUEUE) > 0; i++) {
+            Thread.sleep(50);
+        }
+        assertEquals(0, messageService.getQueueSize(QueueRegistry.DEFAULT_QUEUE));
+    }
+
+    @Test
+    void dequeueMessage_whenNothingArrives_shouldTimeOutWithoutLosingLaterMessages() throws Exception {
+        CompletableFuture<MessageRecord> waiter = longPollDequeueService.dequeueMessage(QueueRegistry.DEFAULT_QUEUE, Duration.ofMillis(100));
+
+        ExecutionException exception = assertThrows(ExecutionException.class, () -> waiter.get(1, TimeUnit.SECONDS));
+        assertInstanceOf(MessageNotFoundException.class, exception.getCause());
+
+        messageService.enqueueMessage(QueueRegistry.DEFAULT_QUEUE, new EnqueueMessageRecord("After timeout", 0));
+        assertEquals(1, messageService.getQueueSize(QueueRegistry.DEFAULT_QUEUE));
+    }
+}
@@ -0,0 +1,232 @@
+package com.thedamones.bv.queue;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static com.thedamones.bv.queue.QueueRegistry.DEFAULT_QUEUE;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Exercises the {@link MappedLogQueueStore} on a temporary directory.  A crash is simulated by opening a second store
+ * on the directory without closing the first: the mapped pages are shared through the page cache, so the second store
+ * sees exactly what a restarted application would after the first one was killed.
+ */
+class MappedLogQueueStoreTest {
+
+    private static final int SEGMENT_SIZE = 1024;
+
+    @TempDir
+    private Path directory;
+
+    private MappedLogQueueStore store;
+
+    @BeforeEach
+    void openStore() {
+        store = open();
+    }
+
+    @Test
+    void pop_shouldReturnMessagesInAppendOrderWithEveryField() {
+        MessageRecord failed = new MessageRecord(UUID.randomUUID(), null, null, now(), DEFAULT_QUEUE,
+                Message.DEFAULT_PRIORITY, now().minusSeconds(5), 2, "java.lang.IllegalStateException: failed");
+        List<MessageRecord> messages = List.of(message(0), failed, message(2));
+        store.append(messages.subList(0, 1));
+        store.requeue(messages.subList(1, 2));
+        store.append(messages.subList(2, 3));
+
+        assertEquals(Optional.of(messages.getFirst()), store.peek(DEFAULT_QUEUE));
+        assertEquals(messages, List.of(pop(), pop(), pop()));
+        assertTrue(store.pop(DEFAULT_QUEUE, false).isEmpty());
+        assertTrue(store.peek(DEFAULT_QUEUE).isEmpty());
+    }
+
+    @Test
+    void findById_shouldReadMessagesUntilTheyArePopped() {
+        List<MessageRecord> messages = append(3);
+
+        assertEquals(Optional.of(messages.get(1)), store.findById(DEFAULT_QUEUE, messages.get(1).id()));
+        assertTrue(store.findById("orders", messages.get(1).id()).isEmpty());
+        pop();
+        pop();
+        assertTrue(store.findById(DEFAULT_QUEUE, messages.get(1).id()).isEmpty());
+        assertEquals(Map.of(DEFAULT_QUEUE, 1L), store.sizes());
+    }
+
+    @Test
+    void pop_shouldDeleteSegmentsOnceConsumed() throws IOException {
+        List<MessageRecord> messages = append(100);
+        assertTrue(segmentCount() > 5, "messages should span several segments");
+
+        for (MessageRecord message : messages) {
+            assertEquals(message, pop());
+        }
+
+        assertEquals(1, segmentCount());
+        append(1);
+        assertEquals(Map.of(DEFAULT_QUEUE, 1L), store.sizes());
+    }
+
+    @Test
+    void open_afterCrash_shouldRecoverHeadIndexAndSize() {
+        List<MessageRecord> messages = append(50);
+        for (int i = 0; i < 20; i++) {
+            pop();
+        }
+
+        MappedLogQueueStore recovered = open();
+
+        assertEquals(Map.of(DEFAULT_QUEUE, 30L), recovered.sizes());
+        assertEquals(Optional.of(messages.get(20)), recovered.peek(DEFAULT_QUEUE));
+        assertTrue(recovered.findById(DEFAULT_QUEUE, messages.get(5).id()).isEmpty());
+        assertEquals(Optional.of(messages.get(42)), recovered.findById(DEFAULT_QUEUE, messages.get(42).id()));
+        MessageRecord appended = message(50);
+        recovered.append(List.of(appended));
+        for (int i = 20; i < 50; i++) {
+            assertEquals(Optional.of(messages.get(i)), recovered.pop(DEFAULT_QUEUE, false));
+        }
+        assertEquals(Optional.of(appended), recovered.pop(DEFAULT_QUEUE, false));
+    }
+
+    @Test
+    void open_withIncompleteRecord_shouldTruncateLogAfterLastCompleteRecord() throws IOException {
+        List<MessageRecord> messages = append(3);
+        pop();
+        long tail = store.tail(DEFAULT_QUEUE);
+        try (FileChannel segment = FileChannel.open(lastSegment(), StandardOpenOption.WRITE)) {
+            // a record whose content was only partly written when the application died
+            segment.write(ByteBuffer.allocate(20).putInt(64).putInt(0x12345678).putLong(42).flip(), tail % SEGMENT_SIZE);
+        }
+
+        MappedLogQueueStore recovered = open();
+
+        assertEquals(Map.of(DEFAULT_QUEUE, 2L), recovered.sizes());
+        assertEquals(tail, recovered.tail(DEFAULT_QUEUE));
+        MessageRecord appended = message(3);
+        recovered.append(List.of(appended));
+
+        MappedLogQueueStore recoveredAgain = open();
+        assertEquals(List.of(messages.get(1), messages.get(2), appended), IntStream.range(0, 3)
+                .mapToObj(i -> recoveredAgain.pop(DEFAULT_QUEUE, false).orElseThrow())
+                .toList());
+    }
+
+    @Test
+    void open_afterSegmentDeleted_shouldStartFromNextSegment() throws IOException {
+        List<MessageRecord> messages = append(30);
+        int popped = 0;
+        long segments = segmentCount();
+        while (segmentCount() == segments) {
+            pop();
+            popped++;
+        }
+
+        MappedLogQueueStore recovered = open();
+
+        assertEquals(Map.of(DEFAULT_QUEUE, (long) (30 - popped)), recovered.sizes());
+        assertEquals(Optional.of(messages.get(popped)), recovered.pop(DEFAULT_QUEUE, false));
+    }
+
+    @Test
+    void purge_shouldOnlyRemoveMessagesUpToTail() {
+        append(10);
+        long tail = store.tail(DEFAULT_QUEUE);
+        MessageRecord later = message(10);
+        store.append(List.of(later));
+
+        assertEquals(4, store.purge(DEFAULT_QUEUE, tail, 4));
+        assertEquals(6, store.purge(DEFAULT_QUEUE, tail, 100));
+        assertEquals(0, store.purge(DEFAULT_QUEUE, tail, 100));
+        assertEquals(Optional.of(later), store.peek(DEFAULT_QUEUE));
+        assertEquals(0, store.purge("unknown", Long.MAX_VALUE, 100));
+    }
+
+    @Test
+    void validate_shouldRejectWhatTheLogCannotHold() {
+        Instant now = now();
+        assertThrows(InvalidMessageException.class, () -> store.validate(
+                new MessageRecord(UUID.randomUUID(), "text", 0, now, DEFAULT_QUEUE, 3)));
+        assertThrows(InvalidMessageException.class, () -> store.validate(
+                new MessageRecord(UUID.randomUUID(), "text", 0, now, DEFAULT_QUEUE, 0, now.plusSeconds(60))));
+        assertThrows(InvalidMessageException.class, () -> store.validate(
+                new MessageRecord(UUID.randomUUID(), "x".repeat(SEGMENT_SIZE), 0, now, DEFAULT_QUEUE)));
+        store.validate(message(0));
+    }
+
+    @Test
+    void requeue_withLastErrorTooLargeForSegment_shouldShortenItAndRollOver() {
+        List<MessageRecord> messages = append(2);
+        MessageRecord popped = pop();
+        String error = "java.lang.IllegalStateException: " + "\u00e9".repeat(Message.MAX_ERROR_LENGTH);
+        MessageRecord failed = popped.withFailure(error.substring(0, Message.MAX_ERROR_LENGTH), null);
+
+        store.validate(popped);
+        store.requeue(List.of(failed));
+
+        assertEquals(messages.get(1), pop());
+        MessageRecord requeued = pop();
+        assertEquals(popped.id(), requeued.id());
+        assertEquals(1, requeued.attempts());
+        assertTrue(failed.lastError().startsWith(requeued.lastError()));
+        assertTrue(requeued.lastError().length() > SEGMENT_SIZE / 4, "only the excess should be cut");
+    }
+
+    private MappedLogQueueStore open() {
+        QueueProperties queueProperties = new QueueProperties();
+        queueProperties.getStore().getLog().setDirectory(directory);
+        queueProperties.getStore().getLog().setSegmentSize(DataSize.ofBytes(SEGMENT_SIZE));
+        MappedLogQueueStore opened = new MappedLogQueueStore(queueProperties);
+        opened.open();
+        return opened;
+    }
+
+    private List<MessageRecord> append(int count) {
+        List<MessageRecord> messages = IntStream.range(0, count).mapToObj(MappedLogQueueStoreTest::message).toList();
+        messages.forEach(message -> store.append(List.of(message)));
+        return messages;
+    }
+
+    private MessageRecord pop() {
+        return store.pop(DEFAULT_QUEUE, false).orElseThrow();
+    }
+
+    private long segmentCount() throws IOException {
+        try (Stream<Path> files = Files.list(directory.resolve(DEFAULT_QUEUE))) {
+            return files.filter(path -> path.toString().endsWith(MappedLogQueueStore.SEGMENT_SUFFIX)).count();
+        }
+    }
+
+    private Path lastSegment() throws IOException {
+        try (Stream<Path> files = Files.list(directory.resolve(DEFAULT_QUEUE))) {
+            return files.filter(path -> path.toString().endsWith(MappedLogQueueStore.SEGMENT_SUFFIX))
+                    .max(Path::compareTo)
+                    .orElseThrow();
+        }
+    }
+
+    private static MessageRecord message(int index) {
+        return new MessageRecord(TimeOrderedUuidGenerator.generate(), "Message " + index + " ".repeat(100), index, now());
+    }
+
+    private static Instant now() {
+        return Instant.now().truncatedTo(ChronoUnit.MICROS);
+    }
+}
@@ -0,0 +1,189 @@
+package com.thedamones.bv.queue;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import static com.thedamones.bv.queue.QueueRegistry.DEFAULT_QUEUE;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MemoryQueueStoreTest {
+
+    private static final int PRODUCER_COUNT = 4;
+    private static final int CONSUMER_COUNT = 4;
+    private static final int MESSAGES_PER_PRODUCER = 10_000;
+
+    private final MemoryQueueStore store = new MemoryQueueStore();
+
+    @Test
+    void pop_shouldReturnHighestPriorityFirstThenInArrivalOrder() {
+        MessageRecord low = message(0);
+        MessageRecord high = message(9);
+        MessageRecord lowAgain = message(0);
+        MessageRecord medium = message(5);
+        store.append(List.of(low, high, lowAgain, medium));
+
+        assertEquals(Optional.of(high), store.peek(DEFAULT_QUEUE));
+        assertEquals(List.of(high, medium, low, lowAgain), List.of(pop(false), pop(false), pop(false), pop(false)));
+        assertTrue(store.pop(DEFAULT_QUEUE, false).isEmpty());
+        assertTrue(store.peek(DEFAULT_QUEUE).isEmpty());
+    }
+
+    @Test
+    void pop_oldest_shouldIgnorePriorities() {
+        MessageRecord low = message(0);
+        MessageRecord high = message(9);
+        store.append(List.of(low, high));
+
+        assertEquals(low, pop(true));
+        assertEquals(high, pop(true));
+        assertTrue(store.pop(DEFAULT_QUEUE, true).isEmpty());
+    }
+
+    @Test
+    void remove_shouldTakeMessageOnlyOnce() {
+        MessageRecord first = message(0);
+        MessageRecord second = message(0);
+        store.append(List.of(first, second));
+
+        assertEquals(Optional.of(first), store.remove(DEFAULT_QUEUE, first.id()));
+        assertTrue(store.remove(DEFAULT_QUEUE, first.id()).isEmpty());
+        assertTrue(store.findById(DEFAULT_QUEUE, first.id()).isEmpty());
+        assertEquals(Optional.of(second), store.peek(DEFAULT_QUEUE));
+        assertEquals(second, pop(false));
+        assertTrue(store.remove("orders", second.id()).isEmpty());
+    }
+
+    @Test
+    void findById_shouldReadMessagesUntilTheyArePopped() {
+        MessageRecord message = message(0);
+        store.append(List.of(message));
+
+        assertEquals(Optional.of(message), store.findById(DEFAULT_QUEUE, message.id()));
+        assertTrue(store.findById("orders", message.id()).isEmpty());
+        assertEquals(Map.of(DEFAULT_QUEUE, 1L), store.sizes());
+        pop(false);
+        assertTrue(store.findById(DEFAULT_QUEUE, message.id()).isEmpty());
+        assertEquals(Map.of(DEFAULT_QUEUE, 0L), store.sizes());
+    }
+
+    @Test
+    void purge_shouldOnlyRemoveMessagesUpToTail() {
+        List<MessageRecord> messages = IntStream.range(0, 10).mapToObj(i -> message(i % 2 == 0 ? 0 : 9)).toList();
+        store.append(messages);
+        long tail = store.tail(DEFAULT_QUEUE);
+        MessageRecord later = message(9);
+        store.append(List.of(later));
+
+        assertEquals(4, store.purge(DEFAULT_QUEUE, tail, 4));
+        assertEquals(6, store.purge(DEFAULT_QUEUE, tail, 100));
+        assertEquals(0, store.purge(DEFAULT_QUEUE, tail, 100));
+        assertEquals(Optional.of(later), store.peek(DEFAULT_QUEUE));
+        assertEquals(Map.of(DEFAULT_QUEUE, 1L), store.sizes());
+        assertEquals(0, store.purge("unknown", Long.MAX_VALUE, 100));
+    }
+
+    @Test
+    void remove_shouldUnlinkTakenMessagesOnceTheyReachTheHead() {
+        List<MessageRecord> messages = IntStream.range(0, 10).mapToObj(i -> message(0)).toList();
+        store.append(messages);
+        messages.subList(0, 9).forEach(message -> store.remove(DEFAULT_QUEUE, message.id()));
+
+        assertEquals(Optional.of(messages.get(9)), store.peek(DEFAULT_QUEUE));
+        assertEquals(messages.get(9), pop(true));
+        assertTrue(store.peek(DEFAULT_QUEUE).isEmpty());
+    }
+
+    @Test
+    void purge_withConcurrentProducers_shouldRemoveEveryMessageUpToTail() throws Exception {
+        long upTo;
+        try (ExecutorService executor = Executors.newFixedThreadPool(PRODUCER_COUNT)) {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < PRODUCER_COUNT; i++) {
+                futures.add(executor.submit(() -> {
+                    for (int j = 0; j < MESSAGES_PER_PRODUCER; j++) {
+                        store.append(List.of(message(0)));
+                    }
+                }));
+            }
+            while (store.tail(DEFAULT_QUEUE) < MESSAGES_PER_PRODUCER) {
+                Thread.onSpinWait();
+            }
+            upTo = store.tail(DEFAULT_QUEUE);
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        }
+
+        // every message up to the tail has been linked by now, possibly behind later ones
+        assertEquals(upTo, store.purge(DEFAULT_QUEUE, upTo, Integer.MAX_VALUE));
+        assertEquals(Map.of(DEFAULT_QUEUE, PRODUCER_COUNT * MESSAGES_PER_PRODUCER - upTo), store.sizes());
+    }
+
+    @Test
+    void pop_withConcurrentProducersAndConsumers_shouldTakeEachMessageExactlyOnce() throws Exception {
+        int total = PRODUCER_COUNT * MESSAGES_PER_PRODUCER;
+        ConcurrentLinkedQueue<UUID> taken = new ConcurrentLinkedQueue<>();
+        AtomicInteger takenCount = new AtomicInteger();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+        try (ExecutorService executor = Executors.newFixedThreadPool(PRODUCER_COUNT + CONSUMER_COUNT)) {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < PRODUCER_COUNT; i++) {
+                futures.add(executor.submit(() -> {
+                    for (int j = 0; j < MESSAGES_PER_PRODUCER; j++) {
+                        store.append(List.of(message(j % (Message.MAX_PRIORITY + 1))));
+                    }
+                }));
+            }
+            for (int i = 0; i < CONSUMER_COUNT; i++) {
+                boolean oldest = i % 2 == 0;
+                futures.add(executor.submit(() -> {
+                    while (takenCount.get() < total && System.nanoTime() < deadline) {
+                        store.pop(DEFAULT_QUEUE, oldest).ifPresent(message -> {
+                            taken.add(message.id());
+                            takenCount.incrementAndGet();
+                        });
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        }
+
+        assertEquals(total, taken.size());
+        assertEquals(total, new HashSet<>(taken).size());
+        assertEquals(Map.of(DEFAULT_QUEUE, 0L), store.sizes());
+    }
+
+    @Test
+    void validate_shouldRejectScheduledDelivery() {
+        Instant now = Instant.now();
+        assertThrows(InvalidMessageException.class, () -> store.validate(
+                new MessageRecord(UUID.randomUUID(), "text", 0, now, DEFAULT_QUEUE, 0, now.plusSeconds(60))));
+        store.validate(message(Message.MAX_PRIORITY));
+    }
+
+    private MessageRecord pop(boolean oldest) {
+        return store.pop(DEFAULT_QUEUE, oldest).orElseThrow();
+    }
+
+    private static MessageRecord message(int priority) {
+        return new MessageRecord(TimeOrderedUuidGenerator.generate(), "text", 0, Instant.now(), DEFAULT_QUEUE, priority);
+    }
+}
@@ -4,11 +4,20 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.jdbc.core.JdbcTemplate;
 
+import java.time.Duration;
 import java.time.Instant;
+import java.util.List;
 import java.util.Optional;
+import java.util.UUID;
 
+import static com.thedamones.bv.queue.QueueRegistry.DEFAULT_QUEUE;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 @DataJpaTest
@@ -17,6 +26,9 @@ public class MessageRepositoryTest {
     @Autowired
     private MessageRepository messageRepository;
 
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
     private Message message1;
 
     @BeforeEach
@@ -36,17 +48,410 @@ public class MessageRepositoryTest {
         messageRepository.save(message3);
     }
 
+    static Message scheduledMessage(Instant deliverAt) {
+        Message message = new Message("Scheduled", 1000);
+        message.setDeliverAt(deliverAt);
+        return message;
+    }
+
     @Test
-    void findFirstByOrderByTimestampAsc_shouldReturnOldestMessage() {
+    void findFirstInQueue_shouldReturnOldestMessage() {
         saveMessages();
-        Optional<Message> oldestMessage = messageRepository.findFirstByOrderByTimestampAsc();
+        Optional<Message> oldestMessage = messageRepository.findFirstInQueue(DEFAULT_QUEUE);
         assertTrue(oldestMessage.isPresent());
         assertEquals(message1, oldestMessage.get());
     }
 
     @Test
-    void findFirstByOrderByTimestampAsc_whenEmpty_shouldReturnEmptyOptional() {
-        Optional<Message> oldestMessage = messageRepository.findFirstByOrderByTimestampAsc();
+    void findFirstInQueue_withIdenticalTimestamps_shouldReturnFirstInserted() {
+        Instant timestamp = Instant.now();
+        Message first = new Message("First", 1000);
+        first.setTimestamp(timestamp);
+        Message second = new Message("Second", 1000);
+        second.setTimestamp(timestamp);
+
+        messageRepository.save(first);
+        messageRepository.save(second);
+
+        Optional<Message> head = messageRepository.findFirstInQueue(DEFAULT_QUEUE);
+        assertTrue(head.isPresent());
+        assertEquals(first, head.get());
+    }
+
+    @Test
+    void findFirstInQueue_shouldIgnoreOtherQueues() {
+        saveMessages();
+        Message order = messageRepository.save(new Message("orders", "Order", 1000));
+
+        Optional<Message> head = messageRepository.findFirstInQueue("orders");
+
+        assertTrue(head.isPresent());
+        assertEquals(order, head.get());
+        assertTrue(messageRepository.findFirstInQueue("invoices").isEmpty());
+    }
+
+    @Test
+    void findFirstInQueue_shouldReturnHighestPriorityBeforeOlderMessages() {
+        saveMessages();
+        Message urgent = messageRepository.save(new Message(DEFAULT_QUEUE, "Urgent", 1000, 5));
+        messageRepository.save(new Message(DEFAULT_QUEUE, "Less urgent", 1000, 3));
+
+        Optional<Message> head = messageRepository.findFirstInQueue(DEFAULT_QUEUE);
+
+        assertTrue(head.isPresent());
+        assertEquals(urgent, head.get());
+    }
+
+    @Test
+    void findOldestInQueue_shouldIgnorePriority() {
+        saveMessages();
+        messageRepository.save(new Message(DEFAULT_QUEUE, "Urgent", 1000, 5));
+
+        Optional<Message> oldest = messageRepository.findOldestInQueue(DEFAULT_QUEUE);
+
+        assertTrue(oldest.isPresent());
+        assertEquals(message1, oldest.get());
+    }
+
+    @Test
+    void headOfQueueLookup_shouldWalkQueuePrioritySequenceNumberIndexInOrder() {
+        String plan = jdbcTemplate.queryForObject("""
+                EXPLAIN SELECT sequence_number FROM message
+                WHERE queue_name = 'default' AND state = 'READY'
+                ORDER BY queue_name, state, priority DESC, sequence_number
+                FETCH FIRST 1 ROWS ONLY""", String.class);
+
+        assertNotNull(plan);
+        assertTrue(plan.contains("IDX_MESSAGE_QUEUE_STATE_PRIORITY_SEQUENCE_NUMBER"), plan);
+        assertTrue(plan.contains("index sorted"), plan);
+    }
+
+    @Test
+    void oldestMessageLookup_shouldWalkQueueSequenceNumberIndexInOrder() {
+        String plan = jdbcTemplate.queryForObject("""
+                EXPLAIN SELECT sequence_number FROM message
+                WHERE queue_name = 'default' AND state = 'READY'
+                ORDER BY queue_name, state, sequence_number
+                FETCH FIRST 1 ROWS ONLY""", String.class);
+
+        assertNotNull(plan);
+        assertTrue(plan.contains("IDX_MESSAGE_QUEUE_STATE_SEQUENCE_NUMBER"), plan);
+        assertTrue(plan.contains("index sorted"), plan);
+    }
+
+    @Test
+    void lockFirst_shouldReturnOldestMessage() {
+        saveMessages();
+
+        Optional<Message> head = messageRepository.lockFirst(DEFAULT_QUEUE);
+
+        assertTrue(head.isPresent());
+        assertEquals(message1, head.get());
+    }
+
+    @Test
+    void findLockedByIdAndState_whenLeasedSinceRead_shouldReturnEmptyOptional() {
+        saveMessages();
+        messageRepository.flush();
+        assertTrue(messageRepository.leaseById(message1.getId(), UUID.randomUUID(), Instant.now().plusSeconds(30)));
+
+        assertTrue(messageRepository.findLockedByIdAndState(message1.getId(), MessageState.READY).isEmpty());
+        assertNotEquals(message1, messageRepository.lockFirst(DEFAULT_QUEUE).orElseThrow());
+    }
+
+    @Test
+    void lockFirst_whenEmpty_shouldReturnEmptyOptional() {
+        assertTrue(messageRepository.lockFirst(DEFAULT_QUEUE).isEmpty());
+    }
+
+    @Test
+    void sizeClassHeadLookup_shouldWalkQueueStateSizeClassIndexInOrder() {
+        String plan = jdbcTemplate.queryForObject("""
+                EXPLAIN SELECT sequence_number FROM message
+                WHERE queue_name = 'default' AND state = 'READY' AND size_class = 2
+                ORDER BY queue_name, state, size_class, priority DESC, sequence_number
+                FETCH FIRST 1 ROWS ONLY""", String.class);
+
+        assertNotNull(plan);
+        assertTrue(plan.contains("IDX_MESSAGE_QUEUE_STATE_SIZE_CLASS_PRIORITY_SEQUENCE_NUMBER"), plan);
+        assertTrue(plan.contains("index sorted"), plan);
+    }
+
+    @Test
+    void sizeClass_shouldBeGeneratedLikeMessageSizeClass() {
+        List<Integer> dataSizes = List.of(0, 9, 10, 99, 100, 999, 1000, 9999, 10000, 60000);
+        dataSizes.forEach(dataSize -> messageRepository.save(new Message("Sized", dataSize)));
+        messageRepository.flush();
+
+        List<Integer> sizeClasses = jdbcTemplate.queryForList(
+                "SELECT size_class FROM message ORDER BY sequence_number", Integer.class);
+        assertEquals(dataSizes.stream().map(Message::sizeClass).toList(), sizeClasses);
+        assertEquals(List.of(0, 0, 1, 1, 2, 2, 3, 3, 4, 4), sizeClasses);
+    }
+
+    @Test
+    void leaseFirstInSizeClass_shouldLeaseHeadOfThatSizeClassOnly() {
+        messageRepository.save(new Message(DEFAULT_QUEUE, "Slow", 5000));
+        messageRepository.save(new Message(DEFAULT_QUEUE, "Fast", 5));
+        messageRepository.save(new Message(DEFAULT_QUEUE, "Fast urgent", 8, Message.MAX_PRIORITY));
+        messageRepository.flush();
+
+        assertEquals("Fast urgent", messageRepository.leaseFirstInSizeClass(DEFAULT_QUEUE, 0, UUID.randomUUID(), Instant.now().plusSeconds(30)).orElseThrow().text());
+        assertEquals("Fast", messageRepository.leaseFirstInSizeClass(DEFAULT_QUEUE, 0, UUID.randomUUID(), Instant.now().plusSeconds(30)).orElseThrow().text());
+        assertTrue(messageRepository.leaseFirstInSizeClass(DEFAULT_QUEUE, 0, UUID.randomUUID(), Instant.now().plusSeconds(30)).isEmpty());
+        assertTrue(messageRepository.leaseFirstInSizeClass(DEFAULT_QUEUE, 2, UUID.randomUUID(), Instant.now().plusSeconds(30)).isEmpty());
+        assertEquals("Slow", messageRepository.leaseFirstInSizeClass(DEFAULT_QUEUE, 3, UUID.randomUUID(), Instant.now().plusSeconds(30)).orElseThrow().text());
+    }
+
+    @Test
+    void leaseOldestReadySince_shouldOnlyLeaseOldestMessageOnceItWaitedLongEnough() {
+        saveMessages();
+        messageRepository.flush();
+        Instant enqueuedAt = messageRepository.findOldestInQueue(DEFAULT_QUEUE).orElseThrow().getTimestamp();
+
+        assertTrue(messageRepository.leaseOldestReadySince(DEFAULT_QUEUE, enqueuedAt.minusSeconds(1), UUID.randomUUID(), Instant.now().plusSeconds(30)).isEmpty());
+        MessageRecord leased = messageRepository.leaseOldestReadySince(DEFAULT_QUEUE, enqueuedAt.plusMillis(1), UUID.randomUUID(), Instant.now().plusSeconds(30)).orElseThrow();
+        assertEquals(message1.getId(), leased.id());
+    }
+
+    @Test
+    void popFirst_shouldRemoveAndReturnOldestMessage() {
+        saveMessages();
+        messageRepository.flush();
+
+        Optional<MessageRecord> popped = messageRepository.popFirst(DEFAULT_QUEUE);
+
+        assertTrue(popped.isPresent());
+        assertEquals(message1.getId(), popped.get().id());
+        assertEquals(message1.getText(), popped.get().text());
+        assertEquals(message1.getDataSize(), popped.get().dataSize());
+        assertTrue(Duration.between(message1.getTimestamp(), popped.get().timestamp()).abs().toMillis() < 1);
+        assertEquals(DEFAULT_QUEUE, popped.get().queue());
+        assertEquals(2, messageRepository.count());
+    }
+
+    @Test
+    void popFirst_shouldOnlyRemoveMessagesOfThatQueue() {
+        saveMessages();
+        Message order = messageRepository.save(new Message("orders", "Order", 1000));
+        messageRepository.flush();
+
+        Optional<MessageRecord> popped = messageRepository.popFirst("orders");
+
+        assertTrue(popped.isPresent());
+        assertEquals(order.getId(), popped.get().id());
+        assertEquals("orders", popped.get().queue());
+        assertTrue(messageRepository.popFirst("orders").isEmpty());
+        assertEquals(3, messageRepository.count());
+    }
+
+    @Test
+    void popFirst_shouldRemoveHighestPriorityFirst() {
+        saveMessages();
+        Message urgent = messageRepository.save(new Message(DEFAULT_QUEUE, "Urgent", 1000, Message.MAX_PRIORITY));
+        messageRepository.flush();
+
+        Optional<MessageRecord> popped = messageRepository.popFirst(DEFAULT_QUEUE);
+
+        assertTrue(popped.isPresent());
+        assertEquals(urgent.getId(), popped.get().id());
+        assertEquals(Message.MAX_PRIORITY, popped.get().priority());
+        assertEquals(message1.getId(), messageRepository.popFirst(DEFAULT_QUEUE).orElseThrow().id());
+    }
+
+    @Test
+    void popOldest_shouldRemoveOldestMessageRegardlessOfPriority() {
+        saveMessages();
+        messageRepository.save(new Message(DEFAULT_QUEUE, "Urgent", 1000, Message.MAX_PRIORITY));
+        messageRepository.flush();
+
+        Optional<MessageRecord> popped = messageRepository.popOldest(DEFAULT_QUEUE);
+
+        assertTrue(popped.isPresent());
+        assertEquals(message1.getId(), popped.get().id());
+        assertEquals(3, messageRepository.count());
+    }
+
+    @Test
+    void nextDeliveryLookup_shouldWalkStateDeliverAtIndexInOrder() {
+        String plan = jdbcTemplate.queryForObject("""
+                EXPLAIN SELECT deliver_at FROM message
+                WHERE state = 'SCHEDULED'
+                ORDER BY state, deliver_at
+                FETCH FIRST 1 ROWS ONLY""", String.class);
+
+        assertNotNull(plan);
+        assertTrue(plan.contains("IDX_MESSAGE_STATE_DELIVER_AT"), plan);
+        assertTrue(plan.contains("index sorted"), plan);
+    }
+
+    @Test
+    void popFirst_shouldSkipScheduledMessages() {
+        Message scheduled = scheduledMessage(Instant.now().plusSeconds(60));
+        messageRepository.save(scheduled);
+        messageRepository.flush();
+
+        assertTrue(messageRepository.popFirst(DEFAULT_QUEUE).isEmpty());
+        assertTrue(messageRepository.popOldest(DEFAULT_QUEUE).isEmpty());
+        assertTrue(messageRepository.findFirstInQueue(DEFAULT_QUEUE).isEmpty());
+        assertEquals(1, messageRepository.count());
+    }
+
+    @Test
+    void deliverDue_shouldOnlyMakeDueMessagesReady() {
+        Message due = messageRepository.save(scheduledMessage(Instant.now().plusSeconds(1)));
+        Instant later = Instant.now().plusSeconds(60);
+        messageRepository.save(scheduledMessage(later));
+        messageRepository.flush();
+
+        List<MessageRecord> delivered = messageRepository.deliverDue(Instant.now().plusSeconds(2), 100);
+
+        assertEquals(1, delivered.size());
+        assertEquals(due.getId(), delivered.getFirst().id());
+        assertEquals(due.getId(), messageRepository.popFirst(DEFAULT_QUEUE).orElseThrow().id());
+        assertTrue(messageRepository.popFirst(DEFAULT_QUEUE).isEmpty());
+        assertTrue(Duration.between(later, messageRepository.findNextDeliverAt().orElseThrow()).abs().toMillis() < 1);
+    }
+
+    @Test
+    void findNextDeliverAt_whenNothingScheduled_shouldReturnEmptyOptional() {
+        saveMessages();
+
+        assertTrue(messageRepository.findNextDeliverAt().isEmpty());
+    }
+
+    @Test
+    void popFirst_whenEmpty_shouldReturnEmptyOptional() {
+        assertTrue(messageRepository.popFirst(DEFAULT_QUEUE).isEmpty());
+    }
+
+    @Test
+    void leaseFirst_shouldHideMessageUntilItsLeaseIsAcknowledged() {
+        saveMessages();
+        messageRepository.flush();
+        UUID leaseId = UUID.randomUUID();
+        Instant expiresAt = Instant.now().plusSeconds(30);
+
+        MessageRecord leased = messageRepository.leaseFirst(DEFAULT_QUEUE, leaseId, expiresAt).orElseThrow();
+
+        assertEquals(message1.getId(), leased.id());
+        assertNull(leased.deliverAt());
+        assertNotEquals(message1.getId(), messageRepository.findFirstInQueue(DEFAULT_QUEUE).orElseThrow().getId());
+        assertTrue(Duration.between(expiresAt, messageRepository.findNextLeaseExpiry().orElseThrow()).abs().toMillis() < 1);
+        assertTrue(messageRepository.findNextDeliverAt().isEmpty());
+
+        assertEquals(0, messageRepository.deleteLeases("orders", List.of(leaseId)));
+        assertEquals(1, messageRepository.deleteLeases(DEFAULT_QUEUE, List.of(leaseId, UUID.randomUUID())));
+        assertEquals(2, messageRepository.count());
+        assertFalse(messageRepository.existsById(message1.getId()));
+    }
+
+    @Test
+    void leaseFirst_withLimit_shouldLeaseHeadOfQueueWithOneLeasePerMessage() {
+        saveMessages();
+        Message urgent = new Message("Urgent", 1000);
+        urgent.setPriority(5);
+        messageRepository.save(urgent);
+        messageRepository.flush();
+        Instant expiresAt = Instant.now().plusSeconds(30);
+
+        List<LeaseRecord> leases = messageRepository.leaseFirst(DEFAULT_QUEUE, 2, expiresAt);
+
+        assertEquals(List.of(urgent.getId(), message1.getId()), leases.stream().map(lease -> lease.message().id()).toList());
+        assertEquals(2, leases.stream().map(LeaseRecord::id).distinct().count());
+        assertTrue(messageRepository.leaseFirst("orders", 2, expiresAt).isEmpty());
+        assertEquals(2, messageRepository.leaseFirst(DEFAULT_QUEUE, 2, expiresAt).size());
+        assertTrue(messageRepository.leaseFirst(DEFAULT_QUEUE, 2, expiresAt).isEmpty());
+
+        assertEquals(1, messageRepository.deleteLeases(DEFAULT_QUEUE, List.of(leases.getLast().id())));
+        assertFalse(messageRepository.existsById(message1.getId()));
+        assertEquals(3, messageRepository.count());
+    }
+
+    @Test
+    void leaseOldest_withLimit_shouldIgnorePriority() {
+        saveMessages();
+        Message urgent = new Message("Urgent", 1000);
+        urgent.setPriority(5);
+        messageRepository.save(urgent);
+        messageRepository.flush();
+
+        List<LeaseRecord> leases = messageRepository.leaseOldest(DEFAULT_QUEUE, 2, Instant.now().plusSeconds(30));
+
+        assertEquals(List.of(message1.getId()), leases.stream().limit(1).map(lease -> lease.message().id()).toList());
+        assertFalse(leases.stream().anyMatch(lease -> lease.message().id().equals(urgent.getId())));
+    }
+
+    @Test
+    void leaseById_shouldLeaseOnlyOnce() {
+        saveMessages();
+        messageRepository.flush();
+
+        assertTrue(messageRepository.leaseById(message1.getId(), UUID.randomUUID(), Instant.now().plusSeconds(30)));
+        assertFalse(messageRepository.leaseById(message1.getId(), UUID.randomUUID(), Instant.now().plusSeconds(30)));
+        assertEquals(3, messageRepository.count());
+    }
+
+    @Test
+    void expireLeases_shouldMakeExpiredMessagesReadyWithOneMoreAttempt() {
+        saveMessages();
+        messageRepository.flush();
+        UUID expiredLease = UUID.randomUUID();
+        messageRepository.leaseFirst(DEFAULT_QUEUE, expiredLease, Instant.now().minusSeconds(1)).orElseThrow();
+        MessageRecord held = messageRepository.leaseFirst(DEFAULT_QUEUE, UUID.randomUUID(), Instant.now().plusSeconds(30)).orElseThrow();
+
+        List<MessageRecord> expired = messageRepository.expireLeases(Instant.now(), "Lease expired", 100);
+
+        assertEquals(1, expired.size());
+        assertEquals(message1.getId(), expired.getFirst().id());
+        assertEquals(1, expired.getFirst().attempts());
+        assertEquals("Lease expired", expired.getFirst().lastError());
+        assertEquals(0, messageRepository.deleteLeases(DEFAULT_QUEUE, List.of(expiredLease)));
+        assertEquals(message1.getId(), messageRepository.popFirst(DEFAULT_QUEUE).orElseThrow().id());
+        assertNotEquals(held.id(), messageRepository.popFirst(DEFAULT_QUEUE).orElseThrow().id());
+        assertTrue(messageRepository.popFirst(DEFAULT_QUEUE).isEmpty());
+    }
+
+    @Test
+    void extendLease_shouldOnlyExtendLeasesThatHaveNotExpired() {
+        saveMessages();
+        messageRepository.flush();
+        UUID leaseId = UUID.randomUUID();
+        UUID expiredLease = UUID.randomUUID();
+        messageRepository.leaseFirst(DEFAULT_QUEUE, leaseId, Instant.now().plusSeconds(30)).orElseThrow();
+        messageRepository.leaseFirst(DEFAULT_QUEUE, expiredLease, Instant.now().minusSeconds(1)).orElseThrow();
+        Instant now = Instant.now();
+        Instant extendedTo = now.plusSeconds(60);
+
+        MessageRecord extended = messageRepository.extendLease(DEFAULT_QUEUE, leaseId, now, extendedTo).orElseThrow();
+
+        assertEquals(message1.getId(), extended.id());
+        assertTrue(Duration.between(extendedTo, extended.deliverAt()).abs().toMillis() < 1);
+        assertTrue(messageRepository.extendLease("orders", leaseId, now, extendedTo).isEmpty());
+        assertTrue(messageRepository.extendLease(DEFAULT_QUEUE, expiredLease, now, extendedTo).isEmpty());
+    }
+
+    @Test
+    void retryLease_shouldScheduleMessageAndReleaseLease() {
+        saveMessages();
+        messageRepository.flush();
+        UUID leaseId = UUID.randomUUID();
+        MessageRecord leased = messageRepository.leaseFirst(DEFAULT_QUEUE, leaseId, Instant.now().plusSeconds(30)).orElseThrow();
+        Instant retryAt = Instant.now().plusSeconds(60);
+
+        assertTrue(messageRepository.retryLease(leaseId, leased.withFailure("failed", retryAt)));
+        assertFalse(messageRepository.retryLease(leaseId, leased.withFailure("failed", retryAt)));
+
+        assertTrue(Duration.between(retryAt, messageRepository.findNextDeliverAt().orElseThrow()).abs().toMillis() < 1);
+        assertTrue(messageRepository.findNextLeaseExpiry().isEmpty());
+        List<MessageRecord> delivered = messageRepository.deliverDue(retryAt.plusSeconds(1), 100);
+        assertEquals(1, delivered.getFirst().attempts());
+        assertEquals("failed", delivered.getFirst().lastError());
+    }
+
+    @Test
+    void findFirstInQueue_whenEmpty_shouldReturnEmptyOptional() {
+        Optional<Message> oldestMessage = messageRepository.findFirstInQueue(DEFAULT_QUEUE);
         assertTrue(oldestMessage.isEmpty());
     }
 }
@@ -0,0 +1,390 @@
+package com.thedamones.bv.queue;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.fail;
+
+/**
+ * Exercises {@link MessageService} against a private H2 database, with the background workers disabled so they cannot
+ * compete with the test for messages, and strict priority order.
+ */
+@SpringBootTest(properties = {
+        "queue.workers.count=0",
+        "queue.purge.chunk-size=100",
+        "queue.dequeue.fairness-interval=0",
+        "queue.retry.max-attempts=2",
+        "queue.retry.initial-backoff=200ms",
+        "spring.datasource.url=jdbc:h2:mem:message-service-integration;DB_CLOSE_DELAY=-1"
+})
+class MessageServiceIntegrationTest {
+
+    private static final int MESSAGE_COUNT = 200;
+    private static final int CONSUMER_COUNT = 8;
+
+    @Autowired
+    private MessageService messageService;
+
+    @Autowired
+    private DeadLetterService deadLetterService;
+
+    @Autowired
+    private LeaseAcknowledger leaseAcknowledger;
+
+    @BeforeEach
+    void clearQueue() {
+        messageService.clearQueue(QueueRegistry.DEFAULT_QUEUE);
+        deadLetterService.purgeDeadLetters(QueueRegistry.DEFAULT_QUEUE);
+    }
+
+    @Test
+    void dequeueMessage_withConcurrentConsumers_shouldClaimEachMessageExactlyOnce() throws Exception {
+        enqueueMessages(MESSAGE_COUNT);
+
+        ConcurrentLinkedQueue<UUID> claimed = new ConcurrentLinkedQueue<>();
+        try (ExecutorService consumers = Executors.newFixedThreadPool(CONSUMER_COUNT)) {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < CONSUMER_COUNT; i++) {
+                futures.add(consumers.submit(() -> {
+                    try {
+                        while (true) {
+                            claimed.add(messageService.dequeueMessage(QueueRegistry.DEFAULT_QUEUE).id());
+                        }
+                    } catch (MessageNotFoundException e) {
+                        // queue drained
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        }
+
+        assertEquals(MESSAGE_COUNT, claimed.size());
+        assertEquals(MESSAGE_COUNT, new HashSet<>(claimed).size());
+        assertEquals(0, messageService.getQueueSize(QueueRegistry.DEFAULT_QUEUE));
+    }
+
+    @Test
+    void leaseMessage_withConcurrentConsumers_shouldLeaseEachMessageExactlyOnce() throws Exception {
+        enqueueMessages(MESSAGE_COUNT);
+
+        List<LeaseRecord> leases = leaseConcurrently(() -> leaseOrNothing(() -> messageService.leaseMessage(QueueRegistry.DEFAULT_QUEUE, null)));
+
+        assertLeasedExactlyOnce(leases);
+        assertEquals(MESSAGE_COUNT, messageService.getQueueSize(QueueRegistry.DEFAULT_QUEUE));
+
+        long dequeued = messageService.getQueue(QueueRegistry.DEFAULT_QUEUE).throughput().dequeued();
+        messageService.acknowledgeLeases(QueueRegistry.DEFAULT_QUEUE, leases.stream().map(LeaseRecord::id).toList());
+        leaseAcknowledger.flush();
+        assertEquals(0, messageService.getQueueSize(QueueRegistry.DEFAULT_QUEUE));
+        assertEquals(dequeued + MESSAGE_COUNT, messageService.getQueue(QueueRegistry.DEFAULT_QUEUE).throughput().dequeued());
+    }
+
+    @Test
+    void leaseMessage_withShortestJobFirstAndConcurrentConsumers_shouldLeaseEachMessageExactlyOnce() throws Exception {
+        enqueueMessages(MESSAGE_COUNT);
+        QueueScheduler scheduler = new QueueScheduler(SchedulingPolicy.SHORTEST_JOB_FIRST, new QueueProperties.Scheduling());
+
+        List<LeaseRecord> leases = leaseConcurrently(() -> leaseOrNothing(() -> messageService.leaseMessage(QueueRegistry.DEFAULT_QUEUE, null, scheduler)));
+
+        assertLeasedExactlyOnce(leases);
+        messageService.acknowledgeLeases(QueueRegistry.DEFAULT_QUEUE, leases.stream().map(LeaseRecord::id).toList());
+        leaseAcknowledger.flush();
+        assertEquals(0, messageService.getQueueSize(QueueRegistry.DEFAULT_QUEUE));
+    }
+
+    @Test
+    void leaseMessages_withConcurrentConsumers_shouldLeaseEachMessageExactlyOnce() throws Exception {
+        enqueueMessages(MESSAGE_COUNT);
+
+        // small batches, so that concurrent consumers keep reading overlapping heads
+        List<LeaseRecord> leases = leaseConcurrently(() -> messageService.leaseMessages(QueueRegistry.DEFAULT_QUEUE, 2, null));
+
+        assertLeasedExactlyOnce(leases);
+        messageService.acknowledgeLeases(QueueRegistry.DEFAULT_QUEUE, leases.stream().map(LeaseRecord::id).toList());
+        leaseAcknowledger.flush();
+        assertEquals(0, messageService.getQueueSize(QueueRegistry.DEFAULT_QUEUE));
+    }
+
+    @Test
+    void leaseMessage_whenLeaseExpires_shouldRedeliverThenDeadLetter() throws InterruptedException {
+        MessageRecord enqueued = messageService.enqueueMessage(QueueRegistry.DEFAULT_QUEUE, new EnqueueMessageRecord("lost", 0));
+
+        LeaseRecord lease = messageService.leaseMessage(QueueRegistry.DEFAULT_QUEUE, Duration.ofMillis(200));
+        assertThrows(MessageNotFoundException.class, () -> messageService.leaseMessage(QueueRegistry.DEFAULT_QUEUE, null));
+
+        LeaseRecord redelivered = awaitLease();
+        assertFalse(Instant.now().isBefore(lease.expiresAt()));
+        assertEquals(enqueued.id(), redelivered.message().id());
+        assertEquals(1, redelivered.message().attempts());
+        assertEquals(MessageService.LEASE_EXPIRED_ERROR, redelivered.message().lastError());
+        assertThrows(LeaseNotFoundException.class, () -> messageService.extendLease(QueueRegistry.DEFAULT_QUEUE, lease.id(), null));
+
+        // Leased with the default timeout, then extended to expire right away
+        messageService.extendLease(QueueRegistry.DEFAULT_QUEUE, redelivered.id(), Duration.ofMillis(200));
+        DeadLetterRecord deadLetter = await(() -> deadLetterService.getDeadLetter(QueueRegistry.DEFAULT_QUEUE, enqueued.id()));
+        assertEquals(2, deadLetter.attempts());
+        assertEquals(0, messageService.getQueueSize(QueueRegistry.DEFAULT_QUEUE));
+    }
+
+    @Test
+    void extendLease_shouldKeepMessageInFlight() throws InterruptedException {
+        messageService.enqueueMessage(QueueRegistry.DEFAULT_QUEUE, new EnqueueMessageRecord("slow", 0));
+        LeaseRecord lease = messageService.leaseMessage(QueueRegistry.DEFAULT_QUEUE, Duration.ofMillis(200));
+
+        LeaseRecord extended = messageService.extendLease(QueueRegistry.DEFAULT_QUEUE, lease.id(), Duration.ofSeconds(30));
+        Thread.sleep(Duration.between(Instant.now(), lease.expiryCheckAt()).plusMillis(200));
+
+        assertEquals(lease.message().id(), extended.message().id());
+        assertThrows(MessageNotFoundException.class, () -> messageService.leaseMessage(QueueRegistry.DEFAULT_QUEUE, null));
+        messageService.acknowledge(extended);
+        leaseAcknowledger.flush();
+        assertEquals(0, messageService.getQueueSize(QueueRegistry.DEFAULT_QUEUE));
+    }
+
+    @Test
+    void clearQueue_shouldDeleteEveryMessageInChunks() {
+        enqueueMessages(MESSAGE_COUNT * 5 + 7);
+
+        PurgeRecord purge = messageService.clearQueue(QueueRegistry.DEFAULT_QUEUE);
+
+        assertEquals(PurgeStatus.COMPLETED, purge.status());
+        assertEquals(MESSAGE_COUNT * 5 + 7, purge.deleted());
+        assertEquals(0, messageService.getQueueSize(QueueRegistry.DEFAULT_QUEUE));
+        assertThrows(MessageNotFoundException.class, () -> messageService.dequeueMessage(QueueRegistry.DEFAULT_QUEUE));
+    }
+
+    @Test
+    void clearQueueAsync_shouldReportProgressUntilCompleted() throws InterruptedException {
+        enqueueMessages(MESSAGE_COUNT);
+
+        PurgeRecord purge = messageService.clearQueueAsync(QueueRegistry.DEFAULT_QUEUE);
+        for (int i = 0; i < 100 && purge.status() == PurgeStatus.RUNNING; i++) {
+            Thread.sleep(50);
+            purge = messageService.getPurge(purge.id());
+        }
+
+        assertEquals(PurgeStatus.COMPLETED, purge.status());
+        assertEquals(MESSAGE_COUNT, purge.deleted());
+        assertEquals(0, messageService.getQueueSize(QueueRegistry.DEFAULT_QUEUE));
+    }
+
+    @Test
+    void dequeueMessage_shouldOnlyReturnMessagesOfThatQueue() {
+        MessageRecord order = messageService.enqueueMessage("orders", new EnqueueMessageRecord("Order", 0));
+        enqueueMessages(3);
+
+        MessageRecord dequeued = messageService.dequeueMessage("orders");
+
+        assertEquals(order.id(), dequeued.id());
+        assertEquals("orders", dequeued.queue());
+        assertThrows(MessageNotFoundException.class, () -> messageService.dequeueMessage("orders"));
+        assertEquals(3, messageService.getQueueSize(QueueRegistry.DEFAULT_QUEUE));
+
+        QueueRecord orders = messageService.getQueue("orders");
+        assertEquals(0, orders.size());
+        assertEquals(1, orders.throughput().enqueued());
+        assertEquals(1, orders.throughput().dequeued());
+    }
+
+    @Test
+    void dequeueMessage_shouldReturnHigherPrioritiesFirstThenFifo() {
+        MessageRecord first = messageService.enqueueMessage(QueueRegistry.DEFAULT_QUEUE, new EnqueueMessageRecord("first", 0));
+        MessageRecord second = messageService.enqueueMessage(QueueRegistry.DEFAULT_QUEUE, new EnqueueMessageRecord("second", 0));
+        MessageRecord urgent = messageService.enqueueMessage(QueueRegistry.DEFAULT_QUEUE, new EnqueueMessageRecord("urgent", 0, 7));
+        MessageRecord high = messageService.enqueueMessage(QueueRegistry.DEFAULT_QUEUE, new EnqueueMessageRecord("high", 0, 3));
+
+        List<UUID> dequeued = IntStream.range(0, 4)
+                .mapToObj(i -> messageService.dequeueMessage(QueueRegistry.DEFAULT_QUEUE).id())
+                .toList();
+
+        assertEquals(List.of(urgent.id(), high.id(), first.id(), second.id()), dequeued);
+    }
+
+    @Test
+    void dequeueMessage_shouldSkipScheduledMessagesUntilDelivered() throws InterruptedException {
+        MessageRecord scheduled = messageService.enqueueMessage(QueueRegistry.DEFAULT_QUEUE,
+                new EnqueueMessageRecord("scheduled", 0, null, Instant.now().plusMillis(300), null));
+
+        assertThrows(MessageNotFoundException.class, () -> messageService.dequeueMessage(QueueRegistry.DEFAULT_QUEUE));
+        assertEquals(1, messageService.getQueueSize(QueueRegistry.DEFAULT_QUEUE));
+
+        assertEquals(scheduled.id(), awaitDelivery().id());
+        assertFalse(Instant.now().isBefore(scheduled.deliverAt()));
+    }
+
+    @Test
+    void failMessage_shouldRetryAfterBackoffThenDeadLetter() throws InterruptedException {
+        MessageRecord enqueued = messageService.enqueueMessage(QueueRegistry.DEFAULT_QUEUE, new EnqueueMessageRecord("flaky", 0));
+
+        messageService.failMessage(messageService.leaseMessage(QueueRegistry.DEFAULT_QUEUE, null), new IllegalStateException("first failure"));
+        assertThrows(MessageNotFoundException.class, () -> messageService.dequeueMessage(QueueRegistry.DEFAULT_QUEUE));
+        assertEquals(1, messageService.getQueueSize(QueueRegistry.DEFAULT_QUEUE));
+
+        LeaseRecord retried = awaitLease();
+        assertEquals(enqueued.id(), retried.message().id());
+        assertEquals(1, retried.message().attempts());
+        assertEquals("java.lang.IllegalStateException: first failure", retried.message().lastError());
+
+        messageService.failMessage(retried, new IllegalStateException("second failure"));
+        assertEquals(0, messageService.getQueueSize(QueueRegistry.DEFAULT_QUEUE));
+        DeadLetterRecord deadLetter = deadLetterService.getDeadLetter(QueueRegistry.DEFAULT_QUEUE, enqueued.id());
+        assertEquals(2, deadLetter.attempts());
+        assertEquals("java.lang.IllegalStateException: second failure", deadLetter.lastError());
+        assertEquals(List.of(deadLetter), deadLetterService.getDeadLetters(QueueRegistry.DEFAULT_QUEUE, 10));
+    }
+
+    @Test
+    void requeueDeadLetter_shouldPutMessageBackWithAttemptsReset() {
+        MessageRecord enqueued = messageService.enqueueMessage("payments", new EnqueueMessageRecord("payment", 0));
+        messageService.failMessage(lastAttempt(messageService.leaseMessage("payments", null)), new IllegalStateException("last failure"));
+
+        MessageRecord requeued = deadLetterService.requeueDeadLetter("payments", enqueued.id());
+
+        assertEquals(enqueued.id(), requeued.id());
+        assertEquals(1, messageService.getQueueSize("payments"));
+        MessageRecord redelivered = messageService.dequeueMessage("payments");
+        assertEquals(enqueued.id(), redelivered.id());
+        assertEquals(0, redelivered.attempts());
+        assertEquals("java.lang.IllegalStateException: last failure", redelivered.lastError());
+        assertThrows(DeadLetterNotFoundException.class, () -> deadLetterService.getDeadLetter("payments", enqueued.id()));
+    }
+
+    @Test
+    void purgeDeadLetters_shouldKeepDeadLettersOfOtherQueues() {
+        for (String queueName : List.of("refunds", "refunds", "returns")) {
+            messageService.enqueueMessage(queueName, new EnqueueMessageRecord("failing", 0));
+            messageService.failMessage(lastAttempt(messageService.leaseMessage(queueName, null)), new IllegalStateException("last failure"));
+        }
+
+        assertEquals(2, deadLetterService.purgeDeadLetters("refunds"));
+
+        assertEquals(List.of(), deadLetterService.getDeadLetters("refunds", 10));
+        assertEquals(1, deadLetterService.getDeadLetters("returns", 10).size());
+    }
+
+    @Test
+    void clearQueue_shouldKeepMessagesOfOtherQueues() {
+        messageService.enqueueMessages("invoices", List.of(
+                new EnqueueMessageRecord("Invoice 1", 0),
+                new EnqueueMessageRecord("Invoice 2", 0)));
+        enqueueMessages(3);
+
+        PurgeRecord purge = messageService.clearQueue("invoices");
+
+        assertEquals(2, purge.deleted());
+        assertEquals(0, messageService.getQueueSize("invoices"));
+        assertEquals(3, messageService.getQueueSize(QueueRegistry.DEFAULT_QUEUE));
+    }
+
+    @Test
+    void dequeueMessage_whenQueueUnknown_shouldThrowException() {
+        assertThrows(QueueNotFoundException.class, () -> messageService.dequeueMessage("unknown"));
+    }
+
+    @Test
+    void getPurge_whenUnknown_shouldThrowException() {
+        assertThrows(PurgeNotFoundException.class, () -> messageService.getPurge(UUID.randomUUID()));
+    }
+
+    /**
+     * Dequeues the next message once the QueueManager's timer delivered it, or expired its lease; the timer runs even
+     * with the workers disabled.
+     */
+    private MessageRecord awaitDelivery() throws InterruptedException {
+        return await(() -> messageService.dequeueMessage(QueueRegistry.DEFAULT_QUEUE));
+    }
+
+    private LeaseRecord awaitLease() throws InterruptedException {
+        return await(() -> messageService.leaseMessage(QueueRegistry.DEFAULT_QUEUE, null));
+    }
+
+    /**
+     * Retries {@code attempt} until it finds what it looks for.  Lease expiries are only checked every second.
+     */
+    private static <T> T await(Supplier<T> attempt) throws InterruptedException {
+        for (int i = 0; i < 150; i++) {
+            try {
+                return attempt.get();
+            } catch (MessageNotFoundException | DeadLetterNotFoundException e) {
+                Thread.sleep(20);
+            }
+        }
+        return fail("Timed out");
+    }
+
+    /**
+     * Leases with every consumer until {@code lease} finds nothing left to lease.
+     */
+    private static List<LeaseRecord> leaseConcurrently(Supplier<List<LeaseRecord>> lease) throws Exception {
+        ConcurrentLinkedQueue<LeaseRecord> leases = new ConcurrentLinkedQueue<>();
+        try (ExecutorService consumers = Executors.newFixedThreadPool(CONSUMER_COUNT)) {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < CONSUMER_COUNT; i++) {
+                futures.add(consumers.submit(() -> {
+                    List<LeaseRecord> leased;
+                    while (!(leased = lease.get()).isEmpty()) {
+                        leases.addAll(leased);
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        }
+        return List.copyOf(leases);
+    }
+
+    private static List<LeaseRecord> leaseOrNothing(Supplier<LeaseRecord> lease) {
+        try {
+            return List.of(lease.get());
+        } catch (MessageNotFoundException e) {
+            // every message is in flight
+            return List.of();
+        }
+    }
+
+    /**
+     * Checks that each message was leased once, and that every lease is still held by the consumer it was handed to.
+     */
+    private void assertLeasedExactlyOnce(List<LeaseRecord> leases) {
+        assertEquals(MESSAGE_COUNT, leases.size());
+        assertEquals(MESSAGE_COUNT, leases.stream().map(lease -> lease.message().id()).distinct().count());
+        leases.forEach(lease -> messageService.extendLease(QueueRegistry.DEFAULT_QUEUE, lease.id(), null));
+    }
+
+    /**
+     * Gets a lease as if its message had already failed every attempt but the last.
+     */
+    private static LeaseRecord lastAttempt(LeaseRecord lease) {
+        return new LeaseRecord(lease.id(), lease.expiresAt(), lease.message().withFailure("earlier failure", null));
+    }
+
+    private void enqueueMessages(int count) {
+        // in batches of MESSAGE_COUNT, below queue.max-batch-size
+        for (int start = 0; start < count; start += MESSAGE_COUNT) {
+            messageService.enqueueMessages(QueueRegistry.DEFAULT_QUEUE, IntStream.range(start, Math.min(start + MESSAGE_COUNT, count))
+                    .mapToObj(i -> new EnqueueMessageRecord("Message " + i, 0))
+                    .toList());
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package com.thedamones.bv.queue;
+
+import org.springframework.boot.test.context.SpringBootTest;
+
+/**
+ * Runs the {@link MessageServiceIntegrationTest} scenarios with the JPA find-and-delete dequeue instead of the native
+ * pop.
+ */
+@SpringBootTest(properties = {
+        "queue.workers.count=0",
+        "queue.purge.chunk-size=100",
+        "queue.dequeue.native-pop=false",
+        "queue.dequeue.fairness-interval=0",
+        "queue.retry.max-attempts=2",
+        "queue.retry.initial-backoff=200ms",
+        "spring.datasource.url=jdbc:h2:mem:message-service-jpa-dequeue;DB_CLOSE_DELAY=-1"
+})
+class MessageServiceJpaDequeueIntegrationTest extends MessageServiceIntegrationTest {
+}
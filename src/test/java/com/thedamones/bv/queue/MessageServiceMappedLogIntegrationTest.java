@@ -0,0 +1,52 @@
+package com.thedamones.bv.queue;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Runs the {@link MessageServiceStoreIntegrationTest} scenarios on the {@link MappedLogQueueStore}, in a fresh log
+ * directory.
+ */
+@SpringBootTest(properties = {
+        "queue.workers.count=0",
+        "queue.purge.chunk-size=100",
+        "queue.retry.max-attempts=2",
+        "queue.store.type=mapped-log",
+        "queue.store.log.directory=target/test-data/log-${random.uuid}",
+        "queue.store.log.segment-size=16KB",
+        "spring.datasource.url=jdbc:h2:mem:message-service-mapped-log;DB_CLOSE_DELAY=-1"
+})
+class MessageServiceMappedLogIntegrationTest extends MessageServiceStoreIntegrationTest {
+
+    @Override
+    protected Class<? extends QueueStore> storeType() {
+        return MappedLogQueueStore.class;
+    }
+
+    @Test
+    void dequeueMessage_shouldReturnMessagesInEnqueueOrder() {
+        List<MessageRecord> enqueued = enqueueMessages(3);
+
+        assertEquals(enqueued.getFirst(), messageService.peekMessage(QueueRegistry.DEFAULT_QUEUE));
+        assertEquals(enqueued.get(1), messageService.getMessageById(QueueRegistry.DEFAULT_QUEUE, enqueued.get(1).id()));
+        assertEquals(3, messageService.getQueueSize(QueueRegistry.DEFAULT_QUEUE));
+        assertEquals(enqueued, IntStream.range(0, 3)
+                .mapToObj(i -> messageService.dequeueMessage(QueueRegistry.DEFAULT_QUEUE))
+                .toList());
+        assertEquals(0, messageService.getQueueSize(QueueRegistry.DEFAULT_QUEUE));
+        assertThrows(MessageNotFoundException.class, () -> messageService.getMessageById(QueueRegistry.DEFAULT_QUEUE, enqueued.getFirst().id()));
+    }
+
+    @Test
+    void enqueueMessage_withPriority_shouldThrowException() {
+        assertThrows(InvalidMessageException.class, () -> messageService.enqueueMessage(QueueRegistry.DEFAULT_QUEUE,
+                new EnqueueMessageRecord("urgent", 0, 5)));
+        assertEquals(0, messageService.getQueueSize(QueueRegistry.DEFAULT_QUEUE));
+    }
+}
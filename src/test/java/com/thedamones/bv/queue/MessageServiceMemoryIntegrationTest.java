@@ -0,0 +1,58 @@
+package com.thedamones.bv.queue;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Runs the {@link MessageServiceStoreIntegrationTest} scenarios on the {@link MemoryQueueStore}.
+ */
+@SpringBootTest(properties = {
+        "queue.workers.count=0",
+        "queue.purge.chunk-size=100",
+        "queue.retry.max-attempts=2",
+        "queue.store.type=memory",
+        "spring.datasource.url=jdbc:h2:mem:message-service-memory;DB_CLOSE_DELAY=-1"
+})
+class MessageServiceMemoryIntegrationTest extends MessageServiceStoreIntegrationTest {
+
+    @Override
+    protected Class<? extends QueueStore> storeType() {
+        return MemoryQueueStore.class;
+    }
+
+    @Test
+    void dequeueMessage_shouldReturnMessagesByPriorityThenInEnqueueOrder() {
+        List<MessageRecord> enqueued = enqueueMessages(3);
+        MessageRecord urgent = messageService.enqueueMessage(QueueRegistry.DEFAULT_QUEUE, new EnqueueMessageRecord("urgent", 0, 5));
+
+        assertEquals(urgent, messageService.peekMessage(QueueRegistry.DEFAULT_QUEUE));
+        assertEquals(enqueued.get(1), messageService.getMessageById(QueueRegistry.DEFAULT_QUEUE, enqueued.get(1).id()));
+        assertEquals(4, messageService.getQueueSize(QueueRegistry.DEFAULT_QUEUE));
+        assertEquals(List.of(urgent, enqueued.get(0), enqueued.get(1), enqueued.get(2)), IntStream.range(0, 4)
+                .mapToObj(i -> messageService.dequeueMessage(QueueRegistry.DEFAULT_QUEUE))
+                .toList());
+        assertEquals(0, messageService.getQueueSize(QueueRegistry.DEFAULT_QUEUE));
+        assertThrows(MessageNotFoundException.class, () -> messageService.getMessageById(QueueRegistry.DEFAULT_QUEUE, urgent.id()));
+    }
+
+    @Test
+    void leaseMessage_byRecord_shouldRemoveHandedOffMessageOnce() {
+        List<MessageRecord> enqueued = enqueueMessages(2);
+
+        LeaseRecord lease = messageService.leaseMessage(enqueued.get(1), Duration.ofSeconds(30)).orElseThrow();
+
+        assertEquals(enqueued.get(1).id(), lease.message().id());
+        assertTrue(messageService.leaseMessage(enqueued.get(1), Duration.ofSeconds(30)).isEmpty());
+        assertEquals(1, messageService.getQueueSize(QueueRegistry.DEFAULT_QUEUE));
+        assertEquals(enqueued.getFirst(), messageService.dequeueMessage(QueueRegistry.DEFAULT_QUEUE));
+        assertThrows(MessageNotFoundException.class, () -> messageService.dequeueMessage(QueueRegistry.DEFAULT_QUEUE));
+    }
+}
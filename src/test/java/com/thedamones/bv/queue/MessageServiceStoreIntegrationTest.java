@@ -0,0 +1,125 @@
+package com.thedamones.bv.queue;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Exercises {@link MessageService} on a {@link QueueStore} other than the {@code message} table, with the background
+ * workers disabled.  Subclasses select the store and add the scenarios that differ between stores.
+ */
+abstract class MessageServiceStoreIntegrationTest {
+
+    protected static final int MESSAGE_COUNT = 500;
+    private static final int CONSUMER_COUNT = 8;
+
+    @Autowired
+    protected MessageService messageService;
+
+    @Autowired
+    protected DeadLetterService deadLetterService;
+
+    @Autowired
+    protected QueueStore queueStore;
+
+    /**
+     * Gets the type of the store selected by the subclass.
+     */
+    protected abstract Class<? extends QueueStore> storeType();
+
+    @BeforeEach
+    void clearQueue() {
+        messageService.clearQueue(QueueRegistry.DEFAULT_QUEUE);
+        deadLetterService.purgeDeadLetters(QueueRegistry.DEFAULT_QUEUE);
+    }
+
+    @Test
+    void queueStore_shouldBeSelectedStore() {
+        assertInstanceOf(storeType(), queueStore);
+    }
+
+    @Test
+    void dequeueMessage_withConcurrentConsumers_shouldClaimEachMessageExactlyOnce() throws Exception {
+        enqueueMessages(MESSAGE_COUNT);
+
+        ConcurrentLinkedQueue<UUID> claimed = new ConcurrentLinkedQueue<>();
+        try (ExecutorService consumers = Executors.newFixedThreadPool(CONSUMER_COUNT)) {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < CONSUMER_COUNT; i++) {
+                futures.add(consumers.submit(() -> {
+                    try {
+                        while (true) {
+                            claimed.add(messageService.dequeueMessage(QueueRegistry.DEFAULT_QUEUE).id());
+                        }
+                    } catch (MessageNotFoundException e) {
+                        // queue drained
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        }
+
+        assertEquals(MESSAGE_COUNT, claimed.size());
+        assertEquals(MESSAGE_COUNT, new HashSet<>(claimed).size());
+    }
+
+    @Test
+    void enqueueMessage_withDelay_shouldThrowException() {
+        assertThrows(InvalidMessageException.class, () -> messageService.enqueueMessage(QueueRegistry.DEFAULT_QUEUE,
+                new EnqueueMessageRecord("later", 0, null, null, 60L)));
+        assertEquals(0, messageService.getQueueSize(QueueRegistry.DEFAULT_QUEUE));
+    }
+
+    @Test
+    void failMessage_shouldRequeueAtBackThenDeadLetter() {
+        MessageRecord flaky = messageService.enqueueMessage(QueueRegistry.DEFAULT_QUEUE, new EnqueueMessageRecord("flaky", 0));
+        MessageRecord next = messageService.enqueueMessage(QueueRegistry.DEFAULT_QUEUE, new EnqueueMessageRecord("next", 0));
+
+        LeaseRecord lease = messageService.leaseMessage(QueueRegistry.DEFAULT_QUEUE, null);
+        assertEquals(flaky.id(), lease.message().id());
+        assertEquals(1, messageService.getQueueSize(QueueRegistry.DEFAULT_QUEUE));
+        messageService.failMessage(lease, new IllegalStateException("first failure"));
+
+        assertEquals(next, messageService.dequeueMessage(QueueRegistry.DEFAULT_QUEUE));
+        LeaseRecord retried = messageService.leaseMessage(QueueRegistry.DEFAULT_QUEUE, null);
+        assertEquals(1, retried.message().attempts());
+        assertEquals("java.lang.IllegalStateException: first failure", retried.message().lastError());
+
+        messageService.failMessage(retried, new IllegalStateException("second failure"));
+        assertEquals(0, messageService.getQueueSize(QueueRegistry.DEFAULT_QUEUE));
+        assertEquals(2, deadLetterService.getDeadLetter(QueueRegistry.DEFAULT_QUEUE, flaky.id()).attempts());
+    }
+
+    @Test
+    void clearQueue_shouldRemoveEveryMessage() {
+        enqueueMessages(MESSAGE_COUNT);
+
+        PurgeRecord purge = messageService.clearQueue(QueueRegistry.DEFAULT_QUEUE);
+
+        assertEquals(MESSAGE_COUNT, purge.deleted());
+        assertEquals(0, messageService.getQueueSize(QueueRegistry.DEFAULT_QUEUE));
+        assertThrows(MessageNotFoundException.class, () -> messageService.dequeueMessage(QueueRegistry.DEFAULT_QUEUE));
+    }
+
+    protected List<MessageRecord> enqueueMessages(int count) {
+        return messageService.enqueueMessages(QueueRegistry.DEFAULT_QUEUE, IntStream.range(0, count)
+                .mapToObj(i -> new EnqueueMessageRecord("Message " + i, 0))
+                .toList());
+    }
+}
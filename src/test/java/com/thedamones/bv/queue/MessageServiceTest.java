@@ -1,22 +1,37 @@
 package com.thedamones.bv.queue;
 
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.context.ApplicationEventPublisher;
-import org.springframework.core.convert.support.DefaultConversionService;
-import org.springframework.core.convert.support.GenericConversionService;
 
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.UUID;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
+import static com.thedamones.bv.queue.QueueRegistry.DEFAULT_QUEUE;
 import static com.thedamones.bv.queue.TestMessages.*;
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
 import static org.mockito.Mockito.when;
 
 @ExtendWith(MockitoExtension.class)
@@ -25,71 +40,562 @@ class MessageServiceTest {
     @Mock
     private MessageRepository messageRepository;
 
+    @Mock
+    private QueueStore queueStore;
+
+    @Mock
+    private DeadLetterRepository deadLetterRepository;
+
     @Mock
     private ApplicationEventPublisher eventPublisher;
 
+    @Mock
+    private QueueDepthCounter queueDepthCounter;
+
+    @Mock
+    private QueueRegistry queueRegistry;
+
+    @Mock
+    private QueuePurger queuePurger;
+
+    @Mock
+    private LeaseAcknowledger leaseAcknowledger;
+
+    @Mock
+    private AdmissionControl admissionControl;
+
+    @Spy
+    private QueueMetrics queueMetrics = new QueueMetrics(new SimpleMeterRegistry());
+
     @Spy
-    private GenericConversionService conversionService = new DefaultConversionService();
+    private QueueProperties queueProperties = new QueueProperties();
 
     @InjectMocks
     private MessageService messageService;
 
     @BeforeEach
     void setUp() {
-        conversionService.addConverter(new MessageToMessageRecordConverter());
+        lenient().when(queueStore.supportsLeases()).thenReturn(true);
     }
 
     @Test
-    void enqueueMessage_shouldSaveMessageAndPublishEvent() {
-        Message message = createTestMessage();
+    void enqueueMessage_shouldAppendMessageAndPublishEvent() {
         EnqueueMessageRecord enqueueMessageRecord = createTestEnqueueMessageRecord();
-        when(messageRepository.save(any(Message.class))).thenReturn(message);
+        QueueThroughput throughput = new QueueThroughput();
+        when(queueRegistry.getOrCreate(DEFAULT_QUEUE)).thenReturn(throughput);
 
-        MessageRecord result = messageService.enqueueMessage(enqueueMessageRecord);
+        MessageRecord result = messageService.enqueueMessage(DEFAULT_QUEUE, enqueueMessageRecord);
 
-        assertTestMessageRecord(result);
-        verify(messageRepository).save(any(Message.class));
+        assertNotNull(result.id());
+        assertEquals(enqueueMessageRecord.text(), result.text());
+        assertEquals(enqueueMessageRecord.dataSize(), result.dataSize());
+        verify(queueStore).validate(result);
+        verify(queueStore).append(List.of(result));
         verify(eventPublisher).publishEvent(any(MessageEnqueuedEvent.class));
+        verify(queueDepthCounter).adjustAfterCommit(DEFAULT_QUEUE, 1);
+        assertEquals(1, throughput.toRecord().enqueued());
     }
 
     @Test
-    void dequeueMessage_shouldReturnAndRemoveOldestMessage() {
-        Message message = createTestMessage();
-        when(messageRepository.findFirstByOrderByTimestampAsc()).thenReturn(Optional.of(message));
+    void enqueueMessages_shouldAppendAllMessagesAndPublishSingleEvent() {
+        when(queueRegistry.getOrCreate(DEFAULT_QUEUE)).thenReturn(new QueueThroughput());
+
+        List<MessageRecord> result = messageService.enqueueMessages(DEFAULT_QUEUE,
+                List.of(createTestEnqueueMessageRecord(), createTestEnqueueMessageRecord()));
 
-        MessageRecord result = messageService.dequeueMessage();
+        assertEquals(2, result.size());
+        assertNotEquals(result.get(0).id(), result.get(1).id());
+        verify(queueStore).append(result);
+        verify(eventPublisher, times(1)).publishEvent(any(MessageEnqueuedEvent.class));
+        verify(queueDepthCounter).adjustAfterCommit(DEFAULT_QUEUE, 2);
+    }
+
+    @Test
+    void enqueueMessage_withPriorityOutOfRange_shouldThrowException() {
+        when(queueRegistry.getOrCreate(DEFAULT_QUEUE)).thenReturn(new QueueThroughput());
+
+        assertThrows(InvalidMessageException.class, () -> messageService.enqueueMessage(DEFAULT_QUEUE,
+                new EnqueueMessageRecord("text", 0, Message.MAX_PRIORITY + 1)));
+        verifyNoInteractions(queueStore, eventPublisher);
+    }
+
+    @Test
+    void enqueueMessage_whenStoreRejectsMessage_shouldThrowException() {
+        when(queueRegistry.getOrCreate(DEFAULT_QUEUE)).thenReturn(new QueueThroughput());
+        doThrow(new InvalidMessageException("unsupported")).when(queueStore).validate(any(MessageRecord.class));
+
+        assertThrows(InvalidMessageException.class, () -> messageService.enqueueMessage(DEFAULT_QUEUE, createTestEnqueueMessageRecord()));
+        verify(queueStore, never()).append(anyList());
+        verifyNoInteractions(eventPublisher, queueDepthCounter);
+    }
+
+    @Test
+    void enqueueMessage_withDelay_shouldScheduleMessageInsteadOfPublishingEnqueueEvent() {
+        when(queueRegistry.getOrCreate(DEFAULT_QUEUE)).thenReturn(new QueueThroughput());
+
+        MessageRecord result = messageService.enqueueMessage(DEFAULT_QUEUE, new EnqueueMessageRecord("text", 0, null, null, 60L));
+
+        assertEquals(result.timestamp().plusSeconds(60), result.deliverAt());
+        verify(queueStore).append(List.of(result));
+        ArgumentCaptor<MessageScheduledEvent> event = ArgumentCaptor.forClass(MessageScheduledEvent.class);
+        verify(eventPublisher).publishEvent(event.capture());
+        assertEquals(result.deliverAt(), event.getValue().getDeliverAt());
+        verify(queueDepthCounter).adjustAfterCommit(DEFAULT_QUEUE, 1);
+    }
+
+    @Test
+    void enqueueMessage_withDeliverAtAndDelay_shouldThrowException() {
+        when(queueRegistry.getOrCreate(DEFAULT_QUEUE)).thenReturn(new QueueThroughput());
+
+        assertThrows(InvalidMessageException.class, () -> messageService.enqueueMessage(DEFAULT_QUEUE,
+                new EnqueueMessageRecord("text", 0, null, Instant.now().plusSeconds(60), 60L)));
+        verifyNoInteractions(queueStore, eventPublisher);
+    }
+
+    @Test
+    void deliverDueMessages_shouldPublishEnqueueEventPerQueueAndReturnNextDeliveryTime() {
+        Instant next = Instant.now().plusSeconds(60);
+        int batchSize = queueProperties.getDelivery().getBatchSize();
+        when(messageRepository.deliverDue(any(Instant.class), eq(batchSize))).thenReturn(List.of(
+                new MessageRecord(UUID.randomUUID(), "text", 0, Instant.now(), DEFAULT_QUEUE),
+                new MessageRecord(UUID.randomUUID(), "text", 0, Instant.now(), "orders"),
+                new MessageRecord(UUID.randomUUID(), "text", 0, Instant.now(), DEFAULT_QUEUE)));
+        when(messageRepository.findNextDeliverAt()).thenReturn(Optional.of(next));
+
+        assertEquals(Optional.of(next), messageService.deliverDueMessages());
+
+        ArgumentCaptor<MessageEnqueuedEvent> events = ArgumentCaptor.forClass(MessageEnqueuedEvent.class);
+        verify(eventPublisher, times(2)).publishEvent(events.capture());
+        assertEquals(Map.of(DEFAULT_QUEUE, 2, "orders", 1), events.getAllValues().stream()
+                .collect(Collectors.toMap(MessageEnqueuedEvent::getQueue, event -> event.getMessageRecords().size())));
+        verifyNoInteractions(queueDepthCounter);
+    }
+
+    @Test
+    void deliverDueMessages_withExpiredLeases_shouldMakeThemReadyOrDeadLetterThem() {
+        int maxAttempts = queueProperties.getRetry().getMaxAttempts();
+        int batchSize = queueProperties.getDelivery().getBatchSize();
+        MessageRecord expired = new MessageRecord(UUID.randomUUID(), "text", 0, Instant.now(), DEFAULT_QUEUE,
+                Message.DEFAULT_PRIORITY, Instant.now(), 1, MessageService.LEASE_EXPIRED_ERROR);
+        MessageRecord exhausted = new MessageRecord(UUID.randomUUID(), "text", 0, Instant.now(), DEFAULT_QUEUE,
+                Message.DEFAULT_PRIORITY, Instant.now(), maxAttempts, MessageService.LEASE_EXPIRED_ERROR);
+        Instant nextExpiry = Instant.now().plusSeconds(30);
+        when(messageRepository.expireLeases(any(Instant.class), eq(MessageService.LEASE_EXPIRED_ERROR), eq(batchSize)))
+                .thenReturn(List.of(expired, exhausted));
+        when(messageRepository.findNextDeliverAt()).thenReturn(Optional.of(nextExpiry.plusSeconds(30)));
+        when(messageRepository.findNextLeaseExpiry()).thenReturn(Optional.of(nextExpiry));
+
+        assertEquals(Optional.of(nextExpiry), messageService.deliverDueMessages());
+
+        ArgumentCaptor<MessageEnqueuedEvent> event = ArgumentCaptor.forClass(MessageEnqueuedEvent.class);
+        verify(eventPublisher).publishEvent(event.capture());
+        assertEquals(List.of(expired), event.getValue().getMessageRecords());
+        verify(messageRepository).deleteAllByIdInBatch(List.of(exhausted.id()));
+        ArgumentCaptor<DeadLetter> deadLetter = ArgumentCaptor.forClass(DeadLetter.class);
+        verify(deadLetterRepository).save(deadLetter.capture());
+        assertEquals(exhausted.id(), deadLetter.getValue().getId());
+        verify(queueDepthCounter).adjustAfterCommit(DEFAULT_QUEUE, -1);
+    }
+
+    @Test
+    void enqueueMessages_overMaxBatchSize_shouldThrowException() {
+        List<EnqueueMessageRecord> requests = IntStream.rangeClosed(0, queueProperties.getMaxBatchSize())
+                .mapToObj(i -> createTestEnqueueMessageRecord())
+                .toList();
+
+        assertThrows(InvalidMessageException.class, () -> messageService.enqueueMessages(DEFAULT_QUEUE, requests));
+        verifyNoInteractions(queueRegistry, queueStore, eventPublisher);
+    }
+
+    @Test
+    void enqueueMessages_whenEmpty_shouldNotTouchStore() {
+        List<MessageRecord> result = messageService.enqueueMessages(DEFAULT_QUEUE, List.of());
+
+        assertTrue(result.isEmpty());
+        verifyNoInteractions(queueStore, eventPublisher, queueDepthCounter);
+    }
+
+    @Test
+    void dequeueMessage_shouldPopOldestMessage() {
+        QueueThroughput throughput = new QueueThroughput();
+        when(queueRegistry.get(DEFAULT_QUEUE)).thenReturn(throughput);
+        when(queueStore.pop(DEFAULT_QUEUE, false)).thenReturn(Optional.of(createTestMessageRecord()));
+
+        MessageRecord result = messageService.dequeueMessage(DEFAULT_QUEUE);
 
         assertTestMessageRecord(result);
-        verify(messageRepository).delete(message);
+        verify(queueDepthCounter).adjustAfterCommit(DEFAULT_QUEUE, -1);
+        assertEquals(1, throughput.toRecord().dequeued());
+    }
+
+    @Test
+    void dequeueMessage_everyFairnessInterval_shouldPopOldestMessageRegardlessOfPriority() {
+        queueProperties.getDequeue().setFairnessInterval(3);
+        when(queueRegistry.get(DEFAULT_QUEUE)).thenReturn(new QueueThroughput());
+        when(queueStore.pop(eq(DEFAULT_QUEUE), any(Boolean.class))).thenReturn(Optional.of(createTestMessageRecord()));
+
+        for (int i = 0; i < 6; i++) {
+            messageService.dequeueMessage(DEFAULT_QUEUE);
+        }
+
+        verify(queueStore, times(4)).pop(DEFAULT_QUEUE, false);
+        verify(queueStore, times(2)).pop(DEFAULT_QUEUE, true);
     }
 
     @Test
     void dequeueMessage_whenEmpty_shouldThrowException() {
-        when(messageRepository.findFirstByOrderByTimestampAsc()).thenReturn(Optional.empty());
-        assertThrows(MessageNotFoundException.class, () -> messageService.dequeueMessage());
+        when(queueRegistry.get(DEFAULT_QUEUE)).thenReturn(new QueueThroughput());
+        when(queueStore.pop(DEFAULT_QUEUE, false)).thenReturn(Optional.empty());
+        assertThrows(MessageNotFoundException.class, () -> messageService.dequeueMessage(DEFAULT_QUEUE));
+        verifyNoInteractions(queueDepthCounter);
+    }
+
+    @Test
+    void dequeueMessage_whenQueueUnknown_shouldThrowException() {
+        when(queueRegistry.get("unknown")).thenThrow(new QueueNotFoundException("Queue unknown not found"));
+        assertThrows(QueueNotFoundException.class, () -> messageService.dequeueMessage("unknown"));
+        verifyNoInteractions(queueStore);
+    }
+
+    @Test
+    void peekMessage_shouldReturnHeadWithoutChangingQueueDepth() {
+        when(queueRegistry.get(DEFAULT_QUEUE)).thenReturn(new QueueThroughput());
+        when(queueStore.peek(DEFAULT_QUEUE)).thenReturn(Optional.of(createTestMessageRecord()));
+
+        assertTestMessageRecord(messageService.peekMessage(DEFAULT_QUEUE));
+        verify(queueStore, never()).pop(any(), any(Boolean.class));
+        verifyNoInteractions(queueDepthCounter);
+    }
+
+    @Test
+    void peekMessage_whenEmpty_shouldThrowException() {
+        when(queueRegistry.get(DEFAULT_QUEUE)).thenReturn(new QueueThroughput());
+        when(queueStore.peek(DEFAULT_QUEUE)).thenReturn(Optional.empty());
+        assertThrows(MessageNotFoundException.class, () -> messageService.peekMessage(DEFAULT_QUEUE));
+    }
+
+    @Test
+    void leaseMessage_shouldLeaseHeadWithoutChangingQueueDepth() {
+        MessageRecord message = createTestMessageRecord();
+        when(queueRegistry.get(DEFAULT_QUEUE)).thenReturn(new QueueThroughput());
+        when(messageRepository.leaseFirst(eq(DEFAULT_QUEUE), any(UUID.class), any(Instant.class))).thenReturn(Optional.of(message));
+        Instant leasedAt = Instant.now();
+
+        LeaseRecord lease = messageService.leaseMessage(DEFAULT_QUEUE, Duration.ofSeconds(60));
+
+        ArgumentCaptor<UUID> leaseId = ArgumentCaptor.forClass(UUID.class);
+        verify(messageRepository).leaseFirst(eq(DEFAULT_QUEUE), leaseId.capture(), eq(lease.expiresAt()));
+        assertEquals(leaseId.getValue(), lease.id());
+        assertFalse(lease.expiresAt().isBefore(leasedAt.plusSeconds(60)));
+        assertEquals(message.id(), lease.message().id());
+        assertEquals(lease.expiresAt(), lease.message().deliverAt());
+        ArgumentCaptor<MessageScheduledEvent> event = ArgumentCaptor.forClass(MessageScheduledEvent.class);
+        verify(eventPublisher).publishEvent(event.capture());
+        assertEquals(lease.expiryCheckAt(), event.getValue().getDeliverAt());
+        verifyNoInteractions(queueDepthCounter, leaseAcknowledger);
+    }
+
+    @Test
+    void leaseMessage_withoutVisibilityTimeout_shouldUseDefault() {
+        when(queueRegistry.get(DEFAULT_QUEUE)).thenReturn(new QueueThroughput());
+        when(messageRepository.leaseFirst(eq(DEFAULT_QUEUE), any(UUID.class), any(Instant.class))).thenReturn(Optional.of(createTestMessageRecord()));
+        Instant leasedAt = Instant.now();
+
+        LeaseRecord lease = messageService.leaseMessage(DEFAULT_QUEUE, null);
+
+        assertFalse(lease.expiresAt().isBefore(leasedAt.plus(queueProperties.getLease().getVisibilityTimeout())));
+    }
+
+    @Test
+    void leaseMessage_withVisibilityTimeoutOutOfRange_shouldThrowException() {
+        when(queueRegistry.get(DEFAULT_QUEUE)).thenReturn(new QueueThroughput());
+        Duration tooLong = queueProperties.getLease().getMaxVisibilityTimeout().plusSeconds(1);
+
+        assertThrows(InvalidLeaseException.class, () -> messageService.leaseMessage(DEFAULT_QUEUE, Duration.ZERO));
+        assertThrows(InvalidLeaseException.class, () -> messageService.leaseMessage(DEFAULT_QUEUE, tooLong));
+        verifyNoInteractions(messageRepository);
+    }
+
+    @Test
+    void leaseMessage_whenEmpty_shouldThrowException() {
+        when(queueRegistry.get(DEFAULT_QUEUE)).thenReturn(new QueueThroughput());
+        when(messageRepository.leaseFirst(eq(DEFAULT_QUEUE), any(UUID.class), any(Instant.class))).thenReturn(Optional.empty());
+
+        assertThrows(MessageNotFoundException.class, () -> messageService.leaseMessage(DEFAULT_QUEUE, null));
+        verifyNoInteractions(eventPublisher);
+    }
+
+    @Test
+    void leaseMessage_withoutLeaseSupport_shouldPopHead() {
+        QueueThroughput throughput = new QueueThroughput();
+        when(queueStore.supportsLeases()).thenReturn(false);
+        when(queueRegistry.get(DEFAULT_QUEUE)).thenReturn(throughput);
+        when(queueStore.pop(DEFAULT_QUEUE, false)).thenReturn(Optional.of(createTestMessageRecord()));
+
+        LeaseRecord lease = messageService.leaseMessage(DEFAULT_QUEUE, null);
+
+        assertTestMessageRecord(lease.message());
+        verify(queueDepthCounter).adjustAfterCommit(DEFAULT_QUEUE, -1);
+        assertEquals(1, throughput.toRecord().dequeued());
+        verifyNoInteractions(messageRepository, eventPublisher);
+
+        messageService.acknowledge(lease);
+        verifyNoInteractions(leaseAcknowledger);
+    }
+
+    @Test
+    void leaseMessages_shouldLeaseBatchWithOneRepositoryCallAndPublishOneExpiryEvent() {
+        Instant expiresAt = Instant.now().plusSeconds(60);
+        LeaseRecord first = new LeaseRecord(UUID.randomUUID(), expiresAt, createTestMessageRecord());
+        LeaseRecord second = new LeaseRecord(UUID.randomUUID(), expiresAt, createTestMessageRecord());
+        when(queueRegistry.get(DEFAULT_QUEUE)).thenReturn(new QueueThroughput());
+        when(messageRepository.leaseFirst(eq(DEFAULT_QUEUE), eq(10), any(Instant.class))).thenReturn(List.of(first, second));
+
+        List<LeaseRecord> leases = messageService.leaseMessages(DEFAULT_QUEUE, 10, Duration.ofSeconds(60));
+
+        assertEquals(List.of(first.id(), second.id()), leases.stream().map(LeaseRecord::id).toList());
+        assertEquals(leases.getFirst().expiresAt(), leases.getFirst().message().deliverAt());
+        ArgumentCaptor<MessageScheduledEvent> event = ArgumentCaptor.forClass(MessageScheduledEvent.class);
+        verify(eventPublisher).publishEvent(event.capture());
+        assertEquals(leases.getFirst().expiryCheckAt(), event.getValue().getDeliverAt());
+        verifyNoInteractions(queueDepthCounter);
+    }
+
+    @Test
+    void leaseMessages_whenEmpty_shouldReturnEmptyList() {
+        when(queueRegistry.get(DEFAULT_QUEUE)).thenReturn(new QueueThroughput());
+        when(messageRepository.leaseFirst(eq(DEFAULT_QUEUE), eq(10), any(Instant.class))).thenReturn(List.of());
+
+        assertTrue(messageService.leaseMessages(DEFAULT_QUEUE, 10, null).isEmpty());
+        verifyNoInteractions(eventPublisher);
+    }
+
+    @Test
+    void leaseMessages_withoutLeaseSupport_shouldPopUpToLimit() {
+        QueueThroughput throughput = new QueueThroughput();
+        when(queueStore.supportsLeases()).thenReturn(false);
+        when(queueRegistry.get(DEFAULT_QUEUE)).thenReturn(throughput);
+        when(queueStore.pop(DEFAULT_QUEUE, false)).thenReturn(Optional.of(createTestMessageRecord()));
+
+        List<LeaseRecord> leases = messageService.leaseMessages(DEFAULT_QUEUE, 3, null);
+
+        assertEquals(3, leases.size());
+        verify(queueStore, times(3)).pop(DEFAULT_QUEUE, false);
+        verify(queueDepthCounter, times(3)).adjustAfterCommit(DEFAULT_QUEUE, -1);
+        assertEquals(3, throughput.toRecord().dequeued());
+        verifyNoInteractions(messageRepository, eventPublisher);
+    }
+
+    @Test
+    void leaseMessage_byRecord_withoutLeaseSupport_shouldRemoveMessageFromStore() {
+        MessageRecord message = createTestMessageRecord();
+        QueueThroughput throughput = new QueueThroughput();
+        when(queueStore.supportsLeases()).thenReturn(false);
+        when(queueRegistry.get(DEFAULT_QUEUE)).thenReturn(throughput);
+        when(queueStore.remove(DEFAULT_QUEUE, message.id())).thenReturn(Optional.of(message));
+
+        LeaseRecord lease = messageService.leaseMessage(message, Duration.ofSeconds(30)).orElseThrow();
+
+        assertTestMessageRecord(lease.message());
+        verify(queueDepthCounter).adjustAfterCommit(DEFAULT_QUEUE, -1);
+        assertEquals(1, throughput.toRecord().dequeued());
+        verifyNoInteractions(messageRepository, eventPublisher);
+    }
+
+    @Test
+    void leaseMessage_byRecord_withoutLeaseSupport_whenStoreCannotRemove_shouldReturnEmpty() {
+        MessageRecord message = createTestMessageRecord();
+        when(queueStore.supportsLeases()).thenReturn(false);
+        when(queueStore.remove(DEFAULT_QUEUE, message.id())).thenReturn(Optional.empty());
+
+        assertTrue(messageService.leaseMessage(message, Duration.ofSeconds(30)).isEmpty());
+        verifyNoInteractions(messageRepository, queueDepthCounter);
+    }
+
+    @Test
+    void leaseMessage_byRecord_shouldLeaseMessageById() {
+        MessageRecord message = createTestMessageRecord();
+        when(messageRepository.leaseById(eq(message.id()), any(UUID.class), any(Instant.class))).thenReturn(true);
+
+        Optional<LeaseRecord> lease = messageService.leaseMessage(message, Duration.ofSeconds(30));
+
+        assertTrue(lease.isPresent());
+        verify(messageRepository).leaseById(message.id(), lease.get().id(), lease.get().expiresAt());
+        verifyNoInteractions(queueDepthCounter, eventPublisher);
+    }
+
+    @Test
+    void leaseMessage_byRecord_whenAlreadyLeased_shouldReturnEmpty() {
+        MessageRecord message = createTestMessageRecord();
+        when(messageRepository.leaseById(eq(message.id()), any(UUID.class), any(Instant.class))).thenReturn(false);
+
+        assertTrue(messageService.leaseMessage(message, Duration.ofSeconds(30)).isEmpty());
+    }
+
+    @Test
+    void extendLease_whenExpired_shouldThrowException() {
+        UUID leaseId = UUID.randomUUID();
+        when(messageRepository.extendLease(eq(DEFAULT_QUEUE), eq(leaseId), any(Instant.class), any(Instant.class))).thenReturn(Optional.empty());
+
+        assertThrows(LeaseNotFoundException.class, () -> messageService.extendLease(DEFAULT_QUEUE, leaseId, null));
+        verifyNoInteractions(eventPublisher);
+    }
+
+    @Test
+    void acknowledge_shouldBufferLeaseWithoutDeleting() {
+        LeaseRecord lease = new LeaseRecord(UUID.randomUUID(), Instant.now().plusSeconds(30), createTestMessageRecord());
+
+        messageService.acknowledge(lease);
+
+        verify(leaseAcknowledger).acknowledge(DEFAULT_QUEUE, List.of(lease.id()));
+        verifyNoInteractions(messageRepository, queueDepthCounter);
+    }
+
+    @Test
+    void failMessage_beforeLastAttempt_shouldScheduleRetryAfterBackoff() {
+        LeaseRecord lease = lease(new MessageRecord(UUID.randomUUID(), "text", 0, Instant.now()));
+        when(messageRepository.retryLease(eq(lease.id()), any(MessageRecord.class))).thenReturn(true);
+        Instant failedAt = Instant.now();
+
+        messageService.failMessage(lease, new IllegalStateException("failed"));
+
+        ArgumentCaptor<MessageRecord> scheduled = ArgumentCaptor.forClass(MessageRecord.class);
+        verify(messageRepository).retryLease(eq(lease.id()), scheduled.capture());
+        MessageRecord retry = scheduled.getValue();
+        assertEquals(lease.message().id(), retry.id());
+        assertEquals(1, retry.attempts());
+        assertEquals("java.lang.IllegalStateException: failed", retry.lastError());
+        assertFalse(retry.deliverAt().isBefore(failedAt.plus(queueProperties.getRetry().getInitialBackoff())));
+        ArgumentCaptor<MessageScheduledEvent> event = ArgumentCaptor.forClass(MessageScheduledEvent.class);
+        verify(eventPublisher).publishEvent(event.capture());
+        assertEquals(retry.deliverAt(), event.getValue().getDeliverAt());
+        verifyNoInteractions(deadLetterRepository, queueDepthCounter);
+    }
+
+    @Test
+    void failMessage_whenLeaseExpired_shouldLeaveMessageAlone() {
+        LeaseRecord lease = lease(new MessageRecord(UUID.randomUUID(), "text", 0, Instant.now()));
+        when(messageRepository.retryLease(eq(lease.id()), any(MessageRecord.class))).thenReturn(false);
+
+        messageService.failMessage(lease, new IllegalStateException("failed"));
+
+        verifyNoInteractions(eventPublisher, deadLetterRepository, queueDepthCounter);
+    }
+
+    @Test
+    void failMessage_onLastAttempt_shouldDeadLetterMessage() {
+        int maxAttempts = queueProperties.getRetry().getMaxAttempts();
+        LeaseRecord lease = lease(new MessageRecord(UUID.randomUUID(), "text", 0, Instant.now(), DEFAULT_QUEUE,
+                Message.DEFAULT_PRIORITY, null, maxAttempts - 1, "earlier failure"));
+        when(messageRepository.deleteLeases(DEFAULT_QUEUE, List.of(lease.id()))).thenReturn(1);
+
+        messageService.failMessage(lease, new IllegalStateException("failed"));
+
+        ArgumentCaptor<DeadLetter> deadLetter = ArgumentCaptor.forClass(DeadLetter.class);
+        verify(deadLetterRepository).save(deadLetter.capture());
+        assertEquals(lease.message().id(), deadLetter.getValue().getId());
+        assertEquals(maxAttempts, deadLetter.getValue().getAttempts());
+        assertEquals("java.lang.IllegalStateException: failed", deadLetter.getValue().getLastError());
+        verify(queueDepthCounter).adjustAfterCommit(DEFAULT_QUEUE, -1);
+        verify(messageRepository, never()).retryLease(any(), any());
+        verifyNoInteractions(eventPublisher);
+    }
+
+    @Test
+    void failMessage_withoutLeaseSupport_shouldRequeueMessageRightAway() {
+        when(queueStore.supportsLeases()).thenReturn(false);
+        LeaseRecord lease = lease(new MessageRecord(UUID.randomUUID(), "text", 0, Instant.now()));
+
+        messageService.failMessage(lease, new IllegalStateException("failed"));
+
+        ArgumentCaptor<List<MessageRecord>> requeued = ArgumentCaptor.captor();
+        verify(queueStore).requeue(requeued.capture());
+        MessageRecord retry = requeued.getValue().getFirst();
+        assertEquals(lease.message().id(), retry.id());
+        assertEquals(1, retry.attempts());
+        assertNull(retry.deliverAt());
+        verify(queueDepthCounter).adjustAfterCommit(DEFAULT_QUEUE, 1);
+        verify(eventPublisher).publishEvent(any(MessageEnqueuedEvent.class));
+        verifyNoInteractions(messageRepository, deadLetterRepository);
+    }
+
+    @Test
+    void failMessage_withoutLeaseSupport_onLastAttempt_shouldDeadLetterWithoutChangingQueueDepth() {
+        when(queueStore.supportsLeases()).thenReturn(false);
+        int maxAttempts = queueProperties.getRetry().getMaxAttempts();
+        LeaseRecord lease = lease(new MessageRecord(UUID.randomUUID(), "text", 0, Instant.now(), DEFAULT_QUEUE,
+                Message.DEFAULT_PRIORITY, null, maxAttempts - 1, "earlier failure"));
+
+        messageService.failMessage(lease, new IllegalStateException("failed"));
+
+        verify(deadLetterRepository).save(any(DeadLetter.class));
+        verify(queueStore, never()).requeue(anyList());
+        verifyNoInteractions(messageRepository, queueDepthCounter);
+    }
+
+    @Test
+    void getBackoff_shouldGrowExponentiallyUpToMaxBackoff() {
+        QueueProperties.Retry retry = new QueueProperties.Retry();
+        retry.setInitialBackoff(Duration.ofSeconds(1));
+        retry.setMultiplier(3);
+        retry.setMaxBackoff(Duration.ofSeconds(20));
+
+        assertEquals(List.of(Duration.ofSeconds(1), Duration.ofSeconds(3), Duration.ofSeconds(9), Duration.ofSeconds(20)),
+                IntStream.rangeClosed(1, 4).mapToObj(retry::getBackoff).toList());
     }
 
     @Test
     void getMessageById_shouldReturnMessageRecord() {
-        Message message = createTestMessage();
-        when(messageRepository.findById(message.getId())).thenReturn(Optional.of(message));
+        MessageRecord message = createTestMessageRecord();
+        when(queueStore.findById(DEFAULT_QUEUE, message.id())).thenReturn(Optional.of(message));
 
-        MessageRecord result = messageService.getMessageById(message.getId());
+        MessageRecord result = messageService.getMessageById(DEFAULT_QUEUE, message.id());
 
         assertTestMessageRecord(result);
     }
 
     @Test
     void getMessageById_whenNotFound_shouldThrowException() {
-        Message message = createTestMessage();
-        when(messageRepository.findById(message.getId())).thenReturn(Optional.empty());
-        assertThrows(MessageNotFoundException.class, () -> messageService.getMessageById(message.getId()));
+        MessageRecord message = createTestMessageRecord();
+        when(queueStore.findById(DEFAULT_QUEUE, message.id())).thenReturn(Optional.empty());
+        assertThrows(MessageNotFoundException.class, () -> messageService.getMessageById(DEFAULT_QUEUE, message.id()));
+    }
+
+    @Test
+    void clearQueue_shouldPurgeWithoutLoadingMessages() {
+        messageService.clearQueue(DEFAULT_QUEUE);
+
+        verify(queuePurger).purge(DEFAULT_QUEUE);
+        verify(messageRepository, never()).findAll();
+        verify(messageRepository, never()).deleteAll();
     }
 
     @Test
-    void getQueueSize_shouldReturnQueueSize() {
-        when(messageRepository.count()).thenReturn(1L);
-        assertEquals(1, messageService.getQueueSize());
+    void getQueueSize_shouldReturnQueueDepthWithoutQueryingRepository() {
+        when(queueDepthCounter.get(DEFAULT_QUEUE)).thenReturn(1L);
+        assertEquals(1, messageService.getQueueSize(DEFAULT_QUEUE));
+        verifyNoInteractions(messageRepository, queueStore);
     }
 
-}
\ No newline at end of file
+    @Test
+    void getQueue_shouldReturnDepthAndThroughputWithoutQueryingRepository() {
+        QueueThroughput throughput = new QueueThroughput();
+        throughput.recordEnqueued(3);
+        when(queueRegistry.get("orders")).thenReturn(throughput);
+        when(queueDepthCounter.get("orders")).thenReturn(3L);
+        AdmissionRecord admission = new AdmissionRecord(AdmissionState.REJECTING, 3L, 2L);
+        when(admissionControl.getAdmission("orders")).thenReturn(admission);
+
+        QueueRecord result = messageService.getQueue("orders");
+
+        assertEquals("orders", result.name());
+        assertEquals(3, result.size());
+        assertEquals(3, result.throughput().enqueued());
+        assertEquals(admission, result.admission());
+        verifyNoInteractions(messageRepository, queueStore);
+    }
+
+    private static LeaseRecord lease(MessageRecord message) {
+        return new LeaseRecord(UUID.randomUUID(), Instant.now().plusSeconds(30), message);
+    }
+}
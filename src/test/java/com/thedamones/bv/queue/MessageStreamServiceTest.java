@@ -0,0 +1,79 @@
+package com.thedamones.bv.queue;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest(properties = {
+        "queue.workers.count=0",
+        "spring.datasource.url=jdbc:h2:mem:message-stream;DB_CLOSE_DELAY=-1"
+})
+class MessageStreamServiceTest {
+
+    @Autowired
+    private MessageStreamService messageStreamService;
+
+    @Autowired
+    private MessageService messageService;
+
+    @BeforeEach
+    void clearQueue() {
+        messageService.clearQueue(QueueRegistry.DEFAULT_QUEUE);
+    }
+
+    @Test
+    void openStream_shouldPushNoMoreThanCreditsUntilAcknowledged() throws InterruptedException {
+        MessageStream stream = messageStreamService.openStream(QueueRegistry.DEFAULT_QUEUE, 2);
+        List<MessageRecord> enqueued = messageService.enqueueMessages(QueueRegistry.DEFAULT_QUEUE, List.of(
+                new EnqueueMessageRecord("Message 1", 0),
+                new EnqueueMessageRecord("Message 2", 0),
+                new EnqueueMessageRecord("Message 3", 0)));
+
+        awaitCondition(() -> stream.getInFlightMessageIds().size() == 2);
+        assertEquals(List.of(enqueued.get(0).id(), enqueued.get(1).id()), stream.getInFlightMessageIds());
+        assertEquals(1, messageService.getQueueSize(QueueRegistry.DEFAULT_QUEUE));
+
+        messageStreamService.acknowledge(stream.getId(), List.of(enqueued.get(0).id()));
+
+        awaitCondition(() -> messageService.getQueueSize(QueueRegistry.DEFAULT_QUEUE) == 0);
+        assertEquals(List.of(enqueued.get(1).id(), enqueued.get(2).id()), stream.getInFlightMessageIds());
+
+        stream.close();
+    }
+
+    @Test
+    void close_shouldRequeueUnacknowledgedMessages() throws InterruptedException {
+        MessageStream stream = messageStreamService.openStream(QueueRegistry.DEFAULT_QUEUE, 5);
+        List<MessageRecord> enqueued = messageService.enqueueMessages(QueueRegistry.DEFAULT_QUEUE, List.of(
+                new EnqueueMessageRecord("Message 1", 0),
+                new EnqueueMessageRecord("Message 2", 0)));
+        awaitCondition(() -> stream.getInFlightMessageIds().size() == 2);
+
+        stream.close();
+
+        awaitCondition(() -> messageService.getQueueSize(QueueRegistry.DEFAULT_QUEUE) == 2);
+        enqueued.forEach(message -> assertEquals(message.text(), messageService.getMessageById(QueueRegistry.DEFAULT_QUEUE, message.id()).text()));
+        assertThrows(StreamNotFoundException.class, () -> messageStreamService.getStream(stream.getId()));
+    }
+
+    @Test
+    void acknowledge_whenStreamUnknown_shouldThrowException() {
+        assertThrows(StreamNotFoundException.class, () -> messageStreamService.acknowledge(UUID.randomUUID(), List.of()));
+    }
+
+    private static void awaitCondition(BooleanSupplier condition) throws InterruptedException {
+        for (int i = 0; i < 100 && !condition.getAsBoolean(); i++) {
+            Thread.sleep(20);
+        }
+        assertTrue(condition.getAsBoolean());
+    }
+}
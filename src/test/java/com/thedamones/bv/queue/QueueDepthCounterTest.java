@@ -0,0 +1,116 @@
+package com.thedamones.bv.queue;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class QueueDepthCounterTest {
+
+    @Mock
+    private QueueStore queueStore;
+
+    @InjectMocks
+    private QueueDepthCounter queueDepthCounter;
+
+    @AfterEach
+    void clearSynchronization() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    void initialize_shouldLoadDepthsFromStore() {
+        when(queueStore.sizes()).thenReturn(Map.of("default", 42L, "orders", 7L));
+
+        queueDepthCounter.initialize();
+
+        assertEquals(42, queueDepthCounter.get("default"));
+        assertEquals(7, queueDepthCounter.get("orders"));
+        assertEquals(Set.of("default", "orders"), queueDepthCounter.getQueueNames());
+    }
+
+    @Test
+    void adjustAfterCommit_withoutTransaction_shouldApplyImmediately() {
+        queueDepthCounter.adjustAfterCommit("default", 3);
+        queueDepthCounter.adjustAfterCommit("default", -1);
+        queueDepthCounter.adjustAfterCommit("orders", 5);
+
+        assertEquals(2, queueDepthCounter.get("default"));
+        assertEquals(5, queueDepthCounter.get("orders"));
+    }
+
+    @Test
+    void bindTo_shouldPublishDepthOfEveryQueue() {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        queueDepthCounter.adjustAfterCommit("default", 2);
+        queueDepthCounter.bindTo(meterRegistry);
+        queueDepthCounter.adjustAfterCommit("orders", 3);
+
+        assertEquals(2, meterRegistry.get("queue.depth").tag("queue", "default").gauge().value());
+        assertEquals(3, meterRegistry.get("queue.depth").tag("queue", "orders").gauge().value());
+    }
+
+    @Test
+    void adjustAfterCommit_shouldApplyOnlyWhenCommitted() {
+        TransactionSynchronizationManager.initSynchronization();
+        queueDepthCounter.adjustAfterCommit("default", 5);
+        assertEquals(0, queueDepthCounter.get("default"));
+
+        completeTransaction(TransactionSynchronization.STATUS_COMMITTED);
+
+        assertEquals(5, queueDepthCounter.get("default"));
+    }
+
+    @Test
+    void adjustAfterCommit_shouldIgnoreRolledBackTransactions() {
+        TransactionSynchronizationManager.initSynchronization();
+        queueDepthCounter.adjustAfterCommit("default", 5);
+
+        completeTransaction(TransactionSynchronization.STATUS_ROLLED_BACK);
+
+        assertEquals(0, queueDepthCounter.get("default"));
+    }
+
+    @Test
+    void reconcile_shouldReplaceDepthsWithDatabaseCounts() {
+        queueDepthCounter.adjustAfterCommit("default", 3);
+        queueDepthCounter.adjustAfterCommit("drained", 1);
+        when(queueStore.sizes()).thenReturn(Map.of("default", 7L));
+
+        assertTrue(queueDepthCounter.reconcile());
+        assertEquals(7, queueDepthCounter.get("default"));
+        assertEquals(0, queueDepthCounter.get("drained"));
+    }
+
+    @Test
+    void reconcile_whileTransactionPending_shouldSkip() {
+        TransactionSynchronizationManager.initSynchronization();
+        queueDepthCounter.adjustAfterCommit("default", 1);
+
+        assertFalse(queueDepthCounter.reconcile());
+
+        completeTransaction(TransactionSynchronization.STATUS_COMMITTED);
+        assertEquals(1, queueDepthCounter.get("default"));
+    }
+
+    private static void completeTransaction(int status) {
+        TransactionSynchronizationManager.getSynchronizations().forEach(synchronization -> synchronization.afterCompletion(status));
+        TransactionSynchronizationManager.clearSynchronization();
+    }
+}
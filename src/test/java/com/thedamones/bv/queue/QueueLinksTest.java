@@ -0,0 +1,153 @@
+package com.thedamones.bv.queue;
+
+import jakarta.servlet.http.HttpServletRequest;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.hateoas.IanaLinkRelations;
+import org.springframework.hateoas.Link;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+import org.springframework.web.filter.ForwardedHeaderFilter;
+
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static com.thedamones.bv.queue.QueueRegistry.DEFAULT_QUEUE;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.springframework.hateoas.server.mvc.WebMvcLinkBuilder.linkTo;
+import static org.springframework.hateoas.server.mvc.WebMvcLinkBuilder.methodOn;
+
+class QueueLinksTest {
+
+    private final QueueLinks queueLinks = new QueueLinks();
+
+    @AfterEach
+    void unbindRequest() {
+        RequestContextHolder.resetRequestAttributes();
+    }
+
+    @Test
+    void links_shouldMatchLinkTo() {
+        bind(new MockHttpServletRequest("GET", "/v2/queue"));
+
+        assertSameLinksAsLinkTo();
+    }
+
+    @Test
+    void links_withContextPathAndNonDefaultPort_shouldMatchLinkTo() {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/app/v2/queue");
+        request.setScheme("https");
+        request.setServerName("queue.example.com");
+        request.setServerPort(8443);
+        request.setContextPath("/app");
+        bind(request);
+
+        assertEquals("https://queue.example.com:8443/app", queueLinks.baseUri());
+        assertSameLinksAsLinkTo();
+    }
+
+    @Test
+    void links_withForwardedHeaders_shouldUseForwardedHostAndPrefix() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/v2/queue");
+        request.addHeader("X-Forwarded-Proto", "https");
+        request.addHeader("X-Forwarded-Host", "proxy.example.com");
+        request.addHeader("X-Forwarded-Port", "443");
+        request.addHeader("X-Forwarded-Prefix", "/queue-manager");
+        bind(forwarded(request));
+
+        assertEquals("https://proxy.example.com/queue-manager", queueLinks.baseUri());
+        assertSameLinksAsLinkTo();
+    }
+
+    @Test
+    void baseUri_shouldBeComputedOncePerRequest() {
+        bind(new MockHttpServletRequest("GET", "/v2/queue"));
+
+        assertSame(queueLinks.baseUri(), queueLinks.baseUri());
+    }
+
+    @Test
+    void links_outsideRequest_shouldBeRelative() {
+        UUID id = UUID.randomUUID();
+
+        assertEquals("/v2/queue/messages/" + id, queueLinks.message(queueLinks.baseUri(), DEFAULT_QUEUE, id, IanaLinkRelations.SELF).getHref());
+        assertEquals("/v2/queues/orders/messages/" + id, queueLinks.message(queueLinks.baseUri(), "orders", id, IanaLinkRelations.SELF).getHref());
+    }
+
+    private void assertSameLinksAsLinkTo() {
+        UUID id = UUID.randomUUID();
+        String baseUri = queueLinks.baseUri();
+
+        assertSameLink(linkTo(methodOn(QueueController.class).getQueueInfo()).withSelfRel(),
+                queueLinks.queue(baseUri, DEFAULT_QUEUE, IanaLinkRelations.SELF));
+        assertSameLink(linkTo(MessageController.class).withRel("enqueue"),
+                queueLinks.enqueue(baseUri, DEFAULT_QUEUE));
+        assertSameLink(linkTo(methodOn(MessageController.class).dequeueMessage()).withRel("dequeue"),
+                queueLinks.dequeue(baseUri, DEFAULT_QUEUE));
+        assertSameLink(linkTo(MessageController.class).withRel("messages"),
+                queueLinks.messages(baseUri, DEFAULT_QUEUE, QueueLinks.MESSAGES));
+        assertSameLink(linkTo(methodOn(MessageController.class).getMessage(id)).withSelfRel(),
+                queueLinks.message(baseUri, DEFAULT_QUEUE, id, IanaLinkRelations.SELF));
+        assertSameLink(linkTo(methodOn(PurgeController.class).getPurge(id)).withRel("queue"),
+                queueLinks.purge(baseUri, id, QueueLinks.QUEUE));
+        assertSameLink(linkTo(DeadLetterController.class).withRel("deadLetters"),
+                queueLinks.deadLetters(baseUri, DEFAULT_QUEUE, QueueLinks.DEAD_LETTERS));
+        assertSameLink(linkTo(methodOn(DeadLetterController.class).getDeadLetter(id)).withSelfRel(),
+                queueLinks.deadLetter(baseUri, DEFAULT_QUEUE, id, IanaLinkRelations.SELF));
+        assertSameLink(linkTo(methodOn(DeadLetterController.class).requeueDeadLetter(id)).withRel("requeue"),
+                queueLinks.requeue(baseUri, DEFAULT_QUEUE, id));
+        // The visibility timeout is optional, so the lease links are not templated
+        assertSameLink(linkTo(LeaseController.class).withRel("lease"),
+                queueLinks.lease(baseUri, DEFAULT_QUEUE));
+        assertSameLink(linkTo(LeaseController.class).slash(id).withRel("ack"),
+                queueLinks.ack(baseUri, DEFAULT_QUEUE, id));
+        assertSameLink(linkTo(LeaseController.class).slash(id).slash("extend").withRel("extend"),
+                queueLinks.extend(baseUri, DEFAULT_QUEUE, id));
+
+        assertSameLink(linkTo(methodOn(NamedQueueController.class).getQueues()).withRel("queues"),
+                queueLinks.queues(baseUri, QueueLinks.QUEUES));
+        assertSameLink(linkTo(methodOn(NamedQueueController.class).getQueue("orders")).withSelfRel(),
+                queueLinks.queue(baseUri, "orders", IanaLinkRelations.SELF));
+        assertSameLink(linkTo(NamedQueueMessageController.class, "orders").withRel("enqueue"),
+                queueLinks.enqueue(baseUri, "orders"));
+        assertSameLink(linkTo(methodOn(NamedQueueMessageController.class).dequeueMessage("orders")).withRel("dequeue"),
+                queueLinks.dequeue(baseUri, "orders"));
+        assertSameLink(linkTo(NamedQueueMessageController.class, "orders").withRel("messages"),
+                queueLinks.messages(baseUri, "orders", QueueLinks.MESSAGES));
+        assertSameLink(linkTo(methodOn(NamedQueueMessageController.class).getMessage("orders", id)).withSelfRel(),
+                queueLinks.message(baseUri, "orders", id, IanaLinkRelations.SELF));
+        assertSameLink(linkTo(NamedQueueDeadLetterController.class, "orders").withRel("deadLetters"),
+                queueLinks.deadLetters(baseUri, "orders", QueueLinks.DEAD_LETTERS));
+        assertSameLink(linkTo(methodOn(NamedQueueDeadLetterController.class).getDeadLetter("orders", id)).withSelfRel(),
+                queueLinks.deadLetter(baseUri, "orders", id, IanaLinkRelations.SELF));
+        assertSameLink(linkTo(methodOn(NamedQueueDeadLetterController.class).requeueDeadLetter("orders", id)).withRel("requeue"),
+                queueLinks.requeue(baseUri, "orders", id));
+        assertSameLink(linkTo(NamedQueueLeaseController.class, "orders").withRel("lease"),
+                queueLinks.lease(baseUri, "orders"));
+        assertSameLink(linkTo(NamedQueueLeaseController.class, "orders").slash(id).withRel("ack"),
+                queueLinks.ack(baseUri, "orders", id));
+        assertSameLink(linkTo(NamedQueueLeaseController.class, "orders").slash(id).slash("extend").withRel("extend"),
+                queueLinks.extend(baseUri, "orders", id));
+    }
+
+    // linkTo also attaches affordances, which HAL does not render, so only what is rendered is compared
+    private static void assertSameLink(Link expected, Link actual) {
+        assertEquals(expected.getRel(), actual.getRel());
+        assertEquals(expected.getHref(), actual.getHref());
+        assertEquals(expected.isTemplated(), actual.isTemplated());
+    }
+
+    private static void bind(HttpServletRequest request) {
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(request));
+    }
+
+    private static HttpServletRequest forwarded(MockHttpServletRequest request) throws Exception {
+        AtomicReference<HttpServletRequest> forwardedRequest = new AtomicReference<>();
+        new ForwardedHeaderFilter().doFilter(request, new MockHttpServletResponse(),
+                (filteredRequest, response) -> forwardedRequest.set((HttpServletRequest) filteredRequest));
+        return forwardedRequest.get();
+    }
+}
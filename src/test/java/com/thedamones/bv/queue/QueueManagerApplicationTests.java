@@ -1,13 +1,47 @@
 package com.thedamones.bv.queue;
 
 import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.actuate.observability.AutoConfigureObservability;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 @SpringBootTest
+@AutoConfigureMockMvc
+@AutoConfigureObservability
 class QueueManagerApplicationTests {
 
+	@Autowired
+	private MockMvc mockMvc;
+
 	@Test
 	void contextLoads() {
 	}
 
+	@Test
+	void prometheusEndpoint_shouldExposeQueueMetrics() throws Exception {
+		mockMvc.perform(get("/actuator/prometheus"))
+				.andExpect(status().isOk())
+				.andExpect(content().string(containsString("queue_depth")))
+				.andExpect(content().string(containsString("queue_message_processing_seconds_bucket")));
+	}
+
+	@Test
+	void acceptMessage_withoutGroupCommit_shouldStoreMessageAndReturnCreated() throws Exception {
+		mockMvc.perform(post("/v2/queues/accepted/messages").param("durable", "false")
+						.contentType(MediaType.APPLICATION_JSON)
+						.content("{\"text\":\"Not buffered\",\"dataSize\":0}"))
+				.andExpect(status().isCreated())
+				.andExpect(jsonPath("$.text").value("Not buffered"));
+	}
+
 }
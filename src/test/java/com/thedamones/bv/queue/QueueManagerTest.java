@@ -0,0 +1,446 @@
+package com.thedamones.bv.queue;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.thedamones.bv.queue.QueueRegistry.DEFAULT_QUEUE;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class QueueManagerTest {
+
+    private static final int MESSAGE_COUNT = 16;
+    private static final int DATA_SIZE = 50;
+
+    @Mock
+    private MessageService messageService;
+
+    @Mock
+    private QueueRegistry queueRegistry;
+
+    @Test
+    void processingLoop_shouldScaleWithWorkerCount() throws InterruptedException {
+        Duration oneWorker = drainQueue(1);
+        Duration fourWorkers = drainQueue(4);
+
+        // 16 x 50ms is ~800ms with one worker; four workers should finish in roughly a quarter of that
+        assertTrue(fourWorkers.multipliedBy(2).compareTo(oneWorker) < 0,
+                "Expected 4 workers (" + fourWorkers + ") to be at least twice as fast as 1 worker (" + oneWorker + ")");
+    }
+
+    @Test
+    void processingLoop_whenOneQueueIsSlow_shouldKeepProcessingOtherQueues() throws InterruptedException {
+        CountDownLatch slowStarted = new CountDownLatch(1);
+        CountDownLatch slowReleased = new CountDownLatch(1);
+        CountDownLatch fastProcessed = new CountDownLatch(MESSAGE_COUNT);
+        AtomicInteger fastRemaining = new AtomicInteger(MESSAGE_COUNT);
+
+        when(messageService.leaseMessage(eq("slow"), any(), any())).thenReturn(lease(new MessageRecord(UUID.randomUUID(), "text", 0, Instant.now(), "slow")));
+        doAnswer(invocation -> {
+            if (fastRemaining.getAndDecrement() <= 0) {
+                throw new MessageNotFoundException("Queue is empty");
+            }
+            return lease(new MessageRecord(UUID.randomUUID(), "text", 0, Instant.now(), "fast"));
+        }).when(messageService).leaseMessage(eq("fast"), any(), any());
+
+        QueueMessageProcessor processor = new QueueMessageProcessor() {
+            @Override
+            public void process(MessageRecord message) {
+                if (message.queue().equals("slow")) {
+                    slowStarted.countDown();
+                    try {
+                        slowReleased.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                } else {
+                    fastProcessed.countDown();
+                }
+            }
+        };
+        QueueManager queueManager = queueManager(processor, 1, "fast", "slow");
+
+        queueManager.startProcessing();
+        try {
+            assertTrue(slowStarted.await(1, TimeUnit.SECONDS));
+            // the only worker of the slow queue is stuck, the fast queue is drained by its own worker
+            assertTrue(fastProcessed.await(1, TimeUnit.SECONDS));
+        } finally {
+            slowReleased.countDown();
+            queueManager.stopProcessing();
+        }
+    }
+
+    @Test
+    void handleMessageEnqueuedEvent_forNewQueue_shouldStartItsWorkers() throws InterruptedException {
+        MessageRecord messageRecord = new MessageRecord(UUID.randomUUID(), "text", 0, Instant.now(), "orders");
+        when(messageService.leaseMessage(eq(DEFAULT_QUEUE), any(), any())).thenThrow(new MessageNotFoundException("Queue is empty"));
+        when(messageService.leaseMessage(eq("orders"), any(), any())).thenReturn(lease(messageRecord)).thenThrow(new MessageNotFoundException("Queue is empty"));
+        CountDownLatch processed = new CountDownLatch(1);
+        QueueManager queueManager = queueManager(countingProcessor(processed), 1);
+
+        queueManager.startProcessing();
+        try {
+            queueManager.handleMessageEnqueuedEvent(new MessageEnqueuedEvent(messageRecord));
+
+            assertTrue(processed.await(1, TimeUnit.SECONDS));
+        } finally {
+            queueManager.stopProcessing();
+        }
+    }
+
+    @Test
+    void processingLoop_shouldAcknowledgeLeaseOnceMessageIsProcessed() {
+        LeaseRecord lease = lease(new MessageRecord(UUID.randomUUID(), "text", 0, Instant.now()));
+        when(messageService.leaseMessage(eq(DEFAULT_QUEUE), any(), any()))
+                .thenReturn(lease)
+                .thenThrow(new MessageNotFoundException("Queue is empty"));
+        QueueManager queueManager = queueManager(new QueueMessageProcessor(), 1);
+
+        queueManager.startProcessing();
+        try {
+            verify(messageService, timeout(1000)).acknowledge(lease);
+            verify(messageService, never()).failMessage(any(), any());
+        } finally {
+            queueManager.stopProcessing();
+        }
+    }
+
+    @Test
+    void stopProcessing_shouldStopIdleWorkers() {
+        when(messageService.leaseMessage(eq(DEFAULT_QUEUE), any(), any())).thenThrow(new MessageNotFoundException("Queue is empty"));
+        QueueManager queueManager = queueManager(new QueueMessageProcessor(), 4);
+
+        queueManager.startProcessing();
+        verify(messageService, timeout(1000).times(4)).leaseMessage(eq(DEFAULT_QUEUE), any(), any());
+
+        assertTimeoutPreemptively(Duration.ofSeconds(1), queueManager::stopProcessing);
+    }
+
+    @Test
+    void processingLoop_whenProcessingFails_shouldFailMessageAndMoveOn() throws InterruptedException {
+        LeaseRecord failing = lease(new MessageRecord(UUID.randomUUID(), "failing", 0, Instant.now()));
+        LeaseRecord next = lease(new MessageRecord(UUID.randomUUID(), "next", 0, Instant.now()));
+        when(messageService.leaseMessage(eq(DEFAULT_QUEUE), any(), any()))
+                .thenReturn(failing)
+                .thenReturn(next)
+                .thenThrow(new MessageNotFoundException("Queue is empty"));
+        IllegalStateException error = new IllegalStateException("failed");
+        CountDownLatch processed = new CountDownLatch(1);
+        QueueManager queueManager = queueManager(new QueueMessageProcessor() {
+            @Override
+            public void process(MessageRecord message) {
+                if (message == failing.message()) {
+                    throw error;
+                }
+                processed.countDown();
+            }
+        }, 1);
+
+        queueManager.startProcessing();
+        try {
+            verify(messageService, timeout(1000)).failMessage(failing, error);
+            assertTrue(processed.await(1, TimeUnit.SECONDS));
+            verify(messageService, never()).failMessage(eq(next), any());
+            verify(messageService, timeout(1000)).acknowledge(next);
+            verify(messageService, never()).acknowledge(failing);
+        } finally {
+            queueManager.stopProcessing();
+        }
+    }
+
+    @Test
+    void startDelivery_shouldDeliverDueMessagesAndFollowTheSchedule() {
+        when(messageService.leaseMessage(eq(DEFAULT_QUEUE), any(), any())).thenThrow(new MessageNotFoundException("Queue is empty"));
+        when(messageService.deliverDueMessages())
+                .thenReturn(Optional.of(Instant.now().plusMillis(50)))
+                .thenReturn(Optional.empty());
+        QueueManager queueManager = queueManager(new QueueMessageProcessor(), 1);
+
+        queueManager.startProcessing();
+        queueManager.startDelivery();
+        try {
+            // Once at startup, for what came due while stopped, then at the next delivery time it returned
+            verify(messageService, timeout(1000).times(2)).deliverDueMessages();
+        } finally {
+            queueManager.stopProcessing();
+        }
+    }
+
+    @Test
+    void handleMessageScheduledEvent_shouldDeliverAtTheDeliveryTime() {
+        when(messageService.leaseMessage(eq(DEFAULT_QUEUE), any(), any())).thenThrow(new MessageNotFoundException("Queue is empty"));
+        QueueManager queueManager = queueManager(new QueueMessageProcessor(), 1);
+
+        queueManager.startProcessing();
+        try {
+            queueManager.handleMessageScheduledEvent(new MessageScheduledEvent(Instant.now().plusMillis(50)));
+
+            verify(messageService, timeout(1000).times(1)).deliverDueMessages();
+        } finally {
+            queueManager.stopProcessing();
+        }
+    }
+
+    @Test
+    void handleMessageEnqueuedEvent_whenWorkerIdle_shouldHandOffMessageWithoutSearchingTheDatabase() throws InterruptedException {
+        MessageRecord messageRecord = new MessageRecord(UUID.randomUUID(), "text", 0, Instant.now());
+        when(messageService.leaseMessage(eq(DEFAULT_QUEUE), any(), any())).thenThrow(new MessageNotFoundException("Queue is empty"));
+        when(messageService.leaseMessage(eq(messageRecord), any())).thenReturn(Optional.of(lease(messageRecord)));
+        CountDownLatch processed = new CountDownLatch(1);
+        QueueManager queueManager = queueManager(countingProcessor(processed), 1);
+
+        queueManager.startProcessing();
+        try {
+            awaitIdleWorker(queueManager);
+            queueManager.handleMessageEnqueuedEvent(new MessageEnqueuedEvent(messageRecord));
+
+            // leasing from the database never returns a message, so it can only have been processed through the handoff
+            assertTrue(processed.await(1, TimeUnit.SECONDS));
+            verify(messageService).leaseMessage(eq(messageRecord), any());
+        } finally {
+            queueManager.stopProcessing();
+        }
+    }
+
+    @Test
+    void handleMessageEnqueuedEvent_whenWorkerIdle_shouldHandOffHighestPriorityFirst() throws InterruptedException {
+        MessageRecord low = new MessageRecord(UUID.randomUUID(), "low", 0, Instant.now(), DEFAULT_QUEUE, 0);
+        MessageRecord high = new MessageRecord(UUID.randomUUID(), "high", 0, Instant.now(), DEFAULT_QUEUE, 5);
+        when(messageService.leaseMessage(eq(DEFAULT_QUEUE), any(), any())).thenThrow(new MessageNotFoundException("Queue is empty"));
+        when(messageService.leaseMessage(any(MessageRecord.class), any())).thenAnswer(invocation -> Optional.of(lease(invocation.getArgument(0))));
+        CountDownLatch processed = new CountDownLatch(2);
+        QueueManager queueManager = queueManager(countingProcessor(processed), 1);
+
+        queueManager.startProcessing();
+        try {
+            awaitIdleWorker(queueManager);
+            queueManager.handleMessageEnqueuedEvent(new MessageEnqueuedEvent(List.of(low, high)));
+
+            assertTrue(processed.await(1, TimeUnit.SECONDS));
+            InOrder inOrder = inOrder(messageService);
+            inOrder.verify(messageService).leaseMessage(eq(high), any());
+            inOrder.verify(messageService).leaseMessage(eq(low), any());
+        } finally {
+            queueManager.stopProcessing();
+        }
+    }
+
+    @Test
+    void handleMessageEnqueuedEvent_withShortestJobFirst_shouldHandOffCheapestFirst() throws InterruptedException {
+        MessageRecord expensive = new MessageRecord(UUID.randomUUID(), "expensive", 50, Instant.now(), DEFAULT_QUEUE, 5);
+        MessageRecord cheap = new MessageRecord(UUID.randomUUID(), "cheap", 5, Instant.now(), DEFAULT_QUEUE, 0);
+        when(messageService.leaseMessage(eq(DEFAULT_QUEUE), any(), any())).thenThrow(new MessageNotFoundException("Queue is empty"));
+        when(messageService.leaseMessage(any(MessageRecord.class), any())).thenAnswer(invocation -> Optional.of(lease(invocation.getArgument(0))));
+        CountDownLatch processed = new CountDownLatch(2);
+        QueueProperties queueProperties = queueProperties(1);
+        queueProperties.getScheduling().setPolicy(SchedulingPolicy.SHORTEST_JOB_FIRST);
+        QueueManager queueManager = queueManager(countingProcessor(processed), queueProperties, DEFAULT_QUEUE);
+
+        queueManager.startProcessing();
+        try {
+            awaitIdleWorker(queueManager);
+            verify(messageService).leaseMessage(eq(DEFAULT_QUEUE), any(),
+                    argThat(scheduler -> scheduler.getPolicy() == SchedulingPolicy.SHORTEST_JOB_FIRST));
+            queueManager.handleMessageEnqueuedEvent(new MessageEnqueuedEvent(List.of(expensive, cheap)));
+
+            assertTrue(processed.await(1, TimeUnit.SECONDS));
+            InOrder inOrder = inOrder(messageService);
+            inOrder.verify(messageService).leaseMessage(eq(cheap), any());
+            inOrder.verify(messageService).leaseMessage(eq(expensive), any());
+        } finally {
+            queueManager.stopProcessing();
+        }
+    }
+
+    @Test
+    void handleMessageEnqueuedEvent_whenHandedOffMessageAlreadyLeased_shouldFallBackToDatabase() throws InterruptedException {
+        MessageRecord messageRecord = new MessageRecord(UUID.randomUUID(), "text", 0, Instant.now());
+        when(messageService.leaseMessage(eq(DEFAULT_QUEUE), any(), any())).thenThrow(new MessageNotFoundException("Queue is empty"));
+        when(messageService.leaseMessage(eq(messageRecord), any())).thenReturn(Optional.empty());
+        QueueManager queueManager = queueManager(new QueueMessageProcessor(), 1);
+
+        queueManager.startProcessing();
+        try {
+            awaitIdleWorker(queueManager);
+            queueManager.handleMessageEnqueuedEvent(new MessageEnqueuedEvent(messageRecord));
+
+            verify(messageService, timeout(1000).times(2)).leaseMessage(eq(DEFAULT_QUEUE), any(), any());
+            verify(messageService).leaseMessage(eq(messageRecord), any());
+        } finally {
+            queueManager.stopProcessing();
+        }
+    }
+
+    @Test
+    void processingLoop_withBatchSize_shouldAcknowledgeSucceededMessagesAndFailEachFailedOne() {
+        LeaseRecord first = lease(new MessageRecord(UUID.randomUUID(), "first", 0, Instant.now()));
+        LeaseRecord failing = lease(new MessageRecord(UUID.randomUUID(), "failing", 0, Instant.now()));
+        LeaseRecord last = lease(new MessageRecord(UUID.randomUUID(), "last", 0, Instant.now()));
+        when(messageService.leaseMessages(eq(DEFAULT_QUEUE), eq(10), any()))
+                .thenReturn(List.of(first, failing, last))
+                .thenReturn(List.of());
+        IllegalStateException error = new IllegalStateException("failed");
+        QueueProperties queueProperties = queueProperties(1);
+        queueProperties.getWorkers().setBatchSize(10);
+        QueueManager queueManager = queueManager(messages -> {
+            assertEquals(List.of(first.message(), failing.message(), last.message()), messages);
+            return Map.of(failing.message().id(), error);
+        }, queueProperties, DEFAULT_QUEUE);
+
+        queueManager.startProcessing();
+        try {
+            verify(messageService, timeout(1000)).failMessage(failing, error);
+            verify(messageService, timeout(1000)).acknowledgeLeases(DEFAULT_QUEUE, List.of(first.id(), last.id()));
+            verify(messageService, never()).failMessage(eq(first), any());
+            verify(messageService, never()).failMessage(eq(last), any());
+        } finally {
+            queueManager.stopProcessing();
+        }
+    }
+
+    @Test
+    void processingLoop_whenBatchProcessingThrows_shouldFailEveryMessage() {
+        LeaseRecord first = lease(new MessageRecord(UUID.randomUUID(), "first", 0, Instant.now()));
+        LeaseRecord second = lease(new MessageRecord(UUID.randomUUID(), "second", 0, Instant.now()));
+        when(messageService.leaseMessages(eq(DEFAULT_QUEUE), eq(10), any()))
+                .thenReturn(List.of(first, second))
+                .thenReturn(List.of());
+        IllegalStateException error = new IllegalStateException("failed");
+        QueueProperties queueProperties = queueProperties(1);
+        queueProperties.getWorkers().setBatchSize(10);
+        QueueManager queueManager = queueManager(messages -> {
+            throw error;
+        }, queueProperties, DEFAULT_QUEUE);
+
+        queueManager.startProcessing();
+        try {
+            verify(messageService, timeout(1000)).failMessage(first, error);
+            verify(messageService, timeout(1000)).failMessage(second, error);
+            verify(messageService, never()).acknowledgeLeases(any(), any());
+        } finally {
+            queueManager.stopProcessing();
+        }
+    }
+
+    @Test
+    void processingLoop_withBatchWait_shouldFillPartialBatchFromLaterEnqueues() throws InterruptedException {
+        LeaseRecord first = lease(new MessageRecord(UUID.randomUUID(), "first", 0, Instant.now()));
+        LeaseRecord second = lease(new MessageRecord(UUID.randomUUID(), "second", 0, Instant.now()));
+        LeaseRecord third = lease(new MessageRecord(UUID.randomUUID(), "third", 0, Instant.now()));
+        when(messageService.leaseMessages(eq(DEFAULT_QUEUE), eq(3), any()))
+                .thenReturn(List.of(first))
+                .thenReturn(List.of());
+        when(messageService.leaseMessages(eq(DEFAULT_QUEUE), eq(2), any())).thenReturn(List.of(second, third));
+        List<List<MessageRecord>> batches = new CopyOnWriteArrayList<>();
+        QueueProperties queueProperties = queueProperties(1);
+        queueProperties.getWorkers().setBatchSize(3);
+        queueProperties.getWorkers().setBatchWait(Duration.ofSeconds(5));
+        QueueManager queueManager = queueManager(messages -> {
+            batches.add(messages);
+            return Map.of();
+        }, queueProperties, DEFAULT_QUEUE);
+
+        queueManager.startProcessing();
+        try {
+            // the worker waits for the rest of its batch like an idle worker waits for messages
+            awaitIdleWorker(queueManager);
+            queueManager.handleMessageEnqueuedEvent(new MessageEnqueuedEvent(List.of(second.message(), third.message())));
+
+            verify(messageService, timeout(1000)).acknowledgeLeases(DEFAULT_QUEUE, List.of(first.id(), second.id(), third.id()));
+            assertEquals(List.of(List.of(first.message(), second.message(), third.message())), batches);
+            verify(messageService, never()).leaseMessage(any(MessageRecord.class), any());
+        } finally {
+            queueManager.stopProcessing();
+        }
+    }
+
+    private Duration drainQueue(int workerCount) throws InterruptedException {
+        AtomicInteger remaining = new AtomicInteger(MESSAGE_COUNT);
+        CountDownLatch processed = new CountDownLatch(MESSAGE_COUNT);
+
+        doAnswer(invocation -> {
+            if (remaining.getAndDecrement() <= 0) {
+                throw new MessageNotFoundException("Queue is empty");
+            }
+            return lease(new MessageRecord(UUID.randomUUID(), "text", DATA_SIZE, Instant.now()));
+        }).when(messageService).leaseMessage(eq(DEFAULT_QUEUE), any(), any());
+
+        QueueManager queueManager = queueManager(countingProcessor(processed), workerCount);
+        Instant start = Instant.now();
+        queueManager.startProcessing();
+        try {
+            assertTrue(processed.await(10, TimeUnit.SECONDS));
+            return Duration.between(start, Instant.now());
+        } finally {
+            queueManager.stopProcessing();
+        }
+    }
+
+    private static LeaseRecord lease(MessageRecord message) {
+        return new LeaseRecord(UUID.randomUUID(), Instant.now().plusSeconds(30), message);
+    }
+
+    private static QueueMessageProcessor countingProcessor(CountDownLatch processed) {
+        return new QueueMessageProcessor() {
+            @Override
+            public void process(MessageRecord message) {
+                super.process(message);
+                processed.countDown();
+            }
+        };
+    }
+
+    private static void awaitIdleWorker(QueueManager queueManager) throws InterruptedException {
+        for (int i = 0; i < 100 && queueManager.getIdleWorkers(DEFAULT_QUEUE) == 0; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(1, queueManager.getIdleWorkers(DEFAULT_QUEUE));
+    }
+
+    private QueueManager queueManager(BatchMessageProcessor processor, int workerCount) {
+        return queueManager(processor, workerCount, DEFAULT_QUEUE);
+    }
+
+    private QueueManager queueManager(BatchMessageProcessor processor, int workerCount, String... queueNames) {
+        return queueManager(processor, queueProperties(workerCount), queueNames);
+    }
+
+    private QueueManager queueManager(BatchMessageProcessor processor, QueueProperties queueProperties, String... queueNames) {
+        when(queueRegistry.getQueueNames()).thenReturn(List.of(queueNames));
+        return new QueueManager(messageService, processor, new QueueMetrics(new SimpleMeterRegistry()), queueRegistry,
+                queueProperties);
+    }
+
+    private static QueueProperties queueProperties(int workerCount) {
+        QueueProperties queueProperties = new QueueProperties();
+        queueProperties.getWorkers().setCount(workerCount);
+        return queueProperties;
+    }
+}
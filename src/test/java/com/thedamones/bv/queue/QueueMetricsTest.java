@@ -0,0 +1,76 @@
+package com.thedamones.bv.queue;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Instant;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class QueueMetricsTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final QueueMetrics queueMetrics = new QueueMetrics(meterRegistry);
+
+    @BeforeEach
+    void initSynchronization() {
+        TransactionSynchronizationManager.initSynchronization();
+    }
+
+    @AfterEach
+    void clearSynchronization() {
+        TransactionSynchronizationManager.clearSynchronization();
+    }
+
+    @Test
+    void startTransactionTimer_shouldRecordOutcomeWhenTransactionCommits() {
+        queueMetrics.startTransactionTimer(QueueMetrics.ENQUEUE);
+        assertNull(meterRegistry.find("queue.enqueue").timer());
+
+        completeTransaction(TransactionSynchronization.STATUS_COMMITTED);
+
+        assertEquals(1, meterRegistry.get("queue.enqueue").tag("outcome", "success").timer().count());
+        assertNull(meterRegistry.find("queue.errors").counter());
+    }
+
+    @Test
+    void startTransactionTimer_whenRolledBack_shouldCountError() {
+        queueMetrics.startTransactionTimer(QueueMetrics.DEQUEUE);
+
+        completeTransaction(TransactionSynchronization.STATUS_ROLLED_BACK);
+
+        assertEquals(1, meterRegistry.get("queue.dequeue").tag("outcome", "rolled_back").timer().count());
+        assertEquals(1, meterRegistry.get("queue.errors").tag("operation", "dequeue").counter().count());
+    }
+
+    @Test
+    void startTransactionTimer_whenEmptyAndRolledBack_shouldNotCountError() {
+        queueMetrics.startTransactionTimer(QueueMetrics.DEQUEUE).setOutcome(QueueMetrics.OUTCOME_EMPTY);
+
+        completeTransaction(TransactionSynchronization.STATUS_ROLLED_BACK);
+
+        assertEquals(1, meterRegistry.get("queue.dequeue").tag("outcome", "empty").timer().count());
+        assertNull(meterRegistry.find("queue.errors").counter());
+    }
+
+    @Test
+    void recordMessageAge_shouldRecordTimeSinceEnqueue() {
+        MessageRecord message = new MessageRecord(UUID.randomUUID(), "text", 0, Instant.now().minusSeconds(5));
+
+        queueMetrics.recordMessageAge(message);
+
+        assertTrue(meterRegistry.get("queue.message.age").timer().totalTime(TimeUnit.SECONDS) >= 5);
+    }
+
+    private static void completeTransaction(int status) {
+        TransactionSynchronizationManager.getSynchronizations().forEach(synchronization -> synchronization.afterCompletion(status));
+    }
+}
@@ -0,0 +1,74 @@
+package com.thedamones.bv.queue;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.List;
+import java.util.Set;
+
+import static com.thedamones.bv.queue.QueueRegistry.DEFAULT_QUEUE;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class QueueRegistryTest {
+
+    @Mock
+    private QueueDepthCounter queueDepthCounter;
+
+    private final QueueProperties queueProperties = new QueueProperties();
+
+    private QueueRegistry queueRegistry;
+
+    @BeforeEach
+    void setUp() {
+        queueProperties.getQueues().put("configured", new QueueProperties.NamedQueue());
+        queueProperties.setMaxQueues(4);
+        when(queueDepthCounter.getQueueNames()).thenReturn(Set.of("stored"));
+
+        queueRegistry = new QueueRegistry(queueDepthCounter, queueProperties);
+        queueRegistry.initialize();
+    }
+
+    @Test
+    void initialize_shouldRegisterDefaultConfiguredAndStoredQueues() {
+        assertEquals(List.of("configured", DEFAULT_QUEUE, "stored"), queueRegistry.getQueueNames());
+        verify(queueDepthCounter).track(DEFAULT_QUEUE);
+        verify(queueDepthCounter).track("configured");
+    }
+
+    @Test
+    void getOrCreate_shouldCreateQueueOnce() {
+        QueueThroughput created = queueRegistry.getOrCreate("orders");
+
+        assertSame(created, queueRegistry.getOrCreate("orders"));
+        assertSame(created, queueRegistry.get("orders"));
+        verify(queueDepthCounter).track("orders");
+    }
+
+    @Test
+    void getOrCreate_withInvalidName_shouldThrowException() {
+        assertThrows(InvalidQueueNameException.class, () -> queueRegistry.getOrCreate("orders/2024"));
+        assertThrows(InvalidQueueNameException.class, () -> queueRegistry.getOrCreate(".hidden"));
+        assertThrows(InvalidQueueNameException.class, () -> queueRegistry.getOrCreate("q".repeat(65)));
+    }
+
+    @Test
+    void getOrCreate_whenLimitReached_shouldThrowException() {
+        queueRegistry.getOrCreate("orders");
+
+        assertThrows(QueueLimitExceededException.class, () -> queueRegistry.getOrCreate("invoices"));
+        assertSame(queueRegistry.get("orders"), queueRegistry.getOrCreate("orders"));
+    }
+
+    @Test
+    void get_whenUnknown_shouldThrowException() {
+        assertThrows(QueueNotFoundException.class, () -> queueRegistry.get("unknown"));
+    }
+}
@@ -0,0 +1,177 @@
+package com.thedamones.bv.queue;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.stream.IntStream;
+
+import static com.thedamones.bv.queue.QueueRegistry.DEFAULT_QUEUE;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class QueueSchedulerTest {
+
+    private final Instant now = Instant.now();
+
+    @Test
+    void next_withFifo_shouldLeaseHeadOfQueue() {
+        QueueScheduler scheduler = scheduler(SchedulingPolicy.FIFO, new QueueProperties.Scheduling());
+        ReadyMessages ready = new ReadyMessages(message(5000, 0), message(5, 0), message(50, 5));
+
+        assertEquals(List.of(50, 5000, 5), leaseAll(scheduler, ready));
+    }
+
+    @Test
+    void next_withShortestJobFirst_shouldLeaseCheapestSizeClassFirst() {
+        QueueScheduler scheduler = scheduler(SchedulingPolicy.SHORTEST_JOB_FIRST, new QueueProperties.Scheduling());
+        ReadyMessages ready = new ReadyMessages(message(5000, 0), message(50, 0), message(5, 0), message(8, 5));
+
+        assertEquals(List.of(8, 5, 50, 5000), leaseAll(scheduler, ready));
+    }
+
+    @Test
+    void next_withShortestJobFirst_shouldLeaseMessagesReadyLongerThanAgingFirst() {
+        QueueProperties.Scheduling properties = new QueueProperties.Scheduling();
+        properties.setAging(Duration.ofSeconds(60));
+        QueueScheduler scheduler = scheduler(SchedulingPolicy.SHORTEST_JOB_FIRST, properties);
+        ReadyMessages ready = new ReadyMessages(
+                message(60000, now.minusSeconds(61)), message(5, now.minusSeconds(30)), message(30000, now.minusSeconds(10)));
+
+        assertEquals(List.of(60000, 5, 30000), leaseAll(scheduler, ready));
+    }
+
+    @Test
+    void next_withWeightedFair_shouldShareProcessingTimeBetweenSizeClassesByWeight() {
+        QueueProperties.Scheduling properties = new QueueProperties.Scheduling();
+        properties.setWeights(List.of(1.0, 1.0, 1.0, 3.0, 1.0));
+        QueueScheduler scheduler = scheduler(SchedulingPolicy.WEIGHTED_FAIR, properties);
+        ReadyMessages ready = new ReadyMessages();
+        IntStream.range(0, 5000).forEach(i -> ready.add(message(5, 0)));
+        IntStream.range(0, 100).forEach(i -> ready.add(message(5000, 0)));
+
+        List<Integer> leased = IntStream.range(0, 2000)
+                .mapToObj(i -> scheduler.next(ready, now).orElseThrow().dataSize())
+                .toList();
+
+        long cheapTime = leased.stream().filter(dataSize -> dataSize == 5).mapToLong(Integer::longValue).sum();
+        long expensiveTime = leased.stream().filter(dataSize -> dataSize == 5000).mapToLong(Integer::longValue).sum();
+        assertTrue(expensiveTime > 0);
+        assertTrue(Math.abs(expensiveTime - 3 * cheapTime) <= 5000, cheapTime + " vs " + expensiveTime);
+    }
+
+    @Test
+    void next_withWeightedFair_shouldNotCreditSizeClassesWhileTheyAreIdle() {
+        QueueScheduler scheduler = scheduler(SchedulingPolicy.WEIGHTED_FAIR, new QueueProperties.Scheduling());
+        ReadyMessages ready = new ReadyMessages();
+        IntStream.range(0, 1000).forEach(i -> ready.add(message(5, 0)));
+        IntStream.range(0, 1000).forEach(i -> scheduler.next(ready, now).orElseThrow());
+
+        IntStream.range(0, 10).forEach(i -> ready.add(message(5000, 0)));
+        IntStream.range(0, 1000).forEach(i -> ready.add(message(5, 0)));
+        List<Integer> leased = IntStream.range(0, 10)
+                .mapToObj(i -> scheduler.next(ready, now).orElseThrow().dataSize())
+                .toList();
+
+        assertEquals(1, leased.stream().filter(dataSize -> dataSize == 5000).count(), leased.toString());
+    }
+
+    @Test
+    void charge_withWeightedFair_shouldCountHandedOffMessages() {
+        QueueScheduler scheduler = scheduler(SchedulingPolicy.WEIGHTED_FAIR, new QueueProperties.Scheduling());
+        scheduler.charge(message(5000, 0));
+        ReadyMessages ready = new ReadyMessages(message(5000, 0), message(5, 0), message(5, 0));
+
+        assertEquals(List.of(5, 5, 5000), leaseAll(scheduler, ready));
+    }
+
+    @Test
+    void handoffOrder_shouldMatchPolicy() {
+        MessageRecord expensive = message(5000, 5);
+        MessageRecord cheap = message(5, 0);
+
+        assertEquals(expensive, minimum(scheduler(SchedulingPolicy.FIFO, new QueueProperties.Scheduling()).handoffOrder(), expensive, cheap));
+        assertEquals(cheap, minimum(scheduler(SchedulingPolicy.WEIGHTED_FAIR, new QueueProperties.Scheduling()).handoffOrder(), expensive, cheap));
+    }
+
+    @Test
+    void constructor_withoutOneWeightPerSizeClass_shouldThrowException() {
+        QueueProperties.Scheduling properties = new QueueProperties.Scheduling();
+        properties.setWeights(List.of(1.0, 2.0));
+        assertThrows(IllegalArgumentException.class, () -> scheduler(SchedulingPolicy.WEIGHTED_FAIR, properties));
+
+        properties.setWeights(List.of(1.0, 1.0, 0.0, 1.0, 1.0));
+        assertThrows(IllegalArgumentException.class, () -> scheduler(SchedulingPolicy.WEIGHTED_FAIR, properties));
+    }
+
+    private static QueueScheduler scheduler(SchedulingPolicy policy, QueueProperties.Scheduling properties) {
+        return new QueueScheduler(policy, properties);
+    }
+
+    private List<Integer> leaseAll(QueueScheduler scheduler, ReadyMessages ready) {
+        List<Integer> dataSizes = new ArrayList<>();
+        Optional<MessageRecord> next;
+        while ((next = scheduler.next(ready, now)).isPresent()) {
+            dataSizes.add(next.get().dataSize());
+        }
+        return dataSizes;
+    }
+
+    private static MessageRecord minimum(Comparator<MessageRecord> order, MessageRecord... messages) {
+        return List.of(messages).stream().min(order).orElseThrow();
+    }
+
+    private MessageRecord message(int dataSize, int priority) {
+        return new MessageRecord(UUID.randomUUID(), "text", dataSize, now, DEFAULT_QUEUE, priority);
+    }
+
+    private static MessageRecord message(int dataSize, Instant timestamp) {
+        return new MessageRecord(UUID.randomUUID(), "text", dataSize, timestamp, DEFAULT_QUEUE);
+    }
+
+    /**
+     * Ready messages in arrival order, leased the way the repository leases them.
+     */
+    private static class ReadyMessages implements QueueScheduler.Candidates {
+
+        private static final Comparator<MessageRecord> HEAD_ORDER = Comparator.comparingInt(MessageRecord::priority).reversed();
+
+        private final List<MessageRecord> messages = new ArrayList<>();
+
+        ReadyMessages(MessageRecord... messages) {
+            this.messages.addAll(List.of(messages));
+        }
+
+        void add(MessageRecord message) {
+            messages.add(message);
+        }
+
+        @Override
+        public Optional<MessageRecord> first() {
+            return take(messages.stream().min(HEAD_ORDER));
+        }
+
+        @Override
+        public Optional<MessageRecord> oldestReadySince(Instant readySince) {
+            return take(messages.stream().findFirst().filter(oldest -> !oldest.timestamp().isAfter(readySince)));
+        }
+
+        @Override
+        public Optional<MessageRecord> firstInSizeClass(int sizeClass) {
+            return take(messages.stream()
+                    .filter(message -> Message.sizeClass(message.dataSize()) == sizeClass)
+                    .min(HEAD_ORDER));
+        }
+
+        private Optional<MessageRecord> take(Optional<MessageRecord> message) {
+            message.ifPresent(messages::remove);
+            return message;
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package com.thedamones.bv.queue;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class QueueThroughputTest {
+
+    private final AtomicLong nanoTime = new AtomicLong();
+    private final QueueThroughput queueThroughput = new QueueThroughput(nanoTime::get);
+
+    @Test
+    void toRecord_shouldCountTotals() {
+        queueThroughput.recordEnqueued(3);
+        queueThroughput.recordEnqueued(2);
+        queueThroughput.recordDequeued(4);
+
+        ThroughputRecord throughput = queueThroughput.toRecord();
+
+        assertEquals(5, throughput.enqueued());
+        assertEquals(4, throughput.dequeued());
+    }
+
+    @Test
+    void toRecord_beforeFirstTick_shouldReportNoRate() {
+        queueThroughput.recordEnqueued(100);
+
+        assertEquals(0, queueThroughput.toRecord().enqueuedPerSecond());
+    }
+
+    @Test
+    void toRecord_atSteadyRate_shouldConvergeToThatRate() {
+        // 50 messages every 5 second tick, i.e. 10 per second, for 5 minutes
+        for (int tick = 0; tick < 60; tick++) {
+            queueThroughput.recordEnqueued(50);
+            advanceSeconds(5);
+        }
+
+        assertEquals(10, queueThroughput.toRecord().enqueuedPerSecond(), 0.1);
+        assertEquals(0, queueThroughput.toRecord().dequeuedPerSecond());
+    }
+
+    @Test
+    void toRecord_whenIdle_shouldDecayRate() {
+        for (int tick = 0; tick < 60; tick++) {
+            queueThroughput.recordDequeued(50);
+            advanceSeconds(5);
+        }
+        double busyRate = queueThroughput.toRecord().dequeuedPerSecond();
+
+        advanceSeconds(60);
+
+        double idleRate = queueThroughput.toRecord().dequeuedPerSecond();
+        // one minute without messages divides a one-minute average by e
+        assertEquals(busyRate / Math.E, idleRate, 0.1);
+        assertTrue(idleRate > 0);
+    }
+
+    private void advanceSeconds(long seconds) {
+        nanoTime.addAndGet(TimeUnit.SECONDS.toNanos(seconds));
+    }
+}
@@ -0,0 +1,33 @@
+package com.thedamones.bv.queue;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+
+class SchemaUpdateIntegrationTest {
+
+    @Test
+    void start_againstExistingFileDatabase_shouldUpdateSchemaWithoutErrors() {
+        String url = "jdbc:h2:file:./target/data/schema-update-" + UUID.randomUUID();
+
+        assertDoesNotThrow(() -> start(url).close());
+        assertDoesNotThrow(() -> start(url).close());
+    }
+
+    /**
+     * Starts the application with {@code ddl-auto=update} halting on the first failing DDL statement, so that a mapping
+     * Hibernate cannot reconcile with the schema it created itself fails the start instead of only being logged.
+     */
+    private static ConfigurableApplicationContext start(String url) {
+        return new SpringApplicationBuilder(QueueManagerApplication.class)
+                .properties("server.port=0",
+                        "spring.datasource.url=" + url,
+                        "spring.jpa.hibernate.ddl-auto=update",
+                        "spring.jpa.properties.hibernate.hbm2ddl.halt_on_error=true")
+                .run();
+    }
+}
@@ -0,0 +1,40 @@
+package com.thedamones.bv.queue;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TimeOrderedUuidGeneratorTest {
+
+    @Test
+    void generate_shouldProduceVersion7Uuid() {
+        UUID uuid = TimeOrderedUuidGenerator.generate();
+
+        assertEquals(7, uuid.version());
+        assertEquals(2, uuid.variant());
+    }
+
+    @Test
+    void generate_shouldEmbedCurrentTime() {
+        long now = System.currentTimeMillis();
+        UUID uuid = TimeOrderedUuidGenerator.generate();
+
+        // the counter carries into the millisecond field when more than 4096 ids are generated in one millisecond,
+        // so a burst of ids may run slightly ahead of the clock
+        long timestamp = uuid.getMostSignificantBits() >>> 16;
+        assertTrue(Math.abs(timestamp - now) < 1000, "timestamp " + timestamp + " is not close to " + now);
+    }
+
+    @Test
+    void generate_shouldBeStrictlyIncreasing() {
+        UUID previous = TimeOrderedUuidGenerator.generate();
+        for (int i = 0; i < 100_000; i++) {
+            UUID next = TimeOrderedUuidGenerator.generate();
+            assertTrue(next.compareTo(previous) > 0, next + " is not after " + previous);
+            previous = next;
+        }
+    }
+}
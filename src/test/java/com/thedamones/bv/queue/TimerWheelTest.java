@@ -0,0 +1,122 @@
+package com.thedamones.bv.queue;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TimerWheelTest {
+
+    private static final Duration TICK = Duration.ofMillis(10);
+
+    private TimerWheel timerWheel;
+
+    @AfterEach
+    void stopTimer() {
+        if (timerWheel != null) {
+            timerWheel.stop();
+        }
+    }
+
+    @Test
+    void schedule_shouldRunTaskOnceDeadlineHasPassed() throws InterruptedException {
+        CountDownLatch ran = new CountDownLatch(1);
+        AtomicReference<Instant> ranAt = new AtomicReference<>();
+        timerWheel = new TimerWheel("test-timer", TICK, 16, () -> {
+            ranAt.set(Instant.now());
+            ran.countDown();
+        });
+        timerWheel.start();
+
+        Instant deadline = Instant.now().plusMillis(100);
+        timerWheel.schedule(deadline);
+
+        assertTrue(ran.await(1, TimeUnit.SECONDS));
+        assertFalse(ranAt.get().isBefore(deadline), "Ran at " + ranAt.get() + ", before " + deadline);
+        assertEquals(0, timerWheel.getPending());
+    }
+
+    @Test
+    void schedule_beyondOneRoundOfTheWheel_shouldNotRunEarly() throws InterruptedException {
+        CountDownLatch ran = new CountDownLatch(1);
+        AtomicReference<Instant> ranAt = new AtomicReference<>();
+        // 4 slots of 10ms: a deadline 200ms ahead goes round the wheel five times
+        timerWheel = new TimerWheel("test-timer", TICK, 4, () -> {
+            ranAt.set(Instant.now());
+            ran.countDown();
+        });
+        timerWheel.start();
+
+        Instant deadline = Instant.now().plusMillis(200);
+        timerWheel.schedule(deadline);
+
+        assertTrue(ran.await(1, TimeUnit.SECONDS));
+        assertFalse(ranAt.get().isBefore(deadline), "Ran at " + ranAt.get() + ", before " + deadline);
+    }
+
+    @Test
+    void schedule_inThePast_shouldRunTaskRightAway() throws InterruptedException {
+        CountDownLatch ran = new CountDownLatch(1);
+        timerWheel = new TimerWheel("test-timer", TICK, 16, ran::countDown);
+        timerWheel.start();
+
+        timerWheel.schedule(Instant.EPOCH);
+
+        assertTrue(ran.await(100, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    void schedule_withinTheSameTick_shouldBeKeptOnce() {
+        AtomicLong clock = new AtomicLong(1_000);
+        timerWheel = new TimerWheel("test-timer", TICK, 16, () -> {
+        }, clock::get);
+
+        timerWheel.schedule(Instant.ofEpochMilli(1_101));
+        timerWheel.schedule(Instant.ofEpochMilli(1_105));
+        timerWheel.schedule(Instant.ofEpochMilli(1_110));
+        timerWheel.schedule(Instant.ofEpochMilli(5_000));
+
+        assertEquals(2, timerWheel.getPending());
+    }
+
+    @Test
+    void task_shouldRunOncePerTickWithExpiredDeadlines() throws InterruptedException {
+        AtomicInteger runs = new AtomicInteger();
+        CountDownLatch ran = new CountDownLatch(2);
+        timerWheel = new TimerWheel("test-timer", TICK, 16, () -> {
+            runs.incrementAndGet();
+            ran.countDown();
+        });
+        timerWheel.start();
+
+        Instant now = Instant.now();
+        for (int i = 0; i < 100; i++) {
+            timerWheel.schedule(now.plusMillis(50));
+        }
+        timerWheel.schedule(now.plusMillis(200));
+
+        assertTrue(ran.await(1, TimeUnit.SECONDS));
+        assertEquals(2, runs.get());
+    }
+
+    @Test
+    void stop_shouldStopIdleTimer() {
+        timerWheel = new TimerWheel("test-timer", TICK, 16, () -> {
+        });
+        timerWheel.start();
+        timerWheel.schedule(Instant.now().plusSeconds(60));
+
+        assertTimeoutPreemptively(Duration.ofSeconds(1), timerWheel::stop);
+    }
+}
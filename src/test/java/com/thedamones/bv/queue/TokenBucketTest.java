@@ -0,0 +1,56 @@
+package com.thedamones.bv.queue;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TokenBucketTest {
+
+    private final AtomicLong nanoTime = new AtomicLong();
+    private final TokenBucket tokenBucket = new TokenBucket(10, 5, nanoTime::get);
+
+    @Test
+    void tryTake_shouldAdmitBurstThenWaitForRefill() {
+        for (int i = 0; i < 5; i++) {
+            assertEquals(0, tokenBucket.tryTake(1));
+        }
+
+        // one token every 100ms
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(100), tokenBucket.tryTake(1));
+        advanceMillis(100);
+        assertEquals(0, tokenBucket.tryTake(1));
+    }
+
+    @Test
+    void tryTake_withBatchLargerThanCapacity_shouldAdmitOnceThenWaitForDebt() {
+        assertEquals(0, tokenBucket.tryTake(20));
+
+        // 15 tokens of debt, plus one to take
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(1600), tokenBucket.tryTake(1));
+        advanceMillis(1600);
+        assertEquals(0, tokenBucket.tryTake(1));
+    }
+
+    @Test
+    void isFull_shouldRefillUpToCapacityOnly() {
+        assertTrue(tokenBucket.isFull());
+        tokenBucket.tryTake(3);
+        assertFalse(tokenBucket.isFull());
+
+        advanceMillis(10_000);
+        assertTrue(tokenBucket.isFull());
+        for (int i = 0; i < 5; i++) {
+            assertEquals(0, tokenBucket.tryTake(1));
+        }
+        assertTrue(tokenBucket.tryTake(1) > 0);
+    }
+
+    private void advanceMillis(long millis) {
+        nanoTime.addAndGet(TimeUnit.MILLISECONDS.toNanos(millis));
+    }
+}
@@ -4,15 +4,28 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.test.context.bean.override.mockito.MockitoBean;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
 
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
 import static com.thedamones.bv.queue.TestMessages.*;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.verifyNoInteractions;
 import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 @WebMvcTest(V1QueueManagerController.class)
@@ -24,12 +37,21 @@ public class V1QueueManagerControllerTest {
     @MockitoBean
     private MessageService messageService;
 
+    @MockitoBean
+    private GroupCommitEnqueuer groupCommitEnqueuer;
+
+    @MockitoBean
+    private LongPollDequeueService longPollDequeueService;
+
+    @MockitoBean
+    private AdmissionControl admissionControl;
+
     @Autowired
     private ObjectMapper objectMapper;
 
     @Test
     void getQueueSize_shouldReturnQueueSize() throws Exception {
-        when(messageService.getQueueSize()).thenReturn(5L);
+        when(messageService.getQueueSize(QueueRegistry.DEFAULT_QUEUE)).thenReturn(5L);
 
         mockMvc.perform(MockMvcRequestBuilders.get("/v1/queue-size"))
                 .andExpect(status().isOk())
@@ -41,22 +63,83 @@ public class V1QueueManagerControllerTest {
         EnqueueMessageRecord request = createTestEnqueueMessageRecord();
         MessageRecord messageRecord = createTestMessageRecord();
 
-        when(messageService.enqueueMessage(any(EnqueueMessageRecord.class))).thenReturn(messageRecord);
+        when(groupCommitEnqueuer.enqueue(eq(QueueRegistry.DEFAULT_QUEUE), any(EnqueueMessageRecord.class)))
+                .thenReturn(CompletableFuture.completedFuture(messageRecord));
 
-        mockMvc.perform(MockMvcRequestBuilders.post("/v1/enqueue")
+        MvcResult mvcResult = mockMvc.perform(MockMvcRequestBuilders.post("/v1/enqueue")
                         .contentType(MediaType.APPLICATION_JSON)
                         .content(objectMapper.writeValueAsString(request)))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(mvcResult))
                 .andExpect(status().isCreated())
                 .andExpect(content().json(objectMapper.writeValueAsString(messageRecord)));
     }
 
+    @Test
+    void enqueueMessages_shouldReturnCreatedMessages() throws Exception {
+        List<EnqueueMessageRecord> request = List.of(createTestEnqueueMessageRecord(), createTestEnqueueMessageRecord());
+        List<MessageRecord> messageRecords = List.of(createTestMessageRecord(), createTestMessageRecord());
+
+        when(messageService.enqueueMessages(eq(QueueRegistry.DEFAULT_QUEUE), anyList())).thenReturn(messageRecords);
+
+        mockMvc.perform(MockMvcRequestBuilders.post("/v1/enqueue-batch")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(request)))
+                .andExpect(status().isCreated())
+                .andExpect(content().json(objectMapper.writeValueAsString(messageRecords)));
+    }
+
+    @Test
+    void enqueueMessages_whenRejected_shouldReturnTooManyRequestsWithRetryAfter() throws Exception {
+        List<EnqueueMessageRecord> request = List.of(createTestEnqueueMessageRecord(), createTestEnqueueMessageRecord());
+
+        doThrow(new QueueOverloadedException("Queue default is over its high watermark", Duration.ofMillis(2500)))
+                .when(admissionControl).admit(eq(QueueRegistry.DEFAULT_QUEUE), eq(2), any());
+
+        mockMvc.perform(MockMvcRequestBuilders.post("/v1/enqueue-batch")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(request)))
+                .andExpect(status().isTooManyRequests())
+                .andExpect(header().string(HttpHeaders.RETRY_AFTER, "3"));
+        verifyNoInteractions(messageService);
+    }
+
     @Test
     void dequeueMessage_shouldReturnDequeuedMessage() throws Exception {
         MessageRecord messageRecord = createTestMessageRecord();
-        when(messageService.dequeueMessage()).thenReturn(messageRecord);
+        when(messageService.dequeueMessage(QueueRegistry.DEFAULT_QUEUE)).thenReturn(messageRecord);
 
         mockMvc.perform(MockMvcRequestBuilders.get("/v1/dequeue"))
                 .andExpect(status().isOk())
                 .andExpect(content().json(objectMapper.writeValueAsString(messageRecord)));
     }
+
+    @Test
+    void dequeueMessage_withWait_shouldReturnMessageAsynchronously() throws Exception {
+        MessageRecord messageRecord = createTestMessageRecord();
+        when(longPollDequeueService.dequeueMessage(QueueRegistry.DEFAULT_QUEUE, Duration.ofSeconds(10))).thenReturn(CompletableFuture.completedFuture(messageRecord));
+
+        MvcResult mvcResult = mockMvc.perform(MockMvcRequestBuilders.get("/v1/dequeue").param("wait", "10"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(mvcResult))
+                .andExpect(status().isOk())
+                .andExpect(content().json(objectMapper.writeValueAsString(messageRecord)));
+    }
+
+    @Test
+    void dequeueMessage_withWait_whenTimedOut_shouldReturnNotFound() throws Exception {
+        when(longPollDequeueService.dequeueMessage(QueueRegistry.DEFAULT_QUEUE, Duration.ofSeconds(1)))
+                .thenReturn(CompletableFuture.failedFuture(new MessageNotFoundException("Queue is empty")));
+
+        MvcResult mvcResult = mockMvc.perform(MockMvcRequestBuilders.get("/v1/dequeue").param("wait", "1"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(mvcResult))
+                .andExpect(status().isNotFound());
+    }
 }